@@ -0,0 +1,24 @@
+package de.tum.ei.lkn.eces.dnm;
+
+/**
+ * Scope during which the resource allocations and ILS delay corrections of the DNMSystem are deferred (see
+ * DNMSystem.startBulkBuild). They are done once per scheduler when the scope is closed.
+ *
+ * @author Amaury Van Bemten
+ */
+public class BulkBuild implements AutoCloseable {
+	private final DNMSystem dnmSystem;
+	private boolean closed = false;
+
+	BulkBuild(DNMSystem dnmSystem) {
+		this.dnmSystem = dnmSystem;
+	}
+
+	@Override
+	public void close() {
+		if(closed)
+			return;
+		closed = true;
+		dnmSystem.stopBulkBuild();
+	}
+}
@@ -0,0 +1,85 @@
+package de.tum.ei.lkn.eces.dnm;
+
+/**
+ * Closed-form network calculus results for a token bucket arrival curve (rate r, burst b) served by a rate-latency
+ * service curve (rate R, latency T).
+ *
+ * These are the results DiscoDNC computes for such curves (Bound.delayFIFO, Bound.backlog and
+ * Bound.leftOverServiceARB), but directly obtained on primitive doubles, without creating any curve or number object.
+ *
+ * For a token bucket and a rate-latency curve, the left-over service curve is itself a rate-latency curve, so that all
+ * the residual modes lead to the same result.
+ *
+ * @author Amaury Van Bemten
+ */
+public class ClosedFormBounds {
+    /**
+     * @param r rate of the token bucket.
+     * @param b burst of the token bucket.
+     * @return true if the token bucket is the zero arrival curve.
+     */
+    private static boolean isZeroArrivals(double r, double b) {
+        return r == 0 && b == 0;
+    }
+
+    /**
+     * @param r rate of the token bucket.
+     * @param b burst of the token bucket.
+     * @param R rate of the rate-latency curve.
+     * @param T latency of the rate-latency curve.
+     * @return The FIFO delay bound (horizontal deviation), positive infinity if the queue is not stable.
+     */
+    public static double delay(double r, double b, double R, double T) {
+        if(isZeroArrivals(r, b))
+            return 0;
+        if(r > R || R == 0)
+            return Double.POSITIVE_INFINITY;
+        return T + b / R;
+    }
+
+    /**
+     * @param r rate of the token bucket.
+     * @param b burst of the token bucket.
+     * @param R rate of the rate-latency curve.
+     * @param T latency of the rate-latency curve.
+     * @return The backlog bound (vertical deviation), positive infinity if the queue is not stable.
+     */
+    public static double backlog(double r, double b, double R, double T) {
+        if(isZeroArrivals(r, b))
+            return 0;
+        if(r > R)
+            return Double.POSITIVE_INFINITY;
+        return b + r * T;
+    }
+
+    /**
+     * @param r rate of the token bucket.
+     * @param b burst of the token bucket.
+     * @param R rate of the rate-latency curve.
+     * @param T latency of the rate-latency curve.
+     * @return The rate of the left-over rate-latency service curve (0 if nothing is left).
+     */
+    public static double leftOverRate(double r, double b, double R, double T) {
+        if(isZeroArrivals(r, b))
+            return R;
+        if(r >= R)
+            return 0;
+        return R - r;
+    }
+
+    /**
+     * @param r rate of the token bucket.
+     * @param b burst of the token bucket.
+     * @param R rate of the rate-latency curve.
+     * @param T latency of the rate-latency curve.
+     * @return The latency of the left-over rate-latency service curve (0 if nothing is left), i.e., the intersection
+     *         of the arrival curve and of the service curve: (b + RT)/(R - r).
+     */
+    public static double leftOverLatency(double r, double b, double R, double T) {
+        if(isZeroArrivals(r, b))
+            return T;
+        if(r >= R)
+            return 0;
+        return (b + T * R) / (R - r);
+    }
+}
@@ -0,0 +1,25 @@
+package de.tum.ei.lkn.eces.dnm;
+
+/**
+ * Scope during which the TBM service curve updates of the DNMSystem are coalesced (see
+ * DNMSystem.startCoalescedUpdates). The service curves of the dirty schedulers are recomputed when the scope is
+ * closed.
+ *
+ * @author Amaury Van Bemten
+ */
+public class CoalescedUpdates implements AutoCloseable {
+	private final DNMSystem dnmSystem;
+	private boolean closed = false;
+
+	CoalescedUpdates(DNMSystem dnmSystem) {
+		this.dnmSystem = dnmSystem;
+	}
+
+	@Override
+	public void close() {
+		if(closed)
+			return;
+		closed = true;
+		dnmSystem.stopCoalescedUpdates();
+	}
+}
@@ -3,12 +3,16 @@ package de.tum.ei.lkn.eces.dnm;
 import de.tum.ei.lkn.eces.core.*;
 import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
 import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.AccessControlEngine;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
 import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
 import de.tum.ei.lkn.eces.dnm.exceptions.DNMException;
 import de.tum.ei.lkn.eces.dnm.inputmodels.PerInEdgeTokenBucketUtilization;
 import de.tum.ei.lkn.eces.dnm.inputmodels.ResourceUtilization;
 import de.tum.ei.lkn.eces.dnm.inputmodels.TokenBucketUtilization;
 import de.tum.ei.lkn.eces.dnm.mappers.*;
+import de.tum.ei.lkn.eces.dnm.metrics.DNMMetrics;
 import de.tum.ei.lkn.eces.dnm.queuemodels.MHMQueueModel;
 import de.tum.ei.lkn.eces.dnm.queuemodels.QueueModel;
 import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.MHM.MHMResourceAllocation;
@@ -25,14 +29,21 @@ import de.uni_kl.cs.discodnc.curves.ArrivalCurve;
 import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
 import de.uni_kl.cs.discodnc.curves.ServiceCurve;
 import de.uni_kl.cs.discodnc.curves.dnc.ServiceCurve_DNC;
-import de.uni_kl.cs.discodnc.misc.Pair;
 import de.uni_kl.cs.discodnc.nc.bounds.Bound;
 import de.uni_kl.cs.discodnc.numbers.Num;
 import org.json.JSONObject;
 
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Deterministic network modeling (DNM) system.
@@ -41,6 +52,10 @@ import java.util.Map;
  * - automatically allocates resources to queues based on the chosen resource allocation algorithm.
  * - automatically updates MHM delays if ILS is used
  * - automatically updates TBM service curves when new flows are accepted or removed
+ * - keeps the queue edge table of the modeling configuration (delays and physical edges) up to date
+ * - keeps the slack table of the modeling configuration up to date for the SLACK access control engine
+ * - can defer the resource allocations and ILS corrections while a topology is built (see startBulkBuild)
+ * - can re-allocate the resources of MHM schedulers when the current reservations fit in the new ones (see reallocateResources)
  *
  * @author Jochen Guck
  * @author Amaury Van Bemten
@@ -60,13 +75,55 @@ public class DNMSystem extends RootSystem {
     private Mapper<ToNetwork> toNetworkMapper                         = new ToNetworkMapper(controller);
     private Mapper<PerInEdgeTokenBucketUtilization> inputModelMapper  = new PerInEdgeTokenBucketUtilizationMapper(controller);
     private Mapper<TokenBucketUtilization> singleTokenBucketMapper    = new TokenBucketUtilizationMapper(controller);
-    private Mapper<NetworkNode> networkNodeMapper                     = new NetworkNodeMapper(controller);
     private Mapper<SelectedResourceAllocation> selResourceAllocMapper = new SelectedResourceAllocationMapper(controller);
+    private Mapper<NetworkNode> networkNodeMapper                     = new NetworkNodeMapper(controller);
+    private Mapper<Host> hostMapper                                   = new HostMapper(controller);
+
+    // Coalesced service curve updates: number of open scopes, whether we are flushing, and dirty schedulers (with the
+    // highest priority queue that changed).
+    private int coalescingDepth = 0;
+    private boolean flushingCoalescedUpdates = false;
+    private final Map<Scheduler, Integer> dirtySchedulers = new LinkedHashMap<>();
+
+    // Bulk topology build: number of open scopes, whether we are committing, and resource allocations to do.
+    private int bulkBuildDepth = 0;
+    private boolean committingBulkBuild = false;
+    private final List<SelectedResourceAllocation> deferredAllocations = new ArrayList<>();
+
+    // Pool in which the deferred resource allocations and ILS corrections are computed.
+    private ForkJoinPool buildPool = ForkJoinPool.commonPool();
+
+    // Entities of the network nodes of the hosts (with the number of hosts using them) and nodes of each host, updated
+    // when the Host components are created, updated or destroyed and when a lookup finds a host interface that was not
+    // indexed yet (see isHost). Entities of the network nodes found not to belong to any host.
+    private final Map<Entity, Integer> hostNodes = new ConcurrentHashMap<>();
+    private final Map<Host, Set<Entity>> nodesOfHosts = new HashMap<>();
+    private final Set<Entity> nonHostNodes = ConcurrentHashMap.newKeySet();
+
+    // Metrics (null if not collected).
+    private DNMMetrics metrics = null;
 
 	public DNMSystem(Controller controller) {
 		super(controller);
 	}
 
+	/**
+	 * Sets the object in which metrics (service curve cascades and ILS corrections) are collected.
+	 * @param metrics the metrics, null to stop collecting metrics.
+	 */
+	public void setMetrics(DNMMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sets the pool in which the resource allocations and ILS corrections deferred by a bulk build are computed
+	 * (common pool by default).
+	 * @param buildPool the pool.
+	 */
+	public void setBuildPool(ForkJoinPool buildPool) {
+		this.buildPool = buildPool;
+	}
+
 	/**
 	 * @param entity an entity.
 	 * @return The modeling config attached to this entity, DNMException if there is none.
@@ -114,6 +171,19 @@ public class DNMSystem extends RootSystem {
      */
 	@ComponentStateIs(State = ComponentStatus.New)
 	public void allocateResources(SelectedResourceAllocation selectedResourceAllocation) {
+		if(deferAllocation(selectedResourceAllocation))
+			return;
+
+		Scheduler scheduler = schedulerMapper.get(selectedResourceAllocation.getEntity());
+		storeResources(selectedResourceAllocation, selectedResourceAllocation.getResourceAllocation().allocateResources(scheduler));
+	}
+
+	/**
+	 * Stores the resources allocated to a scheduler (see allocateResources).
+	 * @param selectedResourceAllocation resource allocation algorithm of the scheduler.
+	 * @param resources the resources allocated by the algorithm.
+	 */
+	private void storeResources(SelectedResourceAllocation selectedResourceAllocation, double[][] resources) {
         Scheduler scheduler = schedulerMapper.get(selectedResourceAllocation.getEntity());
         Link link = linkMapper.get(toNetworkMapper.get(edgeMapper.get(scheduler.getEntity()).getEntity()).getNetworkEntity());
         double linkRate = rateMapper.get(edgeMapper.get(scheduler.getEntity()).getEntity()).getRate();
@@ -122,12 +192,6 @@ public class DNMSystem extends RootSystem {
 
         logger.info("allocating resources to " + scheduler);
 
-        // Get resource allocation algorithm
-        ResourceAllocation resourceAllocation = selectedResourceAllocation.getResourceAllocation();
-
-        // Allocate resources
-        double[][] resources = resourceAllocation.allocateResources(scheduler);
-
         // First service curve (Eqn. 2 & 3 of DetServ)
         double R = linkRate;
         double T = (2 * myConfig.getMaximumPacketSize()) / R;
@@ -135,17 +199,10 @@ public class DNMSystem extends RootSystem {
         // Storing allocated resources and queue models.
         switch(myConfig.getAcModel()) {
 			case MHM:
-                ServiceCurve currentServiceCurve = CurvePwAffine.getFactory().createRateLatency(R, T);
-                for(int i = 0; i < queues.length; i++) {
-                    ArrivalCurve currentTokenBucket = CurvePwAffine.getFactory().createTokenBucket(resources[i][MHMResourceAllocation.RATE_INDEX], resources[i][MHMResourceAllocation.BURST_INDEX]);
-                    // Storing allocated resources to the queue
-                    MHMQueueModel resourcesForQueue = new MHMQueueModel(currentServiceCurve, currentTokenBucket);
-
-                    currentServiceCurve = Bound.leftOverServiceARB(currentServiceCurve, currentTokenBucket);
-                    if(i < queues.length - 1)
-					    ((ServiceCurve_DNC) currentServiceCurve).makeRateLatency();
-                    queueModelMapper.attachComponent(queues[i], resourcesForQueue);
-                }
+                // Storing allocated resources to the queues
+                MHMQueueModel[] queueModels = getMHMQueueModels(R, T, resources);
+                for(int i = 0; i < queues.length; i++)
+                    queueModelMapper.attachComponent(queues[i], queueModels[i]);
 
                 break;
 
@@ -172,17 +229,17 @@ public class DNMSystem extends RootSystem {
                     // just reduce the delay by shaping.
                     // The delay will be directly corrected by the implemented listeners in the current system.
                     delayMapper.attachComponent(queues[i], new Delay(resources[i][MHMResourceAllocation.DELAY_INDEX]));
-                    resourceUtilizationMapper.attachComponent(queues[i], new TokenBucketUtilization());
+                    resourceUtilizationMapper.attachComponent(queues[i], new TokenBucketUtilization(myConfig.getUtilizationStore()));
                     break;
 
                 case TBM:
                     if(myConfig.isInputLinkShaping()) {
                         // We will keep track of the token buckets coming from each input link
-                        resourceUtilizationMapper.attachComponent(queues[i], new PerInEdgeTokenBucketUtilization());
+                        resourceUtilizationMapper.attachComponent(queues[i], new PerInEdgeTokenBucketUtilization(link.getLinkEdge(), edge -> rateMapper.getOptimistic(edge.getEntity()).getRate(), myConfig.getMaximumPacketSize(), myConfig.getUtilizationStore()));
                         delayMapper.attachComponent(queues[i], new Delay(resources[i][TBMResourceAllocation.DELAY_INDEX]));
                     }
                     else {
-                        resourceUtilizationMapper.attachComponent(queues[i], new TokenBucketUtilization());
+                        resourceUtilizationMapper.attachComponent(queues[i], new TokenBucketUtilization(myConfig.getUtilizationStore()));
                         delayMapper.attachComponent(queues[i], new Delay(resources[i][TBMResourceAllocation.DELAY_INDEX]));
                     }
 
@@ -191,6 +248,463 @@ public class DNMSystem extends RootSystem {
                 default:
                     throw new DNMException("Unknown access control model: " + myConfig.getAcModel());
             }
+
+            updateQueueEdgeTable(myConfig, edgeMapper.get(queues[i].getEntity()), link.getLinkEdge(), delayMapper.get(queues[i].getEntity()).getDelay());
+		}
+
+		// Static values of the cost models
+		CostValueTable costValueTable = myConfig.getCostValueTable();
+		int linkSlot = costValueTable.newLinkSlot();
+		for (int i = 0; i < queues.length; i++)
+			costValueTable.putQueue(queues[i].getEntity(), i, queues.length, linkRate, linkSlot);
+
+		if(usesSlackTable(myConfig))
+			updateSlackTable(myConfig, queues, R, T);
+	}
+
+	/**
+	 * Computes the MHM queue models of the queues of a scheduler.
+	 * @param R rate of the service curve of the highest priority queue.
+	 * @param T latency of the service curve of the highest priority queue.
+	 * @param resources the resources allocated to the queues (see MHMResourceAllocation).
+	 * @return The queue model of each queue.
+	 */
+	private MHMQueueModel[] getMHMQueueModels(double R, double T, double[][] resources) {
+		MHMQueueModel[] queueModels = new MHMQueueModel[resources.length];
+		ServiceCurve currentServiceCurve = CurvePwAffine.getFactory().createRateLatency(R, T);
+		for(int i = 0; i < resources.length; i++) {
+			ArrivalCurve currentTokenBucket = CurvePwAffine.getFactory().createTokenBucket(resources[i][MHMResourceAllocation.RATE_INDEX], resources[i][MHMResourceAllocation.BURST_INDEX]);
+			queueModels[i] = new MHMQueueModel(currentServiceCurve, currentTokenBucket);
+
+			currentServiceCurve = Bound.leftOverServiceARB(currentServiceCurve, currentTokenBucket);
+			if(i < resources.length - 1)
+				((ServiceCurve_DNC) currentServiceCurve).makeRateLatency();
+		}
+		return queueModels;
+	}
+
+	/**
+	 * Re-allocates the resources of the queues of an MHM scheduler with its resource allocation algorithm (e.g., to
+	 * follow the observed demand with MHMDemandWeightedAllocation).
+	 *
+	 * The new queue models are only swapped in if the flows already registered are guaranteed to still fit: the
+	 * current utilization of each queue must be within its new maximum token bucket and the new delay (with ILS
+	 * correction, if used) of each used queue must not be larger than its current delay, as the end-to-end delays of
+	 * the registered flows were computed with it. Otherwise, nothing is changed.
+	 *
+	 * With the REAL and WORST_CASE_BURST_REAL_RESERVATION burst increase models, the burst reserved by a flow at a
+	 * hop depends on the delays of the previous hops at the time of its registration and its deregistration must
+	 * subtract the same burst: the delays of the used queues are hence kept unchanged (they are still upper bounds
+	 * with the new resources) and only the delays of the unused queues change.
+	 *
+	 * Periodic re-allocations are left to the caller. They must not run concurrently with (de)registrations.
+	 * @param scheduler an MHM scheduler whose resources were already allocated.
+	 * @return true if the new resources were swapped in, false if the current reservations do not fit in them.
+	 */
+	public boolean reallocateResources(Scheduler scheduler) {
+		if(!selResourceAllocMapper.isIn(scheduler.getEntity()))
+			throw new DNMException("No resource allocation was selected for " + scheduler);
+
+		Link link = linkMapper.get(toNetworkMapper.get(edgeMapper.get(scheduler.getEntity()).getEntity()).getNetworkEntity());
+		double linkRate = rateMapper.get(edgeMapper.get(scheduler.getEntity()).getEntity()).getRate();
+		DetServConfig myConfig = getModelingConfig(link.getNetwork().getQueueGraph().getEntity());
+		if(myConfig.getAcModel() != ACModel.MHM)
+			throw new DNMException("Only the resources of MHM schedulers can be re-allocated!");
+
+		Queue[] queues = scheduler.getQueues();
+		double[][] resources = selResourceAllocMapper.get(scheduler.getEntity()).getResourceAllocation().allocateResources(scheduler);
+		MHMQueueModel[] queueModels = getMHMQueueModels(linkRate, (2 * myConfig.getMaximumPacketSize()) / linkRate, resources);
+
+		// Proving that the current reservations fit in the new resources.
+		double[] delays = new double[queues.length];
+		for(int i = 0; i < queues.length; i++) {
+			TokenBucketUtilization utilization = (TokenBucketUtilization) resourceUtilizationMapper.get(queues[i].getEntity());
+			ArrivalCurve maximumTokenBucket = queueModels[i].getMaximumTokenBucket();
+			if(utilization.getRateValue() > maximumTokenBucket.getUltAffineRate().doubleValue() || utilization.getBurstValue() > maximumTokenBucket.getBurst().doubleValue()) {
+				logger.info("Not re-allocating " + scheduler + ": the utilization of queue " + i + " exceeds its new maximum token bucket");
+				return false;
+			}
+
+			delays[i] = resources[i][MHMResourceAllocation.DELAY_INDEX];
+			Num correctedDelay = getILSCorrectedDelay(queues[i].getEntity(), queueModels[i]);
+			if(correctedDelay != null)
+				delays[i] = correctedDelay.doubleValue();
+
+			boolean used = utilization.getRateValue() > 0 || utilization.getBurstValue() > 0;
+			double currentDelay = delayMapper.get(queues[i].getEntity()).getDelay();
+			if(used && delays[i] > currentDelay) {
+				logger.info("Not re-allocating " + scheduler + ": the delay of queue " + i + " would increase");
+				return false;
+			}
+			if(used && (myConfig.getBurstIncrease() == BurstIncreaseModel.REAL || myConfig.getBurstIncrease() == BurstIncreaseModel.WORST_CASE_BURST_REAL_RESERVATION))
+				delays[i] = currentDelay;
+		}
+
+		// Swapping the new resources in.
+		logger.info("re-allocating resources to " + scheduler);
+		for(int i = 0; i < queues.length; i++) {
+			MHMQueueModel queueModel = MHMQueueModelMapper.get(queues[i].getEntity());
+			MHMQueueModel newQueueModel = queueModels[i];
+			MHMQueueModelMapper.updateComponent(queueModel, () -> {
+				queueModel.setServiceCurve(newQueueModel.getServiceCurve());
+				queueModel.setMaximumTokenBucket(newQueueModel.getMaximumTokenBucket());
+			});
+
+			Delay delay = delayMapper.get(queues[i].getEntity());
+			double newDelay = delays[i];
+			delayMapper.updateComponent(delay, () -> delay.setDelay(newDelay));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Re-allocates the resources of all the MHM schedulers of a network (see reallocateResources(Scheduler)).
+	 * @param network the network.
+	 * @return The number of schedulers whose new resources were swapped in.
+	 */
+	public int reallocateResources(Network network) {
+		if(getModelingConfig(network.getQueueGraph().getEntity()).getAcModel() != ACModel.MHM)
+			throw new DNMException("Only the resources of MHM schedulers can be re-allocated!");
+
+		int reallocatedSchedulers = 0;
+		for(Edge linkEdge : network.getLinkGraph().getEdges()) {
+			if(schedulerMapper.isIn(linkEdge.getEntity()) && selResourceAllocMapper.isIn(linkEdge.getEntity()) && reallocateResources(schedulerMapper.get(linkEdge.getEntity())))
+				reallocatedSchedulers++;
+		}
+
+		return reallocatedSchedulers;
+	}
+
+	/**
+	 * @param modelingConfig a modeling configuration.
+	 * @return Whether the slack table of the modeling configuration must be maintained.
+	 */
+	private boolean usesSlackTable(DetServConfig modelingConfig) {
+		return modelingConfig.getAcModel() == ACModel.TBM && !modelingConfig.isInputLinkShaping() && modelingConfig.getAccessControlEngine() == AccessControlEngine.SLACK;
+	}
+
+	/**
+	 * Recomputes the slack of the queues of a scheduler from their current utilizations.
+	 * @param modelingConfig the modeling configuration.
+	 * @param queues the queues of the scheduler.
+	 * @param R rate of the service curve of the highest priority queue.
+	 * @param T latency of the service curve of the highest priority queue.
+	 */
+	private void updateSlackTable(DetServConfig modelingConfig, Queue[] queues, double R, double T) {
+		Edge[] queueEdges = new Edge[queues.length];
+		double[] rates = new double[queues.length];
+		double[] bursts = new double[queues.length];
+		double[] delays = new double[queues.length];
+		double[] sizes = new double[queues.length];
+		for(int i = 0; i < queues.length; i++) {
+			ResourceUtilization resourceUtilization = resourceUtilizationMapper.get(queues[i].getEntity());
+			if(!(resourceUtilization instanceof TokenBucketUtilization))
+				throw new DNMException(resourceUtilization.getClass().getTypeName() + " is not supported by the slack table");
+			queueEdges[i] = edgeMapper.get(queues[i].getEntity());
+			rates[i] = ((TokenBucketUtilization) resourceUtilization).getRateValue();
+			bursts[i] = ((TokenBucketUtilization) resourceUtilization).getBurstValue();
+			delays[i] = delayMapper.get(queues[i].getEntity()).getDelay();
+			sizes[i] = queues[i].getSize();
+		}
+
+		modelingConfig.getSlackTable().put(queueEdges, R, T, rates, bursts, delays, sizes);
+	}
+
+	/**
+	 * Refreshes the input link shaping of the queues fed by a link whose rate changed.
+	 * @param rate the updated Rate component.
+	 */
+	@ComponentStateIs(State = ComponentStatus.Updated)
+	public void refreshInputLinkShaping(Rate rate) {
+		if(!edgeMapper.isIn(rate.getEntity()))
+			return;
+
+		// The shaped terms of this link are kept by the queues of the links leaving its destination.
+		Edge inputEdge = edgeMapper.get(rate.getEntity());
+		for(Edge outputEdge : inputEdge.getDestination().getOutgoingConnections()) {
+			if(!schedulerMapper.isIn(outputEdge.getEntity()))
+				continue;
+			for(Queue queue : schedulerMapper.get(outputEdge.getEntity()).getQueues()) {
+				ResourceUtilization utilization = resourceUtilizationMapper.getOptimistic(queue.getEntity());
+				if(utilization instanceof PerInEdgeTokenBucketUtilization)
+					resourceUtilizationMapper.updateComponent(utilization, () -> ((PerInEdgeTokenBucketUtilization) utilization).refreshShaping(inputEdge));
+			}
+		}
+	}
+
+	/**
+	 * Stores the static routing values of a queue edge in the queue edge table of the modeling configuration.
+	 * @param modelingConfig the modeling configuration.
+	 * @param queueEdge the queue edge.
+	 * @param physicalEdge the physical edge of the queue.
+	 * @param queueDelay the delay of the queue.
+	 */
+	private void updateQueueEdgeTable(DetServConfig modelingConfig, Edge queueEdge, Edge physicalEdge, double queueDelay) {
+		if(!delayMapper.isIn(physicalEdge.getEntity())) {
+			// The proxy will then use the Delay components.
+			logger.warn("No delay attached to " + physicalEdge + ", " + queueEdge + " is not added to the queue edge table");
+			return;
+		}
+
+		modelingConfig.getQueueEdgeTable().put(queueEdge, physicalEdge, queueDelay, delayMapper.get(physicalEdge.getEntity()).getDelay());
+	}
+
+	/**
+	 * Keeps the queue edge table (and the slack table, which depends on the delays of the queues) up to date when the
+	 * delay of a queue or of a link changes.
+	 * @param delay the updated Delay component.
+	 */
+	@ComponentStateIs(State = ComponentStatus.Updated)
+	public void updateQueueEdgeTable(Delay delay) {
+		if(schedulerMapper.isIn(delay.getEntity())) {
+			// Delay of a link: all its queues are concerned.
+			for(Queue queue : schedulerMapper.get(delay.getEntity()).getQueues()) {
+				Edge queueEdge = edgeMapper.get(queue.getEntity());
+				if(modelingConfigMapper.isIn(queueEdge.getSource().getGraph().getEntity()))
+					getModelingConfig(queueEdge.getSource().getGraph().getEntity()).getQueueEdgeTable().setLinkDelay(queueEdge, delay.getDelay());
+			}
+			return;
+		}
+
+		Edge edge = edgeMapper.get(delay.getEntity());
+		if(modelingConfigMapper.isIn(edge.getSource().getGraph().getEntity())) {
+			getModelingConfig(edge.getSource().getGraph().getEntity()).getQueueEdgeTable().setQueueDelay(edge, delay.getDelay());
+			if(queueMapper.isIn(delay.getEntity()) && resourceUtilizationMapper.isIn(delay.getEntity()))
+				updateSlackTable(delay.getEntity());
+		}
+	}
+
+	/**
+	 * Releases the storage of a destroyed utilization (slots of the UtilizationStore).
+	 * @param resourceUtilization the destroyed utilization.
+	 */
+	@ComponentStateIs(State = ComponentStatus.Destroyed)
+	public void releaseResourceUtilization(ResourceUtilization resourceUtilization) {
+		resourceUtilization.release();
+	}
+
+	/**
+	 * Keeps the link rates of the cost value table up to date.
+	 * @param rate the updated Rate component.
+	 */
+	@ComponentStateIs(State = ComponentStatus.Updated)
+	public void updateCostValueTable(Rate rate) {
+		if(!schedulerMapper.isIn(rate.getEntity()))
+			return;
+
+		for(Queue queue : schedulerMapper.get(rate.getEntity()).getQueues()) {
+			Entity graphEntity = edgeMapper.get(queue.getEntity()).getSource().getGraph().getEntity();
+			if(modelingConfigMapper.isIn(graphEntity))
+				getModelingConfig(graphEntity).getCostValueTable().setLinkRate(queue.getEntity(), rate.getRate());
+		}
+	}
+
+	/**
+	 * Starts coalescing the TBM service curve updates.
+	 *
+	 * Until the returned object is closed, a change of utilization or of service curve on a queue does not directly
+	 * trigger the update of the lower priority queues: the scheduler is only marked dirty. When closed, the whole
+	 * priority chain of each dirty scheduler is recomputed once, in a single pass starting from the highest priority
+	 * queue that changed.
+	 *
+	 * In the meantime, the stored service curves of the lower priority queues of the dirty schedulers are out of date:
+	 * the DetServProxy checks the access to their queues from the highest priority queue on (see isDirty).
+	 *
+	 * The scopes can be nested, the updates are done when the outermost one is closed. If used together with a
+	 * MapperSpace, the MapperSpace should be closed first (i.e., opened last), so that all the listeners were called
+	 * when the updates are done.
+	 * @return the coalescing scope, to be closed.
+	 */
+	public synchronized CoalescedUpdates startCoalescedUpdates() {
+		coalescingDepth++;
+		return new CoalescedUpdates(this);
+	}
+
+	/**
+	 * Closes a coalescing scope and, if it was the outermost one, recomputes the service curves of the dirty
+	 * schedulers.
+	 */
+	synchronized void stopCoalescedUpdates() {
+		if(coalescingDepth == 0)
+			throw new DNMException("No coalesced updates to stop");
+		if(--coalescingDepth > 0)
+			return;
+
+		flushingCoalescedUpdates = true;
+		try {
+			for(Map.Entry<Scheduler, Integer> dirtyScheduler : dirtySchedulers.entrySet()) {
+				recomputeServiceCurves(dirtyScheduler.getKey(), dirtyScheduler.getValue());
+				getModelingConfig(dirtyScheduler.getKey()).getDirtySchedulers().remove(dirtyScheduler.getKey());
+			}
+		}
+		finally {
+			for(Scheduler dirtyScheduler : dirtySchedulers.keySet())
+				getModelingConfig(dirtyScheduler).getDirtySchedulers().remove(dirtyScheduler);
+			dirtySchedulers.clear();
+			flushingCoalescedUpdates = false;
+		}
+	}
+
+	/**
+	 * Marks a scheduler as dirty if updates are being coalesced.
+	 * @param scheduler the scheduler.
+	 * @param queue the queue that changed.
+	 * @return true if the update of the lower priority queues is deferred (or being done), false if it must be done.
+	 */
+	private synchronized boolean deferServiceCurvesUpdate(Scheduler scheduler, Queue queue) {
+		if(flushingCoalescedUpdates)
+			return true;
+		if(coalescingDepth == 0)
+			return false;
+
+		int queueIndex = 0;
+		while(scheduler.getQueues()[queueIndex].getEntity() != queue.getEntity())
+			queueIndex++;
+		dirtySchedulers.merge(scheduler, queueIndex, Math::min);
+		getModelingConfig(scheduler).getDirtySchedulers().add(scheduler);
+		return true;
+	}
+
+	/**
+	 * @param scheduler a scheduler.
+	 * @return true if the update of the service curves of the scheduler is deferred to the end of the current
+	 * coalescing scope, i.e., if the stored service curves of its lower priority queues are out of date.
+	 */
+	public boolean isDirty(Scheduler scheduler) {
+		return getModelingConfig(scheduler).getDirtySchedulers().contains(scheduler);
+	}
+
+	/**
+	 * @param scheduler a scheduler.
+	 * @return The configuration of the network of the scheduler.
+	 */
+	private DetServConfig getModelingConfig(Scheduler scheduler) {
+		return getModelingConfig(edgeMapper.get(scheduler.getQueues()[0].getEntity()).getSource().getGraph().getEntity());
+	}
+
+	/**
+	 * Starts a bulk topology build.
+	 *
+	 * Until the returned object is closed, the resources are not allocated to the new schedulers and the ILS delay
+	 * corrections (MHM with ILS) are not done. When closed, the resource allocations of the new schedulers are computed
+	 * in parallel (see setBuildPool) and stored, and the ILS delay correction is then done once for each of their
+	 * queues and for each neighboring queue, also in parallel, instead of once per new neighbor.
+	 *
+	 * The scopes can be nested, the allocations are done when the outermost one is closed. No flow should be registered
+	 * during a bulk build.
+	 * @return the bulk build scope, to be closed.
+	 */
+	public synchronized BulkBuild startBulkBuild() {
+		bulkBuildDepth++;
+		return new BulkBuild(this);
+	}
+
+	/**
+	 * Closes a bulk build scope and, if it was the outermost one, allocates the resources of the new schedulers and
+	 * does the ILS delay corrections.
+	 */
+	synchronized void stopBulkBuild() {
+		if(bulkBuildDepth == 0)
+			throw new DNMException("No bulk build to stop");
+		if(--bulkBuildDepth > 0)
+			return;
+
+		committingBulkBuild = true;
+		try {
+			// Allocations are computed in parallel and stored sequentially (the listeners are called).
+			List<ForkJoinTask<double[][]>> allocationTasks = new ArrayList<>(deferredAllocations.size());
+			for(SelectedResourceAllocation selectedResourceAllocation : deferredAllocations) {
+				Scheduler scheduler = schedulerMapper.getOptimistic(selectedResourceAllocation.getEntity());
+				allocationTasks.add(buildPool.submit(() -> selectedResourceAllocation.getResourceAllocation().allocateResources(scheduler)));
+			}
+
+			Set<Entity> queueEntities = new LinkedHashSet<>();
+			for(int i = 0; i < deferredAllocations.size(); i++) {
+				storeResources(deferredAllocations.get(i), allocationTasks.get(i).join());
+				for(Queue queue : schedulerMapper.get(deferredAllocations.get(i).getEntity()).getQueues()) {
+					Edge queueEdge = edgeMapper.get(queue.getEntity());
+					queueEntities.add(queueEdge.getEntity());
+					for(Edge e : queueEdge.getSource().getIncomingConnections())
+						queueEntities.add(e.getEntity());
+					for(Edge e : queueEdge.getDestination().getOutgoingConnections())
+						queueEntities.add(e.getEntity());
+				}
+			}
+
+			// ILS delay corrections, once per queue.
+			List<Entity> correctedQueues = new ArrayList<>(queueEntities);
+			List<ForkJoinTask<Num>> correctionTasks = new ArrayList<>(correctedQueues.size());
+			for(Entity queueEntity : correctedQueues)
+				correctionTasks.add(buildPool.submit(() -> getILSCorrectedDelay(queueEntity)));
+			for(int i = 0; i < correctedQueues.size(); i++)
+				setILSCorrectedDelay(correctedQueues.get(i), correctionTasks.get(i).join());
+		}
+		finally {
+			deferredAllocations.clear();
+			committingBulkBuild = false;
+		}
+	}
+
+	/**
+	 * Defers the resource allocation of a scheduler if a topology is being built.
+	 * @param selectedResourceAllocation resource allocation algorithm of the scheduler.
+	 * @return true if the allocation is deferred, false if it must be done.
+	 */
+	private synchronized boolean deferAllocation(SelectedResourceAllocation selectedResourceAllocation) {
+		if(bulkBuildDepth == 0)
+			return false;
+		deferredAllocations.add(selectedResourceAllocation);
+		return true;
+	}
+
+	/**
+	 * @return true if the ILS delay corrections are suspended (or being done) by a bulk build.
+	 */
+	private synchronized boolean isBuildingTopology() {
+		return bulkBuildDepth > 0 || committingBulkBuild;
+	}
+
+	/**
+	 * Recomputes the service curves of the queues of a scheduler, in a single pass.
+	 * @param scheduler the scheduler.
+	 * @param fromQueue index of the highest priority queue that changed (its service curve is still valid).
+	 */
+	private void recomputeServiceCurves(Scheduler scheduler, int fromQueue) {
+		Queue[] queues = scheduler.getQueues();
+		DetServConfig modelingConfig = getModelingConfig(edgeMapper.get(queues[fromQueue].getEntity()).getSource().getGraph().getEntity());
+
+		DNMMetrics currentMetrics = metrics;
+		if(currentMetrics != null)
+			currentMetrics.recordCascade(queues.length - 1 - fromQueue);
+
+		ServiceCurve serviceCurve = queueModelMapper.get(queues[fromQueue].getEntity()).getServiceCurve();
+		for(int i = fromQueue; i < queues.length - 1; i++) {
+			final ServiceCurve nextServiceCurve = modelingConfig.getResidualMode().getResidualServiceCurve(serviceCurve, getArrivalCurve(resourceUtilizationMapper.get(queues[i].getEntity())));
+			QueueModel queueModel = queueModelMapper.get(queues[i + 1].getEntity());
+			if(logger.isInfoEnabled())
+				logger.info("New service curve for queue " + queues[i + 1] + ": " + nextServiceCurve);
+			if(currentMetrics != null)
+				currentMetrics.recordServiceCurveUpdate();
+			queueModelMapper.updateComponent(queueModel, () -> queueModel.setServiceCurve(nextServiceCurve));
+			serviceCurve = nextServiceCurve;
+		}
+	}
+
+	/**
+	 * @param resourceUtilization the utilization of a queue.
+	 * @return The current arrival curve of this queue.
+	 */
+	private ArrivalCurve getArrivalCurve(ResourceUtilization resourceUtilization) {
+		if(resourceUtilization instanceof TokenBucketUtilization) {
+			return ((TokenBucketUtilization) resourceUtilization).getTokenBucket();
+		}
+		else if(resourceUtilization instanceof PerInEdgeTokenBucketUtilization) {
+			// Aggregate shaped arrival curve (traffic coming from the node itself is not shaped).
+			return ((PerInEdgeTokenBucketUtilization) resourceUtilization).getAggregateArrivalCurve();
+		}
+		else {
+			throw new DNMException(resourceUtilization.getClass().getTypeName() + " is not supported");
 		}
 	}
 
@@ -200,7 +714,22 @@ public class DNMSystem extends RootSystem {
      */
 	@ComponentStateIs(State = ComponentStatus.Updated)
 	public void TBMUpdateServiceCurves(ResourceUtilization resourceUtilization) {
-		updateLowerPriorityServiceCurves(resourceUtilization.getEntity());
+		updateSlackTable(resourceUtilization.getEntity());
+		updateLowerPriorityServiceCurves(resourceUtilization.getEntity(), true);
+	}
+
+	/**
+	 * Recomputes the slack of the queues of the scheduler of a queue whose utilization changed, if needed.
+	 * @param queueEntity Entity of the queue.
+	 */
+	private void updateSlackTable(Entity queueEntity) {
+		DetServConfig modelingConfig = getModelingConfig(edgeMapper.get(queueEntity).getSource().getGraph().getEntity());
+		if(!usesSlackTable(modelingConfig))
+			return;
+
+		Queue[] queues = queueMapper.get(queueEntity).getScheduler().getQueues();
+		ServiceCurve firstServiceCurve = queueModelMapper.get(queues[0].getEntity()).getServiceCurve();
+		updateSlackTable(modelingConfig, queues, firstServiceCurve.getUltAffineRate().doubleValue(), firstServiceCurve.getLatency().doubleValue());
 	}
 
     /**
@@ -209,14 +738,16 @@ public class DNMSystem extends RootSystem {
      */
 	@ComponentStateIs(State = ComponentStatus.Updated)
 	public void TBMUpdateServiceCurves(QueueModel queueModel) {
-		updateLowerPriorityServiceCurves(queueModel.getEntity());
+		updateLowerPriorityServiceCurves(queueModel.getEntity(), false);
 	}
 
     /**
      * Update the service curves of low priority queues when something changed on a given queue.
      * @param queueEntity Entity of the queue where something changed.
+     * @param cascadeStart true if the utilization of the queue changed (i.e., start of a cascade of updates), false if
+     *                     its service curve changed (i.e., continuation of a cascade).
      */
-    private void updateLowerPriorityServiceCurves(Entity queueEntity) {
+    private void updateLowerPriorityServiceCurves(Entity queueEntity, boolean cascadeStart) {
         Edge queueEdge = edgeMapper.get(queueEntity);
 		DetServConfig modelingConfig = getModelingConfig(queueEdge.getSource().getGraph().getEntity());
 
@@ -227,17 +758,27 @@ public class DNMSystem extends RootSystem {
 		Queue updatedQueue = queueMapper.get(queueEntity);
 		Scheduler updatedScheduler = updatedQueue.getScheduler();
 
+		if(deferServiceCurvesUpdate(updatedScheduler, updatedQueue))
+			return;
+
 		// Getting the lower priority queue
 		Queue lowerPriorityQueue = null;
 		boolean foundQueue = false;
+		int lowerPriorityQueues = 0;
 		for(Queue queue : updatedScheduler.getQueues()) {
 			if(foundQueue) {
-				lowerPriorityQueue = queue;
-				break;
+				if(lowerPriorityQueue == null)
+					lowerPriorityQueue = queue;
+				lowerPriorityQueues++;
 			}
 			if(queue.getEntity() == updatedQueue.getEntity())
                 foundQueue = true;
 		}
+
+		DNMMetrics currentMetrics = metrics;
+		if(currentMetrics != null && cascadeStart)
+			currentMetrics.recordCascade(lowerPriorityQueues);
+
 		if(lowerPriorityQueue == null)
 			return;
 
@@ -246,38 +787,15 @@ public class DNMSystem extends RootSystem {
 		ServiceCurve updatedQueueServiceCurve = queueModelMapper.get(queueEntity).getServiceCurve();
 
 		// Getting the arrival curve of the updated queue.
-		ArrivalCurve updatedQueueArrivalCurve;
-		if(updatedQueueResourceUtilization instanceof TokenBucketUtilization) {
-			Num rate = ((TokenBucketUtilization) updatedQueueResourceUtilization).getRate();
-			Num burst = ((TokenBucketUtilization) updatedQueueResourceUtilization).getBurst();
-			updatedQueueArrivalCurve = CurvePwAffine.getFactory().createTokenBucket(rate, burst);
-		}
-		else if(updatedQueueResourceUtilization instanceof PerInEdgeTokenBucketUtilization) {
-			LinkedList<ArrivalCurve> individualArrivalCurves = new LinkedList<>();
-			for(Map.Entry<Edge, Pair<Num>> oneEdge : ((PerInEdgeTokenBucketUtilization) updatedQueueResourceUtilization).getTokenBuckets()) {
-			    // Not shaping traffic coming from the node itself.
-			    if(oneEdge.getKey() == queueEdge)
-	                individualArrivalCurves.add(CurvePwAffine.getFactory().createTokenBucket(oneEdge.getValue().getFirst(), oneEdge.getValue().getSecond()));
-                else
-    				individualArrivalCurves.add(CurvePwAffine.min(
-							CurvePwAffine.getFactory().createTokenBucket(oneEdge.getValue().getFirst(), oneEdge.getValue().getSecond()),
-							CurvePwAffine.getFactory().createTokenBucket(rateMapper.get(oneEdge.getKey().getEntity()).getRate(), modelingConfig.getMaximumPacketSize())
-					));
-			}
-
-			updatedQueueArrivalCurve = CurvePwAffine.getFactory().createTokenBucket(0, 0);
-			for(ArrivalCurve individualArrivalCurve : individualArrivalCurves)
-                updatedQueueArrivalCurve = CurvePwAffine.add(updatedQueueArrivalCurve, individualArrivalCurve);
-
-		}
-		else {
-			throw new DNMException(updatedQueueResourceUtilization.getClass().getTypeName() + " is not supported");
-		}
+		ArrivalCurve updatedQueueArrivalCurve = getArrivalCurve(updatedQueueResourceUtilization);
 
 		// Update curve of the next queue (note: "more" lower queues will automatically be updated by the listeners)
 		final ServiceCurve nextServiceCurve = modelingConfig.getResidualMode().getResidualServiceCurve(updatedQueueServiceCurve, updatedQueueArrivalCurve);
         QueueModel queueModel = queueModelMapper.get(lowerPriorityQueue.getEntity());
-        logger.info("New service curve for queue " + queueEdge + ": " + nextServiceCurve);
+        if(logger.isInfoEnabled())
+            logger.info("New service curve for queue " + queueEdge + ": " + nextServiceCurve);
+        if(currentMetrics != null)
+            currentMetrics.recordServiceCurveUpdate();
         queueModelMapper.updateComponent(queueModel, () -> queueModel.setServiceCurve(nextServiceCurve));
     }
 
@@ -292,6 +810,9 @@ public class DNMSystem extends RootSystem {
      */
 	@ComponentStateIs(State = ComponentStatus.New)
 	public void doILSforMHMDelayCorrection(Delay delay) {
+		if(isBuildingTopology())
+			return;
+
 		doILSforMHMDelayCorrection(delay.getEntity());
 
         Edge edge = edgeMapper.get(delay.getEntity());
@@ -310,73 +831,179 @@ public class DNMSystem extends RootSystem {
 	}
 
     /**
+     * The network nodes of the hosts are indexed when their Host components are created, updated or destroyed. The
+     * interfaces of a host are however not components: an interface added with NetworkingSystem.addInterface does not
+     * update the Host component. A node missing from the index is hence looked up in the hosts of its network (as
+     * done before the index) and its answer is indexed. This is done once per node, as addInterface creates a new
+     * node for each interface: a node that was not an interface of a host when first looked up only becomes one if
+     * its Host component is then updated.
      * @param node a given node
      * @return true if the node corresponds to a host (that can send traffic)
      */
     private boolean isHost(Node node) {
-        NetworkNode networkNode = null;
-        ToNetwork toNetwork = toNetworkMapper.get(node.getEntity());
-        networkNode = networkNodeMapper.get(toNetwork.getNetworkEntity());
-
-        Collection<Host> hosts = networkNode.getNetwork().getHosts();
-        for(Host host : hosts)
-            for(NetworkInterface ifc : host.getInterfaces())
-                if(host.getNetworkNode(ifc) == networkNode)
+        Entity networkNodeEntity = toNetworkMapper.getOptimistic(node.getEntity()).getNetworkEntity();
+        if(hostNodes.containsKey(networkNodeEntity))
+            return true;
+        if(nonHostNodes.contains(networkNodeEntity))
+            return false;
+
+        NetworkNode networkNode = networkNodeMapper.getOptimistic(networkNodeEntity);
+        for(Host host : networkNode.getNetwork().getHosts()) {
+            // Destroyed hosts are skipped.
+            if(!hostMapper.isIn(host.getEntity()))
+                continue;
+            for(NetworkInterface ifc : host.getInterfaces()) {
+                if(host.getNetworkNode(ifc) == networkNode) {
+                    updateHostIndex(host, true);
                     return true;
+                }
+            }
+        }
 
+        nonHostNodes.add(networkNodeEntity);
         return false;
     }
 
+    /**
+     * Indexes the network nodes of a new host.
+     * @param host the new host.
+     */
+    @ComponentStateIs(State = ComponentStatus.New)
+    public void indexHost(Host host) {
+        updateHostIndex(host, true);
+    }
+
+    /**
+     * Re-indexes the network nodes of a host, e.g., when an interface is added.
+     * @param host the updated host.
+     */
+    @ComponentStateIs(State = ComponentStatus.Updated)
+    public void reindexHost(Host host) {
+        updateHostIndex(host, true);
+    }
+
+    /**
+     * Removes the network nodes of a host from the index.
+     * @param host the destroyed host.
+     */
+    @ComponentStateIs(State = ComponentStatus.Destroyed)
+    public void unindexHost(Host host) {
+        updateHostIndex(host, false);
+    }
+
+    /**
+     * Replaces the network nodes of a host in the host index.
+     * @param host the host.
+     * @param present false if the host was removed.
+     */
+    private synchronized void updateHostIndex(Host host, boolean present) {
+        Set<Entity> oldNodes = nodesOfHosts.remove(host);
+        if(oldNodes != null)
+            for(Entity oldNode : oldNodes)
+                hostNodes.computeIfPresent(oldNode, (node, count) -> count == 1 ? null : count - 1);
+        if(!present)
+            return;
+
+        Set<Entity> newNodes = new HashSet<>();
+        for(NetworkInterface ifc : host.getInterfaces()) {
+            NetworkNode networkNode = host.getNetworkNode(ifc);
+            if(networkNode != null)
+                newNodes.add(networkNode.getEntity());
+        }
+        for(Entity newNode : newNodes) {
+            hostNodes.merge(newNode, 1, Integer::sum);
+            nonHostNodes.remove(newNode);
+        }
+        nodesOfHosts.put(host, newNodes);
+    }
+
     /**
      * Helper method correcting the delay of a single edge.
      * @param edgeEntity Entity of the edge.
      */
 	private void doILSforMHMDelayCorrection(Entity edgeEntity) {
-		if(!modelingConfigMapper.isIn(edgeMapper.get(edgeEntity).getSource().getGraph().getEntity())) {
+		setILSCorrectedDelay(edgeEntity, getILSCorrectedDelay(edgeEntity));
+	}
+
+    /**
+     * Computes the ILS corrected delay of a single edge. Only reads components, so that it can be called in parallel
+     * for different edges.
+     * @param edgeEntity Entity of the edge.
+     * @return The corrected delay, null if no correction applies to this edge.
+     */
+	private Num getILSCorrectedDelay(Entity edgeEntity) {
+		return getILSCorrectedDelay(edgeEntity, null);
+	}
+
+    /**
+     * Computes the ILS corrected delay of a single edge for a given queue model.
+     * @param edgeEntity Entity of the edge.
+     * @param queueModel queue model of the edge, null to use its current one.
+     * @return The corrected delay, null if no correction applies to this edge.
+     */
+	private Num getILSCorrectedDelay(Entity edgeEntity, MHMQueueModel queueModel) {
+		if(!modelingConfigMapper.isIn(edgeMapper.getOptimistic(edgeEntity).getSource().getGraph().getEntity())) {
 			// it was called on the link-level graph, we skip!
-			return;
+			return null;
 		}
 
-        DetServConfig modelingConfig = getModelingConfig(edgeMapper.get(edgeEntity).getSource().getGraph().getEntity());
+        DetServConfig modelingConfig = modelingConfigMapper.getOptimistic(edgeMapper.getOptimistic(edgeEntity).getSource().getGraph().getEntity());
 
         // Only for MHM with ILS
         if(modelingConfig.getAcModel() != ACModel.MHM || !modelingConfig.isInputLinkShaping())
-            return;
+            return null;
 
         //if(!this.queueModelMapper.isIn(edgeEntity) || !this.delayMapper.isIn(edgeEntity) || !this.edgeMapper.isIn(edgeEntity))
         //    return;
 
-        if(isHost(edgeMapper.get(edgeEntity).getSource())) {
+        if(isHost(edgeMapper.getOptimistic(edgeEntity).getSource())) {
             logger.debug("No input link shaping because the edge is coming out of a host!");
-            return;
+            return null;
         }
 
-        logger.debug("Doing delay correction for " + edgeMapper.get(edgeEntity));
+        logger.debug("Doing delay correction for " + edgeMapper.getOptimistic(edgeEntity));
 
-        Delay delayToReduce = this.delayMapper.get(edgeEntity);
-        Edge physicalEdge = edgeMapper.get(queueMapper.get(edgeEntity).getScheduler().getEntity());
+        if(queueModel == null)
+            queueModel = MHMQueueModelMapper.getOptimistic(edgeEntity);
+
+        Edge physicalEdge = edgeMapper.getOptimistic(queueMapper.getOptimistic(edgeEntity).getScheduler().getEntity());
         double sumR = 0;
         double sumB = 0;
         // Computing the sum of maximum input arrival curves (Eqn 33 in DetServ)
         for(Edge incoming : physicalEdge.getSource().getIncomingConnections()) {
-            sumR += rateMapper.get(incoming.getEntity()).getRate();
+            sumR += rateMapper.getOptimistic(incoming.getEntity()).getRate();
             sumB += modelingConfig.getMaximumPacketSize();
         }
 
-        ArrivalCurve allocatedCurve = MHMQueueModelMapper.get(edgeEntity).getMaximumTokenBucket();
-        ServiceCurve serviceCurve = MHMQueueModelMapper.get(edgeEntity).getServiceCurve();
+        ArrivalCurve allocatedCurve = queueModel.getMaximumTokenBucket();
+        ServiceCurve serviceCurve = queueModel.getServiceCurve();
         ArrivalCurve shapedCurve = CurvePwAffine.min(CurvePwAffine.getFactory().createTokenBucket(sumR, sumB), allocatedCurve);
 
         logger.debug("Maximum curve: r=" + allocatedCurve.getUltAffineRate() + ", b=" + allocatedCurve.getBurst());
         logger.debug("Shaping curve: r=" + sumR + ", b=" + sumB);
         logger.debug("Service curve: T=" + serviceCurve);
 
-        Num newDelay = Bound.delayFIFO(shapedCurve, serviceCurve);
+        return Bound.delayFIFO(shapedCurve, serviceCurve);
+	}
+
+    /**
+     * Replaces the delay of a single edge by its ILS corrected delay.
+     * @param edgeEntity Entity of the edge.
+     * @param newDelay the corrected delay, null if no correction applies to this edge.
+     */
+	private void setILSCorrectedDelay(Entity edgeEntity, Num newDelay) {
+		if(newDelay == null)
+			return;
+
+        Delay delayToReduce = this.delayMapper.get(edgeEntity);
 
         // We always replace because maybe we are replacing a lower value that was computed earlier when there
         // was less input links!
         if(newDelay.doubleValue() != delayToReduce.getDelay()) {
             logger.debug("New delay " + newDelay + " replaces " + delayToReduce.getDelay() );
+            DNMMetrics currentMetrics = metrics;
+            if(currentMetrics != null)
+                currentMetrics.recordILSCorrection();
             this.delayMapper.updateComponent(delayToReduce, () -> delayToReduce.setDelay(newDelay.doubleValue()));
         }
         else {
@@ -388,25 +1015,7 @@ public class DNMSystem extends RootSystem {
 	protected JSONObject toJSONObject(Component component) {
 		JSONObject result = super.toJSONObject(component);
 		if(component instanceof PerInEdgeTokenBucketUtilization) {
-			DetServConfig modelingConfig = getModelingConfig(edgeMapper.get(component.getEntity()).getSource().getGraph().getEntity());
-
-            ArrivalCurve aggregatedArrivalCurve = CurvePwAffine.getFactory().createTokenBucket(0, 0);
-            for(Map.Entry<Edge, Pair<Num>> entry : ((PerInEdgeTokenBucketUtilization) component).getTokenBuckets()) {
-                ArrivalCurve curve;
-                // No shaping if input edge is current one
-                if(entry.getKey() == linkMapper.getOptimistic(toNetworkMapper.getOptimistic(component.getEntity()).getNetworkEntity()).getLinkEdge()) {
-                    curve = CurvePwAffine.getFactory().createTokenBucket(entry.getValue().getFirst(), entry.getValue().getSecond());
-                }
-                else {
-                    double rate = rateMapper.get(entry.getKey().getEntity()).getRate();
-                    curve = CurvePwAffine.min(
-                            CurvePwAffine.getFactory().createTokenBucket(entry.getValue().getFirst(), entry.getValue().getSecond()),
-                            CurvePwAffine.getFactory().createTokenBucket(rate, modelingConfig.getMaximumPacketSize())
-                    );
-                }
-
-                aggregatedArrivalCurve = CurvePwAffine.add(aggregatedArrivalCurve, curve);
-            }
+            ArrivalCurve aggregatedArrivalCurve = ((PerInEdgeTokenBucketUtilization) component).getAggregateArrivalCurve();
 
 			JSONObject curveJSON = DiscoCurveToJSON.get(aggregatedArrivalCurve);
 			curveJSON.getJSONObject("plotting").put("name", "Aggregated Shaped Arrival Curve");
@@ -426,25 +1035,7 @@ public class DNMSystem extends RootSystem {
 		if(inputModelMapper.isIn(entity)) {
 			PerInEdgeTokenBucketUtilization perInEdgeTokenBucketUtilization = inputModelMapper.get(entity);
 
-			DetServConfig modelingConfig = getModelingConfig(edgeMapper.get(entity).getSource().getGraph().getEntity());
-
-			usageCurve = CurvePwAffine.getFactory().createTokenBucket(0, 0);
-			for(Map.Entry<Edge, Pair<Num>> entry : perInEdgeTokenBucketUtilization.getTokenBuckets()) {
-                ArrivalCurve curve;
-                // No shaping if input edge is current one
-			    if(entry.getKey() == linkMapper.getOptimistic(toNetworkMapper.getOptimistic(entity).getNetworkEntity()).getLinkEdge()) {
-                    curve = CurvePwAffine.getFactory().createTokenBucket(entry.getValue().getFirst(), entry.getValue().getSecond());
-                }
-                else {
-                    double rate = rateMapper.get(entry.getKey().getEntity()).getRate();
-                    curve = CurvePwAffine.min(
-                            CurvePwAffine.getFactory().createTokenBucket(entry.getValue().getFirst(), entry.getValue().getSecond()),
-                            CurvePwAffine.getFactory().createTokenBucket(rate, modelingConfig.getMaximumPacketSize())
-                    );
-                }
-
-				usageCurve = CurvePwAffine.add(usageCurve, curve);
-			}
+			usageCurve = perInEdgeTokenBucketUtilization.getAggregateArrivalCurve();
 		}
 
 		if(singleTokenBucketMapper.isIn(entity))
@@ -19,6 +19,11 @@ import de.uni_kl.cs.discodnc.numbers.Num;
  * service curve in a rate-latency curve depending on which slope of the
  * curve is used for the rate-latency one.
  *
+ * For a rate-latency service curve and a token bucket arrival curve, the
+ * residual service curve is itself a rate-latency curve, so that all the
+ * modes give the same result. In this case, the rate-latency modes directly
+ * use the closed-form result instead of the general DiscoDNC computation.
+ *
  * @author Amaury Van Bemten
  * @author Jochen Guck
  */
@@ -29,6 +34,10 @@ public enum ResidualMode {
     LEAST_LATENCY {
         @Override
         public ServiceCurve getResidualServiceCurve(ServiceCurve sc, ArrivalCurve ac) {
+            ServiceCurve closedFormCurve = getClosedFormResidualServiceCurve(sc, ac);
+            if(closedFormCurve != null)
+                return closedFormCurve;
+
             ServiceCurve realCurve = Bound.leftOverServiceARB(sc, ac);
             if(realCurve.getSegmentCount() == 1 && realCurve.getSegment(0).getX().eq(0)
                     && realCurve.getSegment(0).getY().eq(0)
@@ -49,6 +58,10 @@ public enum ResidualMode {
     HIGHEST_SLOPE {
         @Override
         public ServiceCurve getResidualServiceCurve(ServiceCurve sc, ArrivalCurve ac) {
+            ServiceCurve closedFormCurve = getClosedFormResidualServiceCurve(sc, ac);
+            if(closedFormCurve != null)
+                return closedFormCurve;
+
             ServiceCurve realCurve = Bound.leftOverServiceARB(sc, ac);
             if(realCurve.getSegmentCount() == 1 && realCurve.getSegment(0).getX().eq(0)
                     && realCurve.getSegment(0).getY().eq(0)
@@ -83,4 +96,21 @@ public enum ResidualMode {
 
     public abstract ServiceCurve getResidualServiceCurve(ServiceCurve sc, ArrivalCurve ac);
 
+    /**
+     * @param sc service curve.
+     * @param ac arrival curve.
+     * @return The residual rate-latency curve computed in closed form, null if the service curve is not a
+     *         rate-latency curve or if the arrival curve is not a token bucket.
+     */
+    private static ServiceCurve getClosedFormResidualServiceCurve(ServiceCurve sc, ArrivalCurve ac) {
+        if(!sc.isRateLatency() || !ac.isTokenBucket())
+            return null;
+
+        double r = ac.getUltAffineRate().doubleValue();
+        double b = ac.getBurst().doubleValue();
+        double R = sc.getUltAffineRate().doubleValue();
+        double T = sc.getLatency().doubleValue();
+        return CurvePwAffine.getFactory().createRateLatency(ClosedFormBounds.leftOverRate(r, b, R, T), ClosedFormBounds.leftOverLatency(r, b, R, T));
+    }
+
 }
\ No newline at end of file
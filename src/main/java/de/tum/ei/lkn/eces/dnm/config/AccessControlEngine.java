@@ -0,0 +1,25 @@
+package de.tum.ei.lkn.eces.dnm.config;
+
+/**
+ * The different ways of evaluating the TBM access control checks.
+ *
+ * The closed-form engine only works on primitive doubles and is used whenever the curves involved are token buckets
+ * (arrival curves) and rate-latency curves (service curves), that is, for TBM without input link shaping. In any other
+ * case, it falls back to the DiscoDNC engine.
+ *
+ * Both engines give the same accept/reject decisions: the closed-form engine evaluates T + b/R, b + rT and
+ * (b + RT)/(R - r) on doubles while DiscoDNC evaluates the same bounds with its curve operations on Num. As the two
+ * results may differ in the last bits, a check in which a bound is within a relative 1e-12 of its delay or backlog
+ * limit is decided by DiscoDNC (see ClosedFormBoundsTest).
+ *
+ * The slack engine additionally keeps, for each queue, the additional token bucket that can be added without violating
+ * any bound (see queuemodels.SlackTable). Most routing-time checks are then decided with a few comparisons, the other
+ * ones are done by the closed-form engine.
+ *
+ * @author Amaury Van Bemten
+ */
+public enum AccessControlEngine {
+	DISCO_DNC, // general curve arithmetic of DiscoDNC
+	CLOSED_FORM, // closed-form delay, backlog and residual rate-latency on primitive doubles
+	SLACK // precomputed slack of the queues, falling back to the closed-form engine
+}
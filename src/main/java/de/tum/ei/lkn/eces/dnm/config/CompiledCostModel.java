@@ -0,0 +1,314 @@
+package de.tum.ei.lkn.eces.dnm.config;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A cost model tree (already initialized) flattened into a list of instructions.
+ *
+ * Each instruction writes its result in its own register (its index) and only reads registers of previous
+ * instructions, so that a cost is computed by a single loop over the instructions, without recursion. Subtrees that
+ * do not depend on the edge (see CostModel.isConstant) are folded into a constant. Subtrees whose value only depends
+ * on the edge (see CostModel.isStatic, e.g., QueuePriority, NumberOfQueues or LinkRate) are computed once per edge
+ * and stored in a dense array indexed by the ID of the Entity of the edge (as in the CostValueTable). This array belongs
+ * to a holder of a given version of the static values of the CostValueTable (if any): when the version changes, a new
+ * holder replaces the old one with a single volatile write, so that values computed for an old version are never seen
+ * with a newer one. The remaining leaves are called as usual.
+ *
+ * @author Amaury Van Bemten
+ */
+public class CompiledCostModel extends CostModel {
+	private static final int INITIAL_CAPACITY = 64;
+
+	// Opcodes.
+	static final byte CONSTANT = 0;
+	static final byte STATIC = 1;
+	static final byte CALL = 2;
+	static final byte ADD = 3;
+	static final byte SUBTRACT = 4;
+	static final byte MULTIPLY = 5;
+	static final byte DIVIDE = 6;
+	static final byte LOWER_LIMIT = 7;
+	static final byte UPPER_LIMIT = 8;
+
+	// Source tree.
+	private final CostModel costModel;
+
+	// Instructions: opcode, operands (registers or indices) and constant value.
+	private final byte[] opcodes;
+	private final int[] operands1;
+	private final int[] operands2;
+	private final double[] values;
+
+	// Leaves called at each evaluation and static subtrees computed once per edge.
+	private final CostModel[] calledLeaves;
+	private final CostModel[] staticSubtrees;
+	private volatile StaticValues staticValues = new StaticValues(0, INITIAL_CAPACITY);
+
+	// Table of precomputed values (null if none).
+	private volatile CostValueTable costValueTable = null;
+
+	// Registers of each thread.
+	private final ThreadLocal<double[]> registers;
+
+	private CompiledCostModel(CostModel costModel, Compiler compiler) {
+		this.costModel = costModel;
+		int length = compiler.opcodes.size();
+		this.opcodes = new byte[length];
+		this.operands1 = new int[length];
+		this.operands2 = new int[length];
+		this.values = new double[length];
+		for(int i = 0; i < length; i++) {
+			opcodes[i] = compiler.opcodes.get(i);
+			operands1[i] = compiler.operands1.get(i);
+			operands2[i] = compiler.operands2.get(i);
+			values[i] = compiler.values.get(i);
+		}
+		this.calledLeaves = compiler.calledLeaves.toArray(new CostModel[0]);
+		this.staticSubtrees = compiler.staticSubtrees.toArray(new CostModel[0]);
+		this.registers = ThreadLocal.withInitial(() -> new double[length]);
+	}
+
+	/**
+	 * Compiles an initialized cost model.
+	 * @param costModel the cost model (already initialized with init).
+	 * @return The compiled cost model.
+	 */
+	public static CompiledCostModel compile(CostModel costModel) {
+		if(costModel instanceof CompiledCostModel)
+			return (CompiledCostModel) costModel;
+
+		Compiler compiler = new Compiler();
+		compiler.emit(costModel);
+		return new CompiledCostModel(costModel, compiler);
+	}
+
+	/**
+	 * @return The source cost model.
+	 */
+	public CostModel getCostModel() {
+		return costModel;
+	}
+
+	/**
+	 * @return The number of instructions.
+	 */
+	public int getNumberOfInstructions() {
+		return opcodes.length;
+	}
+
+	@Override
+	public CostModel init(Controller controller) {
+		return compile(costModel.init(controller));
+	}
+
+	@Override
+	public double getCost(Iterable<Edge> iterable, Edge edge, double[] parameters, Request request, boolean isFroward) {
+		double[] r = registers.get();
+		double[] edgeStaticValues = staticSubtrees.length == 0 ? null : getStaticValues(edge);
+		for(int i = 0; i < opcodes.length; i++) {
+			switch(opcodes[i]) {
+				case CONSTANT:
+					r[i] = values[i];
+					break;
+				case STATIC:
+					r[i] = edgeStaticValues[operands1[i]];
+					break;
+				case CALL:
+					r[i] = calledLeaves[operands1[i]].getCost(iterable, edge, parameters, request, isFroward);
+					break;
+				case ADD:
+					r[i] = r[operands1[i]] + r[operands2[i]];
+					break;
+				case SUBTRACT:
+					r[i] = r[operands1[i]] - r[operands2[i]];
+					break;
+				case MULTIPLY:
+					r[i] = r[operands1[i]] * r[operands2[i]];
+					break;
+				case DIVIDE:
+					r[i] = r[operands1[i]] / r[operands2[i]];
+					break;
+				case LOWER_LIMIT:
+					r[i] = Math.max(values[i], r[operands1[i]]);
+					break;
+				case UPPER_LIMIT:
+					r[i] = Math.min(values[i], r[operands1[i]]);
+					break;
+				default:
+					throw new IllegalStateException("Unknown opcode " + opcodes[i]);
+			}
+		}
+		return r[opcodes.length - 1];
+	}
+
+	/**
+	 * @param edge an edge.
+	 * @return The values of the static subtrees for this edge.
+	 */
+	private double[] getStaticValues(Edge edge) {
+		StaticValues currentStaticValues = staticValues;
+		int index = (int) edge.getEntity().getId();
+
+		// Topology changed: the static values are recomputed.
+		CostValueTable currentCostValueTable = costValueTable;
+		if(currentCostValueTable != null && currentCostValueTable.getVersion() != currentStaticValues.version) {
+			currentStaticValues = new StaticValues(currentCostValueTable.getVersion(), Math.max(index + 1, currentStaticValues.values.length()));
+			staticValues = currentStaticValues;
+		}
+		else if(index >= currentStaticValues.values.length()) {
+			currentStaticValues = currentStaticValues.grow(index + 1);
+			staticValues = currentStaticValues;
+		}
+
+		double[] result = currentStaticValues.values.get(index);
+		if(result == null) {
+			result = new double[staticSubtrees.length];
+			for(int i = 0; i < staticSubtrees.length; i++)
+				result[i] = staticSubtrees[i].getCost(null, edge, null, null, true);
+			currentStaticValues.values.set(index, result);
+		}
+		return result;
+	}
+
+	@Override
+	public double minCostValue() {
+		return costModel.minCostValue();
+	}
+
+	@Override
+	public double maxCostValue() {
+		return costModel.maxCostValue();
+	}
+
+	@Override
+	public boolean containsCostModel(Class clazz) {
+		return super.containsCostModel(clazz) || costModel.containsCostModel(clazz);
+	}
+
+	@Override
+	public void setCostValueTable(CostValueTable costValueTable) {
+		this.costValueTable = costValueTable;
+		staticValues = new StaticValues(costValueTable == null ? 0 : costValueTable.getVersion(), INITIAL_CAPACITY);
+		costModel.setCostValueTable(costValueTable);
+	}
+
+	@Override
+	public boolean isConstant() {
+		return costModel.isConstant();
+	}
+
+	@Override
+	public boolean isStatic() {
+		return costModel.isStatic();
+	}
+
+	@Override
+	public String toString() {
+		return costModel.toString();
+	}
+
+	/**
+	 * Values of the static subtrees for a given version of the static values of the CostValueTable, indexed by the ID
+	 * of the Entity of the edge (null if not computed yet). Values computed concurrently with a growth or a version
+	 * change might be lost: they are then simply recomputed.
+	 */
+	private static class StaticValues {
+		private final long version;
+		private final AtomicReferenceArray<double[]> values;
+
+		private StaticValues(long version, int capacity) {
+			this.version = version;
+			this.values = new AtomicReferenceArray<>(capacity);
+		}
+
+		/**
+		 * @param capacity minimum capacity.
+		 * @return A copy, of the same version, large enough for the given capacity.
+		 */
+		private StaticValues grow(int capacity) {
+			StaticValues result = new StaticValues(version, Math.max(capacity, 2 * values.length()));
+			for(int i = 0; i < values.length(); i++)
+				result.values.set(i, values.get(i));
+			return result;
+		}
+	}
+
+	/**
+	 * Emits the instructions of a cost model tree (see CostModel.compile).
+	 */
+	public static class Compiler {
+		private final List<Byte> opcodes = new ArrayList<>();
+		private final List<Integer> operands1 = new ArrayList<>();
+		private final List<Integer> operands2 = new ArrayList<>();
+		private final List<Double> values = new ArrayList<>();
+		private final List<CostModel> calledLeaves = new ArrayList<>();
+		private final List<CostModel> staticSubtrees = new ArrayList<>();
+
+		private Compiler() {
+		}
+
+		/**
+		 * Emits the instructions of a subtree.
+		 * @param costModel the subtree.
+		 * @return The register holding the result of the subtree.
+		 */
+		public int emit(CostModel costModel) {
+			if(costModel.isConstant())
+				return emit(CONSTANT, 0, 0, costModel.getCost(null, null, null, null, true));
+			if(costModel.isStatic()) {
+				staticSubtrees.add(costModel);
+				return emit(STATIC, staticSubtrees.size() - 1, 0, 0);
+			}
+			return costModel.compile(this);
+		}
+
+		/**
+		 * Emits a call to a leaf, evaluated as usual.
+		 * @param costModel the leaf.
+		 * @return The register holding the result.
+		 */
+		public int emitCall(CostModel costModel) {
+			calledLeaves.add(costModel);
+			return emit(CALL, calledLeaves.size() - 1, 0, 0);
+		}
+
+		public int emitAdd(int register1, int register2) {
+			return emit(ADD, register1, register2, 0);
+		}
+
+		public int emitSubtract(int register1, int register2) {
+			return emit(SUBTRACT, register1, register2, 0);
+		}
+
+		public int emitMultiply(int register1, int register2) {
+			return emit(MULTIPLY, register1, register2, 0);
+		}
+
+		public int emitDivide(int register1, int register2) {
+			return emit(DIVIDE, register1, register2, 0);
+		}
+
+		public int emitLowerLimit(int register, double limit) {
+			return emit(LOWER_LIMIT, register, 0, limit);
+		}
+
+		public int emitUpperLimit(int register, double limit) {
+			return emit(UPPER_LIMIT, register, 0, limit);
+		}
+
+		private int emit(byte opcode, int operand1, int operand2, double value) {
+			opcodes.add(opcode);
+			operands1.add(operand1);
+			operands2.add(operand2);
+			values.add(value);
+			return opcodes.size() - 1;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package de.tum.ei.lkn.eces.dnm.config;
 
 import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.routing.requests.Request;
 
@@ -27,6 +28,39 @@ public abstract class CostModel {
 		return this.getClass().equals(clazz);
 	}
 
+	/**
+	 * @return Whether the cost neither depends on the edge nor on the state of the network (e.g., a constant).
+	 */
+	public boolean isConstant() {
+		return false;
+	}
+
+	/**
+	 * @return Whether the cost of an edge only depends on the edge and on the topology, i.e., never changes once the
+	 * cost model is initialized.
+	 */
+	public boolean isStatic() {
+		return isConstant();
+	}
+
+	/**
+	 * Gives the table of precomputed values and flow counters to the cost model (and its sub-functions), which uses it
+	 * instead of looking the values up in the components when possible.
+	 * @param costValueTable the table.
+	 */
+	public void setCostValueTable(CostValueTable costValueTable) {
+	}
+
+	/**
+	 * Emits the instructions computing this cost model (see CompiledCostModel). By default, the cost model is called
+	 * as a leaf.
+	 * @param compiler the compiler.
+	 * @return The register holding the result.
+	 */
+	public int compile(CompiledCostModel.Compiler compiler) {
+		return compiler.emitCall(this);
+	}
+
 	@Override
 	public String toString() {
 		return this.getClass().getSimpleName();
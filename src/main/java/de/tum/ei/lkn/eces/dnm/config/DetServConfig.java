@@ -5,9 +5,17 @@ import de.tum.ei.lkn.eces.core.Controller;
 import de.tum.ei.lkn.eces.core.annotations.ComponentBelongsTo;
 import de.tum.ei.lkn.eces.dnm.DNMSystem;
 import de.tum.ei.lkn.eces.dnm.ResidualMode;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
+import de.tum.ei.lkn.eces.dnm.inputmodels.UtilizationStore;
+import de.tum.ei.lkn.eces.dnm.queuemodels.QueueEdgeTable;
+import de.tum.ei.lkn.eces.dnm.queuemodels.SlackTable;
 import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.SelectResourceAllocation;
+import de.tum.ei.lkn.eces.network.Scheduler;
 import org.json.JSONObject;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Description of the Modeling configuration (network model, resource allocation, etc.) for the DetServ [1] and
  * Chameleon [2] models.
@@ -33,6 +41,18 @@ public class DetServConfig extends Component {
     private final SelectResourceAllocation selectResourceAllocation;
     private final double minPerHopDelay;
     private final double maximumPacketSize;
+    private final AccessControlEngine accessControlEngine;
+    private final UtilizationBackend utilizationBackend;
+    // Store of the utilizations (null for the heap backend).
+    private final UtilizationStore utilizationStore;
+    // Static routing values of the queue edges (maintained by the DNMSystem).
+    private final QueueEdgeTable queueEdgeTable = new QueueEdgeTable();
+    // Precomputed cost values and flow counters (maintained by the DNMSystem and the DetServProxy).
+    private final CostValueTable costValueTable = new CostValueTable();
+    // Slack of the queues (maintained by the DNMSystem for the SLACK access control engine).
+    private final SlackTable slackTable = new SlackTable();
+    // Schedulers whose lower priority service curves are out of date in a coalescing scope (maintained by the DNMSystem).
+    private final Set<Scheduler> dirtySchedulers = ConcurrentHashMap.newKeySet();
 
     public DetServConfig(ACModel acModel, ResidualMode residualMode, BurstIncreaseModel burstIncrease, boolean inputLinkShaping, CostModel costModel, SelectResourceAllocation selectResourceAllocation) {
         this(acModel, residualMode, burstIncrease, inputLinkShaping, costModel, selectResourceAllocation, 1530, 0.000001);
@@ -43,6 +63,14 @@ public class DetServConfig extends Component {
 	}
 
 	public DetServConfig(ACModel acModel, ResidualMode residualMode, BurstIncreaseModel burstIncrease, boolean inputLinkShaping, CostModel costModel, SelectResourceAllocation selectResourceAllocation, double maximumPacketSize, double minPerHopDelay) {
+		this(acModel, residualMode, burstIncrease, inputLinkShaping, costModel, selectResourceAllocation, maximumPacketSize, minPerHopDelay, AccessControlEngine.DISCO_DNC);
+	}
+
+	public DetServConfig(ACModel acModel, ResidualMode residualMode, BurstIncreaseModel burstIncrease, boolean inputLinkShaping, CostModel costModel, SelectResourceAllocation selectResourceAllocation, double maximumPacketSize, double minPerHopDelay, AccessControlEngine accessControlEngine) {
+		this(acModel, residualMode, burstIncrease, inputLinkShaping, costModel, selectResourceAllocation, maximumPacketSize, minPerHopDelay, accessControlEngine, UtilizationBackend.HEAP);
+	}
+
+	public DetServConfig(ACModel acModel, ResidualMode residualMode, BurstIncreaseModel burstIncrease, boolean inputLinkShaping, CostModel costModel, SelectResourceAllocation selectResourceAllocation, double maximumPacketSize, double minPerHopDelay, AccessControlEngine accessControlEngine, UtilizationBackend utilizationBackend) {
 		this.acModel = acModel;
 		this.residualMode = residualMode;
 		this.burstIncrease = burstIncrease;
@@ -51,10 +79,19 @@ public class DetServConfig extends Component {
 		this.selectResourceAllocation = selectResourceAllocation;
 		this.minPerHopDelay = minPerHopDelay;
 		this.maximumPacketSize = maximumPacketSize;
+		this.accessControlEngine = accessControlEngine;
+		this.utilizationBackend = utilizationBackend;
+		this.utilizationStore = utilizationBackend == UtilizationBackend.HEAP ? null : new UtilizationStore(utilizationBackend == UtilizationBackend.OFF_HEAP);
 	}
 
+	/**
+	 * Initializes the cost model with the controller, compiles it (see CompiledCostModel) and gives it the table of
+	 * precomputed values and flow counters.
+	 * @param controller the controller.
+	 */
 	public void initCostModel(Controller controller) {
-        costModel = costModel.init(controller);
+        costModel = CompiledCostModel.compile(costModel.init(controller));
+        costModel.setCostValueTable(costValueTable);
     }
 
 	@Override
@@ -68,6 +105,8 @@ public class DetServConfig extends Component {
                 ", selectResAlloc=" + selectResourceAllocation +
                 ", maximumPacketSize=" + maximumPacketSize +
                 ", minPerHopDelay=" + minPerHopDelay +
+                ", accessControlEngine=" + accessControlEngine +
+                ", utilizationBackend=" + utilizationBackend +
                 '}';
 	}
 
@@ -103,6 +142,34 @@ public class DetServConfig extends Component {
         return maximumPacketSize;
     }
 
+    public AccessControlEngine getAccessControlEngine() {
+        return accessControlEngine;
+    }
+
+    public UtilizationBackend getUtilizationBackend() {
+        return utilizationBackend;
+    }
+
+    public UtilizationStore getUtilizationStore() {
+        return utilizationStore;
+    }
+
+    public QueueEdgeTable getQueueEdgeTable() {
+        return queueEdgeTable;
+    }
+
+    public CostValueTable getCostValueTable() {
+        return costValueTable;
+    }
+
+    public SlackTable getSlackTable() {
+        return slackTable;
+    }
+
+    public Set<Scheduler> getDirtySchedulers() {
+        return dirtySchedulers;
+    }
+
     public JSONObject toJSONObject() {
         JSONObject result = new JSONObject();
         result.put("AC Model", acModel);
@@ -113,6 +180,8 @@ public class DetServConfig extends Component {
         result.put("Resource Allocation", selectResourceAllocation);
         result.put("Maximum Packet Size", maximumPacketSize);
         result.put("Minimum Per-Hop Delay", minPerHopDelay);
+        result.put("Access Control Engine", accessControlEngine);
+        result.put("Utilization Backend", utilizationBackend);
         return result;
     }
 }
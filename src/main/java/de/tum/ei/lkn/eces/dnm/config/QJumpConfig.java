@@ -3,11 +3,27 @@ package de.tum.ei.lkn.eces.dnm.config;
 import de.tum.ei.lkn.eces.core.Component;
 import de.tum.ei.lkn.eces.core.annotations.ComponentBelongsTo;
 import de.tum.ei.lkn.eces.dnm.DNMSystem;
+import de.tum.ei.lkn.eces.dnm.exceptions.DNMException;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.Arrays;
+
 /**
  * Description of the QJump configuration (nb of hosts, etc.) [1].
  *
+ * The configuration has one or more levels, each with a throughput factor f (1 for the base level, which has the highest
+ * priority). At level f, each of the n hosts can send f packets per network epoch (2nP/R + epsilon): the maximum rate is
+ * f times the one of the base level. The delay of the base level is the one of [1] (2nP/R + epsilon). The delay
+ * 2nPf/R + epsilon of [1] for another level does not account for the interference of the higher priority levels: the
+ * guaranteed delay of level i is instead the static priority bound of the n flows of levels 0 to i, each level j
+ * sending a burst of 2nPf_j at the aggregate rate nPf_j/(2nP/R + epsilon):
+ *
+ *   2nP(f_0 + ... + f_i) / (R - nP(f_0 + ... + f_(i-1))/(2nP/R + epsilon)) + epsilon
+ *
+ * It is infinite if the higher priority levels can use the whole link rate. Without levels, the configuration only has
+ * the base level (f = 1).
+ *
  * [1] Grosvenor, Matthew P., Malte Schwarzkopf, Ionel Gog, Robert NM Watson, Andrew W. Moore, Steven Hand, and Jon
  * Crowcroft. "Queues Don’t Matter When You Can JUMP Them!." In 12th USENIX Symposium on Networked Systems Design and
  * Implementation (NSDI 15), pp. 1-14. 2015.
@@ -20,12 +36,23 @@ public class QJumpConfig extends Component {
     private final double epsilon; // cumulative processing time
     private final int P; // packet size
     private final double R; // link rate
+    private final double[] throughputFactors; // throughput factor of each level, increasing
 
     public QJumpConfig(int n, double epsilon, int p, double r) {
+        this(n, epsilon, p, r, new double[]{1});
+    }
+
+    public QJumpConfig(int n, double epsilon, int p, double r, double[] throughputFactors) {
+        if(throughputFactors.length == 0)
+            throw new DNMException("A QJump configuration needs at least one level");
+        for(int i = 0; i < throughputFactors.length; i++)
+            if(throughputFactors[i] < 1 || (i > 0 && throughputFactors[i] <= throughputFactors[i - 1]))
+                throw new DNMException("The QJump throughput factors must be increasing and at least 1: " + Arrays.toString(throughputFactors));
         this.n = n;
         this.epsilon = epsilon;
         this.P = p;
         this.R = r;
+        this.throughputFactors = throughputFactors.clone();
     }
 
 	@Override
@@ -35,6 +62,7 @@ public class QJumpConfig extends Component {
 				", epsilon=" + epsilon +
 				", P=" + P +
 				", R=" + R +
+				", throughputFactors=" + Arrays.toString(throughputFactors) +
 				", rate=" + this.getMaximumRate() +
                 ", guarantee=" + this.getGuaranteedDelay() +
                 '}';
@@ -64,6 +92,39 @@ public class QJumpConfig extends Component {
         return 2*n*P/R + epsilon;
     }
 
+    public int getNumberOfLevels() {
+        return throughputFactors.length;
+    }
+
+    public double getThroughputFactor(int level) {
+        return throughputFactors[level];
+    }
+
+    /**
+     * @param level a level.
+     * @return The maximum rate of a flow at this level (f packets per network epoch).
+     */
+    public double getMaximumRate(int level) {
+        return throughputFactors[level] * P / (2*n*P/R + epsilon);
+    }
+
+    /**
+     * @param level a level.
+     * @return The guaranteed delay of this level, including the interference of the higher priority levels (see the
+     * class description), infinite if they can use the whole link rate. For the base level, this is
+     * getGuaranteedDelay().
+     */
+    public double getGuaranteedDelay(int level) {
+        double higherFactors = 0;
+        for(int higherLevel = 0; higherLevel < level; higherLevel++)
+            higherFactors += throughputFactors[higherLevel];
+
+        double residualRate = R - n*P*higherFactors/this.getGuaranteedDelay();
+        if(residualRate <= 0)
+            return Double.POSITIVE_INFINITY;
+        return 2*n*P*(higherFactors + throughputFactors[level])/residualRate + epsilon;
+    }
+
     public JSONObject toJSONObject() {
         JSONObject result = new JSONObject();
         result.put("n", this.getMaxNumberOfHosts());
@@ -72,6 +133,15 @@ public class QJumpConfig extends Component {
         result.put("R", this.getRate());
         result.put("maximum rate", this.getMaximumRate());
         result.put("guaranteed delay", this.getGuaranteedDelay());
+        JSONArray levels = new JSONArray();
+        for(int level = 0; level < throughputFactors.length; level++) {
+            JSONObject levelJSON = new JSONObject();
+            levelJSON.put("throughput factor", this.getThroughputFactor(level));
+            levelJSON.put("maximum rate", this.getMaximumRate(level));
+            levelJSON.put("guaranteed delay", this.getGuaranteedDelay(level));
+            levels.put(levelJSON);
+        }
+        result.put("levels", levels);
         return result;
     }
 }
@@ -0,0 +1,12 @@
+package de.tum.ei.lkn.eces.dnm.config;
+
+/**
+ * The different ways of storing the (rate, burst) token buckets of the utilization components.
+ *
+ * @author Amaury Van Bemten
+ */
+public enum UtilizationBackend {
+	HEAP, // Num objects held by each utilization component
+	COLUMNAR, // primitive arrays shared by all the utilization components of the network
+	OFF_HEAP // direct (off-heap) buffers shared by all the utilization components of the network
+}
@@ -0,0 +1,208 @@
+package de.tum.ei.lkn.eces.dnm.config.costmodels;
+
+import de.tum.ei.lkn.eces.core.Entity;
+
+import java.util.Arrays;
+
+/**
+ * Table of the values used by the cost values (see config.costmodels.values), stored in dense arrays indexed by the
+ * ID of the Entity of the queue edges.
+ *
+ * The static values of a queue (priority, number of queues of its scheduler and rate of its link) are written by the
+ * DNMSystem when resources are allocated to its scheduler and refreshed when the rate of the link changes. The number
+ * of flows at each queue and at each link are counters incremented/decremented by the DetServProxy when flows are
+ * registered/deregistered (and rebuilt by DNMSnapshot.restore and DNMJournal.replay), instead of being summed from the
+ * PathList components.
+ *
+ * Writers are synchronized. Readers are not: they see the value before or after a concurrent write.
+ *
+ * @author Amaury Van Bemten
+ */
+public class CostValueTable {
+	private static final int INITIAL_CAPACITY = 64;
+
+	// Per queue (NaN/-1 if unknown).
+	private volatile double[] queuePriorities = newDoubleArray(INITIAL_CAPACITY);
+	private volatile double[] numbersOfQueues = newDoubleArray(INITIAL_CAPACITY);
+	private volatile double[] linkRates = newDoubleArray(INITIAL_CAPACITY);
+	private volatile int[] linkSlots = newIntArray(INITIAL_CAPACITY);
+	private volatile int[] flowsAtQueues = new int[INITIAL_CAPACITY];
+
+	// Per link (slot: index of the link).
+	private volatile int[] flowsAtLinks = new int[INITIAL_CAPACITY];
+	private int numberOfLinks = 0;
+
+	// Incremented whenever a static value changes.
+	private volatile long version = 0;
+
+	/**
+	 * Stores the static values of a queue.
+	 * @param queueEntity Entity of the queue (edge).
+	 * @param priority priority of the queue in its scheduler (0 is the highest priority).
+	 * @param numberOfQueues number of queues of its scheduler.
+	 * @param linkRate rate of its link.
+	 * @param linkSlot index of its link, obtained with newLinkSlot and shared by all the queues of the scheduler.
+	 */
+	public synchronized void putQueue(Entity queueEntity, int priority, int numberOfQueues, double linkRate, int linkSlot) {
+		int index = getIndex(queueEntity);
+		ensureQueueCapacity(index);
+		queuePriorities[index] = priority;
+		numbersOfQueues[index] = numberOfQueues;
+		linkRates[index] = linkRate;
+		linkSlots[index] = linkSlot;
+		version++;
+	}
+
+	/**
+	 * @return A new link index (see putQueue).
+	 */
+	public synchronized int newLinkSlot() {
+		if(numberOfLinks == flowsAtLinks.length)
+			flowsAtLinks = Arrays.copyOf(flowsAtLinks, 2 * flowsAtLinks.length);
+		return numberOfLinks++;
+	}
+
+	/**
+	 * Updates the link rate of a queue already in the table.
+	 * @param queueEntity Entity of the queue (edge).
+	 * @param linkRate new rate of its link.
+	 */
+	public synchronized void setLinkRate(Entity queueEntity, double linkRate) {
+		int index = getIndex(queueEntity);
+		if(index < linkSlots.length && linkSlots[index] >= 0) {
+			linkRates[index] = linkRate;
+			version++;
+		}
+	}
+
+	/**
+	 * Updates the flow counters of a queue and of its link.
+	 * @param queueEntity Entity of the queue (edge).
+	 * @param delta number of flows added (negative if removed).
+	 */
+	public synchronized void addFlows(Entity queueEntity, int delta) {
+		int index = getIndex(queueEntity);
+		if(index >= linkSlots.length || linkSlots[index] < 0)
+			return;
+		flowsAtQueues[index] += delta;
+		flowsAtLinks[linkSlots[index]] += delta;
+	}
+
+	/**
+	 * Resets the flow counters of all the queues and links, e.g., before rebuilding them from restored flows.
+	 */
+	public synchronized void clearFlows() {
+		Arrays.fill(flowsAtQueues, 0);
+		Arrays.fill(flowsAtLinks, 0);
+	}
+
+	/**
+	 * @return A number changing whenever a static value changes, so that values derived from the static values can be
+	 * invalidated.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @param queueEntity Entity of a queue (edge).
+	 * @return Whether the queue is in the table.
+	 */
+	public boolean contains(Entity queueEntity) {
+		int index = getIndex(queueEntity);
+		int[] currentLinkSlots = linkSlots;
+		return index < currentLinkSlots.length && currentLinkSlots[index] >= 0;
+	}
+
+	/**
+	 * @param queueEntity Entity of a queue (edge).
+	 * @return The priority of the queue, NaN if unknown.
+	 */
+	public double getQueuePriority(Entity queueEntity) {
+		return get(queuePriorities, queueEntity);
+	}
+
+	/**
+	 * @param queueEntity Entity of a queue (edge).
+	 * @return The number of queues of the scheduler of the queue, NaN if unknown.
+	 */
+	public double getNumberOfQueues(Entity queueEntity) {
+		return get(numbersOfQueues, queueEntity);
+	}
+
+	/**
+	 * @param queueEntity Entity of a queue (edge).
+	 * @return The rate of the link of the queue, NaN if unknown.
+	 */
+	public double getLinkRate(Entity queueEntity) {
+		return get(linkRates, queueEntity);
+	}
+
+	/**
+	 * @param queueEntity Entity of a queue (edge).
+	 * @return The number of flows at the queue, -1 if unknown.
+	 */
+	public int getFlowsAtQueue(Entity queueEntity) {
+		int index = getIndex(queueEntity);
+		int[] currentFlowsAtQueues = flowsAtQueues;
+		if(!contains(queueEntity) || index >= currentFlowsAtQueues.length)
+			return -1;
+		return currentFlowsAtQueues[index];
+	}
+
+	/**
+	 * @param queueEntity Entity of a queue (edge).
+	 * @return The number of flows at the link of the queue, -1 if unknown.
+	 */
+	public int getFlowsAtLink(Entity queueEntity) {
+		int index = getIndex(queueEntity);
+		int[] currentLinkSlots = linkSlots;
+		if(index >= currentLinkSlots.length || currentLinkSlots[index] < 0)
+			return -1;
+		return flowsAtLinks[currentLinkSlots[index]];
+	}
+
+	private static int getIndex(Entity entity) {
+		return (int) entity.getId();
+	}
+
+	private static double get(double[] values, Entity queueEntity) {
+		int index = getIndex(queueEntity);
+		if(index >= values.length)
+			return Double.NaN;
+		return values[index];
+	}
+
+	private void ensureQueueCapacity(int index) {
+		if(index < linkSlots.length)
+			return;
+
+		int capacity = Math.max(index + 1, 2 * linkSlots.length);
+		queuePriorities = grow(queuePriorities, capacity);
+		numbersOfQueues = grow(numbersOfQueues, capacity);
+		linkRates = grow(linkRates, capacity);
+		flowsAtQueues = Arrays.copyOf(flowsAtQueues, capacity);
+		int[] newLinkSlots = newIntArray(capacity);
+		System.arraycopy(linkSlots, 0, newLinkSlots, 0, linkSlots.length);
+		// Written last: a queue is only seen as present once all its arrays are large enough.
+		linkSlots = newLinkSlots;
+	}
+
+	private static double[] grow(double[] values, int capacity) {
+		double[] result = newDoubleArray(capacity);
+		System.arraycopy(values, 0, result, 0, values.length);
+		return result;
+	}
+
+	private static double[] newDoubleArray(int capacity) {
+		double[] result = new double[capacity];
+		Arrays.fill(result, Double.NaN);
+		return result;
+	}
+
+	private static int[] newIntArray(int capacity) {
+		int[] result = new int[capacity];
+		Arrays.fill(result, -1);
+		return result;
+	}
+}
@@ -1,7 +1,9 @@
 package de.tum.ei.lkn.eces.dnm.config.costmodels.functions;
 
 import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.dnm.config.CompiledCostModel;
 import de.tum.ei.lkn.eces.dnm.config.CostModel;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.routing.requests.Request;
 
@@ -41,6 +43,27 @@ public class Minus extends CostModel {
 		return costModel1.maxCostValue() - costModel2.minCostValue();
 	}
 
+	@Override
+	public void setCostValueTable(CostValueTable costValueTable) {
+		costModel1.setCostValueTable(costValueTable);
+		costModel2.setCostValueTable(costValueTable);
+	}
+
+	@Override
+	public boolean isConstant() {
+		return costModel1.isConstant() && costModel2.isConstant();
+	}
+
+	@Override
+	public boolean isStatic() {
+		return costModel1.isStatic() && costModel2.isStatic();
+	}
+
+	@Override
+	public int compile(CompiledCostModel.Compiler compiler) {
+		return compiler.emitSubtract(compiler.emit(costModel1), compiler.emit(costModel2));
+	}
+
 	@Override
 	public boolean containsCostModel(Class clazz){
         return super.containsCostModel(clazz) || costModel1.containsCostModel(clazz) || costModel2.containsCostModel(clazz);
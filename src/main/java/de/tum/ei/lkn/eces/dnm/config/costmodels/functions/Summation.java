@@ -1,7 +1,9 @@
 package de.tum.ei.lkn.eces.dnm.config.costmodels.functions;
 
 import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.dnm.config.CompiledCostModel;
 import de.tum.ei.lkn.eces.dnm.config.CostModel;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.routing.requests.Request;
 
@@ -57,6 +59,38 @@ public class Summation extends CostModel {
 			sum += costModel.maxCostValue();
 		return sum;
 	}
+
+	@Override
+	public void setCostValueTable(CostValueTable costValueTable) {
+		for(CostModel costModel : costModels)
+			costModel.setCostValueTable(costValueTable);
+	}
+
+	@Override
+	public boolean isConstant() {
+		for(CostModel costModel : costModels)
+			if(!costModel.isConstant())
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean isStatic() {
+		for(CostModel costModel : costModels)
+			if(!costModel.isStatic())
+				return false;
+		return true;
+	}
+
+	@Override
+	public int compile(CompiledCostModel.Compiler compiler) {
+		Iterator<CostModel> iterator = costModels.iterator();
+		int result = compiler.emit(iterator.next());
+		while(iterator.hasNext())
+			result = compiler.emitAdd(result, compiler.emit(iterator.next()));
+		return result;
+	}
+
 	@Override
 	public boolean containsCostModel(Class clazz){
 		if(super.containsCostModel(clazz))
@@ -1,7 +1,9 @@
 package de.tum.ei.lkn.eces.dnm.config.costmodels.functions;
 
 import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.dnm.config.CompiledCostModel;
 import de.tum.ei.lkn.eces.dnm.config.CostModel;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.routing.requests.Request;
 
@@ -41,6 +43,26 @@ public class UpperLimit extends CostModel {
 		return Math.min(limit, costModel.maxCostValue());
 	}
 
+	@Override
+	public void setCostValueTable(CostValueTable costValueTable) {
+		costModel.setCostValueTable(costValueTable);
+	}
+
+	@Override
+	public boolean isConstant() {
+		return costModel.isConstant();
+	}
+
+	@Override
+	public boolean isStatic() {
+		return costModel.isStatic();
+	}
+
+	@Override
+	public int compile(CompiledCostModel.Compiler compiler) {
+		return compiler.emitUpperLimit(compiler.emit(costModel), limit);
+	}
+
 	@Override
 	public boolean containsCostModel(Class clazz) {
         return super.containsCostModel(clazz) || costModel.containsCostModel(clazz);
@@ -5,6 +5,7 @@ import de.tum.ei.lkn.eces.core.Controller;
 import de.tum.ei.lkn.eces.core.Entity;
 import de.tum.ei.lkn.eces.core.Mapper;
 import de.tum.ei.lkn.eces.dnm.config.CostModel;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
 import de.tum.ei.lkn.eces.network.Queue;
 import de.tum.ei.lkn.eces.network.Scheduler;
 import de.tum.ei.lkn.eces.network.mappers.QueueMapper;
@@ -19,6 +20,7 @@ import de.tum.ei.lkn.eces.network.mappers.SchedulerMapper;
 abstract class Base extends CostModel {
 	private Mapper<Queue> queueMapper;
 	private Mapper<Scheduler> schedulerMapper;
+	private CostValueTable costValueTable;
 
 	protected Base() {
 	}
@@ -42,6 +44,18 @@ abstract class Base extends CostModel {
 			return schedulerMapper;
 	}
 
+	@Override
+	public void setCostValueTable(CostValueTable costValueTable) {
+		this.costValueTable = costValueTable;
+	}
+
+	/**
+	 * @return The table of precomputed values and flow counters, null if none.
+	 */
+	protected CostValueTable getCostValueTable() {
+		return costValueTable;
+	}
+
 	protected Entity getSchedulerEntity(Component component){
 		return getSchedulerEntity(component.getEntity());
 	}
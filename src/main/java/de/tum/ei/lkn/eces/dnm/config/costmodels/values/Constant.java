@@ -42,6 +42,11 @@ public class Constant extends CostModel {
 		return constant;
 	}
 
+	@Override
+	public boolean isConstant() {
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return this.getClass().getSimpleName() + "( " + constant + " )";
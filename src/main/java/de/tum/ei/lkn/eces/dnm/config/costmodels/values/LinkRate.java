@@ -3,6 +3,7 @@ package de.tum.ei.lkn.eces.dnm.config.costmodels.values;
 import de.tum.ei.lkn.eces.core.Controller;
 import de.tum.ei.lkn.eces.core.Mapper;
 import de.tum.ei.lkn.eces.dnm.config.CostModel;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.network.Rate;
 import de.tum.ei.lkn.eces.network.mappers.RateMapper;
@@ -31,9 +32,21 @@ public class LinkRate extends Base {
 
 	@Override
 	public double getCost(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean isFroward) {
+		CostValueTable costValueTable = getCostValueTable();
+		if(costValueTable != null) {
+			double linkRate = costValueTable.getLinkRate(edge.getEntity());
+			if(!Double.isNaN(linkRate))
+				return linkRate;
+		}
+
 		return rateMapper.getOptimistic(this.getSchedulerEntity(edge)).getRate();
 	}
 
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
+
 	@Override
 	public double minCostValue() {
 		return 0;
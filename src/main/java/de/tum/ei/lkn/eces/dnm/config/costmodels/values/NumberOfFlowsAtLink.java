@@ -3,6 +3,7 @@ package de.tum.ei.lkn.eces.dnm.config.costmodels.values;
 import de.tum.ei.lkn.eces.core.Controller;
 import de.tum.ei.lkn.eces.core.Entity;
 import de.tum.ei.lkn.eces.dnm.config.CostModel;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.network.Queue;
 import de.tum.ei.lkn.eces.routing.requests.Request;
@@ -28,6 +29,13 @@ public class NumberOfFlowsAtLink extends NumberOfFlowsAtQueue {
 
 	@Override
 	public double getCost(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean isFroward) {
+		CostValueTable costValueTable = getCostValueTable();
+		if(costValueTable != null) {
+			int flows = costValueTable.getFlowsAtLink(edge.getEntity());
+			if(flows >= 0)
+				return flows;
+		}
+
 		Entity entity = this.getSchedulerEntity(edge);
 		int sum = 0;
 		for(Queue queue : this.getSchedulerMapper().getOptimistic(entity).getQueues())
@@ -3,6 +3,7 @@ package de.tum.ei.lkn.eces.dnm.config.costmodels.values;
 import de.tum.ei.lkn.eces.core.Controller;
 import de.tum.ei.lkn.eces.core.Mapper;
 import de.tum.ei.lkn.eces.dnm.config.CostModel;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.routing.mappers.PathListMapper;
 import de.tum.ei.lkn.eces.routing.pathlist.PathList;
@@ -32,6 +33,13 @@ public class NumberOfFlowsAtQueue extends Base {
 
 	@Override
 	public double getCost(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean isFroward) {
+		CostValueTable costValueTable = getCostValueTable();
+		if(costValueTable != null) {
+			int flows = costValueTable.getFlowsAtQueue(edge.getEntity());
+			if(flows >= 0)
+				return flows;
+		}
+
 		return pathListMapper.getOptimistic(edge.getEntity()).getPathList().size();
 	}
 
@@ -2,6 +2,7 @@ package de.tum.ei.lkn.eces.dnm.config.costmodels.values;
 
 import de.tum.ei.lkn.eces.core.Controller;
 import de.tum.ei.lkn.eces.dnm.config.CostModel;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.routing.requests.Request;
 
@@ -25,9 +26,21 @@ public class NumberOfQueues extends Base {
 
 	@Override
 	public double getCost(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean isFroward) {
+		CostValueTable costValueTable = getCostValueTable();
+		if(costValueTable != null) {
+			double numberOfQueues = costValueTable.getNumberOfQueues(edge.getEntity());
+			if(!Double.isNaN(numberOfQueues))
+				return numberOfQueues;
+		}
+
 		return getSchedulerMapper().get(getSchedulerEntity(edge)).getQueues().length;
 	}
 
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
+
 	@Override
 	public double minCostValue() {
 		return 0;
@@ -2,6 +2,7 @@ package de.tum.ei.lkn.eces.dnm.config.costmodels.values;
 
 import de.tum.ei.lkn.eces.core.Controller;
 import de.tum.ei.lkn.eces.dnm.config.CostModel;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.network.Queue;
 import de.tum.ei.lkn.eces.network.Scheduler;
@@ -29,6 +30,13 @@ public class QueuePriority extends Base {
 
 	@Override
 	public double getCost(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean isFroward) {
+		CostValueTable costValueTable = getCostValueTable();
+		if(costValueTable != null) {
+			double priority = costValueTable.getQueuePriority(edge.getEntity());
+			if(!Double.isNaN(priority))
+				return priority;
+		}
+
 		Queue queue = getQueueMapper().getOptimistic(edge.getEntity());
 		Scheduler scheduler = queue.getScheduler();
 		for (int i = 0; i < scheduler.getQueues().length; i++)
@@ -37,6 +45,11 @@ public class QueuePriority extends Base {
 		return 0;
 	}
 
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
+
 	@Override
 	public double minCostValue() {
 		return 0;
@@ -2,19 +2,44 @@ package de.tum.ei.lkn.eces.dnm.inputmodels;
 
 import de.tum.ei.lkn.eces.dnm.DiscoCurveToJSON;
 import de.tum.ei.lkn.eces.graph.Edge;
+import de.uni_kl.cs.discodnc.curves.ArrivalCurve;
 import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
 import de.uni_kl.cs.discodnc.misc.Pair;
 import de.uni_kl.cs.discodnc.numbers.Num;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.ToDoubleFunction;
 
 /**
  * Describes the traffic input to a queue per input physical edge.
  * This is used to be able to implement input link shaping (ILS) [1].
  *
+ * The aggregate shaped arrival curve (sum over the input edges of the token bucket of the edge shaped by the rate of
+ * the edge) is maintained incrementally: each input edge contributes a concave piecewise linear term with at most one
+ * breakpoint, and the aggregate is stored as a burst, an initial rate and the rate drops at each breakpoint. The
+ * corresponding DiscoDNC curve is only created when needed and then cached until the next change.
+ *
+ * For access checks, the delay and backlog bounds of the aggregate with one token bucket added on an input edge are
+ * computed directly on this representation against a rate-latency service curve (see getDelayBound and
+ * getBacklogBound): the term of the input edge is swapped on the fly while walking the breakpoints, up to the one
+ * where the bound is reached. Neither the aggregate nor a DiscoDNC curve is copied or created.
+ *
+ * The shaping depends on the rate of the input edges: when it changes, refreshShaping must be called (the DNMSystem
+ * does it when a Rate component is updated).
+ *
+ * The token buckets of the input edges are either held as Num pairs or, if a UtilizationStore is given, stored in a
+ * slot of the store (one per input edge, released when the edge is deleted or the utilization destroyed). The state
+ * of an input edge (token bucket and shaped term) is kept in a single object updated in place, so that adding or
+ * removing a flow does not create objects for it with a store.
+ *
  * [1] Guck, Jochen W., Amaury Van Bemten, and Wolfgang Kellerer. "DetServ: Network models for real-time QoS
  * provisioning in SDN-based industrial environments." IEEE Transactions on Network and Service Management 14, no. 4
  * (2017): 1003-1017.
@@ -26,44 +51,519 @@ public class PerInEdgeTokenBucketUtilization extends ResourceUtilization {
     /**
      * We store traffic per-incoming edge.
      * For each incoming edge, we store the token bucket coming
-     * from this edge and entering the current queue.
+     * from this edge and entering the current queue, and its shaped term.
      */
-	private Map<Edge, Pair<Num>> inputLinkUtilisation = new HashMap<>();
+	private final Map<Edge, InputEdge> inputEdges = new HashMap<>();
 
-	public void addFlow(Edge edge, Num rate, Num burst) {
-		Pair<Num> tokenBucket;
-		if((tokenBucket = inputLinkUtilisation.get(edge)) == null) {
-			tokenBucket = new Pair<>(Num.getFactory().create(0), Num.getFactory().create(0));
-			inputLinkUtilisation.put(edge, tokenBucket);
-		}
+	/**
+	 * Columnar storage (null if the Num pairs are used).
+	 */
+	private final UtilizationStore store;
+
+	/**
+	 * Aggregate shaped arrival curve: burst, initial rate and rate drop at each breakpoint.
+	 */
+	private double aggregateBurst = 0;
+	private double aggregateRate = 0;
+	private NavigableMap<Double, Double> aggregateRateDrops = new TreeMap<>();
+	private int nonZeroTerms = 0;
 
-		inputLinkUtilisation.put(edge, new Pair<>(Num.getFactory().add(tokenBucket.getFirst(), rate), Num.getFactory().add(tokenBucket.getSecond(), burst)));
+	/**
+	 * Cached DiscoDNC version of the aggregate (null when it has to be recomputed). Volatile as concurrent readers
+	 * (see DetServProxy concurrent admission) might compute it.
+	 */
+	private volatile ArrivalCurve aggregateArrivalCurve = null;
+
+	/**
+	 * Physical edge of the queue itself: traffic sourced at the node is not shaped.
+	 */
+	private final Edge localEdge;
+
+	/**
+	 * Rate of the physical edges (used for shaping).
+	 */
+	private final ToDoubleFunction<Edge> inputLinkRate;
+
+	/**
+	 * Maximum packet size (burst of the shaping curves).
+	 */
+	private final double maximumPacketSize;
+
+	public PerInEdgeTokenBucketUtilization(Edge localEdge, ToDoubleFunction<Edge> inputLinkRate, double maximumPacketSize) {
+		this(localEdge, inputLinkRate, maximumPacketSize, null);
+	}
+
+	/**
+	 * @param localEdge physical edge of the queue itself.
+	 * @param inputLinkRate rate of the physical edges.
+	 * @param maximumPacketSize maximum packet size.
+	 * @param store store in which the token buckets are kept, null to keep them in Num pairs.
+	 */
+	public PerInEdgeTokenBucketUtilization(Edge localEdge, ToDoubleFunction<Edge> inputLinkRate, double maximumPacketSize, UtilizationStore store) {
+		this.localEdge = localEdge;
+		this.inputLinkRate = inputLinkRate;
+		this.maximumPacketSize = maximumPacketSize;
+		this.store = store;
+	}
+
+	public void addFlow(Edge edge, Num rate, Num burst) {
+		InputEdge inputEdge = getOrCreateInputEdge(edge);
+		if(store != null)
+			store.add(inputEdge.slot, rate.doubleValue(), burst.doubleValue());
+		else
+			inputEdge.tokenBucket = new Pair<>(Num.getFactory().add(inputEdge.tokenBucket.getFirst(), rate), Num.getFactory().add(inputEdge.tokenBucket.getSecond(), burst));
+		updateShapedTerm(edge, inputEdge);
 	}
 
 	public void removeFlow(Edge edge, Num rate, Num burst) {
-		Pair<Num> tokenBucket;
-		if((tokenBucket = inputLinkUtilisation.get(edge)) != null)
-			inputLinkUtilisation.put(edge, new Pair<>(Num.getFactory().sub(tokenBucket.getFirst(), rate), Num.getFactory().sub(tokenBucket.getSecond(), burst)));
+		InputEdge inputEdge = inputEdges.get(edge);
+		if(inputEdge == null)
+			return;
+
+		if(store != null)
+			store.add(inputEdge.slot, -rate.doubleValue(), -burst.doubleValue());
+		else
+			inputEdge.tokenBucket = new Pair<>(Num.getFactory().sub(inputEdge.tokenBucket.getFirst(), rate), Num.getFactory().sub(inputEdge.tokenBucket.getSecond(), burst));
+		updateShapedTerm(edge, inputEdge);
 	}
 
 	public void deleteEdge(Edge edge) {
-		inputLinkUtilisation.remove(edge);
+		InputEdge inputEdge = inputEdges.remove(edge);
+		if(inputEdge == null)
+			return;
+
+		removeTerm(inputEdge.term);
+		if(store != null)
+			store.release(inputEdge.slot);
+	}
+
+	/**
+	 * Deletes all the input edges and releases their slots in the store.
+	 */
+	@Override
+	public void release() {
+		for(Edge edge : new ArrayList<>(inputEdges.keySet()))
+			deleteEdge(edge);
 	}
 
+	/**
+	 * Replaces the token bucket of an input edge (e.g., when restoring a snapshot).
+	 * @param edge input physical edge.
+	 * @param rate new rate.
+	 * @param burst new burst.
+	 */
+	public void setTokenBucket(Edge edge, double rate, double burst) {
+		InputEdge inputEdge = getOrCreateInputEdge(edge);
+		if(store != null)
+			store.set(inputEdge.slot, rate, burst);
+		else
+			inputEdge.tokenBucket = new Pair<>(Num.getFactory().create(rate), Num.getFactory().create(burst));
+		updateShapedTerm(edge, inputEdge);
+	}
+
+	/**
+	 * @return The token bucket (rate, burst) of each input edge. The pairs are created on each call with a
+	 *         UtilizationStore, getInputEdges, getRateValue and getBurstValue do not create any Num.
+	 */
 	public Set<Map.Entry<Edge, Pair<Num>>> getTokenBuckets() {
-		return inputLinkUtilisation.entrySet();
+		Map<Edge, Pair<Num>> tokenBuckets = new HashMap<>();
+		for(Map.Entry<Edge, InputEdge> inputEdge : inputEdges.entrySet()) {
+			if(store == null)
+				tokenBuckets.put(inputEdge.getKey(), inputEdge.getValue().tokenBucket);
+			else
+				tokenBuckets.put(inputEdge.getKey(), new Pair<>(Num.getFactory().create(inputEdge.getValue().getRate()), Num.getFactory().create(inputEdge.getValue().getBurst())));
+		}
+		return tokenBuckets.entrySet();
+	}
+
+	/**
+	 * @return The input edges with a token bucket (read-only view).
+	 */
+	public Set<Edge> getInputEdges() {
+		return Collections.unmodifiableSet(inputEdges.keySet());
+	}
+
+	/**
+	 * @param edge input physical edge.
+	 * @return The rate of the token bucket of this input edge (0 if none).
+	 */
+	public double getRateValue(Edge edge) {
+		InputEdge inputEdge = inputEdges.get(edge);
+		return inputEdge == null ? 0 : inputEdge.getRate();
+	}
+
+	/**
+	 * @param edge input physical edge.
+	 * @return The burst of the token bucket of this input edge (0 if none).
+	 */
+	public double getBurstValue(Edge edge) {
+		InputEdge inputEdge = inputEdges.get(edge);
+		return inputEdge == null ? 0 : inputEdge.getBurst();
+	}
+
+	/**
+	 * @return the aggregate shaped arrival curve entering the queue.
+	 */
+	public ArrivalCurve getAggregateArrivalCurve() {
+		if(aggregateArrivalCurve == null)
+			aggregateArrivalCurve = toArrivalCurve(new Cursor());
+		return aggregateArrivalCurve;
+	}
+
+	/**
+	 * Computes the aggregate shaped arrival curve that would enter the queue if a given token bucket was added on a
+	 * given input edge. Only the term of that edge is recomputed, the utilization itself is not modified.
+	 * @param edge input physical edge.
+	 * @param rate rate of the token bucket to add.
+	 * @param burst burst of the token bucket to add.
+	 * @return the resulting aggregate shaped arrival curve.
+	 */
+	public ArrivalCurve getAggregateArrivalCurve(Edge edge, Num rate, Num burst) {
+		return toArrivalCurve(new Cursor(edge, rate.doubleValue(), burst.doubleValue()));
+	}
+
+	/**
+	 * Computes the delay bound of the aggregate shaped arrival curve that would enter the queue if a given token
+	 * bucket was added on a given input edge. The utilization itself is not modified.
+	 * @param edge input physical edge.
+	 * @param rate rate of the token bucket to add.
+	 * @param burst burst of the token bucket to add.
+	 * @param R rate of the rate-latency service curve of the queue.
+	 * @param T latency of the rate-latency service curve of the queue.
+	 * @return the FIFO delay bound, positive infinity if the queue is not stable.
+	 */
+	public double getDelayBound(Edge edge, double rate, double burst, double R, double T) {
+		Cursor cursor = new Cursor(edge, rate, burst);
+		if(cursor.isZero())
+			return 0;
+		return T + getMaximumExcess(cursor, R, 0) / R;
+	}
+
+	/**
+	 * Computes the backlog bound of the aggregate shaped arrival curve that would enter the queue if a given token
+	 * bucket was added on a given input edge. The utilization itself is not modified.
+	 * @param edge input physical edge.
+	 * @param rate rate of the token bucket to add.
+	 * @param burst burst of the token bucket to add.
+	 * @param R rate of the rate-latency service curve of the queue.
+	 * @param T latency of the rate-latency service curve of the queue.
+	 * @return the backlog bound, positive infinity if the queue is not stable.
+	 */
+	public double getBacklogBound(Edge edge, double rate, double burst, double R, double T) {
+		Cursor cursor = new Cursor(edge, rate, burst);
+		if(cursor.isZero())
+			return 0;
+		return getMaximumExcess(cursor, R, T) + R * T;
+	}
+
+	/**
+	 * Recomputes the shaped term of an input edge, e.g., after its rate changed.
+	 * @param edge input physical edge.
+	 */
+	public void refreshShaping(Edge edge) {
+		InputEdge inputEdge = inputEdges.get(edge);
+		if(inputEdge != null)
+			updateShapedTerm(edge, inputEdge);
+	}
+
+	/**
+	 * Computes sup_{t >= start} alpha(t) - R * t for the (concave) curve alpha walked by a cursor. The walk stops at
+	 * the first segment whose rate is not larger than R, the difference only decreases after it.
+	 * @param cursor cursor at the beginning of the curve.
+	 * @param R rate.
+	 * @param start start of the considered interval.
+	 * @return the supremum, positive infinity if the final rate of the curve is larger than R.
+	 */
+	private static double getMaximumExcess(Cursor cursor, double R, double start) {
+		double result = Double.NEGATIVE_INFINITY;
+		while(true) {
+			double next = cursor.nextBreakpoint();
+			if(next > start) {
+				double from = Math.max(cursor.t, start);
+				result = Math.max(result, cursor.value + cursor.rate * (from - cursor.t) - R * from);
+				if(cursor.rate <= R)
+					return result;
+				if(next == Double.POSITIVE_INFINITY)
+					return Double.POSITIVE_INFINITY;
+			}
+			cursor.advance();
+		}
+	}
+
+	/**
+	 * @param edge input physical edge.
+	 * @return The state of this input edge, created (with a zero token bucket) if there is none.
+	 */
+	private InputEdge getOrCreateInputEdge(Edge edge) {
+		InputEdge inputEdge = inputEdges.get(edge);
+		if(inputEdge == null) {
+			inputEdge = new InputEdge();
+			inputEdges.put(edge, inputEdge);
+		}
+		return inputEdge;
+	}
+
+	/**
+	 * Recomputes the shaped term of an edge from its token bucket and updates the aggregate accordingly.
+	 * @param edge input physical edge.
+	 * @param inputEdge state of this edge.
+	 */
+	private void updateShapedTerm(Edge edge, InputEdge inputEdge) {
+		ShapedTerm term = inputEdge.term;
+		removeTerm(term);
+		shape(edge, inputEdge.getRate(), inputEdge.getBurst(), term);
+		aggregateBurst += term.burst;
+		aggregateRate += term.initialRate;
+		addRateDrop(aggregateRateDrops, term);
+		if(!term.isZero())
+			nonZeroTerms++;
+		aggregateArrivalCurve = null;
+	}
+
+	private void removeTerm(ShapedTerm term) {
+		aggregateBurst -= term.burst;
+		aggregateRate -= term.initialRate;
+		removeRateDrop(aggregateRateDrops, term);
+		aggregateArrivalCurve = null;
+
+		// Getting rid of rounding errors when the queue gets empty.
+		if(!term.isZero() && --nonZeroTerms == 0) {
+			aggregateBurst = 0;
+			aggregateRate = 0;
+			aggregateRateDrops.clear();
+		}
+	}
+
+	private static void addRateDrop(NavigableMap<Double, Double> rateDrops, ShapedTerm term) {
+		if(term.hasBreakpoint())
+			rateDrops.merge(term.breakpoint, term.initialRate - term.finalRate, Double::sum);
+	}
+
+	private static void removeRateDrop(NavigableMap<Double, Double> rateDrops, ShapedTerm term) {
+		if(!term.hasBreakpoint())
+			return;
+
+		Double drop = rateDrops.get(term.breakpoint);
+		if(drop == null)
+			return;
+		double remainingDrop = drop - (term.initialRate - term.finalRate);
+		if(remainingDrop <= 0)
+			rateDrops.remove(term.breakpoint);
+		else
+			rateDrops.put(term.breakpoint, remainingDrop);
+	}
+
+	/**
+	 * Shapes a token bucket with the rate of its input edge (except for local traffic).
+	 * @param edge input physical edge.
+	 * @param r rate of the token bucket.
+	 * @param b burst of the token bucket.
+	 * @param result term in which the shaped term is stored.
+	 */
+	private void shape(Edge edge, double r, double b, ShapedTerm result) {
+		if((r == 0 && b == 0) || edge == localEdge) {
+			result.set(b, r, Double.NaN, r);
+			return;
+		}
+
+		double C = inputLinkRate.applyAsDouble(edge);
+		double M = maximumPacketSize;
+		if(b <= M && r <= C)
+			result.set(b, r, Double.NaN, r);
+		else if(b >= M && r >= C)
+			result.set(M, C, Double.NaN, C);
+		else if(b > M)
+			// Shaping curve first, token bucket after the intersection.
+			result.set(M, C, (b - M) / (C - r), r);
+		else
+			// Token bucket first, shaping curve after the intersection.
+			result.set(b, r, (M - b) / (r - C), C);
+	}
+
+	/**
+	 * Creates the DiscoDNC curve of a concave piecewise linear curve as the minimum of the token buckets
+	 * corresponding to each of its segments.
+	 * @param cursor cursor at the beginning of the curve.
+	 * @return the DiscoDNC arrival curve.
+	 */
+	private static ArrivalCurve toArrivalCurve(Cursor cursor) {
+		ArrivalCurve curve = CurvePwAffine.getFactory().createTokenBucket(cursor.rate, cursor.value);
+		while(cursor.nextBreakpoint() != Double.POSITIVE_INFINITY) {
+			cursor.advance();
+			curve = CurvePwAffine.min(curve, CurvePwAffine.getFactory().createTokenBucket(cursor.rate, cursor.value - cursor.rate * cursor.t));
+		}
+		return curve;
+	}
+
+	/**
+	 * Walks the segments of the aggregate shaped arrival curve, possibly with the term of one input edge replaced
+	 * (the aggregate itself is not modified).
+	 */
+	private final class Cursor {
+		private final ShapedTerm removedTerm;
+		private final ShapedTerm addedTerm;
+		private final Iterator<Map.Entry<Double, Double>> rateDrops = aggregateRateDrops.entrySet().iterator();
+		private Map.Entry<Double, Double> nextRateDrop;
+		private boolean addedBreakpointPending;
+
+		// Current breakpoint, value of the curve at it and rate of the curve after it.
+		private double t = 0;
+		private double value = aggregateBurst;
+		private double rate = aggregateRate;
+
+		/**
+		 * Cursor on the aggregate.
+		 */
+		private Cursor() {
+			this(null, null);
+		}
+
+		/**
+		 * Cursor on the aggregate with a token bucket added on an input edge.
+		 */
+		private Cursor(Edge edge, double rate, double burst) {
+			this(getTerm(edge), shapeAdded(edge, rate, burst));
+		}
+
+		private Cursor(ShapedTerm removedTerm, ShapedTerm addedTerm) {
+			this.removedTerm = removedTerm;
+			this.addedTerm = addedTerm;
+			if(removedTerm != null) {
+				value -= removedTerm.burst;
+				rate -= removedTerm.initialRate;
+			}
+			if(addedTerm != null) {
+				value += addedTerm.burst;
+				rate += addedTerm.initialRate;
+				addedBreakpointPending = addedTerm.hasBreakpoint();
+			}
+			nextRateDrop = rateDrops.hasNext() ? rateDrops.next() : null;
+		}
+
+		/**
+		 * @return true if the curve is the zero arrival curve.
+		 */
+		private boolean isZero() {
+			return value == 0 && rate == 0 && nextBreakpoint() == Double.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * @return the next breakpoint, positive infinity if there is none.
+		 */
+		private double nextBreakpoint() {
+			double next = nextRateDrop == null ? Double.POSITIVE_INFINITY : nextRateDrop.getKey();
+			if(addedBreakpointPending && addedTerm.breakpoint < next)
+				next = addedTerm.breakpoint;
+			return next;
+		}
+
+		/**
+		 * Moves to the next breakpoint (there must be one).
+		 */
+		private void advance() {
+			double next = nextBreakpoint();
+			value += rate * (next - t);
+			t = next;
+			if(nextRateDrop != null && nextRateDrop.getKey() == next) {
+				rate -= nextRateDrop.getValue();
+				// The drop of the replaced term is part of the aggregate.
+				if(removedTerm != null && removedTerm.hasBreakpoint() && removedTerm.breakpoint == next)
+					rate += removedTerm.initialRate - removedTerm.finalRate;
+				nextRateDrop = rateDrops.hasNext() ? rateDrops.next() : null;
+			}
+			if(addedBreakpointPending && addedTerm.breakpoint == next) {
+				rate -= addedTerm.initialRate - addedTerm.finalRate;
+				addedBreakpointPending = false;
+			}
+			rate = Math.max(0, rate);
+		}
+	}
+
+	/**
+	 * @param edge input physical edge.
+	 * @return The current shaped term of this input edge, null if there is none.
+	 */
+	private ShapedTerm getTerm(Edge edge) {
+		InputEdge inputEdge = inputEdges.get(edge);
+		return inputEdge == null ? null : inputEdge.term;
+	}
+
+	/**
+	 * @param edge input physical edge.
+	 * @param rate rate of the token bucket to add.
+	 * @param burst burst of the token bucket to add.
+	 * @return The shaped term of the input edge with the token bucket added.
+	 */
+	private ShapedTerm shapeAdded(Edge edge, double rate, double burst) {
+		ShapedTerm result = new ShapedTerm();
+		shape(edge, getRateValue(edge) + rate, getBurstValue(edge) + burst, result);
+		return result;
+	}
+
+	/**
+	 * State of one input edge: its token bucket (Num pair, or slot in the store) and its shaped term.
+	 */
+	private final class InputEdge {
+		private Pair<Num> tokenBucket;
+		private final int slot;
+		private final ShapedTerm term = new ShapedTerm();
+
+		private InputEdge() {
+			if(store != null) {
+				slot = store.allocate();
+			}
+			else {
+				slot = -1;
+				tokenBucket = new Pair<>(Num.getFactory().create(0), Num.getFactory().create(0));
+			}
+		}
+
+		private double getRate() {
+			return store != null ? store.getRate(slot) : tokenBucket.getFirst().doubleValue();
+		}
+
+		private double getBurst() {
+			return store != null ? store.getBurst(slot) : tokenBucket.getSecond().doubleValue();
+		}
+	}
+
+	/**
+	 * Shaped token bucket of one input edge: starts at 'burst' with 'initialRate' and, if there is a breakpoint,
+	 * continues with 'finalRate' after it. Updated in place when the token bucket of the edge changes.
+	 */
+	private static class ShapedTerm {
+		private double burst = 0;
+		private double initialRate = 0;
+		private double breakpoint = Double.NaN;
+		private double finalRate = 0;
+
+		private void set(double burst, double initialRate, double breakpoint, double finalRate) {
+			this.burst = burst;
+			this.initialRate = initialRate;
+			this.breakpoint = breakpoint;
+			this.finalRate = finalRate;
+		}
+
+		private boolean hasBreakpoint() {
+			return !Double.isNaN(breakpoint);
+		}
+
+		private boolean isZero() {
+			return burst == 0 && initialRate == 0 && !hasBreakpoint();
+		}
 	}
 
 	@Override
 	public JSONObject toJSONObject() {
 		JSONObject obj = super.toJSONObject();
 
-		if(inputLinkUtilisation.size() == 0) {
+		Set<Map.Entry<Edge, Pair<Num>>> tokenBuckets = getTokenBuckets();
+		if(tokenBuckets.size() == 0) {
 			obj.put("Input data from links", new JSONObject().put("Data", "No input data to this edge"));
 		}
 		else {
 			JSONObject utilisationMap = new JSONObject();
-			for (Map.Entry<Edge, Pair<Num>> element : inputLinkUtilisation.entrySet()) {
+			for (Map.Entry<Edge, Pair<Num>> element : tokenBuckets) {
 				JSONObject tbJSON = DiscoCurveToJSON.get(CurvePwAffine.getFactory().createTokenBucket(element.getValue().getFirst(), element.getValue().getSecond()));
 				tbJSON.remove("plotting"); // do not plot the individual token buckets
 				utilisationMap.put("Physical Edge #" + element.getKey().getId(), tbJSON);
@@ -12,4 +12,10 @@ import de.tum.ei.lkn.eces.dnm.DNMSystem;
  */
 @ComponentBelongsTo(system = DNMSystem.class)
 public class ResourceUtilization extends Component {
+	/**
+	 * Releases the storage held outside of the component (e.g., slots of a UtilizationStore). Called by the DNMSystem
+	 * when the component is destroyed, the utilization must not be used afterwards.
+	 */
+	public void release() {
+	}
 }
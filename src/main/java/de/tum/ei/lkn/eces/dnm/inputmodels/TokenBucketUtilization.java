@@ -9,6 +9,8 @@ import org.json.JSONObject;
 /**
  * Token bucket usage of something.
  *
+ * The token bucket is either held as Num objects or, if a UtilizationStore is given, stored in a slot of the store.
+ *
  * @author Jochen Guck
  * @author Amaury Van Bemten
  */
@@ -16,28 +18,110 @@ public class TokenBucketUtilization extends ResourceUtilization {
 	private Num burst = Num.getFactory().create(0);
 	private Num rate = Num.getFactory().create(0);
 
+	// Columnar storage (null if the Num objects are used).
+	private final UtilizationStore store;
+	private int slot;
+
+	public TokenBucketUtilization() {
+		this(null);
+	}
+
+	/**
+	 * @param store store in which the token bucket is kept, null to keep it in Num objects.
+	 */
+	public TokenBucketUtilization(UtilizationStore store) {
+		this.store = store;
+		this.slot = store == null ? -1 : store.allocate();
+	}
+
 	public void addFlow(Num rate, Num burst) {
+		if(store != null) {
+			store.add(slot, rate.doubleValue(), burst.doubleValue());
+			return;
+		}
+
 		this.burst = Num.getFactory().add(this.burst, burst);
 		this.rate = Num.getFactory().add(this.rate, rate);
 	}
 
 	public void removeFlow(Num rate, Num burst) {
+		if(store != null) {
+			store.add(slot, -rate.doubleValue(), -burst.doubleValue());
+			return;
+		}
+
 		this.burst = Num.getFactory().sub(this.burst, burst);
 		this.rate = Num.getFactory().sub(this.rate, rate);
 	}
 
+	/**
+	 * Replaces the token bucket (e.g., when restoring a snapshot).
+	 * @param rate new rate.
+	 * @param burst new burst.
+	 */
+	public void setTokenBucket(double rate, double burst) {
+		if(store != null) {
+			store.set(slot, rate, burst);
+			return;
+		}
+
+		this.rate = Num.getFactory().create(rate);
+		this.burst = Num.getFactory().create(burst);
+	}
+
+	/**
+	 * @return The rate. With a UtilizationStore, a Num is created on each call (see getRateValue).
+	 */
 	public Num getRate() {
+		if(store != null)
+			return Num.getFactory().create(store.getRate(slot));
 		return rate;
 	}
 
+	/**
+	 * @return The burst. With a UtilizationStore, a Num is created on each call (see getBurstValue).
+	 */
 	public Num getBurst() {
+		if(store != null)
+			return Num.getFactory().create(store.getBurst(slot));
 		return burst;
 	}
 
+	/**
+	 * @return The rate as a primitive double (no object is created with a UtilizationStore).
+	 */
+	public double getRateValue() {
+		if(store != null)
+			return store.getRate(slot);
+		return rate.doubleValue();
+	}
+
+	/**
+	 * @return The burst as a primitive double (no object is created with a UtilizationStore).
+	 */
+	public double getBurstValue() {
+		if(store != null)
+			return store.getBurst(slot);
+		return burst.doubleValue();
+	}
+
+	/**
+	 * @return The token bucket as a DiscoDNC curve (created on each call, from doubles with a UtilizationStore).
+	 */
 	public ArrivalCurve getTokenBucket() {
+		if(store != null)
+			return CurvePwAffine.getFactory().createTokenBucket(store.getRate(slot), store.getBurst(slot));
 		return CurvePwAffine.getFactory().createTokenBucket(rate, burst);
 	}
 
+	@Override
+	public void release() {
+		if(store != null && slot >= 0) {
+			store.release(slot);
+			slot = -1;
+		}
+	}
+
 	@Override
 	public JSONObject toJSONObject() {
 		JSONObject result = super.toJSONObject();
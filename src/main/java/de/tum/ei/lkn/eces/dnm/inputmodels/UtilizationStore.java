@@ -0,0 +1,120 @@
+package de.tum.ei.lkn.eces.dnm.inputmodels;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * Columnar storage of (rate, burst) token buckets.
+ *
+ * Each token bucket (one per queue for TokenBucketUtilization, one per queue and input edge for
+ * PerInEdgeTokenBucketUtilization) gets a dense slot index, and the rates and bursts are stored in two columns of
+ * primitive doubles, either on the heap or in direct (off-heap) buffers. This avoids the Num objects (and the
+ * (rate, burst) pairs replaced at each flow addition or removal) of the heap backend.
+ *
+ * The columns are made of fixed-size chunks that are never moved, so that a slot can be updated while another one
+ * is allocated. Allocating and releasing slots is thread-safe, updating a slot must be done by one thread at a time
+ * (which is the case as the utilization of a queue is only updated under the lock of its scheduler).
+ *
+ * Released slots (input edge deleted, utilization destroyed) are kept in a free list and reused by the next
+ * allocations, so that the columns do not grow with the churn of input edges.
+ *
+ * @author Amaury Van Bemten
+ */
+public class UtilizationStore {
+	private static final int CHUNK_SIZE = 4096;
+
+	private final boolean offHeap;
+	private volatile DoubleBuffer[] rates = new DoubleBuffer[0];
+	private volatile DoubleBuffer[] bursts = new DoubleBuffer[0];
+	private int allocatedSlots = 0;
+	private int[] freeSlots = new int[16];
+	private int numberOfFreeSlots = 0;
+
+	/**
+	 * @param offHeap true if the columns must be stored in direct buffers, false for heap arrays.
+	 */
+	public UtilizationStore(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * Allocates a slot (a released one if any), with a zero token bucket.
+	 * @return the index of the slot.
+	 */
+	public synchronized int allocate() {
+		if(numberOfFreeSlots > 0) {
+			int slot = freeSlots[--numberOfFreeSlots];
+			set(slot, 0, 0);
+			return slot;
+		}
+
+		int slot = allocatedSlots++;
+		if(slot / CHUNK_SIZE >= rates.length) {
+			DoubleBuffer[] newRates = Arrays.copyOf(rates, rates.length + 1);
+			DoubleBuffer[] newBursts = Arrays.copyOf(bursts, bursts.length + 1);
+			newRates[rates.length] = createChunk();
+			newBursts[bursts.length] = createChunk();
+			bursts = newBursts;
+			rates = newRates;
+		}
+		return slot;
+	}
+
+	/**
+	 * Releases a slot, which must not be used anymore by its previous owner.
+	 * @param slot the slot.
+	 */
+	public synchronized void release(int slot) {
+		if(numberOfFreeSlots == freeSlots.length)
+			freeSlots = Arrays.copyOf(freeSlots, 2 * freeSlots.length);
+		freeSlots[numberOfFreeSlots++] = slot;
+	}
+
+	/**
+	 * @return the number of slots in use (allocated and not released).
+	 */
+	public synchronized int getAllocatedSlots() {
+		return allocatedSlots - numberOfFreeSlots;
+	}
+
+	private DoubleBuffer createChunk() {
+		if(offHeap)
+			return ByteBuffer.allocateDirect(CHUNK_SIZE * Double.BYTES).asDoubleBuffer();
+		else
+			return DoubleBuffer.allocate(CHUNK_SIZE);
+	}
+
+	public double getRate(int slot) {
+		return rates[slot / CHUNK_SIZE].get(slot % CHUNK_SIZE);
+	}
+
+	public double getBurst(int slot) {
+		return bursts[slot / CHUNK_SIZE].get(slot % CHUNK_SIZE);
+	}
+
+	/**
+	 * Adds a token bucket to the one of a slot.
+	 * @param slot the slot.
+	 * @param rate rate to add (negative to remove).
+	 * @param burst burst to add (negative to remove).
+	 */
+	public void add(int slot, double rate, double burst) {
+		set(slot, getRate(slot) + rate, getBurst(slot) + burst);
+	}
+
+	/**
+	 * Replaces the token bucket of a slot.
+	 * @param slot the slot.
+	 * @param rate new rate.
+	 * @param burst new burst.
+	 */
+	public void set(int slot, double rate, double burst) {
+		rates[slot / CHUNK_SIZE].put(slot % CHUNK_SIZE, rate);
+		bursts[slot / CHUNK_SIZE].put(slot % CHUNK_SIZE, burst);
+	}
+}
@@ -0,0 +1,11 @@
+package de.tum.ei.lkn.eces.dnm.mappers;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Mapper;
+import de.tum.ei.lkn.eces.dnm.metrics.DNMMetrics;
+
+public class DNMMetricsMapper extends Mapper<DNMMetrics> {
+	public DNMMetricsMapper(Controller controller) {
+		super(controller);
+	}
+}
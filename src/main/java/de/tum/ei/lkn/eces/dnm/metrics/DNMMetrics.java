@@ -0,0 +1,171 @@
+package de.tum.ei.lkn.eces.dnm.metrics;
+
+import de.tum.ei.lkn.eces.core.Component;
+import de.tum.ei.lkn.eces.core.annotations.ComponentBelongsTo;
+import de.tum.ei.lkn.eces.dnm.DNMSystem;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import org.json.JSONObject;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the hot paths of the DetServProxy and of the DNMSystem:
+ * - latency of the access checks (per access control model),
+ * - number of accepted and rejected access checks, and reasons of the rejections (one per rejected access check),
+ * - number of registrations and deregistrations,
+ * - depth of the TBM service curve cascades (number of lower priority queues updated after a change of utilization),
+ * - number of MHM ILS delay corrections.
+ *
+ * The same object is given to the proxy and to the system (see their setMetrics methods). When none is given, the
+ * metrics are not collected at all. The object can also be attached to an entity so that it is exported with the
+ * other components (toJSONObject).
+ *
+ * All the methods are thread-safe.
+ *
+ * @author Amaury Van Bemten
+ */
+@ComponentBelongsTo(system = DNMSystem.class)
+public class DNMMetrics extends Component {
+	private final Map<ACModel, Histogram> accessCheckLatencies = new EnumMap<>(ACModel.class);
+	private final LongAdder acceptedAccessChecks = new LongAdder();
+	private final LongAdder rejectedAccessChecks = new LongAdder();
+	private final Map<RejectReason, LongAdder> rejectReasons = new EnumMap<>(RejectReason.class);
+	private final LongAdder registrations = new LongAdder();
+	private final LongAdder deregistrations = new LongAdder();
+	private final Histogram cascadeDepths = new Histogram();
+	private final LongAdder serviceCurveUpdates = new LongAdder();
+	private final LongAdder ilsCorrections = new LongAdder();
+
+	public DNMMetrics() {
+		// All the entries are created upfront so that the maps are only read afterwards.
+		for(ACModel acModel : ACModel.values())
+			accessCheckLatencies.put(acModel, new Histogram());
+		for(RejectReason rejectReason : RejectReason.values())
+			rejectReasons.put(rejectReason, new LongAdder());
+	}
+
+	/**
+	 * Records an access check.
+	 * @param acModel access control model used.
+	 * @param latency duration of the check (in ns).
+	 * @param accepted whether the flow was accepted.
+	 */
+	public void recordAccessCheck(ACModel acModel, long latency, boolean accepted) {
+		accessCheckLatencies.get(acModel).record(latency);
+		if(accepted)
+			acceptedAccessChecks.increment();
+		else
+			rejectedAccessChecks.increment();
+	}
+
+	public void recordRejection(RejectReason rejectReason) {
+		rejectReasons.get(rejectReason).increment();
+	}
+
+	public void recordRegistration() {
+		registrations.increment();
+	}
+
+	public void recordDeregistration() {
+		deregistrations.increment();
+	}
+
+	/**
+	 * Records a service curve cascade.
+	 * @param depth number of lower priority queues whose service curves are updated.
+	 */
+	public void recordCascade(int depth) {
+		cascadeDepths.record(depth);
+	}
+
+	public void recordServiceCurveUpdate() {
+		serviceCurveUpdates.increment();
+	}
+
+	public void recordILSCorrection() {
+		ilsCorrections.increment();
+	}
+
+	/**
+	 * @param acModel access control model.
+	 * @return The histogram of the access check latencies (in ns) for this model.
+	 */
+	public Histogram getAccessCheckLatencies(ACModel acModel) {
+		return accessCheckLatencies.get(acModel);
+	}
+
+	public long getAcceptedAccessChecks() {
+		return acceptedAccessChecks.sum();
+	}
+
+	public long getRejectedAccessChecks() {
+		return rejectedAccessChecks.sum();
+	}
+
+	public long getRejections(RejectReason rejectReason) {
+		return rejectReasons.get(rejectReason).sum();
+	}
+
+	public long getRegistrations() {
+		return registrations.sum();
+	}
+
+	public long getDeregistrations() {
+		return deregistrations.sum();
+	}
+
+	public Histogram getCascadeDepths() {
+		return cascadeDepths;
+	}
+
+	public long getServiceCurveUpdates() {
+		return serviceCurveUpdates.sum();
+	}
+
+	public long getILSCorrections() {
+		return ilsCorrections.sum();
+	}
+
+	/**
+	 * Resets all the metrics.
+	 */
+	public void reset() {
+		for(Histogram histogram : accessCheckLatencies.values())
+			histogram.reset();
+		acceptedAccessChecks.reset();
+		rejectedAccessChecks.reset();
+		for(LongAdder counter : rejectReasons.values())
+			counter.reset();
+		registrations.reset();
+		deregistrations.reset();
+		cascadeDepths.reset();
+		serviceCurveUpdates.reset();
+		ilsCorrections.reset();
+	}
+
+	@Override
+	public JSONObject toJSONObject() {
+		JSONObject result = super.toJSONObject();
+
+		JSONObject latencies = new JSONObject();
+		for(Map.Entry<ACModel, Histogram> entry : accessCheckLatencies.entrySet())
+			latencies.put(entry.getKey().toString(), entry.getValue().toJSONObject());
+		result.put("Access Check Latencies (ns)", latencies);
+		result.put("Accepted Access Checks", getAcceptedAccessChecks());
+		result.put("Rejected Access Checks", getRejectedAccessChecks());
+
+		JSONObject reasons = new JSONObject();
+		for(Map.Entry<RejectReason, LongAdder> entry : rejectReasons.entrySet())
+			reasons.put(entry.getKey().toString(), entry.getValue().sum());
+		result.put("Reject Reasons", reasons);
+
+		result.put("Registrations", getRegistrations());
+		result.put("Deregistrations", getDeregistrations());
+		result.put("Cascade Depths", cascadeDepths.toJSONObject());
+		result.put("Service Curve Updates", getServiceCurveUpdates());
+		result.put("ILS Corrections", getILSCorrections());
+		return result;
+	}
+}
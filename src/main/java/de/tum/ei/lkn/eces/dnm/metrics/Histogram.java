@@ -0,0 +1,95 @@
+package de.tum.ei.lkn.eces.dnm.metrics;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of non-negative values with power-of-two buckets: bucket i (i > 0) counts the values in
+ * [2^(i-1), 2^i - 1] and bucket 0 counts the zeros. Percentiles are hence only known up to a factor 2.
+ *
+ * @author Amaury Van Bemten
+ */
+public class Histogram {
+	private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value (negative values are recorded as 0).
+	 * @param value the value.
+	 */
+	public void record(long value) {
+		if(value < 0)
+			value = 0;
+		buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+		count.increment();
+		sum.add(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return The mean of the recorded values, 0 if there is none.
+	 */
+	public double getMean() {
+		long n = getCount();
+		return n == 0 ? 0 : ((double) getSum()) / n;
+	}
+
+	/**
+	 * @param percentile the percentile (between 0 and 1).
+	 * @return An upper bound on the given percentile of the recorded values (the upper end of its bucket), 0 if
+	 *         there is no value.
+	 */
+	public long getPercentile(double percentile) {
+		long n = getCount();
+		if(n == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(percentile * n);
+		long seen = 0;
+		for(int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if(seen >= rank && seen > 0)
+				return Math.min(getMax(), (1L << i) - 1);
+		}
+		return getMax();
+	}
+
+	/**
+	 * Forgets all the recorded values.
+	 */
+	public void reset() {
+		for(int i = 0; i < buckets.length(); i++)
+			buckets.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	public JSONObject toJSONObject() {
+		JSONObject result = new JSONObject();
+		result.put("count", getCount());
+		result.put("mean", getMean());
+		result.put("p50", getPercentile(0.5));
+		result.put("p99", getPercentile(0.99));
+		result.put("p999", getPercentile(0.999));
+		result.put("max", getMax());
+		return result;
+	}
+}
@@ -0,0 +1,13 @@
+package de.tum.ei.lkn.eces.dnm.metrics;
+
+/**
+ * The reasons for which an access check can reject a flow.
+ *
+ * @author Amaury Van Bemten
+ */
+public enum RejectReason {
+	DELAY_BOUND, // TBM: the delay bound of a queue would exceed the delay of the queue
+	BACKLOG_BOUND, // TBM: the backlog bound of a queue would exceed the size of the queue
+	MHM_TOKEN_BUCKET, // MHM: the rate or burst of the queue would exceed the allocated token bucket
+	CACHED // the rejection was returned by the admission cache (the original reason is not kept)
+}
@@ -0,0 +1,186 @@
+package de.tum.ei.lkn.eces.dnm.proxies;
+
+import de.tum.ei.lkn.eces.core.ComponentStatus;
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Entity;
+import de.tum.ei.lkn.eces.core.Mapper;
+import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
+import de.tum.ei.lkn.eces.dnm.inputmodels.ResourceUtilization;
+import de.tum.ei.lkn.eces.dnm.queuemodels.QueueModel;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.network.Queue;
+import de.tum.ei.lkn.eces.network.Scheduler;
+import de.tum.ei.lkn.eces.network.mappers.QueueMapper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Memoization of the access control decisions of a DetServProxy.
+ *
+ * During a routing run, the access to a given edge is checked repeatedly for the same request with the same path
+ * parameters. The access decision for a queue only depends on the state of the queues of its scheduler. Each scheduler
+ * hence has a version number, incremented whenever the Scheduler itself (e.g., by a DNMSnapshot restore) or the
+ * ResourceUtilization or QueueModel of one of its queues is updated. The decisions are stored per queue edge and keyed by the physical input edge, the request and the delay so
+ * far (quantized with a configurable resolution). They are dropped as soon as the version of the scheduler changes.
+ *
+ * Probes whose delays so far fall in the same quantization interval share the same decision. The resolution must hence
+ * be small compared to the deadlines. A resolution of 0 only shares decisions between identical delays.
+ *
+ * The cache is thread-safe, so that it can be used with the concurrent admission mode of the proxy.
+ *
+ * @author Amaury Van Bemten
+ */
+public class AdmissionCache extends RootSystem {
+	// Maximum number of decisions stored per queue edge (all of them are dropped when this is reached).
+	private static final int MAX_DECISIONS_PER_EDGE = 4096;
+
+	private Mapper<Queue> queueMapper = new QueueMapper(controller);
+
+	// Resolution used for quantizing the delay so far.
+	private final double delayResolution;
+
+	// Version of each scheduler.
+	private final Map<Scheduler, AtomicLong> versions = new ConcurrentHashMap<>();
+
+	// Decisions stored for each queue edge.
+	private final Map<Edge, EdgeDecisions> decisions = new ConcurrentHashMap<>();
+
+	public AdmissionCache(Controller controller) {
+		this(controller, 0);
+	}
+
+	public AdmissionCache(Controller controller, double delayResolution) {
+		super(controller);
+		if(delayResolution < 0)
+			throw new IllegalArgumentException("The delay resolution cannot be negative");
+		this.delayResolution = delayResolution;
+	}
+
+	/**
+	 * Returns the cached access decision for a queue edge or computes (and stores) it.
+	 * @param scheduler scheduler of the queue edge.
+	 * @param edge queue edge.
+	 * @param physicalInputEdge physical edge from which the flow comes (null if first edge).
+	 * @param requestEntity Entity of the request.
+	 * @param parameters path parameters so far.
+	 * @param accessCheck access check to run if the decision is not cached.
+	 * @return true if the flow can be added.
+	 */
+	public boolean hasAccess(Scheduler scheduler, Edge edge, Edge physicalInputEdge, Entity requestEntity, double[] parameters, BooleanSupplier accessCheck) {
+		long version = getVersion(scheduler).get();
+		EdgeDecisions edgeDecisions = decisions.get(edge);
+		if(edgeDecisions == null || edgeDecisions.version != version || edgeDecisions.decisions.size() >= MAX_DECISIONS_PER_EDGE) {
+			edgeDecisions = new EdgeDecisions(version);
+			decisions.put(edge, edgeDecisions);
+		}
+
+		DecisionKey key = new DecisionKey(physicalInputEdge, requestEntity, quantize(parameters));
+		Boolean decision = edgeDecisions.decisions.get(key);
+		if(decision == null) {
+			decision = accessCheck.getAsBoolean();
+			edgeDecisions.decisions.put(key, decision);
+		}
+
+		return decision;
+	}
+
+	/**
+	 * Drops all the decisions related to the queues of a scheduler.
+	 * @param scheduler the scheduler.
+	 */
+	@ComponentStateIs(State = ComponentStatus.Updated)
+	public void invalidate(Scheduler scheduler) {
+		getVersion(scheduler).incrementAndGet();
+	}
+
+	/**
+	 * Drops all the decisions.
+	 */
+	public void clear() {
+		decisions.clear();
+	}
+
+	@ComponentStateIs(State = ComponentStatus.Updated)
+	public void invalidate(ResourceUtilization resourceUtilization) {
+		invalidate(resourceUtilization.getEntity());
+	}
+
+	@ComponentStateIs(State = ComponentStatus.Updated)
+	public void invalidate(QueueModel queueModel) {
+		invalidate(queueModel.getEntity());
+	}
+
+	/**
+	 * Drops all the decisions related to the scheduler of a queue.
+	 * @param queueEntity Entity of the queue.
+	 */
+	private void invalidate(Entity queueEntity) {
+		if(queueMapper.isIn(queueEntity))
+			invalidate(queueMapper.get(queueEntity).getScheduler());
+	}
+
+	private AtomicLong getVersion(Scheduler scheduler) {
+		return versions.computeIfAbsent(scheduler, s -> new AtomicLong());
+	}
+
+	/**
+	 * @param parameters path parameters so far.
+	 * @return The quantized delay so far (the raw bits if no quantization is used), 0 if there is no parameter.
+	 */
+	private long quantize(double[] parameters) {
+		if(parameters == null || parameters.length == 0)
+			return 0;
+		if(delayResolution == 0)
+			return Double.doubleToLongBits(parameters[0]);
+		return (long) Math.floor(parameters[0] / delayResolution);
+	}
+
+	/**
+	 * Decisions stored for a queue edge for a given version of its scheduler.
+	 */
+	private static class EdgeDecisions {
+		private final long version;
+		private final Map<DecisionKey, Boolean> decisions = new ConcurrentHashMap<>();
+
+		private EdgeDecisions(long version) {
+			this.version = version;
+		}
+	}
+
+	/**
+	 * What an access decision for a given queue edge depends on.
+	 */
+	private static class DecisionKey {
+		private final Edge physicalInputEdge;
+		private final Entity requestEntity;
+		private final long quantizedDelay;
+
+		private DecisionKey(Edge physicalInputEdge, Entity requestEntity, long quantizedDelay) {
+			this.physicalInputEdge = physicalInputEdge;
+			this.requestEntity = requestEntity;
+			this.quantizedDelay = quantizedDelay;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(this == o)
+				return true;
+			if(!(o instanceof DecisionKey))
+				return false;
+			DecisionKey other = (DecisionKey) o;
+			return physicalInputEdge == other.physicalInputEdge && requestEntity == other.requestEntity && quantizedDelay == other.quantizedDelay;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = System.identityHashCode(physicalInputEdge);
+			result = 31 * result + System.identityHashCode(requestEntity);
+			result = 31 * result + Long.hashCode(quantizedDelay);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package de.tum.ei.lkn.eces.dnm.proxies;
+
+import de.tum.ei.lkn.eces.dnm.metrics.RejectReason;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Trace of the access decisions of a DetServProxy.
+ *
+ * One decision out of 'samplingPeriod' is recorded in a ring buffer holding the last 'capacity' recorded decisions.
+ * The events only keep references to the inputs and outputs of the decisions: they are rendered (toString,
+ * toJSONObject) only when read. When no trace is set on the proxy, nothing is recorded or allocated.
+ *
+ * The trace is thread-safe.
+ *
+ * @author Amaury Van Bemten
+ */
+public class DecisionTrace {
+	private final int samplingPeriod;
+	private final AtomicReferenceArray<Event> events;
+	private final AtomicLong decisions = new AtomicLong();
+	private final AtomicLong recordedEvents = new AtomicLong();
+
+	/**
+	 * Creates a trace recording all the decisions.
+	 * @param capacity maximum number of events kept.
+	 */
+	public DecisionTrace(int capacity) {
+		this(capacity, 1);
+	}
+
+	/**
+	 * @param capacity maximum number of events kept.
+	 * @param samplingPeriod one decision out of 'samplingPeriod' is recorded.
+	 */
+	public DecisionTrace(int capacity, int samplingPeriod) {
+		if(capacity <= 0 || samplingPeriod <= 0)
+			throw new IllegalArgumentException("The capacity and the sampling period must be positive");
+		this.samplingPeriod = samplingPeriod;
+		this.events = new AtomicReferenceArray<>(capacity);
+	}
+
+	/**
+	 * Must be called once per decision.
+	 * @return true if the decision must be recorded.
+	 */
+	public boolean sample() {
+		return decisions.getAndIncrement() % samplingPeriod == 0;
+	}
+
+	/**
+	 * Records a sampled decision.
+	 * @param edge queue edge checked.
+	 * @param physicalInputEdge physical edge from which the flow comes (null if first edge).
+	 * @param request the request.
+	 * @param parameters path parameters so far (copied).
+	 * @param accepted the decision.
+	 * @param rejectReason reason of the rejection, null if accepted or unknown (e.g., cached decision).
+	 * @param latency duration of the check (in ns).
+	 */
+	public void record(Edge edge, Edge physicalInputEdge, Request request, double[] parameters, boolean accepted, RejectReason rejectReason, long latency) {
+		long index = recordedEvents.getAndIncrement();
+		events.set((int) (index % events.length()), new Event(index, edge, physicalInputEdge, request, parameters == null ? null : parameters.clone(), accepted, rejectReason, latency));
+	}
+
+	/**
+	 * @return The number of decisions seen (sampled or not).
+	 */
+	public long getDecisions() {
+		return decisions.get();
+	}
+
+	/**
+	 * @return The events currently kept, from the oldest to the most recent.
+	 */
+	public List<Event> getEvents() {
+		List<Event> result = new ArrayList<>(events.length());
+		for(int i = 0; i < events.length(); i++) {
+			Event event = events.get(i);
+			if(event != null)
+				result.add(event);
+		}
+		result.sort((e1, e2) -> Long.compare(e1.index, e2.index));
+		return result;
+	}
+
+	/**
+	 * Forgets all the events.
+	 */
+	public void clear() {
+		for(int i = 0; i < events.length(); i++)
+			events.set(i, null);
+	}
+
+	public JSONObject toJSONObject() {
+		JSONObject result = new JSONObject();
+		result.put("Decisions", getDecisions());
+		result.put("Sampling Period", samplingPeriod);
+		JSONArray eventsJSON = new JSONArray();
+		for(Event event : getEvents())
+			eventsJSON.put(event.toJSONObject());
+		result.put("Events", eventsJSON);
+		return result;
+	}
+
+	/**
+	 * A recorded access decision.
+	 */
+	public static class Event {
+		private final long index;
+		private final Edge edge;
+		private final Edge physicalInputEdge;
+		private final Request request;
+		private final double[] parameters;
+		private final boolean accepted;
+		private final RejectReason rejectReason;
+		private final long latency;
+
+		private Event(long index, Edge edge, Edge physicalInputEdge, Request request, double[] parameters, boolean accepted, RejectReason rejectReason, long latency) {
+			this.index = index;
+			this.edge = edge;
+			this.physicalInputEdge = physicalInputEdge;
+			this.request = request;
+			this.parameters = parameters;
+			this.accepted = accepted;
+			this.rejectReason = rejectReason;
+			this.latency = latency;
+		}
+
+		public Edge getEdge() {
+			return edge;
+		}
+
+		public Edge getPhysicalInputEdge() {
+			return physicalInputEdge;
+		}
+
+		public Request getRequest() {
+			return request;
+		}
+
+		public double[] getParameters() {
+			return parameters;
+		}
+
+		public boolean isAccepted() {
+			return accepted;
+		}
+
+		public RejectReason getRejectReason() {
+			return rejectReason;
+		}
+
+		public long getLatency() {
+			return latency;
+		}
+
+		@Override
+		public String toString() {
+			return "Event{" +
+					"edge=" + edge +
+					", from=" + physicalInputEdge +
+					", request=" + request +
+					", parameters=" + Arrays.toString(parameters) +
+					", accepted=" + accepted +
+					", rejectReason=" + rejectReason +
+					", latency=" + latency +
+					'}';
+		}
+
+		public JSONObject toJSONObject() {
+			JSONObject result = new JSONObject();
+			result.put("Edge", String.valueOf(edge));
+			result.put("From", String.valueOf(physicalInputEdge));
+			result.put("Request", String.valueOf(request));
+			result.put("Parameters", Arrays.toString(parameters));
+			result.put("Accepted", accepted);
+			result.put("Reject Reason", String.valueOf(rejectReason));
+			result.put("Latency (ns)", latency);
+			return result;
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package de.tum.ei.lkn.eces.dnm.proxies;
 
 import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Entity;
 import de.tum.ei.lkn.eces.core.Mapper;
+import de.tum.ei.lkn.eces.dnm.ClosedFormBounds;
 import de.tum.ei.lkn.eces.dnm.NCRequestData;
+import de.tum.ei.lkn.eces.dnm.config.AccessControlEngine;
 import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
 import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
 import de.tum.ei.lkn.eces.dnm.exceptions.DNMException;
@@ -10,8 +13,13 @@ import de.tum.ei.lkn.eces.dnm.inputmodels.PerInEdgeTokenBucketUtilization;
 import de.tum.ei.lkn.eces.dnm.inputmodels.ResourceUtilization;
 import de.tum.ei.lkn.eces.dnm.inputmodels.TokenBucketUtilization;
 import de.tum.ei.lkn.eces.dnm.mappers.*;
+import de.tum.ei.lkn.eces.dnm.metrics.DNMMetrics;
+import de.tum.ei.lkn.eces.dnm.metrics.RejectReason;
 import de.tum.ei.lkn.eces.dnm.queuemodels.MHMQueueModel;
+import de.tum.ei.lkn.eces.dnm.queuemodels.QueueEdgeTable;
 import de.tum.ei.lkn.eces.dnm.queuemodels.QueueModel;
+import de.tum.ei.lkn.eces.dnm.queuemodels.SlackTable;
+import de.tum.ei.lkn.eces.dnm.snapshot.DNMJournal;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.graph.Node;
 import de.tum.ei.lkn.eces.graph.mappers.EdgeMapper;
@@ -26,15 +34,23 @@ import de.tum.ei.lkn.eces.routing.responses.Path;
 import de.uni_kl.cs.discodnc.curves.ArrivalCurve;
 import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
 import de.uni_kl.cs.discodnc.curves.ServiceCurve;
-import de.uni_kl.cs.discodnc.misc.Pair;
 import de.uni_kl.cs.discodnc.nc.bounds.Bound;
 import de.uni_kl.cs.discodnc.numbers.Num;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Proxy implementing the DetServ [1] and Chameleon [2] NC models (TBM includes Silo [3]).
@@ -50,7 +66,20 @@ import java.util.Map;
  * ACM SIGCOMM Computer Communication Review 45, no. 4 (2015): 435-448.
  *
  * The configuration (DetServConfig) of the proxy (model, cost function, etc.) is assumed
- * stored on the Entity of the graph.
+ * stored on the Entity of the graph. The configuration of the last graph used is cached by the proxy: it must not be
+ * replaced while the proxy is in use.
+ *
+ * By default, the proxy is not thread-safe. In concurrent admission mode (see enableConcurrentAdmission), access checks
+ * and (de)registrations lock the schedulers they use (with lock striping), so that flows on disjoint paths can be
+ * handled in parallel. A registration re-checks the access to its whole path under the locks and fails (returns
+ * false) if a concurrent registration took the resources in the meantime.
+ *
+ * An AdmissionCache can be set on the proxy (see setAdmissionCache) to memoize the access decisions of repeated probes
+ * during path search, and DNMMetrics can be set (see setMetrics) to collect metrics about the access checks and
+ * registrations. A DecisionTrace can be set (see setDecisionTrace) to record (sampled) access decisions with their
+ * inputs. The log messages of the access checks are only built if the corresponding log level is enabled. A
+ * DNMJournal can be set (see setJournal) to durably record the (de)registrations. Several candidate paths can be
+ * evaluated in parallel for a flow with evaluatePaths.
  */
 public class DetServProxy extends PathProxy {
     private final Logger logger;
@@ -69,6 +98,34 @@ public class DetServProxy extends PathProxy {
 	private Mapper<MHMQueueModel> MHMQueueModelMapper;
 	private Mapper<DetServConfig> modelingConfigMapper;
 
+	// Relative distance to a limit under which a closed-form bound is not trusted (see closedFormTBMAccessCheck).
+	private static final double CLOSED_FORM_TOLERANCE = 1e-12;
+	// Locks of the concurrent admission mode (null if disabled).
+	private LockStripes lockStripes = null;
+
+	// Parameters when no parameter is used (shared, never modified).
+	private static final double[] NO_PARAMETERS = new double[0];
+
+	// Configuration of the graph last used (null if none yet).
+	private volatile CachedConfig cachedConfig = null;
+
+	// Cache of the access decisions (null if disabled).
+	private AdmissionCache admissionCache = null;
+
+	// Metrics (null if not collected).
+	private DNMMetrics metrics = null;
+
+	// Trace of the access decisions (null if not traced) and reason of the last rejection of each thread (only
+	// maintained when collecting metrics or tracing).
+	private DecisionTrace decisionTrace = null;
+	private final ThreadLocal<RejectReason> lastRejectReason = new ThreadLocal<>();
+
+	// Journal of the (de)registrations (null if not journaled).
+	private DNMJournal journal = null;
+
+	// Pool on which candidate paths are evaluated.
+	private ForkJoinPool evaluationPool = ForkJoinPool.commonPool();
+
     public DetServProxy(Controller controller) {
 		edgeMapper = new EdgeMapper(controller);
 		ncRequestDataMapper = new NCRequestDataMapper(controller);
@@ -85,14 +142,102 @@ public class DetServProxy extends PathProxy {
         logger = Logger.getLogger(this.getClass());
 	}
 
+	/**
+	 * Enables the concurrent admission mode.
+	 * @param numberOfStripes number of locks to which the schedulers are mapped.
+	 */
+	public void enableConcurrentAdmission(int numberOfStripes) {
+		lockStripes = new LockStripes(numberOfStripes);
+	}
+
+	/**
+	 * Disables the concurrent admission mode.
+	 */
+	public void disableConcurrentAdmission() {
+		lockStripes = null;
+	}
+
+	/**
+	 * Sets the cache used to memoize access decisions.
+	 * @param admissionCache the cache, null to disable caching.
+	 */
+	public void setAdmissionCache(AdmissionCache admissionCache) {
+		this.admissionCache = admissionCache;
+	}
+
+	/**
+	 * Sets the object in which metrics are collected.
+	 * @param metrics the metrics, null to stop collecting metrics.
+	 */
+	public void setMetrics(DNMMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sets the trace in which access decisions are recorded.
+	 * @param decisionTrace the trace, null to stop tracing.
+	 */
+	public void setDecisionTrace(DecisionTrace decisionTrace) {
+		this.decisionTrace = decisionTrace;
+	}
+
+	/**
+	 * Sets the journal to which (de)registrations are appended. A (de)registration only returns once its record is
+	 * forced to disk.
+	 * @param journal the journal, null to stop journaling.
+	 */
+	public void setJournal(DNMJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Sets the pool on which candidate paths are evaluated (see evaluatePaths). The common pool is used by default.
+	 * @param evaluationPool the pool.
+	 */
+	public void setEvaluationPool(ForkJoinPool evaluationPool) {
+		this.evaluationPool = evaluationPool;
+	}
+
+	/**
+	 * Keeps the reason of a rejection for the access check being done. It is only recorded (in the metrics and trace)
+	 * by hasAccess, so that the reasons add up to the rejected access checks: the rejections of the batch checks,
+	 * concurrent re-checks and path evaluations are not counted.
+	 * @param rejectReason reason of the rejection.
+	 */
+	private void recordRejection(RejectReason rejectReason) {
+		if(metrics != null || decisionTrace != null)
+			lastRejectReason.set(rejectReason);
+	}
+
 	/**
 	 * @param edge a given edge.
 	 * @return The modeling config for (the graph of) this edge.
 	 */
 	private DetServConfig getConfig(Edge edge) {
-	    return modelingConfigMapper.get(edge.getSource().getGraph().getEntity());
+		Entity graphEntity = edge.getSource().getGraph().getEntity();
+		CachedConfig cached = cachedConfig;
+		if(cached != null && cached.graphEntity == graphEntity)
+			return cached.config;
+
+		DetServConfig config = modelingConfigMapper.get(graphEntity);
+		if(config != null)
+			cachedConfig = new CachedConfig(graphEntity, config);
+		return config;
     }
 
+	/**
+	 * Configuration of a graph. Immutable so that a reader always sees a graph with its own configuration.
+	 */
+	private static final class CachedConfig {
+		private final Entity graphEntity;
+		private final DetServConfig config;
+
+		private CachedConfig(Entity graphEntity, DetServConfig config) {
+			this.graphEntity = graphEntity;
+			this.config = config;
+		}
+	}
+
     /**
      * @param queueEdge a given queue Edge.
      * @return The corresponding physical edge.
@@ -100,24 +245,79 @@ public class DetServProxy extends PathProxy {
     private Edge getPhysicalEdge(Edge queueEdge) {
         if(queueEdge == null)
             return null;
+        QueueEdgeTable.Entry entry = getQueueEdgeTableEntry(queueEdge);
+        if(entry != null)
+            return entry.getPhysicalEdge();
         return linkMapper.getOptimistic(toNetworkMapper.getOptimistic(queueEdge.getEntity()).getNetworkEntity()).getLinkEdge();
     }
 
+    /**
+     * @param queueEdge a given queue Edge.
+     * @return The precomputed values of this queue Edge, null if not available.
+     */
+    private QueueEdgeTable.Entry getQueueEdgeTableEntry(Edge queueEdge) {
+        return getConfig(queueEdge).getQueueEdgeTable().get(queueEdge);
+    }
+
+    /**
+     * @param queueEdge a given queue Edge.
+     * @return The scheduler of this queue Edge.
+     */
+    private Scheduler getScheduler(Edge queueEdge) {
+        return schedulerMapper.getOptimistic(getPhysicalEdge(queueEdge).getEntity());
+    }
+
+    /**
+     * @param path a given Path.
+     * @return The write locks of the schedulers of the path, in locking order.
+     */
+    private List<Lock> getWriteLocks(Path path) {
+        return lockStripes.getWriteLocks(getSchedulers(path));
+    }
+
+    /**
+     * @param path a path.
+     * @return The schedulers of the queues of the path.
+     */
+    private Set<Scheduler> getSchedulers(Path path) {
+        Set<Scheduler> schedulers = new HashSet<>();
+        for(Edge edge : path.getPath())
+            schedulers.add(getScheduler(edge));
+        return schedulers;
+    }
+
     /**
      * @param queueEdge a given queue Edge.
      * @return The worst-case delay for this queue Edge.
      */
     private double getWorstCaseDelay(Edge queueEdge) {
+        QueueEdgeTable.Entry entry = getQueueEdgeTableEntry(queueEdge);
+        if(entry != null)
+            return entry.getQueueDelay();
         return delayMapper.getOptimistic(queueEdge.getEntity()).getDelay();
     }
 
+    /**
+     * @param resourceUtilization the utilization of a queue.
+     * @return The current arrival curve of this queue.
+     */
+    private ArrivalCurve getArrivalCurve(ResourceUtilization resourceUtilization) {
+        if(resourceUtilization instanceof TokenBucketUtilization)
+            return ((TokenBucketUtilization) resourceUtilization).getTokenBucket();
+        else if(resourceUtilization instanceof PerInEdgeTokenBucketUtilization)
+            return ((PerInEdgeTokenBucketUtilization) resourceUtilization).getAggregateArrivalCurve();
+        else
+            throw new DNMException(resourceUtilization.getClass().getTypeName() + " is not supported!");
+    }
+
 	@Override
 	public double[] getNewParameters(Iterable<Edge> iterable, Edge edge, double[] parameters, Request request, boolean isFroward) {
 		/* The proxy just uses zero or one parameter: the delay so far.
 		 *
 		 * We only compute it when used: when the burst increase is computed with the delay so far.
 		 *
-		 * This function returns the delay after 'edge'. */
+		 * This function returns the delay after 'edge'. The routing algorithms keep the returned array in their
+		 * labels, hence a new one per call. The proxy itself accumulates the delay in place (see accumulateDelay). */
 
 	    DetServConfig config = getConfig(edge);
 
@@ -133,12 +333,24 @@ public class DetServProxy extends PathProxy {
 				return  new double[]{ 0.0 };
 		}
 		else
-			return new double[0];
+			return NO_PARAMETERS;
+	}
+
+	/**
+	 * Same as getNewParameters but updates the delay so far in place, for the proxy's own walks along a path.
+	 * @param config configuration of the graph.
+	 * @param previousEdge previous queue edge of the path (null at the first hop).
+	 * @param delaySoFar delay so far (one element), updated to the delay before the next edge.
+	 */
+	private void accumulateDelay(DetServConfig config, Edge previousEdge, double[] delaySoFar) {
+		if(previousEdge != null && (config.getBurstIncrease() == BurstIncreaseModel.REAL || config.getBurstIncrease() == BurstIncreaseModel.WORST_CASE_BURST_REAL_RESERVATION))
+			delaySoFar[0] += getWorstCaseDelay(previousEdge);
 	}
 
 	@Override
 	public boolean hasAccess(Iterable<Edge> iterable, Edge edge, double[] parameters, Request request, boolean isFroward) {
-        logger.info("Checking access to " + edge + " from " + iterable + " for " + request + " with parameters " + Arrays.toString(parameters));
+        if(logger.isInfoEnabled())
+            logger.info("Checking access to " + edge + " from " + iterable + " for " + request + " with parameters " + Arrays.toString(parameters));
 
 		Edge physicalEdge = null;
 		if(iterable != null) {
@@ -147,20 +359,107 @@ public class DetServProxy extends PathProxy {
                 physicalEdge = getPhysicalEdge(iterator.next());
         }
 
-		logger.trace("Computed physical edge: " + physicalEdge);
+		if(logger.isTraceEnabled())
+			logger.trace("Computed physical edge: " + physicalEdge);
+
+		DNMMetrics currentMetrics = metrics;
+		DecisionTrace currentDecisionTrace = decisionTrace;
+		boolean traced = currentDecisionTrace != null && currentDecisionTrace.sample();
+		if(currentMetrics == null && !traced)
+			return lockedAccessCheck(physicalEdge, edge, parameters, request);
+
+		lastRejectReason.set(null);
+		long start = System.nanoTime();
+		boolean accepted = lockedAccessCheck(physicalEdge, edge, parameters, request);
+		long latency = System.nanoTime() - start;
+
+		// No reason if the decision came from the admission cache.
+		RejectReason rejectReason = null;
+		if(!accepted) {
+			rejectReason = lastRejectReason.get();
+			if(rejectReason == null)
+				rejectReason = RejectReason.CACHED;
+		}
 
-		return universalAccessCheck(physicalEdge, edge, parameters, request);
+		if(currentMetrics != null) {
+			currentMetrics.recordAccessCheck(getConfig(edge).getAcModel(), latency, accepted);
+			if(!accepted)
+				currentMetrics.recordRejection(rejectReason);
+		}
+		if(traced)
+			currentDecisionTrace.record(edge, physicalEdge, request, parameters, accepted, rejectReason, latency);
+		return accepted;
 	}
 
-	private boolean universalAccessCheck(Edge physicalInputEdge, Edge edge, double[] parameters, Request request) {
+    /**
+     * Checks whether a flow can be added to a queue, taking the read lock of the scheduler in concurrent admission
+     * mode.
+     * @param physicalEdge physical edge from which the flow comes (null if first edge).
+     * @param edge queue edge.
+     * @param parameters path parameters so far.
+     * @param request the request.
+     * @return true if the flow can be added.
+     */
+	private boolean lockedAccessCheck(Edge physicalEdge, Edge edge, double[] parameters, Request request) {
+		LockStripes currentLockStripes = lockStripes;
+		if(currentLockStripes == null)
+			return cachedAccessCheck(physicalEdge, edge, parameters, request);
+
+		Lock lock = currentLockStripes.getReadLock(getScheduler(edge));
+		lock.lock();
+		try {
+			return cachedAccessCheck(physicalEdge, edge, parameters, request);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+    /**
+     * Checks whether a flow can be added to a queue, using the admission cache if there is one.
+     *
+     * If the scheduler of the queue is dirty (i.e., its service curve updates are coalesced, see
+     * DNMSystem.startCoalescedUpdates), the stored service curves and slack of its lower priority queues are out of
+     * date: the access is then checked from the highest priority queue on, without the cache.
+     * @param physicalInputEdge physical edge from which the flow comes (null if first edge).
+     * @param edge queue edge.
+     * @param parameters path parameters so far.
+     * @param request the request.
+     * @return true if the flow can be added.
+     */
+	private boolean cachedAccessCheck(Edge physicalInputEdge, Edge edge, double[] parameters, Request request) {
+		if(getConfig(edge).getDirtySchedulers().contains(getScheduler(edge)))
+			return universalAccessCheck(physicalInputEdge, edge, parameters, ncRequestDataMapper.get(request.getEntity()), true);
+
+		AdmissionCache currentAdmissionCache = admissionCache;
+		if(currentAdmissionCache == null)
+			return universalAccessCheck(physicalInputEdge, edge, parameters, ncRequestDataMapper.get(request.getEntity()), false);
+
+		return currentAdmissionCache.hasAccess(getScheduler(edge), edge, physicalInputEdge, request.getEntity(), parameters,
+				() -> universalAccessCheck(physicalInputEdge, edge, parameters, ncRequestDataMapper.get(request.getEntity()), false));
+	}
+
+    /**
+     * Checks whether a flow can be added to a queue.
+     * @param physicalInputEdge physical edge from which the flow comes (null if first edge).
+     * @param edge queue edge.
+     * @param parameters path parameters so far.
+     * @param ncRequestData description of the flow.
+     * @param fromFirstQueue true if the service curves of the queues must be recomputed from the highest priority
+     *                       queue on, false if the stored service curve of the target queue can be trusted (i.e., if
+     *                       the service curves are up to date with the utilizations).
+     * @return true if the flow can be added.
+     */
+	private boolean universalAccessCheck(Edge physicalInputEdge, Edge edge, double[] parameters, NCRequestData ncRequestData, boolean fromFirstQueue) {
         DetServConfig config = getConfig(edge);
-        NCRequestData ncRequestData = ncRequestDataMapper.get(request.getEntity());
         ArrivalCurve requestTokenBucket = ncRequestData.getTb();
 
-        logger.debug("Request: b=" + requestTokenBucket.getBurst() + " r=" + requestTokenBucket.getUltAffineRate());
+        if(logger.isDebugEnabled())
+            logger.debug("Request: b=" + requestTokenBucket.getBurst() + " r=" + requestTokenBucket.getUltAffineRate());
 
         // Add burst increase
-        logger.debug("Burst increase configuration: " + config.getBurstIncrease());
+        if(logger.isDebugEnabled())
+            logger.debug("Burst increase configuration: " + config.getBurstIncrease());
         Num burstIncrease = null;
         if(config.getBurstIncrease() == BurstIncreaseModel.WORST_CASE_BURST || config.getBurstIncrease() == BurstIncreaseModel.WORST_CASE_BURST_REAL_RESERVATION) {
             // If it's the first edge, don't consider that burst increased
@@ -177,8 +476,10 @@ public class DetServProxy extends PathProxy {
         else
             requestTokenBucket = CurvePwAffine.add(requestTokenBucket, burstIncrease);
 
-        logger.debug("Physical input edge: " + physicalInputEdge);
-        logger.debug("Burst increase: " + burstIncrease);
+        if(logger.isDebugEnabled()) {
+            logger.debug("Physical input edge: " + physicalInputEdge);
+            logger.debug("Burst increase: " + burstIncrease);
+        }
 
 		// For all reservation stuff, we use the current physical edge as input edge if there is no previous edge
 		if(physicalInputEdge == null)
@@ -186,16 +487,16 @@ public class DetServProxy extends PathProxy {
 
 		switch(config.getAcModel()) {
 			case MHM: {
-				Num currentBurstUsage = ((TokenBucketUtilization) this.resourceUtilizationMapper.getOptimistic(edge.getEntity())).getBurst();
-				Num currentRateUsage = ((TokenBucketUtilization) this.resourceUtilizationMapper.getOptimistic(edge.getEntity())).getRate();
 				ArrivalCurve maxQueueUsage = this.MHMQueueModelMapper.getOptimistic(edge.getEntity()).getMaximumTokenBucket();
-				ArrivalCurve currentQueueUsage = CurvePwAffine.getFactory().createTokenBucket(currentRateUsage, currentBurstUsage);
-
-				logger.debug("MHM: Current usage: " + currentQueueUsage);
-				logger.debug("MHM: Request TB: " + requestTokenBucket);
-				logger.debug("MHM: Max usage: " + maxQueueUsage);
-				logger.debug(Num.getFactory().add(currentQueueUsage.getUltAffineRate(), requestTokenBucket.getUltAffineRate()));
-                logger.debug(Num.getFactory().add(currentQueueUsage.getBurst(), requestTokenBucket.getBurst()));
+				ArrivalCurve currentQueueUsage = ((TokenBucketUtilization) this.resourceUtilizationMapper.getOptimistic(edge.getEntity())).getTokenBucket();
+
+				if(logger.isDebugEnabled()) {
+					logger.debug("MHM: Current usage: " + currentQueueUsage);
+					logger.debug("MHM: Request TB: " + requestTokenBucket);
+					logger.debug("MHM: Max usage: " + maxQueueUsage);
+					logger.debug(Num.getFactory().add(currentQueueUsage.getUltAffineRate(), requestTokenBucket.getUltAffineRate()));
+					logger.debug(Num.getFactory().add(currentQueueUsage.getBurst(), requestTokenBucket.getBurst()));
+				}
 
 				if(Num.getFactory().add(currentQueueUsage.getUltAffineRate(), requestTokenBucket.getUltAffineRate()).leq(maxQueueUsage.getUltAffineRate()) &&
 						Num.getFactory().add(currentQueueUsage.getBurst(), requestTokenBucket.getBurst()).leq(maxQueueUsage.getBurst())) {
@@ -203,7 +504,9 @@ public class DetServProxy extends PathProxy {
 					return true;
 				}
 				else {
-					logger.info(String.format("Maximum burst or rate violated: %s + %s > %s OR %s + %s > %s", currentQueueUsage.getUltAffineRate(), requestTokenBucket.getUltAffineRate(), maxQueueUsage.getUltAffineRate(), currentQueueUsage.getBurst(), requestTokenBucket.getBurst(), maxQueueUsage.getBurst()));
+					recordRejection(RejectReason.MHM_TOKEN_BUCKET);
+					if(logger.isInfoEnabled())
+						logger.info(String.format("Maximum burst or rate violated: %s + %s > %s OR %s + %s > %s", currentQueueUsage.getUltAffineRate(), requestTokenBucket.getUltAffineRate(), maxQueueUsage.getUltAffineRate(), currentQueueUsage.getBurst(), requestTokenBucket.getBurst(), maxQueueUsage.getBurst()));
 					return false;
 				}
             }
@@ -213,6 +516,39 @@ public class DetServProxy extends PathProxy {
 				if (!(scheduler instanceof PriorityScheduler))
                     throw new DNMException("Scheduler of type " + scheduler.getClass().getTypeName() + " is not supported");
 
+				// The slack of the queue is computed from the utilizations, it can be used if the service curves can be trusted.
+				if(config.getAccessControlEngine() == AccessControlEngine.SLACK && !config.isInputLinkShaping() && !fromFirstQueue) {
+					SlackTable.Slack slack = config.getSlackTable().get(edge);
+					if(slack != null) {
+						double requestRate = requestTokenBucket.getUltAffineRate().doubleValue();
+						double requestBurst = requestTokenBucket.getBurst().doubleValue();
+						switch(slack.decide(requestRate, requestBurst)) {
+							case ACCEPT:
+								logger.debug("Access granted by the slack of the queue!");
+								return true;
+							case REJECT:
+								if(logger.isDebugEnabled())
+									logger.debug("Slack of the queue (" + slack + ") is exceeded, access denied!");
+								recordRejection(slack.getRejectReason(requestRate, requestBurst));
+								return false;
+							default:
+								break;
+						}
+					}
+				}
+
+				// Without ILS, all the curves are token buckets and rate-latency curves: closed-form can be used.
+				if((config.getAccessControlEngine() == AccessControlEngine.CLOSED_FORM || config.getAccessControlEngine() == AccessControlEngine.SLACK) && !config.isInputLinkShaping()) {
+					Entity firstCheckedQueue = fromFirstQueue ? scheduler.getQueues()[0].getEntity() : edge.getEntity();
+					ServiceCurve firstServiceCurve = this.queueModelMapper.getOptimistic(firstCheckedQueue).getServiceCurve();
+					if(firstServiceCurve.isRateLatency()) {
+						Boolean decision = closedFormTBMAccessCheck(scheduler, edge, fromFirstQueue, firstServiceCurve, requestTokenBucket.getUltAffineRate().doubleValue(), requestTokenBucket.getBurst().doubleValue());
+						if(decision != null)
+							return decision;
+						logger.debug("A bound is too close to its limit for the closed-form engine, using DiscoDNC");
+					}
+				}
+
 				// Whether we reached the queue where the flow is to be added or not
                 boolean reachedTargetQueue = false;
                 // Whether we are checking the queue where the flow is to be added (true), or lower priority ones (false)
@@ -221,14 +557,24 @@ public class DetServProxy extends PathProxy {
                 for (int i = 0; i < scheduler.getQueues().length; i++) {
                     // Looping from high priority to low waiting for the queue to check.
                     if (!reachedTargetQueue) {
-                        if(scheduler.getQueues()[i].getEntity() != edge.getEntity())
+                        if(scheduler.getQueues()[i].getEntity() != edge.getEntity()) {
+                            if(fromFirstQueue) {
+                                // Higher priority queues are not checked, but their service curves are recomputed.
+                                if(serviceCurve == null)
+                                    serviceCurve = this.queueModelMapper.getOptimistic(scheduler.getQueues()[i].getEntity()).getServiceCurve();
+                                serviceCurve = config.getResidualMode().getResidualServiceCurve(serviceCurve, getArrivalCurve(this.resourceUtilizationMapper.getOptimistic(scheduler.getQueues()[i].getEntity())));
+                            }
                             continue;
-                        else
+                        }
+                        else {
                             reachedTargetQueue = true;
-                            serviceCurve = this.queueModelMapper.getOptimistic(edge.getEntity()).getServiceCurve();
+                            if(serviceCurve == null)
+                                serviceCurve = this.queueModelMapper.getOptimistic(edge.getEntity()).getServiceCurve();
+                        }
                     }
 
-                    logger.debug("Checking queue " + i + " (target queue: " + checkingTheTargetQueue + ")");
+                    if(logger.isDebugEnabled())
+                        logger.debug("Checking queue " + i + " (target queue: " + checkingTheTargetQueue + ")");
 
                     // Computing the arrival curve for the current queue.
                     ResourceUtilization currentQueueUtilization = this.resourceUtilizationMapper.getOptimistic(scheduler.getQueues()[i].getEntity());
@@ -236,73 +582,70 @@ public class DetServProxy extends PathProxy {
                     if (currentQueueUtilization instanceof TokenBucketUtilization) {
                         if (checkingTheTargetQueue) {
                             // Add flow curve to the current utilization of the target queue.
-                            currentQueueArrivalCurve = CurvePwAffine.add(requestTokenBucket, CurvePwAffine.getFactory().createTokenBucket(((TokenBucketUtilization) currentQueueUtilization).getRate(), ((TokenBucketUtilization) currentQueueUtilization).getBurst()));
+                            currentQueueArrivalCurve = CurvePwAffine.add(requestTokenBucket, ((TokenBucketUtilization) currentQueueUtilization).getTokenBucket());
                             checkingTheTargetQueue = false;
                         }
                         else {
                             // For other queues, arrival curve is the already existing one.
-                            currentQueueArrivalCurve = CurvePwAffine.getFactory().createTokenBucket(((TokenBucketUtilization) currentQueueUtilization).getRate(), ((TokenBucketUtilization) currentQueueUtilization).getBurst());
+                            currentQueueArrivalCurve = getArrivalCurve(currentQueueUtilization);
                         }
                     }
                     else if(currentQueueUtilization instanceof PerInEdgeTokenBucketUtilization) {
-                        // We compute all the shaped arrival curves for each incoming edge.
-                        LinkedList<ArrivalCurve> shapedIncomingArrivalCurves = new LinkedList<>();
-
-                        boolean physicalInputEdgeIsInResourceMap = false;
-                        for(Map.Entry<Edge, Pair<Num>> currentIncomingEdgeEntry : ((PerInEdgeTokenBucketUtilization) currentQueueUtilization).getTokenBuckets()) {
-                            Pair<Num> incomingTbForCurrentEdge = currentIncomingEdgeEntry.getValue();
-							ArrivalCurve incomingEdgeArrivalCurve = CurvePwAffine.getFactory().createTokenBucket(incomingTbForCurrentEdge.getFirst(), incomingTbForCurrentEdge.getSecond());
-							Edge currentIncomingEdge = currentIncomingEdgeEntry.getKey();
-
-							ArrivalCurve unshapedTbForCurrentEdge = null;
-                            if (checkingTheTargetQueue && currentIncomingEdge == physicalInputEdge) {
-                                // Add flow curve to the current utilization of the target queue and for the correct input link.
-								unshapedTbForCurrentEdge = CurvePwAffine.add(incomingEdgeArrivalCurve, requestTokenBucket);
-								physicalInputEdgeIsInResourceMap = true;
-                            } else {
-                                // For other queues, arrival curve is the already existing one.
-                                unshapedTbForCurrentEdge = incomingEdgeArrivalCurve;
+                        // Aggregate shaped arrival curve (traffic coming from the node itself is not shaped).
+                        if (checkingTheTargetQueue) {
+                            PerInEdgeTokenBucketUtilization targetQueueUtilization = (PerInEdgeTokenBucketUtilization) currentQueueUtilization;
+                            if(serviceCurve.isRateLatency()) {
+                                // Bounds computed on the cached aggregate, where only the term of the input link of the flow changes.
+                                double R = serviceCurve.getUltAffineRate().doubleValue();
+                                double T = serviceCurve.getLatency().doubleValue();
+                                double requestRate = requestTokenBucket.getUltAffineRate().doubleValue();
+                                double requestBurst = requestTokenBucket.getBurst().doubleValue();
+                                if(targetQueueUtilization.getDelayBound(physicalInputEdge, requestRate, requestBurst, R, T) >= getWorstCaseDelay(edgeMapper.get(scheduler.getQueues()[i].getEntity()))) {
+                                    logger.debug("Delay bound is exceeded for this queue, access denied!");
+                                    recordRejection(RejectReason.DELAY_BOUND);
+                                    return false;
+                                }
+                                if(targetQueueUtilization.getBacklogBound(physicalInputEdge, requestRate, requestBurst, R, T) >= scheduler.getQueues()[i].getSize()) {
+                                    logger.debug("Backlog bound is exceeded for this queue, access denied!");
+                                    recordRejection(RejectReason.BACKLOG_BOUND);
+                                    return false;
+                                }
+                                checkingTheTargetQueue = false;
+
+                                // The curve is only created if lower priority queues need the residual service curve.
+                                if(i < scheduler.getQueues().length - 1)
+                                    serviceCurve = config.getResidualMode().getResidualServiceCurve(serviceCurve, targetQueueUtilization.getAggregateArrivalCurve(physicalInputEdge, requestTokenBucket.getUltAffineRate(), requestTokenBucket.getBurst()));
+                                continue;
                             }
 
-                            // Add the arrival curve shaped with input link rate
-							// Except if traffic is local: then no shaping.
-                            if(currentIncomingEdge == getPhysicalEdge(edge))
-                                shapedIncomingArrivalCurves.add(unshapedTbForCurrentEdge);
-                            else
-                                shapedIncomingArrivalCurves.add(CurvePwAffine.min(CurvePwAffine.getFactory().createTokenBucket(rateMapper.getOptimistic(currentIncomingEdge.getEntity()).getRate(), config.getMaximumPacketSize()), unshapedTbForCurrentEdge));
+                            // Only the term of the input link of the flow changes.
+                            currentQueueArrivalCurve = targetQueueUtilization.getAggregateArrivalCurve(physicalInputEdge, requestTokenBucket.getUltAffineRate(), requestTokenBucket.getBurst());
+                        }
+                        else {
+                            currentQueueArrivalCurve = getArrivalCurve(currentQueueUtilization);
                         }
-
-                        /* If the physical input edge was not in the map, the request token bucket was not added yet.
-                         * Hence, we add it now (and shape it if it's not local traffic)
-                         */
-						if(!physicalInputEdgeIsInResourceMap && checkingTheTargetQueue) {
-							if(physicalInputEdge == getPhysicalEdge(edge))
-								shapedIncomingArrivalCurves.add(requestTokenBucket);
-							else
-								shapedIncomingArrivalCurves.add(CurvePwAffine.min(CurvePwAffine.getFactory().createTokenBucket(rateMapper.getOptimistic(physicalInputEdge.getEntity()).getRate(), config.getMaximumPacketSize()), requestTokenBucket));
-						}
-
-                        currentQueueArrivalCurve = CurvePwAffine.getFactory().createTokenBucket(0, 0);
-                        for(ArrivalCurve curve : shapedIncomingArrivalCurves)
-							currentQueueArrivalCurve = CurvePwAffine.add(currentQueueArrivalCurve, curve);
                     }
                     else
                         throw new DNMException(currentQueueUtilization.getClass().getTypeName() + " is not supported!");
 
-                    logger.debug("Arrival curve: " + currentQueueArrivalCurve);
-                    logger.debug("Service curve: " + serviceCurve);
-                    logger.debug("Buffer limit: " + scheduler.getQueues()[i].getSize());
-                    logger.debug("Delay limit: " + getWorstCaseDelay(edgeMapper.get(scheduler.getQueues()[i].getEntity())));
+                    if(logger.isDebugEnabled()) {
+                        logger.debug("Arrival curve: " + currentQueueArrivalCurve);
+                        logger.debug("Service curve: " + serviceCurve);
+                        logger.debug("Buffer limit: " + scheduler.getQueues()[i].getSize());
+                        logger.debug("Delay limit: " + getWorstCaseDelay(edgeMapper.get(scheduler.getQueues()[i].getEntity())));
+                    }
 
                     Num delayBound = Bound.delayFIFO(currentQueueArrivalCurve, serviceCurve);
                     if(delayBound.geq(Num.getFactory().create(getWorstCaseDelay(edgeMapper.get(scheduler.getQueues()[i].getEntity()))))) {
 						logger.debug("Delay bound is exceeded for this queue, access denied!");
+						recordRejection(RejectReason.DELAY_BOUND);
 						return false;
 					}
 
 					Num backlogBound = Bound.backlog(currentQueueArrivalCurve, serviceCurve);
 					if(backlogBound.geq(Num.getFactory().create(scheduler.getQueues()[i].getSize()))) {
 						logger.debug("Backlog bound is exceeded for this queue, access denied!");
+						recordRejection(RejectReason.BACKLOG_BOUND);
 						return false;
 					}
 
@@ -324,18 +667,112 @@ public class DetServProxy extends PathProxy {
 		}
 	}
 
+    /**
+     * TBM access check relying only on closed-form results on primitive doubles.
+     * Only valid if all queues starting from the target one use a TokenBucketUtilization and if the service curve of
+     * the target queue is a rate-latency curve (then, the service curves of the lower priority ones also are).
+     *
+     * The bounds may differ from the ones of DiscoDNC in the last bits. When a bound is within a relative
+     * CLOSED_FORM_TOLERANCE of its limit, the check is left undecided so that DiscoDNC decides it: the decisions are
+     * then the same as the ones of the DiscoDNC engine.
+     * @param scheduler scheduler of the target queue.
+     * @param edge target queue edge.
+     * @param fromFirstQueue true if the service curves must be recomputed from the highest priority queue on.
+     * @param firstServiceCurve service curve of the first queue considered (highest priority queue or target queue).
+     * @param requestRate rate of the request (including burst increase).
+     * @param requestBurst burst of the request (including burst increase).
+     * @return true if the flow can be added to the target queue, null if a bound is too close to its limit.
+     */
+	private Boolean closedFormTBMAccessCheck(Scheduler scheduler, Edge edge, boolean fromFirstQueue, ServiceCurve firstServiceCurve, double requestRate, double requestBurst) {
+		Queue[] queues = scheduler.getQueues();
+
+		// Looping from high priority to low waiting for the queue to check.
+		int targetQueue = 0;
+		while(queues[targetQueue].getEntity() != edge.getEntity())
+			targetQueue++;
+
+		double R = firstServiceCurve.getUltAffineRate().doubleValue();
+		double T = firstServiceCurve.getLatency().doubleValue();
+		for(int i = fromFirstQueue ? 0 : targetQueue; i < queues.length; i++) {
+			ResourceUtilization currentQueueUtilization = this.resourceUtilizationMapper.getOptimistic(queues[i].getEntity());
+			if(!(currentQueueUtilization instanceof TokenBucketUtilization))
+				throw new DNMException(currentQueueUtilization.getClass().getTypeName() + " is not supported by the closed-form access control!");
+
+			double r = ((TokenBucketUtilization) currentQueueUtilization).getRateValue();
+			double b = ((TokenBucketUtilization) currentQueueUtilization).getBurstValue();
+			if(i == targetQueue) {
+				// Add flow curve to the current utilization of the target queue.
+				r = requestRate + r;
+				b = requestBurst + b;
+			}
+
+			// Higher priority queues are not checked, only their left-over service is computed.
+			if(i >= targetQueue) {
+				double delayBound = ClosedFormBounds.delay(r, b, R, T);
+				double delayLimit = delayMapper.getOptimistic(queues[i].getEntity()).getDelay();
+				double backlogBound = ClosedFormBounds.backlog(r, b, R, T);
+				double backlogLimit = queues[i].getSize();
+				if(isCloseToLimit(delayBound, delayLimit) || isCloseToLimit(backlogBound, backlogLimit))
+					return null;
+
+				if(delayBound >= delayLimit) {
+					if(logger.isDebugEnabled())
+						logger.debug("Delay bound is exceeded for queue " + i + ", access denied!");
+					recordRejection(RejectReason.DELAY_BOUND);
+					return false;
+				}
+
+				if(backlogBound >= backlogLimit) {
+					if(logger.isDebugEnabled())
+						logger.debug("Backlog bound is exceeded for queue " + i + ", access denied!");
+					recordRejection(RejectReason.BACKLOG_BOUND);
+					return false;
+				}
+			}
+
+			// Getting curve of next queue (cannot use the existing one as it has changed with the new flow)
+			double nextT = ClosedFormBounds.leftOverLatency(r, b, R, T);
+			R = ClosedFormBounds.leftOverRate(r, b, R, T);
+			T = nextT;
+		}
+
+		logger.debug("Access granted!");
+		return true;
+	}
+
+	/**
+	 * @param bound a closed-form bound.
+	 * @param limit the limit it is compared to.
+	 * @return true if the bound is within a relative CLOSED_FORM_TOLERANCE of the limit.
+	 */
+	private static boolean isCloseToLimit(double bound, double limit) {
+		return Math.abs(bound - limit) <= CLOSED_FORM_TOLERANCE * Math.abs(limit);
+	}
+
 	@Override
 	public double getCost(Iterable<Edge> iterable, Edge edge, double[] parameters, Request request, boolean isFroward) {
         DetServConfig config = getConfig(edge);
-        logger.trace("Computing cost with config " + config.getCostModel());
+        if(logger.isTraceEnabled())
+            logger.trace("Computing cost with config " + config.getCostModel());
         double cost = config.getCostModel().getCost(iterable, edge, parameters, request, isFroward);
-        logger.trace("Cost: " + cost);
+        if(logger.isTraceEnabled())
+            logger.trace("Cost: " + cost);
         return cost;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * When the values of the edge are precomputed (QueueEdgeTable), the returned array is shared: it is read-only and
+	 * must not be modified by the caller.
+	 */
 	@Override
 	public double[] getConstraintsValues(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean isFroward) {
-    	logger.trace("Getting constraints values");
+        logger.trace("Getting constraints values");
+		QueueEdgeTable.Entry entry = getQueueEdgeTableEntry(edge);
+		if(entry != null)
+			return entry.getConstraintsValues();
+
     	double delayFromQueueEdge = delayMapper.getOptimistic(edge.getEntity()).getDelay();
     	double delayFromLinkEdge = delayMapper.getOptimistic(
 				linkMapper.getOptimistic(
@@ -343,7 +780,8 @@ public class DetServProxy extends PathProxy {
 				).getLinkEdge().getEntity()
 		).getDelay();
 		double[] result = new double[]{delayFromQueueEdge + delayFromLinkEdge};
-		logger.trace("Got " + delayFromQueueEdge + " + " + delayFromLinkEdge + " = " + Arrays.toString(result) + " from the delay components attached to the queue and link edges");
+		if(logger.isTraceEnabled())
+			logger.trace("Got " + delayFromQueueEdge + " + " + delayFromLinkEdge + " = " + Arrays.toString(result) + " from the delay components attached to the queue and link edges");
 		return result;
 	}
 
@@ -361,45 +799,259 @@ public class DetServProxy extends PathProxy {
 
 	@Override
 	public boolean register(Path path, Request request) {
-		return registerDeregister(path, request, true);
+		if(lockStripes == null)
+			return registerDeregister(path, request, ncRequestDataMapper.getOptimistic(request.getEntity()), true, null) && awaitJournal();
+
+		List<Lock> locks = getWriteLocks(path);
+		LockStripes.lockAll(locks);
+		try {
+			// The path was checked without the locks: another flow might have been registered since then.
+			FlowReservation reservation = new FlowReservation(request, ncRequestDataMapper.getOptimistic(request.getEntity()), path);
+			if(!hasAccess(reservation)) {
+				if(logger.isInfoEnabled())
+					logger.info("Concurrent admission: " + reservation + " does not fit anymore, registration refused");
+				return false;
+			}
+
+			registerDeregister(path, request, reservation.getNcRequestData(), true, null);
+		}
+		finally {
+			LockStripes.unlockAll(locks);
+		}
+		return awaitJournal();
 	}
 
 	@Override
 	public boolean deregister(Path path, Request request) {
-		return registerDeregister(path, request, false);
+		if(lockStripes == null)
+			return registerDeregister(path, request, ncRequestDataMapper.getOptimistic(request.getEntity()), false, null) && awaitJournal();
+
+		List<Lock> locks = getWriteLocks(path);
+		LockStripes.lockAll(locks);
+		try {
+			registerDeregister(path, request, ncRequestDataMapper.getOptimistic(request.getEntity()), false, null);
+		}
+		finally {
+			LockStripes.unlockAll(locks);
+		}
+		return awaitJournal();
+	}
+
+	/**
+	 * Waits until the journal records appended so far are forced to disk. Records are appended while holding the
+	 * locks of the schedulers of the path but waited for once these locks are released, so that concurrent callers
+	 * can join the same group commit.
+	 * @return always returns true except in case of RuntimeException.
+	 */
+	private boolean awaitJournal() {
+		DNMJournal currentJournal = journal;
+		if(currentJournal != null)
+			currentJournal.awaitDurable();
+		return true;
+	}
+
+	/**
+	 * Admits a batch of flows on given paths.
+	 *
+	 * The flows are checked one after the other (in the order of the list) against the delay and backlog bounds of
+	 * the queues of their path, taking into account the flows of the batch accepted before them. The accepted flows
+	 * are registered, but the service curves of lower priority queues are only recomputed once per touched scheduler,
+	 * at the end of the batch, instead of once per flow.
+	 *
+	 * As for flows registered one by one, the NCRequestData of a flow must be attached to the entity of its request
+	 * for the flow to be later deregistered.
+	 * @param reservations the flows to admit.
+	 * @return the accepted (and registered) flows.
+	 */
+	public List<FlowReservation> registerAll(List<FlowReservation> reservations) {
+		List<FlowReservation> acceptedReservations;
+		if(lockStripes == null) {
+			acceptedReservations = registerAllUnlocked(reservations);
+		}
+		else {
+			List<Lock> locks = lockStripes.getAllWriteLocks();
+			LockStripes.lockAll(locks);
+			try {
+				acceptedReservations = registerAllUnlocked(reservations);
+			}
+			finally {
+				LockStripes.unlockAll(locks);
+			}
+		}
+		awaitJournal();
+		return acceptedReservations;
+	}
+
+	private List<FlowReservation> registerAllUnlocked(List<FlowReservation> reservations) {
+		List<FlowReservation> acceptedReservations = new LinkedList<>();
+		// For each touched scheduler, highest priority queue whose utilization changed.
+		Map<Scheduler, Integer> touchedSchedulers = new HashMap<>();
+
+		for(FlowReservation reservation : reservations) {
+			if(hasAccess(reservation)) {
+				registerDeregister(reservation.getPath(), reservation.getRequest(), reservation.getNcRequestData(), true, touchedSchedulers);
+				acceptedReservations.add(reservation);
+			}
+			else if(logger.isInfoEnabled()) {
+				logger.info("Batch admission: " + reservation + " rejected");
+			}
+		}
+
+		// The listeners recompute the service curves starting from the highest priority touched queue.
+		for(Map.Entry<Scheduler, Integer> touchedScheduler : touchedSchedulers.entrySet()) {
+			ResourceUtilization resourceUtilization = resourceUtilizationMapper.getOptimistic(touchedScheduler.getKey().getQueues()[touchedScheduler.getValue()].getEntity());
+			resourceUtilizationMapper.updateComponent(resourceUtilization, () -> {});
+		}
+
+		if(logger.isInfoEnabled())
+			logger.info("Batch admission: " + acceptedReservations.size() + "/" + reservations.size() + " flows accepted");
+		return acceptedReservations;
+	}
+
+	/**
+	 * Checks whether a flow can use all the queues of its path.
+	 * As service curves might not be up to date with the utilizations (during a batch), the service curves are
+	 * recomputed from the highest priority queue on.
+	 * @param reservation the flow and its path.
+	 * @return true if the flow can be accepted.
+	 */
+	private boolean hasAccess(FlowReservation reservation) {
+		DetServConfig config = getConfig(reservation.getPath().getPath()[0]);
+		double[] parameters = new double[]{0.0};
+		Edge previousEdge = null;
+
+		for(Edge edge : reservation.getPath().getPath()) {
+			accumulateDelay(config, previousEdge, parameters);
+
+			if(!universalAccessCheck(getPhysicalEdge(previousEdge), edge, parameters, reservation.getNcRequestData(), true))
+				return false;
+
+			previousEdge = edge;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Evaluates, in parallel, the admission of a flow on several candidate paths (what-if: nothing is registered).
+	 *
+	 * Each candidate is checked end-to-end (access to all its queues and end-to-end delay within the deadline) as
+	 * a single task of the evaluation pool (see setEvaluationPool). In concurrent admission mode, a task holds the read
+	 * locks of the schedulers of its path, so that it sees a consistent state. Otherwise, the state must not be
+	 * modified during the evaluation.
+	 * @param candidates the candidate paths.
+	 * @param request the request.
+	 * @param ncRequestData the description of the flow.
+	 * @return The feasible candidates, from the lowest to the highest cost.
+	 */
+	public List<PathEvaluation> evaluatePaths(List<Path> candidates, Request request, NCRequestData ncRequestData) {
+		List<ForkJoinTask<PathEvaluation>> tasks = new ArrayList<>(candidates.size());
+		for(Path candidate : candidates)
+			tasks.add(evaluationPool.submit(() -> evaluatePath(candidate, request, ncRequestData)));
+
+		List<PathEvaluation> result = new ArrayList<>(candidates.size());
+		for(ForkJoinTask<PathEvaluation> task : tasks) {
+			PathEvaluation evaluation = task.join();
+			if(evaluation != null)
+				result.add(evaluation);
+		}
+
+		result.sort(Comparator.comparingDouble(PathEvaluation::getCost));
+		return result;
+	}
+
+	/**
+	 * @param path a candidate path.
+	 * @param request the request.
+	 * @param ncRequestData the description of the flow.
+	 * @return The evaluation of the path, null if the flow cannot use it.
+	 */
+	private PathEvaluation evaluatePath(Path path, Request request, NCRequestData ncRequestData) {
+		LockStripes currentLockStripes = lockStripes;
+		if(currentLockStripes == null)
+			return evaluatePathUnlocked(path, request, ncRequestData);
+
+		List<Lock> locks = currentLockStripes.getReadLocks(getSchedulers(path));
+		LockStripes.lockAll(locks);
+		try {
+			return evaluatePathUnlocked(path, request, ncRequestData);
+		}
+		finally {
+			LockStripes.unlockAll(locks);
+		}
+	}
+
+	private PathEvaluation evaluatePathUnlocked(Path path, Request request, NCRequestData ncRequestData) {
+		DetServConfig config = getConfig(path.getPath()[0]);
+		LinkedList<Edge> pathSoFar = null;
+		double[] parameters = new double[]{0.0};
+		Edge previousEdge = null;
+		double cost = 0;
+		double delay = 0;
+
+		for(Edge edge : path.getPath()) {
+			accumulateDelay(config, previousEdge, parameters);
+
+			if(!universalAccessCheck(getPhysicalEdge(previousEdge), edge, parameters, ncRequestData, true))
+				return null;
+
+			cost += config.getCostModel().getCost(pathSoFar, edge, parameters, request, true);
+			delay += getConstraintsValues(pathSoFar, edge, parameters, request, true)[0];
+
+			if(pathSoFar == null)
+				pathSoFar = new LinkedList<>();
+			pathSoFar.addFirst(edge);
+			previousEdge = edge;
+		}
+
+		if(delay > ncRequestData.getDeadline().doubleValue())
+			return null;
+
+		return new PathEvaluation(path, cost, delay);
 	}
 
     /**
      * Registers or deregisters a request from a path.
      * @param path the Path.
      * @param request the Request.
+     * @param ncRequestData the description of the flow.
      * @param register true if to be registered, false if to be deregistered.
+     * @param touchedSchedulers null if the listeners must be triggered directly. Otherwise, the listeners are not
+     *                          triggered and the highest priority touched queue of each scheduler is stored in the map.
      * @return always returns true except in case of RuntimeException.
      */
-	private boolean registerDeregister(Path path, Request request, boolean register) {
+	private boolean registerDeregister(Path path, Request request, NCRequestData ncRequestData, boolean register, Map<Scheduler, Integer> touchedSchedulers) {
         DetServConfig config = getConfig(path.getPath()[0]);
-        NCRequestData ncRequestData = ncRequestDataMapper.getOptimistic(request.getEntity());
 		ArrivalCurve flowTokenBucket = ncRequestData.getTb();
 
+		DNMMetrics currentMetrics = metrics;
+		if(currentMetrics != null) {
+			if(register)
+				currentMetrics.recordRegistration();
+			else
+				currentMetrics.recordDeregistration();
+		}
+
 		// Going through the edges
-        LinkedList<Edge> pathSoFar = null;
         double[] delaySoFar = new double[]{0.0};
         Edge previousEdge = null;
 
+		// Delay so far at each hop (only kept for the journal).
+		DNMJournal currentJournal = journal;
+		double[] delaysSoFar = currentJournal == null ? null : new double[path.getPath().length];
+		int hop = 0;
+
         for(Edge edge : path.getPath()) {
             // Computing the delay so far
-            if(config.getBurstIncrease() == BurstIncreaseModel.REAL || config.getBurstIncrease() == BurstIncreaseModel.WORST_CASE_BURST_REAL_RESERVATION)
-                    delaySoFar = this.getNewParameters(pathSoFar, edge, delaySoFar, request,true);
+            accumulateDelay(config, previousEdge, delaySoFar);
 
             // For worst-case burst, the delay so far is constant and corresponds to the deadline (except for the first link)
-            if(config.getBurstIncrease() == BurstIncreaseModel.WORST_CASE_BURST) {
-                if(pathSoFar == null)
-                    delaySoFar = new double[]{0.0};
-                else
-                    delaySoFar = new double[]{ncRequestData.getDeadline().doubleValue()};
-            }
+            if(config.getBurstIncrease() == BurstIncreaseModel.WORST_CASE_BURST && previousEdge != null)
+                delaySoFar[0] = ncRequestData.getDeadline().doubleValue();
 
             // Computing current arrival curve
+			if(delaysSoFar != null)
+				delaysSoFar[hop++] = delaySoFar[0];
             ArrivalCurve arrivalCurveForThisEdge;
             if(delaySoFar[0] == 0.0)
 				arrivalCurveForThisEdge = flowTokenBucket;
@@ -411,11 +1063,11 @@ public class DetServProxy extends PathProxy {
 			ResourceUtilization resourceUtilization = resourceUtilizationMapper.get(edge.getEntity());
 			if (resourceUtilization instanceof TokenBucketUtilization) {
 				if(register)
-					resourceUtilizationMapper.updateComponent(resourceUtilization,
-							()->((TokenBucketUtilization) resourceUtilization).addFlow(arrivalCurveForThisEdge.getUltAffineRate(), arrivalCurveForThisEdge.getBurst()));
+					updateResourceUtilization(edge, resourceUtilization,
+							()->((TokenBucketUtilization) resourceUtilization).addFlow(arrivalCurveForThisEdge.getUltAffineRate(), arrivalCurveForThisEdge.getBurst()), touchedSchedulers);
 				else
-					resourceUtilizationMapper.updateComponent(resourceUtilization,
-							()->((TokenBucketUtilization) resourceUtilization).removeFlow(arrivalCurveForThisEdge.getUltAffineRate(), arrivalCurveForThisEdge.getBurst()));
+					updateResourceUtilization(edge, resourceUtilization,
+							()->((TokenBucketUtilization) resourceUtilization).removeFlow(arrivalCurveForThisEdge.getUltAffineRate(), arrivalCurveForThisEdge.getBurst()), touchedSchedulers);
 			}
 			else if(resourceUtilization instanceof PerInEdgeTokenBucketUtilization) {
 				final Edge physicalEdge;
@@ -426,25 +1078,54 @@ public class DetServProxy extends PathProxy {
 				    physicalEdge = getPhysicalEdge(previousEdge);
 
 				if(register)
-					resourceUtilizationMapper.updateComponent(resourceUtilization,
-							()->((PerInEdgeTokenBucketUtilization) resourceUtilization).addFlow(physicalEdge, arrivalCurveForThisEdge.getUltAffineRate(), arrivalCurveForThisEdge.getBurst()));
+					updateResourceUtilization(edge, resourceUtilization,
+							()->((PerInEdgeTokenBucketUtilization) resourceUtilization).addFlow(physicalEdge, arrivalCurveForThisEdge.getUltAffineRate(), arrivalCurveForThisEdge.getBurst()), touchedSchedulers);
 				else
-					resourceUtilizationMapper.updateComponent(resourceUtilization,
-							()->((PerInEdgeTokenBucketUtilization) resourceUtilization).removeFlow(physicalEdge, arrivalCurveForThisEdge.getUltAffineRate(), arrivalCurveForThisEdge.getBurst()));
+					updateResourceUtilization(edge, resourceUtilization,
+							()->((PerInEdgeTokenBucketUtilization) resourceUtilization).removeFlow(physicalEdge, arrivalCurveForThisEdge.getUltAffineRate(), arrivalCurveForThisEdge.getBurst()), touchedSchedulers);
 			}
 			else {
 				throw new DNMException("ResourceUtilization " + resourceUtilization.getClass().getTypeName() + " is not supported!");
 			}
 
-			if(pathSoFar == null)
-			    pathSoFar = new LinkedList<>();
-			pathSoFar.addFirst(edge); // because FIRST edge of iterator is expected to be the previous edge used
+			config.getCostValueTable().addFlows(edge.getEntity(), register ? 1 : -1);
+
 			previousEdge = edge;
 		}
 
+		if(currentJournal != null)
+			currentJournal.record(register, request.getEntity().getId(), path.getPath(), delaysSoFar, ncRequestData);
+
 		return true;
 	}
 
+    /**
+     * Updates the utilization of a queue.
+     * @param edge the queue edge.
+     * @param resourceUtilization the utilization of this queue.
+     * @param update the update to apply.
+     * @param touchedSchedulers null if the listeners must be triggered directly. Otherwise, the listeners are not
+     *                          triggered and the highest priority touched queue of each scheduler is stored in the map.
+     */
+	private void updateResourceUtilization(Edge edge, ResourceUtilization resourceUtilization, Runnable update, Map<Scheduler, Integer> touchedSchedulers) {
+		// Listeners might be triggered later (or not at all in batch mode), cached decisions are dropped right away.
+		AdmissionCache currentAdmissionCache = admissionCache;
+		if(currentAdmissionCache != null)
+			currentAdmissionCache.invalidate(getScheduler(edge));
+
+		if(touchedSchedulers == null) {
+			resourceUtilizationMapper.updateComponent(resourceUtilization, update);
+			return;
+		}
+
+		update.run();
+		Scheduler scheduler = getScheduler(edge);
+		int queueIndex = 0;
+		while(scheduler.getQueues()[queueIndex].getEntity() != edge.getEntity())
+			queueIndex++;
+		touchedSchedulers.merge(scheduler, queueIndex, Math::min);
+	}
+
 	@Override
 	public boolean handle(Request request, boolean b) {
         return ncRequestDataMapper.isIn(request.getEntity()) && modelingConfigMapper.isIn(request.getGraph().getEntity());
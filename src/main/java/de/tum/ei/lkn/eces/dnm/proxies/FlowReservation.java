@@ -0,0 +1,44 @@
+package de.tum.ei.lkn.eces.dnm.proxies;
+
+import de.tum.ei.lkn.eces.dnm.NCRequestData;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+
+/**
+ * A flow to be admitted as part of a batch (see DetServProxy.registerAll): the request, the traffic description of
+ * the flow and the path it should use.
+ *
+ * @author Amaury Van Bemten
+ */
+public class FlowReservation {
+	private final Request request;
+	private final NCRequestData ncRequestData;
+	private final Path path;
+
+	public FlowReservation(Request request, NCRequestData ncRequestData, Path path) {
+		this.request = request;
+		this.ncRequestData = ncRequestData;
+		this.path = path;
+	}
+
+	public Request getRequest() {
+		return request;
+	}
+
+	public NCRequestData getNcRequestData() {
+		return ncRequestData;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	@Override
+	public String toString() {
+		return "FlowReservation{" +
+				"request=" + request +
+				", ncRequestData=" + ncRequestData +
+				", path=" + path +
+				'}';
+	}
+}
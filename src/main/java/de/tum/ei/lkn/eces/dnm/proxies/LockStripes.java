@@ -0,0 +1,110 @@
+package de.tum.ei.lkn.eces.dnm.proxies;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Fixed set of read-write locks to which objects (e.g., schedulers) are mapped.
+ *
+ * Several locks are always returned (and must be acquired) in increasing stripe order, so that threads locking
+ * overlapping sets of stripes cannot deadlock.
+ *
+ * @author Amaury Van Bemten
+ */
+public class LockStripes {
+	private final ReentrantReadWriteLock[] locks;
+
+	public LockStripes(int numberOfStripes) {
+		if(numberOfStripes <= 0)
+			throw new IllegalArgumentException("At least one stripe is needed");
+
+		locks = new ReentrantReadWriteLock[numberOfStripes];
+		for(int i = 0; i < numberOfStripes; i++)
+			locks[i] = new ReentrantReadWriteLock();
+	}
+
+	/**
+	 * @param object an object.
+	 * @return The index of the stripe of this object.
+	 */
+	private int getStripe(Object object) {
+		int hash = System.identityHashCode(object);
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % locks.length;
+	}
+
+	/**
+	 * @param object an object.
+	 * @return The read lock of the stripe of the object.
+	 */
+	public Lock getReadLock(Object object) {
+		return locks[getStripe(object)].readLock();
+	}
+
+	/**
+	 * @param objects a set of objects.
+	 * @return The stripes of the objects, in increasing order.
+	 */
+	private TreeSet<Integer> getStripes(Collection<?> objects) {
+		TreeSet<Integer> stripes = new TreeSet<>();
+		for(Object object : objects)
+			stripes.add(getStripe(object));
+		return stripes;
+	}
+
+	/**
+	 * @param objects a set of objects.
+	 * @return The read locks of the stripes of the objects, in the order in which they must be acquired.
+	 */
+	public List<Lock> getReadLocks(Collection<?> objects) {
+		TreeSet<Integer> stripes = getStripes(objects);
+		List<Lock> result = new ArrayList<>(stripes.size());
+		for(int stripe : stripes)
+			result.add(locks[stripe].readLock());
+		return result;
+	}
+
+	/**
+	 * @param objects a set of objects.
+	 * @return The write locks of the stripes of the objects, in the order in which they must be acquired.
+	 */
+	public List<Lock> getWriteLocks(Collection<?> objects) {
+		TreeSet<Integer> stripes = getStripes(objects);
+		List<Lock> result = new ArrayList<>(stripes.size());
+		for(int stripe : stripes)
+			result.add(locks[stripe].writeLock());
+		return result;
+	}
+
+	/**
+	 * @return The write locks of all the stripes, in the order in which they must be acquired.
+	 */
+	public List<Lock> getAllWriteLocks() {
+		List<Lock> result = new ArrayList<>(locks.length);
+		for(ReentrantReadWriteLock lock : locks)
+			result.add(lock.writeLock());
+		return result;
+	}
+
+	/**
+	 * Acquires a list of locks (in order).
+	 * @param locks the locks.
+	 */
+	public static void lockAll(List<Lock> locks) {
+		for(Lock lock : locks)
+			lock.lock();
+	}
+
+	/**
+	 * Releases a list of locks (in reverse order).
+	 * @param locks the locks.
+	 */
+	public static void unlockAll(List<Lock> locks) {
+		for(int i = locks.size() - 1; i >= 0; i--)
+			locks.get(i).unlock();
+	}
+}
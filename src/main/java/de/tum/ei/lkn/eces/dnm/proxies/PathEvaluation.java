@@ -0,0 +1,42 @@
+package de.tum.ei.lkn.eces.dnm.proxies;
+
+import de.tum.ei.lkn.eces.routing.responses.Path;
+
+/**
+ * Result of the what-if evaluation of a feasible candidate path (see DetServProxy.evaluatePaths): the path, its cost
+ * according to the configured CostModel and its worst-case end-to-end delay.
+ *
+ * @author Amaury Van Bemten
+ */
+public class PathEvaluation {
+	private final Path path;
+	private final double cost;
+	private final double delay;
+
+	public PathEvaluation(Path path, double cost, double delay) {
+		this.path = path;
+		this.cost = cost;
+		this.delay = delay;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public double getCost() {
+		return cost;
+	}
+
+	public double getDelay() {
+		return delay;
+	}
+
+	@Override
+	public String toString() {
+		return "PathEvaluation{" +
+				"path=" + path +
+				", cost=" + cost +
+				", delay=" + delay +
+				'}';
+	}
+}
@@ -19,8 +19,9 @@ import de.uni_kl.cs.discodnc.curves.ArrivalCurve;
 import de.uni_kl.cs.discodnc.numbers.Num;
 import org.apache.log4j.Logger;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Proxy implementing the QJump [1] access control.
@@ -28,6 +29,16 @@ import java.util.Map;
  * The configuration (QJumpConfig) of the proxy (nb of hosts, link rate, etc.) is assumed
  * stored on the Entity of the graph.
  *
+ * A flow is mapped to the highest level (largest throughput factor, see QJumpConfig) whose rate, packet size and
+ * guaranteed delay fit the flow and which still has a free slot, so that the slots of the lower levels are kept for the
+ * flows that need them. Each level has 'n' slots. The guaranteed delay of a level includes the interference of the
+ * higher priority levels (see QJumpConfig).
+ *
+ * The proxy can be used by several routing threads at the same time. A flow takes a slot of its level when its path is
+ * registered: the number of used slots of the level is incremented with a compare-and-set, so that no more than 'n'
+ * flows are ever admitted at a level. The slot is released when the flow is deregistered or when the registration
+ * fails. The access check only rejects early when no suitable level has a slot left.
+ *
  * [1] Grosvenor, Matthew P., Malte Schwarzkopf, Ionel Gog, Robert NM Watson, Andrew W. Moore, Steven Hand, and
  * Jon Crowcroft. "Queues Don’t Matter When You Can JUMP Them!." In 12th USENIX Symposium on Networked Systems
  * Design and Implementation (NSDI 15), pp. 1-14. 2015.
@@ -37,7 +48,11 @@ import java.util.Map;
 public class QJumpProxy extends PathProxy {
     private final Logger logger;
 
-    private Map<Entity, Path> acceptedFlows;
+    // Level of each accepted flow.
+    private Map<Entity, Integer> acceptedFlows;
+
+    // Number of used slots (i.e., of accepted flows) at each level.
+    private final Map<Integer, AtomicInteger> usedSlots = new ConcurrentHashMap<>();
 
     // Mappers
 	private Mapper<NCRequestData> ncRequestDataMapper;
@@ -47,7 +62,7 @@ public class QJumpProxy extends PathProxy {
     public QJumpProxy(Controller controller) {
 		logger = Logger.getLogger(this.getClass());
 
-		acceptedFlows = new HashMap<>();
+		acceptedFlows = new ConcurrentHashMap<>();
 
 		ncRequestDataMapper = new NCRequestDataMapper(controller);
 		distanceVectorMapper = new DistanceVectorMapper(controller);
@@ -77,31 +92,81 @@ public class QJumpProxy extends PathProxy {
 
 		QJumpConfig config = getConfig(edge);
 
-		// Checking if we already reached the max number of hosts
-		if(acceptedFlows.size() >= config.getMaxNumberOfHosts()) {
-			logger.debug("There is already " + acceptedFlows.size() + " in the network!");
-			return false;
+		// Looking for a level fitting the flow with a free slot (the slot is only reserved at registration)
+		for(int level = config.getNumberOfLevels() - 1; level >= 0; level--) {
+			if(fits(config, level, ncRequestData) && getUsedSlots(level).get() < config.getMaxNumberOfHosts())
+				return true;
 		}
 
-		// Checking if flow is not too big
-		if(requestTokenBucket.getUltAffineRate().gt(Num.getFactory().create(config.getMaximumRate())) || requestTokenBucket.getBurst().gt(Num.getFactory().create(config.getMaximumPacketSize()))) {
-			logger.debug("The rate of burst of the flow is too high for the configuration!");
-			return false;
-		}
+		if(logger.isDebugEnabled())
+			logger.debug("No level with a free slot has a rate, packet size and delay fitting " + ncRequestData + "!");
+		return false;
+	}
 
-		// Checking delay guarantee
-		if(ncRequestData.getDeadline().lt(Num.getFactory().create(config.getGuaranteedDelay()))) {
-			logger.debug("The deadline of the flow is too low: " + ncRequestData.getDeadline() + " < " + config.getGuaranteedDelay());
+	/**
+	 * @param config the QJump config.
+	 * @param level a level of the config.
+	 * @param ncRequestData description of a flow.
+	 * @return Whether the rate, burst and deadline of the flow fit the level.
+	 */
+	private boolean fits(QJumpConfig config, int level, NCRequestData ncRequestData) {
+		ArrivalCurve requestTokenBucket = ncRequestData.getTb();
+
+		// Checking if flow is not too big
+		if(requestTokenBucket.getUltAffineRate().gt(Num.getFactory().create(config.getMaximumRate(level))) || requestTokenBucket.getBurst().gt(Num.getFactory().create(config.getMaximumPacketSize())))
 			return false;
-		}
 
-		return true;
+		// Checking delay
+		double guaranteedDelay = config.getGuaranteedDelay(level);
+		return !Double.isInfinite(guaranteedDelay) && !ncRequestData.getDeadline().lt(Num.getFactory().create(guaranteedDelay));
 	}
 
+	/**
+	 * @return The number of accepted flows (at all levels).
+	 */
 	public int getNumberOfFlows() {
-	    return this.acceptedFlows.size();
+		int numberOfFlows = 0;
+		for(AtomicInteger levelUsedSlots : usedSlots.values())
+			numberOfFlows += levelUsedSlots.get();
+		return numberOfFlows;
     }
 
+	/**
+	 * @param level a level.
+	 * @return The number of accepted flows at this level.
+	 */
+	public int getNumberOfFlows(int level) {
+		return getUsedSlots(level).get();
+	}
+
+	private AtomicInteger getUsedSlots(int level) {
+		return usedSlots.computeIfAbsent(level, l -> new AtomicInteger());
+	}
+
+	/**
+	 * Atomically reserves a slot at the highest level fitting a flow (with the largest throughput factor whose
+	 * guaranteed delay meets the deadline of the flow).
+	 * @param config the QJump config.
+	 * @param ncRequestData description of the flow.
+	 * @return The level at which a slot was reserved, -1 if no fitting level has a free slot.
+	 */
+	private int reserveSlot(QJumpConfig config, NCRequestData ncRequestData) {
+		for(int level = config.getNumberOfLevels() - 1; level >= 0; level--) {
+			if(!fits(config, level, ncRequestData))
+				continue;
+
+			AtomicInteger levelUsedSlots = getUsedSlots(level);
+			while(true) {
+				int currentlyUsedSlots = levelUsedSlots.get();
+				if(currentlyUsedSlots >= config.getMaxNumberOfHosts())
+					break;
+				if(levelUsedSlots.compareAndSet(currentlyUsedSlots, currentlyUsedSlots + 1))
+					return level;
+			}
+		}
+		return -1;
+	}
+
 	@Override
 	public double getCost(Iterable<Edge> iterable, Edge edge, double[] parameters, Request request, boolean isFroward) {
 		// Shortest path.
@@ -127,14 +192,37 @@ public class QJumpProxy extends PathProxy {
 
 	@Override
 	public boolean register(Path path, Request request) {
-		// Put returning null means there was no mapping yet
-		return (this.acceptedFlows.put(request.getEntity(), path) == null);
+		int level = reserveSlot(qJumpConfigMapper.get(request.getGraph().getEntity()), ncRequestDataMapper.get(request.getEntity()));
+		if(level < 0) {
+			logger.debug("No slot left, registration of " + request + " failed!");
+			return false;
+		}
+
+		// putIfAbsent returning null means there was no mapping yet
+		if(this.acceptedFlows.putIfAbsent(request.getEntity(), level) != null) {
+			getUsedSlots(level).decrementAndGet();
+			return false;
+		}
+		return true;
 	}
 
 	@Override
 	public boolean deregister(Path path, Request request) {
 		// Remove returns not null if it removed something
-		return (this.acceptedFlows.remove(request.getEntity()) != null);
+		Integer level = this.acceptedFlows.remove(request.getEntity());
+		if(level == null)
+			return false;
+		getUsedSlots(level).decrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @param request a request.
+	 * @return The level of the accepted flow of this request, -1 if it is not accepted.
+	 */
+	public int getLevel(Request request) {
+		Integer level = this.acceptedFlows.get(request.getEntity());
+		return level == null ? -1 : level;
 	}
 
 	@Override
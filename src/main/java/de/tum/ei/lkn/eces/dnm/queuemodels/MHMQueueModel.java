@@ -28,6 +28,12 @@ public class MHMQueueModel extends QueueModel {
         return this.maximumTokenBucket;
     }
 
+    public void setMaximumTokenBucket(ArrivalCurve maximumTokenBucket) {
+        if(!maximumTokenBucket.isTokenBucket())
+            throw new DNMException("MHMQueueModel must have a token bucket as maximum arrival curve!");
+        this.maximumTokenBucket = maximumTokenBucket;
+    }
+
     @Override
     public JSONObject toJSONObject() {
         JSONObject result = super.toJSONObject();
@@ -0,0 +1,93 @@
+package de.tum.ei.lkn.eces.dnm.queuemodels;
+
+import de.tum.ei.lkn.eces.graph.Edge;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table of the static routing values of the queue edges of a network: physical edge of the queue, delay of the queue
+ * and delay of the queue plus delay of the link.
+ *
+ * The table is filled by the DNMSystem when resources are allocated to a scheduler and kept up to date when the delays
+ * change (e.g., ILS delay corrections for MHM), so that the proxy can answer routing calls without going through the
+ * Delay, Link and ToNetwork components.
+ *
+ * @author Amaury Van Bemten
+ */
+public class QueueEdgeTable {
+	private final Map<Edge, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Stores (or replaces) the values of a queue edge.
+	 * @param queueEdge the queue edge.
+	 * @param physicalEdge the physical edge of the queue.
+	 * @param queueDelay the delay of the queue.
+	 * @param linkDelay the delay of the link.
+	 */
+	public void put(Edge queueEdge, Edge physicalEdge, double queueDelay, double linkDelay) {
+		entries.put(queueEdge, new Entry(physicalEdge, queueDelay, linkDelay));
+	}
+
+	/**
+	 * Updates the delay of a queue edge already in the table.
+	 * @param queueEdge the queue edge.
+	 * @param queueDelay the new delay of the queue.
+	 */
+	public void setQueueDelay(Edge queueEdge, double queueDelay) {
+		entries.computeIfPresent(queueEdge, (edge, entry) -> new Entry(entry.physicalEdge, queueDelay, entry.linkDelay));
+	}
+
+	/**
+	 * Updates the delay of the link of a queue edge already in the table.
+	 * @param queueEdge the queue edge.
+	 * @param linkDelay the new delay of the link.
+	 */
+	public void setLinkDelay(Edge queueEdge, double linkDelay) {
+		entries.computeIfPresent(queueEdge, (edge, entry) -> new Entry(entry.physicalEdge, entry.queueDelay, linkDelay));
+	}
+
+	/**
+	 * @param queueEdge a queue edge.
+	 * @return The values of this queue edge, null if it is not in the table.
+	 */
+	public Entry get(Edge queueEdge) {
+		return entries.get(queueEdge);
+	}
+
+	/**
+	 * Values of a queue edge. Immutable so that readers always see consistent values.
+	 */
+	public static class Entry {
+		private final Edge physicalEdge;
+		private final double queueDelay;
+		private final double linkDelay;
+		private final double[] constraintsValues;
+
+		private Entry(Edge physicalEdge, double queueDelay, double linkDelay) {
+			this.physicalEdge = physicalEdge;
+			this.queueDelay = queueDelay;
+			this.linkDelay = linkDelay;
+			this.constraintsValues = new double[]{queueDelay + linkDelay};
+		}
+
+		public Edge getPhysicalEdge() {
+			return physicalEdge;
+		}
+
+		public double getQueueDelay() {
+			return queueDelay;
+		}
+
+		public double getLinkDelay() {
+			return linkDelay;
+		}
+
+		/**
+		 * @return The constraints values of the edge (queue delay + link delay). Shared array, must not be modified.
+		 */
+		public double[] getConstraintsValues() {
+			return constraintsValues;
+		}
+	}
+}
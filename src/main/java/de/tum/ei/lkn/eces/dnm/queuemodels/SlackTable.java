@@ -0,0 +1,191 @@
+package de.tum.ei.lkn.eces.dnm.queuemodels;
+
+import de.tum.ei.lkn.eces.dnm.ClosedFormBounds;
+import de.tum.ei.lkn.eces.dnm.metrics.RejectReason;
+import de.tum.ei.lkn.eces.graph.Edge;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table of the slack of the queues of TBM priority schedulers without input link shaping, i.e., of the additional
+ * token bucket (rate, burst) that can be added to each queue without violating the delay or backlog bound of this
+ * queue or of any lower priority queue.
+ *
+ * With token buckets and rate-latency curves, adding (dr, db) to queue k leaves each bound of a queue j >= k as a
+ * linear constraint a * dr + c * db < e with non-negative a and c (the residual rate of j becomes R_j - dr and its
+ * residual latency times rate becomes T_j * R_j + db). The feasible region is hence the intersection of half-planes
+ * containing the origin. It is summarized by its intercepts with the axes: the maximum rate (with no burst) and the
+ * maximum burst (with no rate). A request exceeding one of them is rejected and a request strictly below the line
+ * joining them is accepted (each half-plane contains that triangle). Requests in between are undecided and must be
+ * checked with the full chain of bounds.
+ *
+ * The table is filled and kept up to date with the utilizations by the DNMSystem when the SLACK access control engine
+ * is used.
+ *
+ * @author Amaury Van Bemten
+ */
+public class SlackTable {
+	// Relative margin protecting the decisions against rounding errors close to the limits.
+	private static final double MARGIN = 1e-9;
+
+	private final Map<Edge, Slack> slacks = new ConcurrentHashMap<>();
+
+	/**
+	 * Decisions taken with the slack of a queue.
+	 */
+	public enum Decision {
+		ACCEPT,
+		REJECT,
+		UNDECIDED // the full access control check must be used
+	}
+
+	/**
+	 * Computes and stores (or replaces) the slack of all the queues of a scheduler.
+	 * @param queueEdges the queue edges, from highest to lowest priority.
+	 * @param R rate of the service curve of the highest priority queue.
+	 * @param T latency of the service curve of the highest priority queue.
+	 * @param rates rate of the current token bucket of each queue.
+	 * @param bursts burst of the current token bucket of each queue.
+	 * @param delays delay of each queue.
+	 * @param sizes size of each queue.
+	 */
+	public void put(Edge[] queueEdges, double R, double T, double[] rates, double[] bursts, double[] delays, double[] sizes) {
+		int n = queueEdges.length;
+
+		// Current residual service curve of each queue.
+		double[] residualRates = new double[n];
+		double[] residualLatencies = new double[n];
+		for(int i = 0; i < n; i++) {
+			residualRates[i] = R;
+			residualLatencies[i] = T;
+			double nextT = ClosedFormBounds.leftOverLatency(rates[i], bursts[i], R, T);
+			R = ClosedFormBounds.leftOverRate(rates[i], bursts[i], R, T);
+			T = nextT;
+		}
+
+		// Intercepts of the constraints of the queues below the target queue (suffix minimums).
+		Slack lowerQueues = new Slack(Double.POSITIVE_INFINITY, RejectReason.DELAY_BOUND, Double.POSITIVE_INFINITY, RejectReason.DELAY_BOUND);
+		for(int k = n - 1; k >= 0; k--) {
+			double rate = rates[k];
+			double burst = bursts[k];
+			double residualRate = residualRates[k];
+			double residualLatency = residualLatencies[k];
+
+			// Constraints of the target queue: stability, delay and backlog.
+			double delayLimit = residualRate * (delays[k] - residualLatency) - burst;
+			double backlogLimit = sizes[k] - burst - rate * residualLatency;
+			Slack slack = lowerQueues
+					.limitRate(residualRate - rate, RejectReason.DELAY_BOUND)
+					.limitBurst(delayLimit, RejectReason.DELAY_BOUND)
+					.limitRate(residualLatency > 0 ? backlogLimit / residualLatency : Double.POSITIVE_INFINITY, RejectReason.BACKLOG_BOUND)
+					.limitBurst(backlogLimit, RejectReason.BACKLOG_BOUND);
+			slacks.put(queueEdges[k], slack);
+
+			// Constraints of this queue when a flow is added to a higher priority queue (empty queues are not checked).
+			if(rate == 0 && burst == 0)
+				continue;
+			delayLimit = residualRate * (delays[k] - residualLatency) - burst;
+			lowerQueues = lowerQueues
+					.limitRate(residualRate - rate, RejectReason.DELAY_BOUND)
+					.limitRate(delayLimit / delays[k], RejectReason.DELAY_BOUND)
+					.limitBurst(delayLimit, RejectReason.DELAY_BOUND);
+			double freeSize = sizes[k] - burst;
+			if(freeSize <= 0) {
+				// The backlog bound is already violated.
+				lowerQueues = lowerQueues
+						.limitRate(0, RejectReason.BACKLOG_BOUND)
+						.limitBurst(0, RejectReason.BACKLOG_BOUND);
+			}
+			else {
+				backlogLimit = freeSize * residualRate - rate * residualLatency * residualRate;
+				lowerQueues = lowerQueues
+						.limitRate(backlogLimit / freeSize, RejectReason.BACKLOG_BOUND)
+						.limitBurst(rate > 0 ? backlogLimit / rate : Double.POSITIVE_INFINITY, RejectReason.BACKLOG_BOUND);
+			}
+		}
+	}
+
+	/**
+	 * @param queueEdge a queue edge.
+	 * @return The slack of this queue edge, null if it is not in the table.
+	 */
+	public Slack get(Edge queueEdge) {
+		return slacks.get(queueEdge);
+	}
+
+	/**
+	 * Slack of a queue: maximum additional rate (with no burst) and maximum additional burst (with no rate). Immutable
+	 * so that readers always see consistent values.
+	 */
+	public static class Slack {
+		private final double maxRate;
+		private final RejectReason maxRateReason;
+		private final double maxBurst;
+		private final RejectReason maxBurstReason;
+
+		private Slack(double maxRate, RejectReason maxRateReason, double maxBurst, RejectReason maxBurstReason) {
+			this.maxRate = maxRate;
+			this.maxRateReason = maxRateReason;
+			this.maxBurst = maxBurst;
+			this.maxBurstReason = maxBurstReason;
+		}
+
+		private Slack limitRate(double limit, RejectReason reason) {
+			if(limit >= maxRate)
+				return this;
+			return new Slack(limit, reason, maxBurst, maxBurstReason);
+		}
+
+		private Slack limitBurst(double limit, RejectReason reason) {
+			if(limit >= maxBurst)
+				return this;
+			return new Slack(maxRate, maxRateReason, limit, reason);
+		}
+
+		public double getMaxRate() {
+			return maxRate;
+		}
+
+		public double getMaxBurst() {
+			return maxBurst;
+		}
+
+		/**
+		 * @param rate rate of the token bucket to add.
+		 * @param burst burst of the token bucket to add.
+		 * @return Whether the token bucket can be added to the queue, UNDECIDED if the slack is not enough to tell.
+		 */
+		public Decision decide(double rate, double burst) {
+			// Adding nothing is always possible, the full check handles it.
+			if(rate == 0 && burst == 0)
+				return Decision.UNDECIDED;
+			if(exceeds(rate, maxRate) || exceeds(burst, maxBurst))
+				return Decision.REJECT;
+			if(maxRate > 0 && maxBurst > 0 && rate / maxRate + burst / maxBurst < 1 - MARGIN)
+				return Decision.ACCEPT;
+			return Decision.UNDECIDED;
+		}
+
+		/**
+		 * @param rate rate of a rejected token bucket.
+		 * @param burst burst of a rejected token bucket.
+		 * @return The bound that would be violated.
+		 */
+		public RejectReason getRejectReason(double rate, double burst) {
+			return exceeds(rate, maxRate) ? maxRateReason : maxBurstReason;
+		}
+
+		private static boolean exceeds(double value, double limit) {
+			return value > limit + MARGIN * Math.abs(limit);
+		}
+
+		@Override
+		public String toString() {
+			return "Slack{" +
+					"maxRate=" + maxRate +
+					", maxBurst=" + maxBurst +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.MHM;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Mapper;
+import de.tum.ei.lkn.eces.dnm.exceptions.DNMException;
+import de.tum.ei.lkn.eces.dnm.inputmodels.PerInEdgeTokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.ResourceUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.TokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.mappers.ResourceUtilizationMapper;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.network.Queue;
+import de.tum.ei.lkn.eces.network.Scheduler;
+
+import java.util.function.Function;
+
+/**
+ * Allocates resources to queues based on the demand of each queue: each queue gets a minimum ratio of the link rate
+ * and the rest of the link rate is shared proportionally to the demands. The burst and delay of each queue are then
+ * derived as in MHMRateRatiosAllocation.
+ *
+ * The demand is either declared (rate demanded by each traffic class, i.e., queue, of a scheduler) or observed (rate
+ * currently reserved at each queue). Without any demand, the link rate is shared equally.
+ *
+ * Combined with DNMSystem.reallocateResources, the observed demand allows to periodically adapt the allocation to the
+ * traffic.
+ *
+ * @author Amaury Van Bemten
+ */
+public class MHMDemandWeightedAllocation extends MHMRateRatiosAllocation {
+    private Mapper<ResourceUtilization> resourceUtilizationMapper;
+    private Function<Scheduler, double[]> declaredDemand;
+    private double minimumRatio;
+
+    public MHMDemandWeightedAllocation(Controller controller) {
+        this(controller, null, 0.05);
+    }
+
+    /**
+     * @param controller controller.
+     * @param declaredDemand demanded rate of each queue of a scheduler, null to use the observed demand.
+     * @param minimumRatio minimum ratio of the link rate allocated to each queue (strictly positive).
+     */
+    public MHMDemandWeightedAllocation(Controller controller, Function<Scheduler, double[]> declaredDemand, double minimumRatio) {
+        super(controller);
+        if(minimumRatio <= 0)
+            throw new DNMException("The minimum ratio of each queue must be strictly positive!");
+        this.resourceUtilizationMapper = new ResourceUtilizationMapper(controller);
+        this.declaredDemand = declaredDemand;
+        this.minimumRatio = minimumRatio;
+    }
+
+    @Override
+    protected double[] getRatios(Scheduler scheduler) {
+        Queue[] queues = scheduler.getQueues();
+        if(queues.length * minimumRatio > 1)
+            throw new DNMException("A minimum ratio of " + minimumRatio + " cannot be given to the " + queues.length + " queues of " + scheduler);
+
+        double[] demands = getDemands(scheduler);
+        if(demands.length != queues.length)
+            throw new DNMException("The demand must be given for the " + queues.length + " queues of " + scheduler);
+
+        double totalDemand = 0;
+        for(double demand : demands) {
+            if(demand < 0)
+                throw new DNMException("Negative demand for " + scheduler);
+            totalDemand += demand;
+        }
+
+        double[] ratios = new double[queues.length];
+        double sharedRatio = 1 - queues.length * minimumRatio;
+        for(int i = 0; i < queues.length; i++) {
+            if(totalDemand > 0)
+                ratios[i] = minimumRatio + sharedRatio * demands[i] / totalDemand;
+            else
+                ratios[i] = 1.0 / queues.length;
+        }
+
+        return ratios;
+    }
+
+    /**
+     * @param scheduler a scheduler.
+     * @return The declared demand of each queue of the scheduler or, if none is declared, the rate currently reserved
+     * at each queue: the rate of its token bucket or, with input link shaping, the sum of the rates of the token
+     * buckets of its input edges. A queue without utilization has no demand and any other kind of utilization is
+     * rejected, as its reserved rate is not known.
+     */
+    private double[] getDemands(Scheduler scheduler) {
+        if(declaredDemand != null)
+            return declaredDemand.apply(scheduler);
+
+        Queue[] queues = scheduler.getQueues();
+        double[] demands = new double[queues.length];
+        for(int i = 0; i < queues.length; i++) {
+            if(!resourceUtilizationMapper.isIn(queues[i].getEntity()))
+                continue;
+
+            ResourceUtilization utilization = resourceUtilizationMapper.getOptimistic(queues[i].getEntity());
+            if(utilization instanceof TokenBucketUtilization)
+                demands[i] = ((TokenBucketUtilization) utilization).getRateValue();
+            else if(utilization instanceof PerInEdgeTokenBucketUtilization) {
+                PerInEdgeTokenBucketUtilization perInEdgeUtilization = (PerInEdgeTokenBucketUtilization) utilization;
+                for(Edge inputEdge : perInEdgeUtilization.getInputEdges())
+                    demands[i] += perInEdgeUtilization.getRateValue(inputEdge);
+            }
+            else
+                throw new DNMException("The reserved rate of " + utilization.getClass().getSimpleName() + " of queue " + i + " of " + scheduler + " is unknown!");
+        }
+
+        return demands;
+    }
+}
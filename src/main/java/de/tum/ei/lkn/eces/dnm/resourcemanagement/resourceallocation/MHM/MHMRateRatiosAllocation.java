@@ -32,6 +32,7 @@ public class MHMRateRatiosAllocation extends MHMResourceAllocation {
     public double[][] allocateResources(Scheduler scheduler) {
         DetServConfig myConfig = this.getGraphConfig(scheduler.getEntity());
         Queue[] queues = scheduler.getQueues();
+        double[] ratios = getRatios(scheduler);
 
         // Allocated resources for each queue (3: rate, burst, delay)
         double[][] allocatedResources = new double[queues.length][3];
@@ -44,7 +45,7 @@ public class MHMRateRatiosAllocation extends MHMResourceAllocation {
             double R = rateMapper.get(scheduler.getEntity()).getRate() - sumR;
             double T = (sumB + 2 * myConfig.getMaximumPacketSize()) / R;
 
-            allocatedResources[i][RATE_INDEX] = rateMapper.get(scheduler.getEntity()).getRate() * this.ratios[i];
+            allocatedResources[i][RATE_INDEX] = rateMapper.get(scheduler.getEntity()).getRate() * ratios[i];
 
             // Eqn. 22 of DetServ
             allocatedResources[i][BURST_INDEX] = Math.max(0, queues[i].getSize() - allocatedResources[i][RATE_INDEX] * (sumB + 2 * myConfig.getMaximumPacketSize())/(R));
@@ -68,4 +69,12 @@ public class MHMRateRatiosAllocation extends MHMResourceAllocation {
 
         return allocatedResources;
     }
+
+    /**
+     * @param scheduler a scheduler.
+     * @return The ratio of the link rate to allocate to each queue of the scheduler.
+     */
+    protected double[] getRatios(Scheduler scheduler) {
+        return this.ratios;
+    }
 }
@@ -0,0 +1,207 @@
+package de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.TBM;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Mapper;
+import de.tum.ei.lkn.eces.dnm.ClosedFormBounds;
+import de.tum.ei.lkn.eces.dnm.NCRequestData;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.inputmodels.ResourceUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.TokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.mappers.ResourceUtilizationMapper;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.WorkloadFlow;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.mappers.EdgeMapper;
+import de.tum.ei.lkn.eces.network.Queue;
+import de.tum.ei.lkn.eces.network.Rate;
+import de.tum.ei.lkn.eces.network.Scheduler;
+import de.tum.ei.lkn.eces.network.mappers.RateMapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Allocates the delays of the queues so as to maximize the number of flows of a sample workload that a scheduler can
+ * admit.
+ *
+ * The candidate delay vectors are geometric: delay[0] = d0 and delay[i] = ratio * delay[i-1], for each given first
+ * delay d0 and ratio (TBMDelayRatiosAllocation uses d0 = 0.2ms and ratio = 6). Each candidate is evaluated on a copy
+ * of the state of the scheduler (the current utilizations of its queues, if any): the flows of the workload whose
+ * shortest path (in hops) uses the link of the scheduler are admitted one after the other in the lowest priority queue whose delay fits the per-hop share of their deadline
+ * (deadline divided by the hop count between their endpoints) and whose TBM bounds, and the ones of the lower priority
+ * queues, still hold. The candidates are evaluated in parallel (see setEvaluationPool). The candidate admitting most
+ * flows is chosen, ties being broken in favor of the first candidate (smallest delays).
+ *
+ * The hop counts and shortest paths are computed in the topology existing when the resources are allocated: the
+ * allocation is best done in a bulk build (see DNMSystem.startBulkBuild), once the whole topology exists. They are
+ * cached in the flows of the workload (see WorkloadFlow) and hence computed once for all the schedulers.
+ *
+ * @author Amaury Van Bemten
+ */
+public class TBMWorkloadOptimizedAllocation extends TBMResourceAllocation {
+	private final Mapper<Rate> rateMapper;
+	private final Mapper<Edge> edgeMapper;
+	private final Mapper<ResourceUtilization> resourceUtilizationMapper;
+
+	private final List<WorkloadFlow> workload;
+	private final double[] firstDelays;
+	private final double[] ratios;
+
+	// Pool in which the candidates are evaluated.
+	private ForkJoinPool evaluationPool = ForkJoinPool.commonPool();
+
+	public TBMWorkloadOptimizedAllocation(Controller controller, List<WorkloadFlow> workload) {
+		this(controller, workload, new double[]{0.0001, 0.0002, 0.0005, 0.001, 0.002}, new double[]{2, 4, 6, 8, 10});
+	}
+
+	public TBMWorkloadOptimizedAllocation(Controller controller, List<WorkloadFlow> workload, double[] firstDelays, double[] ratios) {
+		super(controller);
+		this.rateMapper = new RateMapper(controller);
+		this.edgeMapper = new EdgeMapper(controller);
+		this.resourceUtilizationMapper = new ResourceUtilizationMapper(controller);
+		this.workload = new ArrayList<>(workload);
+		this.firstDelays = firstDelays.clone();
+		this.ratios = ratios.clone();
+	}
+
+	/**
+	 * Sets the pool in which the candidate delay vectors are evaluated (common pool by default).
+	 * @param evaluationPool the pool.
+	 */
+	public void setEvaluationPool(ForkJoinPool evaluationPool) {
+		this.evaluationPool = evaluationPool;
+	}
+
+	@Override
+	public double[][] allocateResources(Scheduler scheduler) {
+		Queue[] queues = scheduler.getQueues();
+		DetServConfig myConfig = this.getGraphConfig(edgeMapper.getOptimistic(queues[0].getEntity()).getSource().getGraph().getEntity());
+
+		// Copy of the state of the scheduler.
+		double R = rateMapper.getOptimistic(scheduler.getEntity()).getRate();
+		double T = (2 * myConfig.getMaximumPacketSize()) / R;
+		double[] sizes = new double[queues.length];
+		double[] rates = new double[queues.length];
+		double[] bursts = new double[queues.length];
+		for(int i = 0; i < queues.length; i++) {
+			sizes[i] = queues[i].getSize();
+			if(resourceUtilizationMapper.isIn(queues[i].getEntity()) && resourceUtilizationMapper.getOptimistic(queues[i].getEntity()) instanceof TokenBucketUtilization) {
+				TokenBucketUtilization utilization = (TokenBucketUtilization) resourceUtilizationMapper.getOptimistic(queues[i].getEntity());
+				rates[i] = utilization.getRateValue();
+				bursts[i] = utilization.getBurstValue();
+			}
+		}
+
+		// Demand at one hop of each flow crossing the link: rate, burst (with the worst-case burst increase) and delay budget.
+		Edge linkEdge = edgeMapper.getOptimistic(scheduler.getEntity());
+		List<double[]> demands = new ArrayList<>(workload.size());
+		for(WorkloadFlow flow : workload) {
+			int hops = flow.getHopCount();
+			if(hops <= 0 || !flow.usesLink(linkEdge))
+				continue;
+			NCRequestData ncRequestData = flow.getNcRequestData();
+			double rate = ncRequestData.getTb().getUltAffineRate().doubleValue();
+			double burst = ncRequestData.getTb().getBurst().doubleValue();
+			double deadline = ncRequestData.getDeadline().doubleValue();
+			if(myConfig.getBurstIncrease() != BurstIncreaseModel.NO)
+				burst += rate * deadline;
+			demands.add(new double[]{rate, burst, deadline / hops});
+		}
+
+		// Evaluating the candidates in parallel.
+		List<double[]> candidates = new ArrayList<>(firstDelays.length * ratios.length);
+		for(double firstDelay : firstDelays) {
+			for(double ratio : ratios) {
+				double[] delays = new double[queues.length];
+				for(int i = 0; i < queues.length; i++)
+					delays[i] = i == 0 ? firstDelay : delays[i - 1] * ratio;
+				candidates.add(delays);
+			}
+		}
+
+		final double linkR = R;
+		final double linkT = T;
+		List<ForkJoinTask<Integer>> tasks = new ArrayList<>(candidates.size());
+		for(double[] candidate : candidates)
+			tasks.add(evaluationPool.submit(() -> countAdmittedFlows(candidate, linkR, linkT, sizes, rates, bursts, demands)));
+
+		double[] bestDelays = null;
+		int bestAdmittedFlows = -1;
+		for(int c = 0; c < candidates.size(); c++) {
+			int admittedFlows = tasks.get(c).join();
+			if(admittedFlows > bestAdmittedFlows) {
+				bestAdmittedFlows = admittedFlows;
+				bestDelays = candidates.get(c);
+			}
+		}
+
+		logger.info("Delays " + Arrays.toString(bestDelays) + " admit " + bestAdmittedFlows + " of the " + demands.size() + " flows of the workload on " + scheduler);
+
+		double[][] allocatedResources = new double[queues.length][1];
+		for(int i = 0; i < queues.length; i++)
+			allocatedResources[i][DELAY_INDEX] = bestDelays[i];
+		return allocatedResources;
+	}
+
+	/**
+	 * Admits the demands one after the other on a copy of the state of the scheduler.
+	 * @param delays candidate delays of the queues.
+	 * @param R rate of the service curve of the highest priority queue.
+	 * @param T latency of the service curve of the highest priority queue.
+	 * @param sizes sizes of the queues.
+	 * @param initialRates current rate of each queue (not modified).
+	 * @param initialBursts current burst of each queue (not modified).
+	 * @param demands rate, burst and delay budget of each flow.
+	 * @return The number of admitted demands.
+	 */
+	private static int countAdmittedFlows(double[] delays, double R, double T, double[] sizes, double[] initialRates, double[] initialBursts, List<double[]> demands) {
+		double[] rates = initialRates.clone();
+		double[] bursts = initialBursts.clone();
+		int admittedFlows = 0;
+		for(double[] demand : demands) {
+			// Lowest priority queue first, to keep the high priority queues for the tight deadlines.
+			for(int queue = delays.length - 1; queue >= 0; queue--) {
+				if(delays[queue] > demand[2])
+					continue;
+
+				rates[queue] += demand[0];
+				bursts[queue] += demand[1];
+				if(boundsHold(delays, R, T, sizes, rates, bursts, queue)) {
+					admittedFlows++;
+					break;
+				}
+				rates[queue] -= demand[0];
+				bursts[queue] -= demand[1];
+			}
+		}
+		return admittedFlows;
+	}
+
+	/**
+	 * @return true if the delay and backlog bounds of the target queue and of the lower priority queues hold (same
+	 * checks as the closed-form TBM access control).
+	 */
+	private static boolean boundsHold(double[] delays, double R, double T, double[] sizes, double[] rates, double[] bursts, int targetQueue) {
+		for(int i = 0; i < delays.length; i++) {
+			if(i >= targetQueue && (ClosedFormBounds.delay(rates[i], bursts[i], R, T) >= delays[i] || ClosedFormBounds.backlog(rates[i], bursts[i], R, T) >= sizes[i]))
+				return false;
+
+			double nextT = ClosedFormBounds.leftOverLatency(rates[i], bursts[i], R, T);
+			R = ClosedFormBounds.leftOverRate(rates[i], bursts[i], R, T);
+			T = nextT;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "TBMWorkloadOptimizedAllocation{" +
+				"workload=" + workload.size() + " flows" +
+				", firstDelays=" + Arrays.toString(firstDelays) +
+				", ratios=" + Arrays.toString(ratios) +
+				'}';
+	}
+}
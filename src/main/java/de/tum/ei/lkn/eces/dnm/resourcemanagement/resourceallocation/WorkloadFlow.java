@@ -0,0 +1,133 @@
+package de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation;
+
+import de.tum.ei.lkn.eces.dnm.NCRequestData;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.Graph;
+import de.tum.ei.lkn.eces.graph.Node;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * A flow of a sample workload used by the workload-driven resource allocations: its endpoints and its token bucket
+ * and deadline.
+ *
+ * The shortest path distances (in hops) from the source and to the destination are computed once and cached until the
+ * number of links of the topology changes, so that the resource allocations of all the schedulers of a topology (e.g.,
+ * during a bulk build) share them.
+ *
+ * @author Amaury Van Bemten
+ */
+public class WorkloadFlow {
+	private final NetworkNode source;
+	private final NetworkNode destination;
+	private final NCRequestData ncRequestData;
+
+	// Shortest path distances in the current topology (null if not computed yet).
+	private volatile ShortestPaths shortestPaths = null;
+
+	public WorkloadFlow(NetworkNode source, NetworkNode destination, NCRequestData ncRequestData) {
+		this.source = source;
+		this.destination = destination;
+		this.ncRequestData = ncRequestData;
+	}
+
+	public NetworkNode getSource() {
+		return source;
+	}
+
+	public NetworkNode getDestination() {
+		return destination;
+	}
+
+	public NCRequestData getNcRequestData() {
+		return ncRequestData;
+	}
+
+	/**
+	 * @return The number of links of the shortest path (in hops) from the source to the destination in the current
+	 * topology, -1 if the destination cannot be reached.
+	 */
+	public int getHopCount() {
+		Integer hops = getShortestPaths().fromSource.get(destination.getLinkNode());
+		return hops == null ? -1 : hops;
+	}
+
+	/**
+	 * @param linkEdge an edge of the link graph.
+	 * @return Whether the link is on a shortest path (in hops) from the source to the destination in the current
+	 * topology.
+	 */
+	public boolean usesLink(Edge linkEdge) {
+		ShortestPaths currentShortestPaths = getShortestPaths();
+		Integer hops = currentShortestPaths.fromSource.get(destination.getLinkNode());
+		Integer hopsToLink = currentShortestPaths.fromSource.get(linkEdge.getSource());
+		Integer hopsFromLink = currentShortestPaths.toDestination.get(linkEdge.getDestination());
+		return hops != null && hopsToLink != null && hopsFromLink != null && hopsToLink + 1 + hopsFromLink == hops;
+	}
+
+	/**
+	 * @return The shortest path distances in the current topology, recomputed if the number of links changed.
+	 */
+	private ShortestPaths getShortestPaths() {
+		Graph linkGraph = source.getLinkNode().getGraph();
+		int numberOfLinks = linkGraph.getEdges().size();
+		ShortestPaths currentShortestPaths = shortestPaths;
+		if(currentShortestPaths == null || currentShortestPaths.numberOfLinks != numberOfLinks) {
+			currentShortestPaths = new ShortestPaths(numberOfLinks, getDistances(source.getLinkNode(), true), getDistances(destination.getLinkNode(), false));
+			shortestPaths = currentShortestPaths;
+		}
+		return currentShortestPaths;
+	}
+
+	/**
+	 * Breadth-first search in the link graph.
+	 * @param origin node from which the distances are computed.
+	 * @param forward true for the distances from the origin, false for the distances to the origin.
+	 * @return The distance (in hops) of each reachable node.
+	 */
+	private static Map<Node, Integer> getDistances(Node origin, boolean forward) {
+		Map<Node, Integer> hops = new HashMap<>();
+		Queue<Node> toVisit = new ArrayDeque<>();
+		hops.put(origin, 0);
+		toVisit.add(origin);
+		while(!toVisit.isEmpty()) {
+			Node node = toVisit.poll();
+			for(Edge edge : forward ? node.getOutgoingConnections() : node.getIncomingConnections()) {
+				Node neighbor = forward ? edge.getDestination() : edge.getSource();
+				if(!hops.containsKey(neighbor)) {
+					hops.put(neighbor, hops.get(node) + 1);
+					toVisit.add(neighbor);
+				}
+			}
+		}
+		return hops;
+	}
+
+	/**
+	 * Shortest path distances from the source and to the destination, for a given number of links.
+	 */
+	private static class ShortestPaths {
+		private final int numberOfLinks;
+		private final Map<Node, Integer> fromSource;
+		private final Map<Node, Integer> toDestination;
+
+		private ShortestPaths(int numberOfLinks, Map<Node, Integer> fromSource, Map<Node, Integer> toDestination) {
+			this.numberOfLinks = numberOfLinks;
+			this.fromSource = fromSource;
+			this.toDestination = toDestination;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "WorkloadFlow{" +
+				"source=" + source +
+				", destination=" + destination +
+				", ncRequestData=" + ncRequestData +
+				'}';
+	}
+}
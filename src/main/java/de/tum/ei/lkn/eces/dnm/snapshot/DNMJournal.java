@@ -0,0 +1,330 @@
+package de.tum.ei.lkn.eces.dnm.snapshot;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Mapper;
+import de.tum.ei.lkn.eces.dnm.NCRequestData;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
+import de.tum.ei.lkn.eces.dnm.exceptions.DNMException;
+import de.tum.ei.lkn.eces.dnm.inputmodels.PerInEdgeTokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.ResourceUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.TokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.ResourceUtilizationMapper;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.mappers.EdgeMapper;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.Scheduler;
+import de.tum.ei.lkn.eces.network.mappers.SchedulerMapper;
+import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
+import de.uni_kl.cs.discodnc.numbers.Num;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only journal of the registrations and deregistrations of a DetServProxy (see DetServProxy.setJournal).
+ *
+ * Each record holds the ID of the Entity of the request, the token bucket and deadline of the flow and, for each queue
+ * of its path, the queue (identified as in a DNMSnapshot) and the delay so far used for the burst increase at this
+ * hop. The records are buffered and written with a group commit: the journal is written and forced to disk every
+ * 'groupCommitSize' records and on flush/close. A caller appending a record (append or awaitDurable after record) is
+ * blocked until the group of its record is forced to disk, i.e., until 'groupCommitSize' records have been appended
+ * (by concurrent callers) or, at the latest, until 'flushTimeout' ms have elapsed, in which case it forces the pending
+ * records to disk itself. A record is hence durable when append returns. A group commit size larger than 1 only pays
+ * off with concurrent callers: a single caller waits 'flushTimeout' for each of its records.
+ *
+ * To recover, the last snapshot is restored (DNMSnapshot.restore) and the journal is replayed on top of it (replay).
+ * Replaying directly adds/removes the recorded token buckets to/from the utilizations (and the flows to/from the
+ * counters of the CostValueTable), without admission control, and recomputes the service curves once per touched
+ * scheduler. The journal should be truncated (truncate) whenever a
+ * snapshot is written, while no (de)registration is happening.
+ *
+ * Appending is thread-safe.
+ *
+ * @author Amaury Van Bemten
+ */
+public class DNMJournal implements Closeable {
+	private static final byte REGISTER = 1;
+	private static final byte DEREGISTER = 2;
+
+	private final Logger logger = Logger.getLogger(this.getClass());
+
+	private final Mapper<ResourceUtilization> resourceUtilizationMapper;
+	private final Mapper<Scheduler> schedulerMapper;
+	private final QueueIndex index;
+	private final CostValueTable costValueTable;
+
+	// Number of records forced to disk together.
+	private final int groupCommitSize;
+
+	// Maximum time (ms) a caller waits for its group to be completed before forcing it to disk itself.
+	private final long flushTimeout;
+
+	// Journal file (null if the journal is only used for replaying).
+	private final FileChannel channel;
+
+	// Records not written yet.
+	private final SnapshotBuffer pendingRecords = new SnapshotBuffer();
+	private int numberOfPendingRecords = 0;
+
+	// Sequence number of the last appended record and of the last record forced to disk.
+	private long lastSequence = 0;
+	private long durableSequence = 0;
+
+	/**
+	 * Creates a journal only used for replaying.
+	 * @param controller the controller.
+	 * @param network the network.
+	 */
+	public DNMJournal(Controller controller, Network network) {
+		this(controller, network, (FileChannel) null, 1, 0);
+	}
+
+	/**
+	 * Opens (or creates) a journal file. New records are appended to the existing ones.
+	 * @param controller the controller.
+	 * @param network the network.
+	 * @param file the journal file.
+	 * @param groupCommitSize number of records forced to disk together.
+	 * @param flushTimeout maximum time (ms) a caller waits for its group to be completed before forcing it to disk.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public DNMJournal(Controller controller, Network network, Path file, int groupCommitSize, long flushTimeout) throws IOException {
+		this(controller, network, file == null ? null : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), groupCommitSize, flushTimeout);
+	}
+
+	private DNMJournal(Controller controller, Network network, FileChannel channel, int groupCommitSize, long flushTimeout) {
+		if(groupCommitSize <= 0)
+			throw new IllegalArgumentException("The group commit size must be positive");
+		if(flushTimeout < 0)
+			throw new IllegalArgumentException("The flush timeout must be non-negative");
+		this.resourceUtilizationMapper = new ResourceUtilizationMapper(controller);
+		this.schedulerMapper = new SchedulerMapper(controller);
+		this.index = new QueueIndex(network, schedulerMapper, new EdgeMapper(controller));
+		this.costValueTable = new DetServConfigMapper(controller).get(network.getQueueGraph().getEntity()).getCostValueTable();
+		this.channel = channel;
+		this.groupCommitSize = groupCommitSize;
+		this.flushTimeout = flushTimeout;
+	}
+
+	/**
+	 * Appends a registration or deregistration and waits until it is forced to disk.
+	 * @param register true for a registration, false for a deregistration.
+	 * @param requestId ID of the Entity of the request.
+	 * @param path queue edges of the path.
+	 * @param delaysSoFar delay so far used for the burst increase at each hop.
+	 * @param ncRequestData description of the flow.
+	 */
+	public void append(boolean register, long requestId, Edge[] path, double[] delaysSoFar, NCRequestData ncRequestData) {
+		record(register, requestId, path, delaysSoFar, ncRequestData);
+		awaitDurable();
+	}
+
+	/**
+	 * Appends a registration or deregistration without waiting for it to be forced to disk (see awaitDurable). This
+	 * allows to append records while holding locks and to wait for them once the locks are released.
+	 * @param register true for a registration, false for a deregistration.
+	 * @param requestId ID of the Entity of the request.
+	 * @param path queue edges of the path.
+	 * @param delaysSoFar delay so far used for the burst increase at each hop.
+	 * @param ncRequestData description of the flow.
+	 */
+	public synchronized void record(boolean register, long requestId, Edge[] path, double[] delaysSoFar, NCRequestData ncRequestData) {
+		if(channel == null)
+			throw new DNMException("The journal has no file to write to");
+
+		int start = pendingRecords.size();
+		pendingRecords.putInt(0); // length, written below
+		pendingRecords.putByte(register ? REGISTER : DEREGISTER);
+		pendingRecords.putLong(requestId);
+		pendingRecords.putDouble(ncRequestData.getTb().getUltAffineRate().doubleValue());
+		pendingRecords.putDouble(ncRequestData.getTb().getBurst().doubleValue());
+		pendingRecords.putDouble(ncRequestData.getDeadline().doubleValue());
+		pendingRecords.putInt(path.length);
+		for(int i = 0; i < path.length; i++) {
+			int[] queueIndex = index.getQueueIndex(path[i]);
+			pendingRecords.putInt(queueIndex[0]);
+			pendingRecords.putInt(queueIndex[1]);
+			pendingRecords.putDouble(delaysSoFar[i]);
+		}
+		pendingRecords.putIntAt(start, pendingRecords.size() - start - Integer.BYTES);
+		lastSequence++;
+
+		if(++numberOfPendingRecords >= groupCommitSize)
+			flush();
+	}
+
+	/**
+	 * Waits until all the records appended so far are forced to disk. If the current group is not completed within
+	 * the flush timeout, the pending records are forced to disk by the caller.
+	 */
+	public synchronized void awaitDurable() {
+		long sequence = lastSequence;
+		long deadline = System.nanoTime() + flushTimeout * 1000000L;
+		boolean interrupted = false;
+		while(durableSequence < sequence) {
+			long remaining = (deadline - System.nanoTime()) / 1000000L;
+			if(remaining <= 0) {
+				flush();
+				break;
+			}
+			try {
+				wait(remaining);
+			}
+			catch(InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Writes the pending records and forces them to disk.
+	 */
+	public synchronized void flush() {
+		if(numberOfPendingRecords == 0)
+			return;
+
+		try {
+			pendingRecords.writeTo(channel);
+			channel.force(false);
+		}
+		catch(IOException e) {
+			throw new DNMException("Unable to write the journal: " + e.getMessage());
+		}
+		numberOfPendingRecords = 0;
+		durableSequence = lastSequence;
+		notifyAll();
+	}
+
+	/**
+	 * Drops all the records (written or pending), e.g., after a snapshot has been written.
+	 * @throws IOException if the file cannot be truncated.
+	 */
+	public synchronized void truncate() throws IOException {
+		if(channel == null)
+			throw new DNMException("The journal has no file to truncate");
+		pendingRecords.clear();
+		numberOfPendingRecords = 0;
+		durableSequence = lastSequence;
+		notifyAll();
+		channel.truncate(0);
+		channel.force(true);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if(channel == null)
+			return;
+		flush();
+		channel.close();
+	}
+
+	/**
+	 * Replays a journal on top of the current state (e.g., just restored from a snapshot). An incomplete last record
+	 * (crash while writing) is ignored.
+	 * @param file the journal file.
+	 * @param flows the flows currently registered (e.g., returned by DNMSnapshot.restore), updated with the replayed
+	 *              registrations and deregistrations.
+	 * @return The number of replayed records.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public int replay(Path file, List<SnapshotFlow> flows) throws IOException {
+		ByteBuffer buffer;
+		try(FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+		}
+
+		// For each touched scheduler, highest priority queue whose utilization changed.
+		Map<Scheduler, Integer> touchedSchedulers = new HashMap<>();
+		int replayedRecords = 0;
+		while(buffer.remaining() >= Integer.BYTES) {
+			int length = buffer.getInt();
+			if(length <= 0 || buffer.remaining() < length) {
+				logger.warn("Incomplete record at the end of " + file + ", ignored");
+				break;
+			}
+
+			boolean register = buffer.get() == REGISTER;
+			long requestId = buffer.getLong();
+			double rate = buffer.getDouble();
+			double burst = buffer.getDouble();
+			double deadline = buffer.getDouble();
+			Edge[] path = new Edge[buffer.getInt()];
+			for(int i = 0; i < path.length; i++) {
+				int linkIndex = buffer.getInt();
+				int queueIndex = buffer.getInt();
+				double delaySoFar = buffer.getDouble();
+				path[i] = index.getQueueEdge(linkIndex, queueIndex);
+
+				// Traffic sourced at the first edge comes from the edge itself.
+				Edge physicalInputEdge = index.getLinkEdges().get(i == 0 ? linkIndex : index.getQueueIndex(path[i - 1])[0]);
+				apply(path[i], physicalInputEdge, rate, burst + rate * delaySoFar, register);
+				costValueTable.addFlows(path[i].getEntity(), register ? 1 : -1);
+				touchedSchedulers.merge(schedulerMapper.get(index.getLinkEdges().get(linkIndex).getEntity()), queueIndex, Math::min);
+			}
+
+			if(register) {
+				flows.add(new SnapshotFlow(requestId, path, new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(rate, burst), Num.getFactory().create(deadline))));
+			}
+			else {
+				Iterator<SnapshotFlow> iterator = flows.iterator();
+				while(iterator.hasNext()) {
+					if(iterator.next().getRequestId() == requestId) {
+						iterator.remove();
+						break;
+					}
+				}
+			}
+			replayedRecords++;
+		}
+
+		// The listeners recompute the service curves starting from the highest priority touched queue.
+		for(Map.Entry<Scheduler, Integer> touchedScheduler : touchedSchedulers.entrySet()) {
+			ResourceUtilization resourceUtilization = resourceUtilizationMapper.getOptimistic(touchedScheduler.getKey().getQueues()[touchedScheduler.getValue()].getEntity());
+			resourceUtilizationMapper.updateComponent(resourceUtilization, () -> {});
+		}
+
+		logger.info("Replayed " + replayedRecords + " records from " + file);
+		return replayedRecords;
+	}
+
+	/**
+	 * Adds/removes a token bucket to/from the utilization of a queue.
+	 * @param queueEdge the queue edge.
+	 * @param physicalInputEdge physical edge from which the flow comes.
+	 * @param rate rate of the token bucket.
+	 * @param burst burst of the token bucket.
+	 * @param add true to add, false to remove.
+	 */
+	private void apply(Edge queueEdge, Edge physicalInputEdge, double rate, double burst, boolean add) {
+		ResourceUtilization resourceUtilization = resourceUtilizationMapper.get(queueEdge.getEntity());
+		Num rateNum = Num.getFactory().create(rate);
+		Num burstNum = Num.getFactory().create(burst);
+		if(resourceUtilization instanceof TokenBucketUtilization) {
+			if(add)
+				((TokenBucketUtilization) resourceUtilization).addFlow(rateNum, burstNum);
+			else
+				((TokenBucketUtilization) resourceUtilization).removeFlow(rateNum, burstNum);
+		}
+		else if(resourceUtilization instanceof PerInEdgeTokenBucketUtilization) {
+			if(add)
+				((PerInEdgeTokenBucketUtilization) resourceUtilization).addFlow(physicalInputEdge, rateNum, burstNum);
+			else
+				((PerInEdgeTokenBucketUtilization) resourceUtilization).removeFlow(physicalInputEdge, rateNum, burstNum);
+		}
+		else {
+			throw new DNMException("ResourceUtilization " + resourceUtilization.getClass().getTypeName() + " is not supported!");
+		}
+	}
+}
@@ -0,0 +1,380 @@
+package de.tum.ei.lkn.eces.dnm.snapshot;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Mapper;
+import de.tum.ei.lkn.eces.dnm.NCRequestData;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.AccessControlEngine;
+import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.exceptions.DNMException;
+import de.tum.ei.lkn.eces.dnm.inputmodels.PerInEdgeTokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.ResourceUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.TokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.QueueModelMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.ResourceUtilizationMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.SelectedResourceAllocationMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.FlowReservation;
+import de.tum.ei.lkn.eces.dnm.queuemodels.MHMQueueModel;
+import de.tum.ei.lkn.eces.dnm.queuemodels.QueueModel;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.SelectedResourceAllocation;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.mappers.EdgeMapper;
+import de.tum.ei.lkn.eces.network.Delay;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.Queue;
+import de.tum.ei.lkn.eces.network.Rate;
+import de.tum.ei.lkn.eces.network.Scheduler;
+import de.tum.ei.lkn.eces.network.mappers.DelayMapper;
+import de.tum.ei.lkn.eces.network.mappers.RateMapper;
+import de.tum.ei.lkn.eces.network.mappers.SchedulerMapper;
+import de.uni_kl.cs.discodnc.curves.ArrivalCurve;
+import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
+import de.uni_kl.cs.discodnc.curves.ServiceCurve;
+import de.uni_kl.cs.discodnc.numbers.Num;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Binary snapshot of the DNM state of a network: for each queue, its delay, model (service curve and, for MHM, maximum
+ * token bucket) and utilization, the resource allocation algorithm of each scheduler, and the registered flows.
+ *
+ * The snapshot is meant to be restored into the same topology, freshly re-created (in the same order) after a restart:
+ * the queues are identified by the position of their link (ordered by ID) and their priority. When restored, the state
+ * is written directly into the existing components, without going through the admission control nor the listeners
+ * (and hence without the service curve cascades of the DNMSystem). TBM service curves that are not rate-latency curves
+ * are recomputed once, in a single pass per scheduler, and the slack table (SLACK access control engine) is recomputed
+ * for each scheduler once its queues are restored. The Scheduler of each restored link is then marked as updated, so
+ * that the admission caches (see AdmissionCache) drop the decisions taken before the restore.
+ *
+ * The snapshot is written with a file channel and read through a memory-mapped buffer.
+ *
+ * @author Amaury Van Bemten
+ */
+public class DNMSnapshot {
+	private static final int MAGIC = 0x444E4D53; // "DNMS"
+	private static final int VERSION = 1;
+
+	private static final byte NONE = 0;
+	private static final byte RATE_LATENCY = 1;
+	private static final byte OTHER_CURVE = 2;
+	private static final byte TOKEN_BUCKET = 1;
+	private static final byte PER_IN_EDGE_TOKEN_BUCKETS = 2;
+
+	private final Mapper<Edge> edgeMapper;
+	private final Mapper<Scheduler> schedulerMapper;
+	private final Mapper<Rate> rateMapper;
+	private final Mapper<Delay> delayMapper;
+	private final Mapper<QueueModel> queueModelMapper;
+	private final Mapper<ResourceUtilization> resourceUtilizationMapper;
+	private final Mapper<SelectedResourceAllocation> selectedResourceAllocationMapper;
+	private final Mapper<DetServConfig> modelingConfigMapper;
+
+	public DNMSnapshot(Controller controller) {
+		edgeMapper = new EdgeMapper(controller);
+		schedulerMapper = new SchedulerMapper(controller);
+		rateMapper = new RateMapper(controller);
+		delayMapper = new DelayMapper(controller);
+		queueModelMapper = new QueueModelMapper(controller);
+		resourceUtilizationMapper = new ResourceUtilizationMapper(controller);
+		selectedResourceAllocationMapper = new SelectedResourceAllocationMapper(controller);
+		modelingConfigMapper = new DetServConfigMapper(controller);
+	}
+
+	/**
+	 * Writes the snapshot of a network to a file.
+	 * @param network the network.
+	 * @param flows the flows currently registered in the network.
+	 * @param file the file (replaced if it exists).
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void write(Network network, Collection<FlowReservation> flows, Path file) throws IOException {
+		QueueIndex index = new QueueIndex(network, schedulerMapper, edgeMapper);
+		List<Edge> linkEdges = index.getLinkEdges();
+
+		SnapshotBuffer buffer = new SnapshotBuffer();
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(linkEdges.size());
+		for(Edge linkEdge : linkEdges) {
+			Queue[] queues = schedulerMapper.get(linkEdge.getEntity()).getQueues();
+			buffer.putInt(queues.length);
+			buffer.putDouble(rateMapper.get(linkEdge.getEntity()).getRate());
+			SelectedResourceAllocation selectedResourceAllocation = selectedResourceAllocationMapper.getOptimistic(linkEdge.getEntity());
+			buffer.putString(selectedResourceAllocation == null ? "" : selectedResourceAllocation.getResourceAllocation().getClass().getName());
+
+			for(Queue queue : queues) {
+				buffer.putDouble(delayMapper.get(queue.getEntity()).getDelay());
+				writeQueueModel(buffer, queueModelMapper.getOptimistic(queue.getEntity()));
+				writeUtilization(buffer, resourceUtilizationMapper.getOptimistic(queue.getEntity()), index);
+			}
+		}
+
+		buffer.putInt(flows.size());
+		for(FlowReservation flow : flows) {
+			buffer.putLong(flow.getRequest().getEntity().getId());
+			Edge[] path = flow.getPath().getPath();
+			buffer.putInt(path.length);
+			for(Edge edge : path) {
+				int[] queueIndex = index.getQueueIndex(edge);
+				buffer.putInt(queueIndex[0]);
+				buffer.putInt(queueIndex[1]);
+			}
+			ArrivalCurve tokenBucket = flow.getNcRequestData().getTb();
+			buffer.putDouble(tokenBucket.getUltAffineRate().doubleValue());
+			buffer.putDouble(tokenBucket.getBurst().doubleValue());
+			buffer.putDouble(flow.getNcRequestData().getDeadline().doubleValue());
+		}
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			buffer.writeTo(channel);
+		}
+	}
+
+	private void writeQueueModel(SnapshotBuffer buffer, QueueModel queueModel) {
+		if(queueModel == null) {
+			buffer.putByte(NONE);
+			return;
+		}
+
+		ServiceCurve serviceCurve = queueModel.getServiceCurve();
+		if(serviceCurve.isRateLatency()) {
+			buffer.putByte(RATE_LATENCY);
+			buffer.putDouble(serviceCurve.getUltAffineRate().doubleValue());
+			buffer.putDouble(serviceCurve.getLatency().doubleValue());
+		}
+		else {
+			buffer.putByte(OTHER_CURVE);
+		}
+
+		if(queueModel instanceof MHMQueueModel) {
+			buffer.putByte(TOKEN_BUCKET);
+			buffer.putDouble(((MHMQueueModel) queueModel).getMaximumTokenBucket().getUltAffineRate().doubleValue());
+			buffer.putDouble(((MHMQueueModel) queueModel).getMaximumTokenBucket().getBurst().doubleValue());
+		}
+		else {
+			buffer.putByte(NONE);
+		}
+	}
+
+	private void writeUtilization(SnapshotBuffer buffer, ResourceUtilization resourceUtilization, QueueIndex index) {
+		if(resourceUtilization instanceof TokenBucketUtilization) {
+			buffer.putByte(TOKEN_BUCKET);
+			buffer.putDouble(((TokenBucketUtilization) resourceUtilization).getRateValue());
+			buffer.putDouble(((TokenBucketUtilization) resourceUtilization).getBurstValue());
+		}
+		else if(resourceUtilization instanceof PerInEdgeTokenBucketUtilization) {
+			buffer.putByte(PER_IN_EDGE_TOKEN_BUCKETS);
+			PerInEdgeTokenBucketUtilization utilization = (PerInEdgeTokenBucketUtilization) resourceUtilization;
+			buffer.putInt(utilization.getInputEdges().size());
+			for(Edge edge : utilization.getInputEdges()) {
+				buffer.putInt(index.getLinkIndex(edge));
+				buffer.putDouble(utilization.getRateValue(edge));
+				buffer.putDouble(utilization.getBurstValue(edge));
+			}
+		}
+		else if(resourceUtilization == null) {
+			buffer.putByte(NONE);
+		}
+		else {
+			throw new DNMException(resourceUtilization.getClass().getTypeName() + " is not supported");
+		}
+	}
+
+	/**
+	 * Restores a snapshot into a network.
+	 * @param network the network (same topology as the one of the snapshot).
+	 * @param file the snapshot file.
+	 * @return The flows registered in the snapshot.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public List<SnapshotFlow> restore(Network network, Path file) throws IOException {
+		ByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer = mappedBuffer;
+		}
+
+		if(buffer.getInt() != MAGIC)
+			throw new DNMException(file + " is not a DNM snapshot");
+		if(buffer.getInt() != VERSION)
+			throw new DNMException("Unsupported DNM snapshot version");
+
+		QueueIndex index = new QueueIndex(network, schedulerMapper, edgeMapper);
+		List<Edge> linkEdges = index.getLinkEdges();
+		if(buffer.getInt() != linkEdges.size())
+			throw new DNMException("The snapshot does not match the topology: different number of links");
+		DetServConfig config = modelingConfigMapper.get(network.getQueueGraph().getEntity());
+
+		for(Edge linkEdge : linkEdges) {
+			Queue[] queues = schedulerMapper.get(linkEdge.getEntity()).getQueues();
+			if(buffer.getInt() != queues.length || buffer.getDouble() != rateMapper.get(linkEdge.getEntity()).getRate())
+				throw new DNMException("The snapshot does not match the topology: different schedulers on " + linkEdge);
+			String resourceAllocation = SnapshotBuffer.getString(buffer);
+			SelectedResourceAllocation selectedResourceAllocation = selectedResourceAllocationMapper.getOptimistic(linkEdge.getEntity());
+			if(!resourceAllocation.equals(selectedResourceAllocation == null ? "" : selectedResourceAllocation.getResourceAllocation().getClass().getName()))
+				throw new DNMException("The snapshot does not match the resource allocation of " + linkEdge + ": " + resourceAllocation);
+
+			// Queues whose service curve was not stored (not rate-latency) and must be recomputed.
+			boolean[] otherCurves = new boolean[queues.length];
+			for(int i = 0; i < queues.length; i++) {
+				Edge queueEdge = edgeMapper.get(queues[i].getEntity());
+				double delay = buffer.getDouble();
+				delayMapper.get(queues[i].getEntity()).setDelay(delay);
+				config.getQueueEdgeTable().setQueueDelay(queueEdge, delay);
+
+				otherCurves[i] = restoreQueueModel(buffer, queues, i, config);
+				restoreUtilization(buffer, resourceUtilizationMapper.getOptimistic(queues[i].getEntity()), linkEdges);
+			}
+
+			recomputeServiceCurves(queues, otherCurves, config);
+			recomputeSlackTable(queues, config);
+			schedulerMapper.updateComponent(schedulerMapper.get(linkEdge.getEntity()), () -> {});
+		}
+
+		// The flow counters of the cost values are rebuilt from the restored paths.
+		config.getCostValueTable().clearFlows();
+		int numberOfFlows = buffer.getInt();
+		List<SnapshotFlow> flows = new ArrayList<>(numberOfFlows);
+		for(int i = 0; i < numberOfFlows; i++) {
+			long requestId = buffer.getLong();
+			Edge[] path = new Edge[buffer.getInt()];
+			for(int j = 0; j < path.length; j++) {
+				path[j] = index.getQueueEdge(buffer.getInt(), buffer.getInt());
+				config.getCostValueTable().addFlows(path[j].getEntity(), 1);
+			}
+			double rate = buffer.getDouble();
+			double burst = buffer.getDouble();
+			double deadline = buffer.getDouble();
+			flows.add(new SnapshotFlow(requestId, path, new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(rate, burst), Num.getFactory().create(deadline))));
+		}
+
+		return flows;
+	}
+
+	/**
+	 * Recomputes the slack of the queues of a scheduler from their restored delays, service curves and utilizations,
+	 * if the slack table is used (see DNMSystem).
+	 * @param queues the queues of a scheduler (from high to low priority).
+	 * @param config the modeling configuration.
+	 */
+	private void recomputeSlackTable(Queue[] queues, DetServConfig config) {
+		if(config.getAcModel() != ACModel.TBM || config.isInputLinkShaping() || config.getAccessControlEngine() != AccessControlEngine.SLACK)
+			return;
+
+		Edge[] queueEdges = new Edge[queues.length];
+		double[] rates = new double[queues.length];
+		double[] bursts = new double[queues.length];
+		double[] delays = new double[queues.length];
+		double[] sizes = new double[queues.length];
+		for(int i = 0; i < queues.length; i++) {
+			ResourceUtilization resourceUtilization = resourceUtilizationMapper.get(queues[i].getEntity());
+			if(!(resourceUtilization instanceof TokenBucketUtilization))
+				throw new DNMException(resourceUtilization.getClass().getTypeName() + " is not supported by the slack table");
+			queueEdges[i] = edgeMapper.get(queues[i].getEntity());
+			rates[i] = ((TokenBucketUtilization) resourceUtilization).getRateValue();
+			bursts[i] = ((TokenBucketUtilization) resourceUtilization).getBurstValue();
+			delays[i] = delayMapper.get(queues[i].getEntity()).getDelay();
+			sizes[i] = queues[i].getSize();
+		}
+
+		ServiceCurve firstServiceCurve = queueModelMapper.get(queues[0].getEntity()).getServiceCurve();
+		config.getSlackTable().put(queueEdges, firstServiceCurve.getUltAffineRate().doubleValue(), firstServiceCurve.getLatency().doubleValue(), rates, bursts, delays, sizes);
+	}
+
+	/**
+	 * Restores the queue model of a queue.
+	 * @return true if the service curve of the queue was not stored (not rate-latency) and must be recomputed.
+	 */
+	private boolean restoreQueueModel(ByteBuffer buffer, Queue[] queues, int queueIndex, DetServConfig config) {
+		byte curveType = buffer.get();
+		ServiceCurve serviceCurve = null;
+		if(curveType == RATE_LATENCY)
+			serviceCurve = CurvePwAffine.getFactory().createRateLatency(buffer.getDouble(), buffer.getDouble());
+		else if(curveType == OTHER_CURVE && config.getAcModel() != ACModel.TBM)
+			throw new DNMException("Only TBM service curves can be recomputed");
+
+		ArrivalCurve maximumTokenBucket = null;
+		if(buffer.get() == TOKEN_BUCKET)
+			maximumTokenBucket = CurvePwAffine.getFactory().createTokenBucket(buffer.getDouble(), buffer.getDouble());
+
+		QueueModel queueModel = queueModelMapper.getOptimistic(queues[queueIndex].getEntity());
+		if(curveType == NONE)
+			return false;
+		if(queueModel == null)
+			throw new DNMException("No queue model on " + queues[queueIndex]);
+
+		// Non rate-latency curves are recomputed once the whole scheduler is restored.
+		if(serviceCurve != null)
+			queueModel.setServiceCurve(serviceCurve);
+		if(maximumTokenBucket != null)
+			((MHMQueueModel) queueModel).setMaximumTokenBucket(maximumTokenBucket);
+		return curveType == OTHER_CURVE;
+	}
+
+	private void restoreUtilization(ByteBuffer buffer, ResourceUtilization resourceUtilization, List<Edge> linkEdges) {
+		byte utilizationType = buffer.get();
+		if(utilizationType == TOKEN_BUCKET) {
+			double rate = buffer.getDouble();
+			double burst = buffer.getDouble();
+			if(!(resourceUtilization instanceof TokenBucketUtilization))
+				throw new DNMException("The snapshot does not match the utilization model");
+			((TokenBucketUtilization) resourceUtilization).setTokenBucket(rate, burst);
+		}
+		else if(utilizationType == PER_IN_EDGE_TOKEN_BUCKETS) {
+			if(!(resourceUtilization instanceof PerInEdgeTokenBucketUtilization))
+				throw new DNMException("The snapshot does not match the utilization model");
+			PerInEdgeTokenBucketUtilization utilization = (PerInEdgeTokenBucketUtilization) resourceUtilization;
+			utilization.release();
+
+			int numberOfEdges = buffer.getInt();
+			for(int i = 0; i < numberOfEdges; i++) {
+				Edge edge = linkEdges.get(buffer.getInt());
+				utilization.setTokenBucket(edge, buffer.getDouble(), buffer.getDouble());
+			}
+		}
+	}
+
+	/**
+	 * Recomputes, in a single pass, the TBM service curves that were not stored as rate-latency curves.
+	 * @param queues the queues of a scheduler (from high to low priority).
+	 * @param otherCurves for each queue, whether its service curve was not stored.
+	 * @param config the modeling configuration.
+	 */
+	private void recomputeServiceCurves(Queue[] queues, boolean[] otherCurves, DetServConfig config) {
+		if(config.getAcModel() != ACModel.TBM)
+			return;
+
+		if(otherCurves[0])
+			throw new DNMException("The service curve of the highest priority queue of a scheduler cannot be recomputed");
+		for(int i = 1; i < queues.length; i++) {
+			if(!otherCurves[i])
+				continue;
+
+			QueueModel queueModel = queueModelMapper.get(queues[i].getEntity());
+			QueueModel previousQueueModel = queueModelMapper.get(queues[i - 1].getEntity());
+			queueModel.setServiceCurve(config.getResidualMode().getResidualServiceCurve(previousQueueModel.getServiceCurve(), getArrivalCurve(resourceUtilizationMapper.get(queues[i - 1].getEntity()))));
+		}
+	}
+
+	/**
+	 * @param resourceUtilization the utilization of a queue.
+	 * @return The current arrival curve of this queue.
+	 */
+	private ArrivalCurve getArrivalCurve(ResourceUtilization resourceUtilization) {
+		if(resourceUtilization instanceof TokenBucketUtilization)
+			return ((TokenBucketUtilization) resourceUtilization).getTokenBucket();
+		else if(resourceUtilization instanceof PerInEdgeTokenBucketUtilization)
+			return ((PerInEdgeTokenBucketUtilization) resourceUtilization).getAggregateArrivalCurve();
+		else
+			throw new DNMException(resourceUtilization.getClass().getTypeName() + " is not supported!");
+	}
+}
@@ -0,0 +1,85 @@
+package de.tum.ei.lkn.eces.dnm.snapshot;
+
+import de.tum.ei.lkn.eces.core.Mapper;
+import de.tum.ei.lkn.eces.dnm.exceptions.DNMException;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.Queue;
+import de.tum.ei.lkn.eces.network.Scheduler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stable identification of the links and queues of a network across restarts: the links with a scheduler are ordered
+ * by the ID of their link edge and a queue is identified by the position of its link and its priority.
+ *
+ * The index is computed at creation and does not follow later changes of the topology.
+ *
+ * @author Amaury Van Bemten
+ */
+class QueueIndex {
+	private final List<Edge> linkEdges = new ArrayList<>();
+	private final Map<Edge, Integer> linkIndices = new HashMap<>();
+	private final Map<Edge, int[]> queueIndices = new HashMap<>();
+	private final List<Edge[]> queueEdges = new ArrayList<>();
+
+	QueueIndex(Network network, Mapper<Scheduler> schedulerMapper, Mapper<Edge> edgeMapper) {
+		for(Edge linkEdge : network.getLinkGraph().getEdges())
+			if(schedulerMapper.isIn(linkEdge.getEntity()))
+				linkEdges.add(linkEdge);
+		linkEdges.sort(Comparator.comparingLong(Edge::getId));
+
+		for(int i = 0; i < linkEdges.size(); i++) {
+			linkIndices.put(linkEdges.get(i), i);
+			Queue[] queues = schedulerMapper.get(linkEdges.get(i).getEntity()).getQueues();
+			Edge[] edges = new Edge[queues.length];
+			for(int j = 0; j < queues.length; j++) {
+				edges[j] = edgeMapper.get(queues[j].getEntity());
+				queueIndices.put(edges[j], new int[]{i, j});
+			}
+			queueEdges.add(edges);
+		}
+	}
+
+	/**
+	 * @return The link edges with a scheduler, ordered by ID.
+	 */
+	List<Edge> getLinkEdges() {
+		return linkEdges;
+	}
+
+	/**
+	 * @param linkEdge a link edge.
+	 * @return The position of the link.
+	 */
+	int getLinkIndex(Edge linkEdge) {
+		Integer index = linkIndices.get(linkEdge);
+		if(index == null)
+			throw new DNMException(linkEdge + " is not a link edge of the network");
+		return index;
+	}
+
+	/**
+	 * @param queueEdge a queue edge.
+	 * @return The position of the link of the queue and the priority of the queue.
+	 */
+	int[] getQueueIndex(Edge queueEdge) {
+		int[] index = queueIndices.get(queueEdge);
+		if(index == null)
+			throw new DNMException(queueEdge + " is not a queue edge of the network");
+		return index;
+	}
+
+	/**
+	 * @param linkIndex position of a link.
+	 * @param queueIndex priority of a queue of this link.
+	 * @return The queue edge.
+	 */
+	Edge getQueueEdge(int linkIndex, int queueIndex) {
+		return queueEdges.get(linkIndex)[queueIndex];
+	}
+}
@@ -0,0 +1,100 @@
+package de.tum.ei.lkn.eces.dnm.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Growable byte buffer in which snapshots and journal records are written.
+ *
+ * @author Amaury Van Bemten
+ */
+class SnapshotBuffer {
+	private ByteBuffer buffer;
+
+	SnapshotBuffer() {
+		this(1 << 16);
+	}
+
+	SnapshotBuffer(int initialCapacity) {
+		buffer = ByteBuffer.allocate(initialCapacity);
+	}
+
+	private void ensureCapacity(int bytes) {
+		if(buffer.remaining() >= bytes)
+			return;
+		ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+		buffer.flip();
+		newBuffer.put(buffer);
+		buffer = newBuffer;
+	}
+
+	void putByte(byte value) {
+		ensureCapacity(Byte.BYTES);
+		buffer.put(value);
+	}
+
+	void putInt(int value) {
+		ensureCapacity(Integer.BYTES);
+		buffer.putInt(value);
+	}
+
+	void putLong(long value) {
+		ensureCapacity(Long.BYTES);
+		buffer.putLong(value);
+	}
+
+	/**
+	 * Overwrites an int already written.
+	 * @param position position of the int.
+	 * @param value new value.
+	 */
+	void putIntAt(int position, int value) {
+		buffer.putInt(position, value);
+	}
+
+	void putDouble(double value) {
+		ensureCapacity(Double.BYTES);
+		buffer.putDouble(value);
+	}
+
+	void putString(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		putInt(bytes.length);
+		ensureCapacity(bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * @return The number of bytes written so far.
+	 */
+	int size() {
+		return buffer.position();
+	}
+
+	/**
+	 * Writes the content of the buffer to a channel and empties the buffer.
+	 * @param channel the channel.
+	 * @throws IOException if the content cannot be written.
+	 */
+	void writeTo(FileChannel channel) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Empties the buffer.
+	 */
+	void clear() {
+		buffer.clear();
+	}
+
+	static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
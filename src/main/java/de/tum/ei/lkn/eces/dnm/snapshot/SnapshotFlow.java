@@ -0,0 +1,47 @@
+package de.tum.ei.lkn.eces.dnm.snapshot;
+
+import de.tum.ei.lkn.eces.dnm.NCRequestData;
+import de.tum.ei.lkn.eces.graph.Edge;
+
+import java.util.Arrays;
+
+/**
+ * A flow restored from a DNMSnapshot (or a DNMJournal): the ID of the Entity of its request when it was registered,
+ * the queue edges of its path and its traffic description. Its resources are already accounted for in the restored
+ * utilizations.
+ *
+ * @author Amaury Van Bemten
+ */
+public class SnapshotFlow {
+	private final long requestId;
+	private final Edge[] path;
+	private final NCRequestData ncRequestData;
+
+	public SnapshotFlow(long requestId, Edge[] path, NCRequestData ncRequestData) {
+		this.requestId = requestId;
+		this.path = path;
+		this.ncRequestData = ncRequestData;
+	}
+
+	public long getRequestId() {
+		return requestId;
+	}
+
+	public Edge[] getPath() {
+		return path;
+	}
+
+	public NCRequestData getNcRequestData() {
+		return ncRequestData;
+	}
+
+	@Override
+	public String toString() {
+		return "SnapshotFlow{" +
+				"requestId=" + requestId +
+				", path=" + Arrays.toString(path) +
+				", tb=" + ncRequestData.getTb() +
+				", deadline=" + ncRequestData.getDeadline() +
+				'}';
+	}
+}
@@ -0,0 +1,60 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.proxies.AdmissionCache;
+import de.tum.ei.lkn.eces.dnm.proxies.FlowReservation;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdmissionCacheTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void decisionsAreInvalidatedWhenTheQueuesChange() {
+		RingNetwork ring = RingNetwork.builder().build();
+		ring.proxy.setAdmissionCache(new AdmissionCache(ring.controller));
+		Path path = ring.route(0, 2, 1000000, 1000, 1).getPath();
+		Edge firstEdge = path.getPath()[0];
+		Request request = ring.createFlow(path, 0.4 * RingNetwork.LINK_RATE, 1000, 1).getRequest();
+
+		// Two such flows fit, not three: the cached decision must not survive the registrations.
+		for (int i = 0; i < 2; i++) {
+			assertTrue(hasAccess(ring, firstEdge, request));
+			assertTrue(hasAccess(ring, firstEdge, request));
+			ring.proxy.register(path, request);
+		}
+		assertFalse(hasAccess(ring, firstEdge, request));
+
+		ring.proxy.deregister(path, request);
+		assertTrue(hasAccess(ring, firstEdge, request));
+
+		// Batch registrations do not trigger the listeners for each flow but must also invalidate the decisions.
+		FlowReservation reservation = ring.createFlow(path, 0.4 * RingNetwork.LINK_RATE, 1000, 1);
+		assertEquals(1, ring.proxy.registerAll(Collections.singletonList(reservation)).size());
+		assertFalse(hasAccess(ring, firstEdge, request));
+
+		// Same decision without the cache.
+		ring.proxy.setAdmissionCache(null);
+		assertFalse(hasAccess(ring, firstEdge, request));
+	}
+
+	private boolean hasAccess(RingNetwork ring, Edge edge, Request request) {
+		return ring.proxy.hasAccess(null, edge, new double[]{0.0}, request, true);
+	}
+}
@@ -0,0 +1,64 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.proxies.FlowReservation;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import de.uni_kl.cs.discodnc.curves.ServiceCurve;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchAdmissionTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void flowsAreCheckedAgainstTheEarlierFlowsOfTheBatch() {
+		RingNetwork ring = RingNetwork.builder().build();
+		Path path = ring.route(0, 2, 1000000, 1000, 1).getPath();
+
+		// The first two flows fit alone but not together.
+		List<FlowReservation> batch = Arrays.asList(
+				ring.createFlow(path, 0.6 * RingNetwork.LINK_RATE, 1000, 1),
+				ring.createFlow(path, 0.6 * RingNetwork.LINK_RATE, 1000, 1),
+				ring.createFlow(path, 1000000, 1000, 1));
+		assertEquals(Arrays.asList(batch.get(0), batch.get(2)), ring.proxy.registerAll(batch));
+	}
+
+	@Test
+	public void batchLeadsToTheServiceCurvesOfOneByOneRegistrations() {
+		for (BurstIncreaseModel burstIncrease : BurstIncreaseModel.values()) {
+			for (boolean inputLinkShaping : new boolean[]{false, true}) {
+				RingNetwork oneByOneRing = RingNetwork.builder().burstIncrease(burstIncrease).inputLinkShaping(inputLinkShaping).build();
+				for (FlowReservation reservation : oneByOneRing.createFlows())
+					assertTrue(oneByOneRing.proxy.register(reservation.getPath(), reservation.getRequest()));
+
+				RingNetwork batchRing = RingNetwork.builder().burstIncrease(burstIncrease).inputLinkShaping(inputLinkShaping).build();
+				List<FlowReservation> batch = batchRing.createFlows();
+				assertEquals(batch, batchRing.proxy.registerAll(batch));
+
+				List<Edge> oneByOneQueueEdges = oneByOneRing.getQueueEdges();
+				List<Edge> batchQueueEdges = batchRing.getQueueEdges();
+				for (int i = 0; i < batchQueueEdges.size(); i++) {
+					ServiceCurve expected = oneByOneRing.getServiceCurve(oneByOneQueueEdges.get(i));
+					ServiceCurve serviceCurve = batchRing.getServiceCurve(batchQueueEdges.get(i));
+					assertEquals(expected.getUltAffineRate().doubleValue(), serviceCurve.getUltAffineRate().doubleValue(), 1e-3);
+					assertEquals(expected.getLatency().doubleValue(), serviceCurve.getLatency().doubleValue(), 1e-9);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.Constant;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.MHM.MHMRateRatiosAllocation;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.TBM.TBMDelayRatiosAllocation;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Link;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.network.mappers.DelayMapper;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkBuildTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void bulkBuildGivesTheSameAllocations() {
+		List<Double> expectedDelays = buildMHMMeshWithILS(false);
+		List<Double> delays = buildMHMMeshWithILS(true);
+		assertEquals(expectedDelays.size(), delays.size());
+		for (int i = 0; i < expectedDelays.size(); i++)
+			assertEquals(expectedDelays.get(i), delays.get(i), 1e-12);
+	}
+
+	@Test
+	public void resourcesAreAllocatedWhenTheBulkBuildIsClosed() {
+		Controller bulkController = new Controller();
+		GraphSystem graphSystem = new GraphSystem(bulkController);
+		NetworkingSystem networkingSystem = new NetworkingSystem(bulkController, graphSystem);
+		DNMSystem bulkDnmSystem = new DNMSystem(bulkController);
+		Network bulkNetwork = networkingSystem.createNetwork();
+		new DetServConfigMapper(bulkController).attachComponent(bulkNetwork.getQueueGraph(), new DetServConfig(ACModel.TBM, ResidualMode.LEAST_LATENCY, BurstIncreaseModel.NO, false, new Constant(), (cont, sched) -> new TBMDelayRatiosAllocation(cont)));
+		DelayMapper delayMapper = new DelayMapper(bulkController);
+		Link link;
+		try (BulkBuild bulkBuild = bulkDnmSystem.startBulkBuild()) {
+			link = networkingSystem.createLinkWithPriorityScheduling(networkingSystem.createNode(bulkNetwork), networkingSystem.createNode(bulkNetwork), 128000000.0, 0.0, new double[]{60000.0, 60000.0, 60000.0});
+			assertFalse(delayMapper.isIn(link.getQueueEdges()[0].getEntity()));
+		}
+		for (Edge queueEdge : link.getQueueEdges())
+			assertTrue(delayMapper.isIn(queueEdge.getEntity()));
+	}
+
+	/**
+	 * Builds a full mesh with MHM and ILS.
+	 * @param bulk whether to build it in a bulk build.
+	 * @return the delays of all the queues, in creation order.
+	 */
+	private List<Double> buildMHMMeshWithILS(boolean bulk) {
+		Controller meshController = new Controller();
+		GraphSystem graphSystem = new GraphSystem(meshController);
+		NetworkingSystem networkingSystem = new NetworkingSystem(meshController, graphSystem);
+		DNMSystem meshDnmSystem = new DNMSystem(meshController);
+		meshDnmSystem.setBuildPool(new ForkJoinPool(4));
+		Network meshNetwork = networkingSystem.createNetwork();
+		new DetServConfigMapper(meshController).attachComponent(meshNetwork.getQueueGraph(), new DetServConfig(
+				ACModel.MHM,
+				ResidualMode.LEAST_LATENCY,
+				BurstIncreaseModel.NO,
+				true,
+				new Constant(),
+				(cont, sched) -> new MHMRateRatiosAllocation(cont)));
+
+		List<Link> meshLinks = new LinkedList<>();
+		BulkBuild bulkBuild = bulk ? meshDnmSystem.startBulkBuild() : null;
+		NetworkNode[] nodes = new NetworkNode[5];
+		for (int i = 0; i < nodes.length; i++)
+			nodes[i] = networkingSystem.createNode(meshNetwork);
+		for (int i = 0; i < nodes.length; i++)
+			for (int j = 0; j < nodes.length; j++)
+				if (i != j)
+					meshLinks.add(networkingSystem.createLinkWithPriorityScheduling(nodes[i], nodes[j], 128000000.0 * (1 + i), 0.0, new double[]{60000.0, 60000.0, 60000.0}));
+		if (bulkBuild != null)
+			bulkBuild.close();
+
+		DelayMapper delayMapper = new DelayMapper(meshController);
+		List<Double> delays = new LinkedList<>();
+		for (Link link : meshLinks)
+			for (Edge queueEdge : link.getQueueEdges())
+				delays.add(delayMapper.get(queueEdge.getEntity()).getDelay());
+		return delays;
+	}
+}
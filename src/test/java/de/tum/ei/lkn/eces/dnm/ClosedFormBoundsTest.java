@@ -0,0 +1,245 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Entity;
+import de.tum.ei.lkn.eces.core.MapperSpace;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.AccessControlEngine;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.Division;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.LowerLimit;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.Summation;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.UpperLimit;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.Constant;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.QueuePriority;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.NCRequestDataMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.QueueModelMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.TBM.TBMDelayRatiosAllocation;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Delay;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.network.mappers.DelayMapper;
+import de.tum.ei.lkn.eces.routing.RoutingSystem;
+import de.tum.ei.lkn.eces.routing.SelectedRoutingAlgorithm;
+import de.tum.ei.lkn.eces.routing.algorithms.csp.unicast.cbf.CBFAlgorithm;
+import de.tum.ei.lkn.eces.routing.mappers.PathMapper;
+import de.tum.ei.lkn.eces.routing.mappers.RequestMapper;
+import de.tum.ei.lkn.eces.routing.mappers.SelectedRoutingAlgorithmMapper;
+import de.tum.ei.lkn.eces.routing.requests.UnicastRequest;
+import de.uni_kl.cs.discodnc.curves.ArrivalCurve;
+import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
+import de.uni_kl.cs.discodnc.curves.ServiceCurve;
+import de.uni_kl.cs.discodnc.nc.bounds.Bound;
+import de.uni_kl.cs.discodnc.numbers.Num;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClosedFormBoundsTest {
+    private Random random;
+
+    @Before
+    public void setup() {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.ERROR);
+        Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+        random = new Random(1);
+    }
+
+    @Test
+    public void sameBoundsAsDiscoDNC() {
+        for(int i = 0; i < TestUtils.NUMBER_OF_POINTS_TEST; i++) {
+            double r = TestUtils.randomRate();
+            double b = TestUtils.randomBurst();
+            double R = TestUtils.randomRate();
+            double T = TestUtils.randomDelay();
+
+            ArrivalCurve tb = CurvePwAffine.getFactory().createTokenBucket(r, b);
+            ServiceCurve rl = CurvePwAffine.getFactory().createRateLatency(R, T);
+
+            assertEquals(Bound.delayFIFO(tb, rl).doubleValue(), ClosedFormBounds.delay(r, b, R, T), 1e-9);
+            assertEquals(Bound.backlog(tb, rl).doubleValue(), ClosedFormBounds.backlog(r, b, R, T), 1e-6);
+
+            ServiceCurve residualCurve = ResidualMode.REAL_CURVE.getResidualServiceCurve(rl, tb);
+            assertEquals(residualCurve.getUltAffineRate().doubleValue(), ClosedFormBounds.leftOverRate(r, b, R, T), 1e-6);
+            assertEquals(residualCurve.getLatency().doubleValue(), ClosedFormBounds.leftOverLatency(r, b, R, T), 1e-9);
+        }
+    }
+
+    @Test
+    public void sameDecisionsAtTheThresholds() {
+        // Dyadic values: both engines compute the bounds exactly, decisions must be identical at and around them.
+        double[][] cases = new double[][]{
+                // r, b, R, T
+                {0, 4096, 1048576, 0.0009765625},
+                {262144, 4096, 1048576, 0.0009765625},
+                {524288, 1530, 1048576, 0.001953125},
+                {8388608, 61440, 16777216, 0.00048828125},
+                {1048576, 0, 2097152, 0.0078125}};
+
+        for(double[] values : cases) {
+            double r = values[0];
+            double b = values[1];
+            double R = values[2];
+            double T = values[3];
+            ArrivalCurve tb = CurvePwAffine.getFactory().createTokenBucket(r, b);
+            ServiceCurve rl = CurvePwAffine.getFactory().createRateLatency(R, T);
+
+            double delay = ClosedFormBounds.delay(r, b, R, T);
+            double backlog = ClosedFormBounds.backlog(r, b, R, T);
+            assertEquals(Bound.delayFIFO(tb, rl).doubleValue(), delay, 0);
+            assertEquals(Bound.backlog(tb, rl).doubleValue(), backlog, 0);
+
+            for(double limit : new double[]{Math.nextDown(delay), delay, Math.nextUp(delay)})
+                assertEquals("Delay limit " + limit, Bound.delayFIFO(tb, rl).geq(Num.getFactory().create(limit)), delay >= limit);
+            for(double limit : new double[]{Math.nextDown(backlog), backlog, Math.nextUp(backlog)})
+                assertEquals("Backlog limit " + limit, Bound.backlog(tb, rl).geq(Num.getFactory().create(limit)), backlog >= limit);
+
+            if(r < R) {
+                ServiceCurve residualCurve = ResidualMode.REAL_CURVE.getResidualServiceCurve(rl, tb);
+                assertEquals(residualCurve.getUltAffineRate().doubleValue(), ClosedFormBounds.leftOverRate(r, b, R, T), 0);
+                assertEquals(residualCurve.getLatency().doubleValue(), ClosedFormBounds.leftOverLatency(r, b, R, T), 0);
+            }
+        }
+    }
+
+    @Test
+    public void sameDecisionsAtTheLimits() {
+        // One link per engine, whose highest priority queue limits are set around the bounds of random flows.
+        AccessControlEngine[] engines = AccessControlEngine.values();
+        Controller[] controllers = new Controller[engines.length];
+        DetServProxy[] proxies = new DetServProxy[engines.length];
+        Edge[] queueEdges = new Edge[engines.length];
+        for(int engine = 0; engine < engines.length; engine++) {
+            controllers[engine] = new Controller();
+            NetworkingSystem networkingSystem = new NetworkingSystem(controllers[engine], new GraphSystem(controllers[engine]));
+            new DNMSystem(controllers[engine]);
+            proxies[engine] = new DetServProxy(controllers[engine]);
+            Network network = networkingSystem.createNetwork();
+            DetServConfig modelingConfig = new DetServConfig(
+                    ACModel.TBM,
+                    ResidualMode.LEAST_LATENCY,
+                    BurstIncreaseModel.NO,
+                    false,
+                    new Constant(),
+                    (cont, sched) -> new TBMDelayRatiosAllocation(cont),
+                    1530,
+                    0.000001,
+                    engines[engine]);
+            new DetServConfigMapper(controllers[engine]).attachComponent(network.getQueueGraph(), modelingConfig);
+            modelingConfig.initCostModel(controllers[engine]);
+            queueEdges[engine] = networkingSystem.createLinkWithPriorityScheduling(networkingSystem.createNode(network), networkingSystem.createNode(network), 128000000.0, 0.0, new double[]{60000.0, 60000.0, 60000.0}).getQueueEdges()[0];
+        }
+
+        for(int run = 0; run < TestUtils.NUMBER_OF_POINTS_TEST; run++) {
+            ServiceCurve rl = new QueueModelMapper(controllers[0]).get(queueEdges[0].getEntity()).getServiceCurve();
+            double R = rl.getUltAffineRate().doubleValue();
+            double T = rl.getLatency().doubleValue();
+            double r = random.nextDouble() * R / 2;
+            // Bursts close to the size of the queue (60000) also put the backlog bound at its limit.
+            double b = random.nextBoolean() ? random.nextDouble() * 30000 : 60000 - r * T;
+            ArrivalCurve tb = CurvePwAffine.getFactory().createTokenBucket(r, b);
+
+            double closedFormDelay = ClosedFormBounds.delay(r, b, R, T);
+            double discoDelay = Bound.delayFIFO(tb, rl).doubleValue();
+            for(double limit : new double[]{Math.nextDown(closedFormDelay), closedFormDelay, Math.nextUp(closedFormDelay), Math.nextDown(discoDelay), discoDelay, Math.nextUp(discoDelay)}) {
+                boolean[] accepted = new boolean[engines.length];
+                for(int engine = 0; engine < engines.length; engine++) {
+                    DelayMapper delayMapper = new DelayMapper(controllers[engine]);
+                    Delay delay = delayMapper.get(queueEdges[engine].getEntity());
+                    delayMapper.updateComponent(delay, () -> delay.setDelay(limit));
+
+                    Entity entity = controllers[engine].createEntity();
+                    try (MapperSpace mapperSpace = controllers[engine].startMapperSpace()) {
+                        new RequestMapper(controllers[engine]).attachComponent(entity, new UnicastRequest(queueEdges[engine].getSource(), queueEdges[engine].getDestination()));
+                        new NCRequestDataMapper(controllers[engine]).attachComponent(entity, new NCRequestData(tb, Num.getFactory().create(1)));
+                    }
+                    accepted[engine] = proxies[engine].hasAccess(null, queueEdges[engine], new double[]{0.0}, new RequestMapper(controllers[engine]).get(entity), true);
+                }
+
+                for(int engine = 1; engine < engines.length; engine++)
+                    assertEquals("Different decisions for r=" + r + " b=" + b + " and a delay limit of " + limit + " with " + engines[engine], accepted[0], accepted[engine]);
+            }
+        }
+    }
+
+    @Test
+    public void sameDecisionsAsDiscoDNC() {
+        for(ResidualMode residualMode : ResidualMode.values()) {
+            for(BurstIncreaseModel burstIncrease : BurstIncreaseModel.values()) {
+                AccessControlEngine[] engines = AccessControlEngine.values();
+                Controller[] controllers = new Controller[engines.length];
+                NetworkNode[][] nodes = new NetworkNode[engines.length][];
+                CBFAlgorithm[] algorithms = new CBFAlgorithm[engines.length];
+                for(int engine = 0; engine < engines.length; engine++) {
+                    controllers[engine] = new Controller();
+                    GraphSystem graphSystem = new GraphSystem(controllers[engine]);
+                    NetworkingSystem networkingSystem = new NetworkingSystem(controllers[engine], graphSystem);
+                    new RoutingSystem(controllers[engine]);
+                    new DNMSystem(controllers[engine]);
+                    algorithms[engine] = new CBFAlgorithm(controllers[engine]);
+                    algorithms[engine].setProxy(new DetServProxy(controllers[engine]));
+
+                    DetServConfig modelingConfig = new DetServConfig(
+                            ACModel.TBM,
+                            residualMode,
+                            burstIncrease,
+                            false,
+                            new LowerLimit(new UpperLimit(new Division(new Constant(), new Summation(new Constant(), new QueuePriority())), 1), 0),
+                            (cont, sched) -> new TBMDelayRatiosAllocation(cont),
+                            1530,
+                            0.000001,
+                            engines[engine]);
+                    Network network = networkingSystem.createNetwork();
+                    new DetServConfigMapper(controllers[engine]).attachComponent(network.getQueueGraph(), modelingConfig);
+                    modelingConfig.initCostModel(controllers[engine]);
+
+                    nodes[engine] = new NetworkNode[4];
+                    for(int i = 0; i < nodes[engine].length; i++)
+                        nodes[engine][i] = networkingSystem.createNode(network);
+                    for(int i = 0; i < nodes[engine].length; i++) {
+                        networkingSystem.createLinkWithPriorityScheduling(nodes[engine][i], nodes[engine][(i + 1) % nodes[engine].length], 128000000.0, 0.0, new double[]{60000.0, 60000.0, 60000.0});
+                        networkingSystem.createLinkWithPriorityScheduling(nodes[engine][(i + 1) % nodes[engine].length], nodes[engine][i], 128000000.0, 0.0, new double[]{60000.0, 60000.0, 60000.0});
+                    }
+                }
+
+                for(int run = 0; run < TestUtils.NUMBER_OF_POINTS_TEST; run++) {
+                    int source = random.nextInt(4);
+                    int destination = (source + 1 + random.nextInt(3)) % 4;
+                    double rate = TestUtils.randomRate() / 1000;
+                    double burst = TestUtils.randomBurst();
+                    double deadline = TestUtils.randomDelay();
+
+                    boolean[] accepted = new boolean[engines.length];
+                    for(int engine = 0; engine < engines.length; engine++) {
+                        Entity entity = controllers[engine].createEntity();
+                        try (MapperSpace mapperSpace = controllers[engine].startMapperSpace()) {
+                            new RequestMapper(controllers[engine]).attachComponent(entity, new UnicastRequest(nodes[engine][source].getQueueNode(), nodes[engine][destination].getQueueNode()));
+                            new NCRequestDataMapper(controllers[engine]).attachComponent(entity, new NCRequestData(
+                                    CurvePwAffine.getFactory().createTokenBucket(rate, burst),
+                                    Num.getFactory().create(deadline)));
+                            new SelectedRoutingAlgorithmMapper(controllers[engine]).attachComponent(entity, new SelectedRoutingAlgorithm(algorithms[engine]));
+                        }
+
+                        accepted[engine] = new PathMapper(controllers[engine]).isIn(entity);
+                    }
+
+                    for(int engine = 1; engine < engines.length; engine++)
+                        assertEquals("Different decisions for " + residualMode + " " + burstIncrease + " with " + engines[engine], accepted[0], accepted[engine]);
+                }
+            }
+        }
+    }
+}
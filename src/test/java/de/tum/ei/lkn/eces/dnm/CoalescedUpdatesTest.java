@@ -0,0 +1,168 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Entity;
+import de.tum.ei.lkn.eces.core.MapperSpace;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.AccessControlEngine;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.Constant;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.NCRequestDataMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.QueueModelMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.TBM.TBMStaticDelaysAllocation;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Link;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.network.Scheduler;
+import de.tum.ei.lkn.eces.network.mappers.SchedulerMapper;
+import de.tum.ei.lkn.eces.routing.RoutingSystem;
+import de.tum.ei.lkn.eces.routing.SelectedRoutingAlgorithm;
+import de.tum.ei.lkn.eces.routing.algorithms.csp.unicast.cbf.CBFAlgorithm;
+import de.tum.ei.lkn.eces.routing.mappers.PathMapper;
+import de.tum.ei.lkn.eces.routing.mappers.RequestMapper;
+import de.tum.ei.lkn.eces.routing.mappers.SelectedRoutingAlgorithmMapper;
+import de.tum.ei.lkn.eces.routing.requests.UnicastRequest;
+import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
+import de.uni_kl.cs.discodnc.curves.ServiceCurve;
+import de.uni_kl.cs.discodnc.numbers.Num;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescedUpdatesTest {
+	private static final double LINK_RATE = 128000000.0;
+
+	private Controller controller;
+	private DNMSystem dnmSystem;
+	private DetServProxy detServProxy;
+	private CBFAlgorithm cbf;
+	private RequestMapper requestMapper;
+	private NCRequestDataMapper ncRequestDataMapper;
+	private SelectedRoutingAlgorithmMapper selectedRoutingAlgorithmMapper;
+	private PathMapper pathMapper;
+	private NetworkNode source;
+	private NetworkNode destination;
+	private Link link;
+
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	/**
+	 * Creates a single link whose three queues guarantee 1ms, 10ms and 100ms.
+	 * @param accessControlEngine access control engine to use.
+	 */
+	private void createLink(AccessControlEngine accessControlEngine) {
+		controller = new Controller();
+		GraphSystem graphSystem = new GraphSystem(controller);
+		NetworkingSystem networkingSystem = new NetworkingSystem(controller, graphSystem);
+		new RoutingSystem(controller);
+		dnmSystem = new DNMSystem(controller);
+		detServProxy = new DetServProxy(controller);
+		cbf = new CBFAlgorithm(controller);
+		cbf.setProxy(detServProxy);
+		requestMapper = new RequestMapper(controller);
+		ncRequestDataMapper = new NCRequestDataMapper(controller);
+		selectedRoutingAlgorithmMapper = new SelectedRoutingAlgorithmMapper(controller);
+		pathMapper = new PathMapper(controller);
+
+		Network network = networkingSystem.createNetwork();
+		DetServConfig modelingConfig = new DetServConfig(
+				ACModel.TBM,
+				ResidualMode.LEAST_LATENCY,
+				BurstIncreaseModel.NO,
+				false,
+				new Constant(),
+				(cont, sched) -> new TBMStaticDelaysAllocation(cont, new double[]{0.001, 0.01, 0.1}),
+				1530,
+				0.000001,
+				accessControlEngine);
+		new DetServConfigMapper(controller).attachComponent(network.getQueueGraph(), modelingConfig);
+		modelingConfig.initCostModel(controller);
+
+		source = networkingSystem.createNode(network);
+		destination = networkingSystem.createNode(network);
+		link = networkingSystem.createLinkWithPriorityScheduling(source, destination, LINK_RATE, 0.0, new double[]{60000.0, 60000.0, 60000.0});
+	}
+
+	/**
+	 * Routes a flow from the source to the destination of the link.
+	 * @return The Entity of the flow.
+	 */
+	private Entity route(double rate, double burst, double deadline) {
+		Entity entity = controller.createEntity();
+		try (MapperSpace mapperSpace = controller.startMapperSpace()) {
+			requestMapper.attachComponent(entity, new UnicastRequest(source.getQueueNode(), destination.getQueueNode()));
+			ncRequestDataMapper.attachComponent(entity, new NCRequestData(
+					CurvePwAffine.getFactory().createTokenBucket(rate, burst),
+					Num.getFactory().create(deadline)));
+			selectedRoutingAlgorithmMapper.attachComponent(entity, new SelectedRoutingAlgorithm(cbf));
+		}
+		return entity;
+	}
+
+	@Test
+	public void flowsRoutedInScopeSeeTheDeferredUpdates() {
+		for (AccessControlEngine accessControlEngine : AccessControlEngine.values()) {
+			// The second flow fits alone.
+			createLink(accessControlEngine);
+			assertTrue(pathMapper.isIn(route(0.5 * LINK_RATE, 1000, 1)));
+
+			createLink(accessControlEngine);
+			Scheduler scheduler = new SchedulerMapper(controller).get(link.getLinkEdge().getEntity());
+			try (CoalescedUpdates coalescedUpdates = dnmSystem.startCoalescedUpdates()) {
+				// The deadline of the first flow only fits the highest priority queue.
+				Entity first = route(0.9 * LINK_RATE, 1000, 0.002);
+				assertTrue(pathMapper.isIn(first));
+				assertSame(link.getQueueEdges()[0], pathMapper.get(first).getPath()[0]);
+				assertTrue(dnmSystem.isDirty(scheduler));
+
+				// The first flow leaves too little rate to the second one, whatever its queue.
+				assertFalse(pathMapper.isIn(route(0.5 * LINK_RATE, 1000, 1)));
+			}
+			assertFalse(dnmSystem.isDirty(scheduler));
+			assertFalse(pathMapper.isIn(route(0.5 * LINK_RATE, 1000, 1)));
+		}
+	}
+
+	@Test
+	public void nestedScopesAreFlushedWhenTheOutermostOneIsClosed() {
+		createLink(AccessControlEngine.DISCO_DNC);
+		Scheduler scheduler = new SchedulerMapper(controller).get(link.getLinkEdge().getEntity());
+		double emptyRate = getServiceCurve(1).getUltAffineRate().doubleValue();
+		try (CoalescedUpdates outer = dnmSystem.startCoalescedUpdates()) {
+			try (CoalescedUpdates inner = dnmSystem.startCoalescedUpdates()) {
+				assertTrue(pathMapper.isIn(route(0.5 * LINK_RATE, 1000, 0.002)));
+			}
+			assertTrue(dnmSystem.isDirty(scheduler));
+			assertEquals(emptyRate, getServiceCurve(1).getUltAffineRate().doubleValue(), 0);
+		}
+		assertFalse(dnmSystem.isDirty(scheduler));
+		ServiceCurve coalescedServiceCurve = getServiceCurve(1);
+
+		// Same service curve as without coalescing.
+		createLink(AccessControlEngine.DISCO_DNC);
+		assertTrue(pathMapper.isIn(route(0.5 * LINK_RATE, 1000, 0.002)));
+		assertEquals(getServiceCurve(1).getUltAffineRate().doubleValue(), coalescedServiceCurve.getUltAffineRate().doubleValue(), 1e-3);
+		assertEquals(getServiceCurve(1).getLatency().doubleValue(), coalescedServiceCurve.getLatency().doubleValue(), 1e-9);
+	}
+
+	private ServiceCurve getServiceCurve(int queue) {
+		return new QueueModelMapper(controller).get(link.getQueueEdges()[queue].getEntity()).getServiceCurve();
+	}
+}
@@ -0,0 +1,74 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.proxies.FlowReservation;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import de.uni_kl.cs.discodnc.curves.ServiceCurve;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentAdmissionTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void concurrentRegistrationsLeadToTheServiceCurvesOfSequentialOnes() throws Exception {
+		for (boolean inputLinkShaping : new boolean[]{false, true}) {
+			RingNetwork sequentialRing = RingNetwork.builder().inputLinkShaping(inputLinkShaping).build();
+			for (FlowReservation reservation : sequentialRing.createFlows())
+				assertTrue(sequentialRing.proxy.register(reservation.getPath(), reservation.getRequest()));
+
+			RingNetwork concurrentRing = RingNetwork.builder().inputLinkShaping(inputLinkShaping).build();
+			List<FlowReservation> flows = concurrentRing.createFlows();
+			concurrentRing.proxy.enableConcurrentAdmission(16);
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			List<Future<Boolean>> results = new LinkedList<>();
+			for (FlowReservation reservation : flows)
+				results.add(executor.submit(() -> concurrentRing.proxy.register(reservation.getPath(), reservation.getRequest())));
+			for (Future<Boolean> result : results)
+				assertTrue(result.get());
+			executor.shutdown();
+
+			List<Edge> sequentialQueueEdges = sequentialRing.getQueueEdges();
+			List<Edge> concurrentQueueEdges = concurrentRing.getQueueEdges();
+			for (int i = 0; i < concurrentQueueEdges.size(); i++) {
+				ServiceCurve expected = sequentialRing.getServiceCurve(sequentialQueueEdges.get(i));
+				ServiceCurve serviceCurve = concurrentRing.getServiceCurve(concurrentQueueEdges.get(i));
+				assertEquals(expected.getUltAffineRate().doubleValue(), serviceCurve.getUltAffineRate().doubleValue(), 1e-3);
+				assertEquals(expected.getLatency().doubleValue(), serviceCurve.getLatency().doubleValue(), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void registrationIsRecheckedUnderTheLocks() {
+		RingNetwork ring = RingNetwork.builder().build();
+		ring.proxy.enableConcurrentAdmission(16);
+		Path path = ring.route(0, 2, 1000000, 1000, 1).getPath();
+
+		// Another flow is registered on the path after the flow was routed: they do not fit together.
+		FlowReservation reservation = ring.createFlow(path, 0.6 * RingNetwork.LINK_RATE, 1000, 1);
+		FlowReservation otherReservation = ring.createFlow(path, 0.5 * RingNetwork.LINK_RATE, 1000, 1);
+		assertEquals(1, ring.proxy.registerAll(Collections.singletonList(otherReservation)).size());
+
+		assertFalse(ring.proxy.register(reservation.getPath(), reservation.getRequest()));
+	}
+}
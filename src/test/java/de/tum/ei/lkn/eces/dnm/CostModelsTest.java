@@ -1,8 +1,11 @@
 package de.tum.ei.lkn.eces.dnm;
 
+import de.tum.ei.lkn.eces.dnm.config.CompiledCostModel;
 import de.tum.ei.lkn.eces.dnm.config.CostModel;
 import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.*;
 import de.tum.ei.lkn.eces.dnm.config.costmodels.values.Constant;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.requests.Request;
 import org.javatuples.Pair;
 import org.junit.Test;
 
@@ -127,4 +130,35 @@ public class CostModelsTest {
             assertEquals(result[i], value, 1e-12);
         }
     }
+
+    @Test
+    public void testCompiledCostModel() {
+        // Leaf depending on the parameters (called at each evaluation).
+        CostModel parameter = new Constant() {
+            @Override
+            public boolean isConstant() {
+                return false;
+            }
+
+            @Override
+            public double getCost(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean isFroward) {
+                return doubles[0];
+            }
+        };
+
+        CostModel constantTree = new LowerLimit(new UpperLimit(new Summation(new Constant(1), new Division(new Constant(3), new Summation(new Constant(2), new Constant(4)))), 5), 0);
+        CompiledCostModel compiledConstantTree = CompiledCostModel.compile(constantTree.init(null));
+        assertEquals(1, compiledConstantTree.getNumberOfInstructions());
+        assertEquals(constantTree.getCost(null, null, null, null, true), compiledConstantTree.getCost(null, null, null, null, true), 1e-12);
+
+        CostModel tree = new LowerLimit(new UpperLimit(new Summation(new Constant(1), new Multiplication(parameter, new Constant(2)), new Minus(new Division(new Constant(3), parameter), new Constant(0.5))), 20), 2);
+        CostModel initializedTree = tree.init(null);
+        CompiledCostModel compiledTree = CompiledCostModel.compile(initializedTree);
+        for(double value : new double[] {0.1, 0.5, 1.0, 2.0, 5.0, 11.0}) {
+            double[] parameters = new double[] {value};
+            assertEquals(initializedTree.getCost(null, null, parameters, null, true), compiledTree.getCost(null, null, parameters, null, true), 1e-12);
+        }
+        assertEquals(initializedTree.minCostValue(), compiledTree.minCostValue(), 1e-12);
+        assertEquals(initializedTree.toString(), compiledTree.toString());
+    }
 }
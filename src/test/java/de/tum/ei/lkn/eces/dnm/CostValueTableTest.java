@@ -0,0 +1,138 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.CompiledCostModel;
+import de.tum.ei.lkn.eces.dnm.config.CostModel;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.CostValueTable;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.Division;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.LowerLimit;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.Multiplication;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.Summation;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.UpperLimit;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.Constant;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.LinkRate;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.NumberOfFlowsAtLink;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.QueueDelay;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.QueuePriority;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.FlowReservation;
+import de.tum.ei.lkn.eces.dnm.snapshot.DNMSnapshot;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.network.Link;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CostValueTableTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void flowCountersFollowTheRegistrations() {
+		RingNetwork ring = RingNetwork.builder().burstIncrease(BurstIncreaseModel.REAL).inputLinkShaping(true).build();
+		List<FlowReservation> flows = routeFlows(ring);
+		CostValueTable costValueTable = getCostValueTable(ring);
+
+		for (Link link : ring.links) {
+			int flowsAtLink = 0;
+			for (Edge queueEdge : link.getQueueEdges())
+				flowsAtLink += getNumberOfFlows(flows, queueEdge);
+
+			Edge[] queueEdges = link.getQueueEdges();
+			for (int i = 0; i < queueEdges.length; i++) {
+				assertEquals(i, costValueTable.getQueuePriority(queueEdges[i].getEntity()), 0);
+				assertEquals(queueEdges.length, costValueTable.getNumberOfQueues(queueEdges[i].getEntity()), 0);
+				assertEquals(RingNetwork.LINK_RATE, costValueTable.getLinkRate(queueEdges[i].getEntity()), 0);
+				assertEquals(getNumberOfFlows(flows, queueEdges[i]), costValueTable.getFlowsAtQueue(queueEdges[i].getEntity()));
+				assertEquals(flowsAtLink, costValueTable.getFlowsAtLink(queueEdges[i].getEntity()));
+			}
+		}
+
+		for (FlowReservation reservation : flows)
+			ring.proxy.deregister(reservation.getPath(), reservation.getRequest());
+		for (Edge queueEdge : ring.getQueueEdges()) {
+			assertEquals(0, costValueTable.getFlowsAtQueue(queueEdge.getEntity()));
+			assertEquals(0, costValueTable.getFlowsAtLink(queueEdge.getEntity()));
+		}
+	}
+
+	@Test
+	public void flowCountersAreRestored() throws Exception {
+		RingNetwork ring = RingNetwork.builder().build();
+		List<FlowReservation> flows = routeFlows(ring);
+		Path file = Files.createTempFile("dnm", ".snapshot");
+		try {
+			new DNMSnapshot(ring.controller).write(ring.network, flows, file);
+			RingNetwork restoredRing = RingNetwork.builder().build();
+			new DNMSnapshot(restoredRing.controller).restore(restoredRing.network, file);
+
+			CostValueTable costValueTable = getCostValueTable(ring);
+			CostValueTable restoredCostValueTable = getCostValueTable(restoredRing);
+			List<Edge> queueEdges = ring.getQueueEdges();
+			List<Edge> restoredQueueEdges = restoredRing.getQueueEdges();
+			for (int i = 0; i < queueEdges.size(); i++) {
+				assertEquals(costValueTable.getFlowsAtQueue(queueEdges.get(i).getEntity()), restoredCostValueTable.getFlowsAtQueue(restoredQueueEdges.get(i).getEntity()));
+				assertEquals(costValueTable.getFlowsAtLink(queueEdges.get(i).getEntity()), restoredCostValueTable.getFlowsAtLink(restoredQueueEdges.get(i).getEntity()));
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void compiledCostModelMatchesTheTree() {
+		RingNetwork ring = RingNetwork.builder().burstIncrease(BurstIncreaseModel.REAL).build();
+		routeFlows(ring);
+		CostModel tree = new LowerLimit(new UpperLimit(new Summation(
+				new Constant(),
+				new Division(new Constant(), new Summation(new QueuePriority(), new Constant())),
+				new Division(new LinkRate(), new Constant(1e9)),
+				new Multiplication(new QueueDelay(), new NumberOfFlowsAtLink())), 100), 0.5).init(ring.controller);
+		CompiledCostModel compiledTree = CompiledCostModel.compile(tree);
+
+		// Twice: the second time, the static values come from the per-edge arrays.
+		for (int run = 0; run < 2; run++)
+			for (Edge queueEdge : ring.getQueueEdges())
+				assertEquals(tree.getCost(null, queueEdge, null, null, true), compiledTree.getCost(null, queueEdge, null, null, true), 1e-12);
+	}
+
+	/**
+	 * Routes three flows from each node to the two next ones.
+	 * @return the routed flows (all accepted).
+	 */
+	private List<FlowReservation> routeFlows(RingNetwork ring) {
+		List<FlowReservation> flows = new LinkedList<>();
+		for (int source = 0; source < ring.nodes.length; source++)
+			for (int hops = 1; hops <= 2; hops++)
+				for (int i = 1; i <= 3; i++)
+					flows.add(ring.route(source, (source + hops) % ring.nodes.length, 1000000 * i, 1000 * i, 1));
+		return flows;
+	}
+
+	private int getNumberOfFlows(List<FlowReservation> flows, Edge queueEdge) {
+		int numberOfFlows = 0;
+		for (FlowReservation reservation : flows)
+			if (Arrays.asList(reservation.getPath().getPath()).contains(queueEdge))
+				numberOfFlows++;
+		return numberOfFlows;
+	}
+
+	private CostValueTable getCostValueTable(RingNetwork ring) {
+		return new DetServConfigMapper(ring.controller).get(ring.network.getQueueGraph().getEntity()).getCostValueTable();
+	}
+}
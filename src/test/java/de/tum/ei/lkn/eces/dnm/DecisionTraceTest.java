@@ -0,0 +1,78 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.metrics.RejectReason;
+import de.tum.ei.lkn.eces.dnm.proxies.DecisionTrace;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DecisionTraceTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void lastDecisionsAreKept() {
+		RingNetwork ring = RingNetwork.builder().build();
+		Path path = ring.route(0, 2, 1000000, 1000, 1).getPath();
+		Edge firstEdge = path.getPath()[0];
+		Request request = ring.createFlow(path, 0.4 * RingNetwork.LINK_RATE, 1000, 1).getRequest();
+		DecisionTrace trace = new DecisionTrace(2);
+		ring.proxy.setDecisionTrace(trace);
+
+		// Two such flows fit, not three.
+		for (int i = 0; i < 2; i++) {
+			assertTrue(hasAccess(ring, firstEdge, request));
+			ring.proxy.register(path, request);
+		}
+		assertFalse(hasAccess(ring, firstEdge, request));
+
+		assertEquals(3, trace.getDecisions());
+		List<DecisionTrace.Event> events = trace.getEvents();
+		assertEquals(2, events.size());
+		assertTrue(events.get(0).isAccepted());
+		DecisionTrace.Event rejection = events.get(1);
+		assertFalse(rejection.isAccepted());
+		assertTrue(rejection.getRejectReason() == RejectReason.DELAY_BOUND || rejection.getRejectReason() == RejectReason.BACKLOG_BOUND);
+		assertSame(firstEdge, rejection.getEdge());
+		assertSame(request, rejection.getRequest());
+	}
+
+	@Test
+	public void decisionsAreSampled() {
+		RingNetwork ring = RingNetwork.builder().build();
+		Path path = ring.route(0, 2, 1000000, 1000, 1).getPath();
+		Request request = ring.createFlow(path, 1000000, 1000, 1).getRequest();
+		DecisionTrace trace = new DecisionTrace(1000, 2);
+		ring.proxy.setDecisionTrace(trace);
+
+		for (int i = 0; i < 5; i++)
+			assertTrue(hasAccess(ring, path.getPath()[0], request));
+		assertEquals(5, trace.getDecisions());
+		assertEquals(3, trace.getEvents().size());
+
+		// Nothing is recorded anymore once disabled.
+		ring.proxy.setDecisionTrace(null);
+		hasAccess(ring, path.getPath()[0], request);
+		assertEquals(5, trace.getDecisions());
+	}
+
+	private boolean hasAccess(RingNetwork ring, Edge edge, Request request) {
+		return ring.proxy.hasAccess(null, edge, new double[]{0.0}, request, true);
+	}
+}
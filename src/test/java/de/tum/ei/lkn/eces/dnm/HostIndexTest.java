@@ -0,0 +1,118 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.Constant;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.MHM.MHMRateRatiosAllocation;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.network.mappers.DelayMapper;
+import de.tum.ei.lkn.eces.network.mappers.HostMapper;
+import de.tum.ei.lkn.eces.network.util.NetworkInterface;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the host index of the DNMSystem through the ILS delay corrections of MHM: the queues of the links leaving a
+ * host are not corrected, whether the Host component is updated when interfaces are added or not.
+ */
+public class HostIndexTest {
+	private static final double LINK_RATE = 128000000.0;
+
+	private NetworkingSystem networkingSystem;
+	private Network network;
+	private DelayMapper delayMapper;
+	private HostMapper hostMapper;
+	private NetworkNode switchNode;
+
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+
+		Controller controller = new Controller();
+		networkingSystem = new NetworkingSystem(controller, new GraphSystem(controller));
+		new DNMSystem(controller);
+		network = networkingSystem.createNetwork();
+		new DetServConfigMapper(controller).attachComponent(network.getQueueGraph(), new DetServConfig(
+				ACModel.MHM,
+				ResidualMode.LEAST_LATENCY,
+				BurstIncreaseModel.NO,
+				true,
+				new Constant(),
+				(cont, sched) -> new MHMRateRatiosAllocation(cont)));
+		delayMapper = new DelayMapper(controller);
+		hostMapper = new HostMapper(controller);
+		switchNode = networkingSystem.createNode(network);
+	}
+
+	/**
+	 * Connects a node to the switch in both directions.
+	 * @param node the node.
+	 * @return the highest priority queue edge of the link from the node to the switch.
+	 */
+	private Edge connect(NetworkNode node) {
+		Edge queueEdge = networkingSystem.createLinkWithPriorityScheduling(node, switchNode, LINK_RATE, 0.0, new double[]{60000.0, 60000.0, 60000.0}).getQueueEdges()[0];
+		networkingSystem.createLinkWithPriorityScheduling(switchNode, node, LINK_RATE, 0.0, new double[]{60000.0, 60000.0, 60000.0});
+		return queueEdge;
+	}
+
+	private double getDelay(Edge queueEdge) {
+		return delayMapper.get(queueEdge.getEntity()).getDelay();
+	}
+
+	@Test
+	public void hostsAreIndexed() {
+		// Created host.
+		Host host = networkingSystem.createHost(network, "host");
+		NetworkNode hostNode = networkingSystem.addInterface(host, new NetworkInterface("eth0", "00:00:00:00:00:01", "10.0.0.1"));
+		hostMapper.updateComponent(host, () -> {});
+		NetworkNode node = networkingSystem.createNode(network);
+		Edge fromHost = connect(hostNode);
+		Edge fromNode = connect(node);
+		assertTrue(getDelay(fromHost) > getDelay(fromNode));
+
+		// Updated host: its new interface is not corrected either.
+		NetworkNode secondHostNode = networkingSystem.addInterface(host, new NetworkInterface("eth1", "00:00:00:00:00:02", "10.0.0.2"));
+		hostMapper.updateComponent(host, () -> {});
+		Edge fromSecondHostNode = connect(secondHostNode);
+		assertEquals(getDelay(fromHost), getDelay(fromSecondHostNode), 0);
+		assertTrue(getDelay(fromHost) > getDelay(fromNode));
+
+		// Destroyed host: its nodes are corrected as the other ones when a link reaches them.
+		hostMapper.detachComponent(host);
+		networkingSystem.createLinkWithPriorityScheduling(networkingSystem.createNode(network), hostNode, LINK_RATE, 0.0, new double[]{60000.0, 60000.0, 60000.0});
+		networkingSystem.createLinkWithPriorityScheduling(networkingSystem.createNode(network), node, LINK_RATE, 0.0, new double[]{60000.0, 60000.0, 60000.0});
+		assertEquals(getDelay(fromNode), getDelay(fromHost), 1e-12);
+	}
+
+	@Test
+	public void interfacesAddedWithoutHostUpdateAreFound() {
+		// The Host component is not updated when interfaces are added.
+		Host host = networkingSystem.createHost(network, "host");
+		NetworkNode hostNode = networkingSystem.addInterface(host, new NetworkInterface("eth0", "00:00:00:00:00:01", "10.0.0.1"));
+		NetworkNode node = networkingSystem.createNode(network);
+		Edge fromHost = connect(hostNode);
+		Edge fromNode = connect(node);
+		assertTrue(getDelay(fromHost) > getDelay(fromNode));
+
+		NetworkNode secondHostNode = networkingSystem.addInterface(host, new NetworkInterface("eth1", "00:00:00:00:00:02", "10.0.0.2"));
+		Edge fromSecondHostNode = connect(secondHostNode);
+		assertEquals(getDelay(fromHost), getDelay(fromSecondHostNode), 0);
+		assertTrue(getDelay(fromHost) > getDelay(fromNode));
+	}
+}
@@ -0,0 +1,118 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.inputmodels.PerInEdgeTokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.ResourceUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.TokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.mappers.ResourceUtilizationMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.FlowReservation;
+import de.tum.ei.lkn.eces.dnm.snapshot.DNMJournal;
+import de.tum.ei.lkn.eces.dnm.snapshot.DNMSnapshot;
+import de.tum.ei.lkn.eces.dnm.snapshot.SnapshotFlow;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.uni_kl.cs.discodnc.curves.ArrivalCurve;
+import de.uni_kl.cs.discodnc.curves.ServiceCurve;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JournalTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void journalIsReplayedOnTheSnapshot() throws Exception {
+		for (boolean inputLinkShaping : new boolean[]{false, true}) {
+			RingNetwork ring = RingNetwork.builder().burstIncrease(BurstIncreaseModel.REAL).inputLinkShaping(inputLinkShaping).build();
+			List<FlowReservation> flows = ring.createFlows();
+			for (FlowReservation reservation : flows)
+				assertTrue(ring.proxy.register(reservation.getPath(), reservation.getRequest()));
+
+			Path snapshotFile = Files.createTempFile("dnm", ".snapshot");
+			Path journalFile = Files.createTempFile("dnm", ".journal");
+			try {
+				new DNMSnapshot(ring.controller).write(ring.network, flows, snapshotFile);
+
+				// Changes after the snapshot: half of the flows leave and a quarter come back as a batch.
+				List<FlowReservation> leaving = flows.subList(0, flows.size() / 2);
+				List<FlowReservation> comingBack = flows.subList(0, flows.size() / 4);
+				try (DNMJournal journal = new DNMJournal(ring.controller, ring.network, journalFile, 7, 1)) {
+					ring.proxy.setJournal(journal);
+					for (FlowReservation reservation : leaving)
+						ring.proxy.deregister(reservation.getPath(), reservation.getRequest());
+					assertEquals(comingBack.size(), ring.proxy.registerAll(comingBack).size());
+				}
+
+				// Same topology, without any flow.
+				RingNetwork restoredRing = RingNetwork.builder().burstIncrease(BurstIncreaseModel.REAL).inputLinkShaping(inputLinkShaping).build();
+				List<SnapshotFlow> restoredFlows = new DNMSnapshot(restoredRing.controller).restore(restoredRing.network, snapshotFile);
+				assertEquals(leaving.size() + comingBack.size(), new DNMJournal(restoredRing.controller, restoredRing.network).replay(journalFile, restoredFlows));
+				assertEquals(flows.size() - leaving.size() + comingBack.size(), restoredFlows.size());
+
+				List<Edge> queueEdges = ring.getQueueEdges();
+				List<Edge> restoredQueueEdges = restoredRing.getQueueEdges();
+				for (int i = 0; i < queueEdges.size(); i++) {
+					ServiceCurve serviceCurve = ring.getServiceCurve(queueEdges.get(i));
+					ServiceCurve restoredServiceCurve = restoredRing.getServiceCurve(restoredQueueEdges.get(i));
+					assertEquals(serviceCurve.getUltAffineRate().doubleValue(), restoredServiceCurve.getUltAffineRate().doubleValue(), 1e-3);
+					assertEquals(serviceCurve.getLatency().doubleValue(), restoredServiceCurve.getLatency().doubleValue(), 1e-9);
+
+					ArrivalCurve arrivalCurve = getArrivalCurve(ring, queueEdges.get(i));
+					ArrivalCurve restoredArrivalCurve = getArrivalCurve(restoredRing, restoredQueueEdges.get(i));
+					assertEquals(arrivalCurve.getUltAffineRate().doubleValue(), restoredArrivalCurve.getUltAffineRate().doubleValue(), 1e-3);
+					assertEquals(arrivalCurve.getBurst().doubleValue(), restoredArrivalCurve.getBurst().doubleValue(), 1e-6);
+				}
+			}
+			finally {
+				Files.delete(snapshotFile);
+				Files.delete(journalFile);
+			}
+		}
+	}
+
+	@Test
+	public void appendedRecordsAreDurable() throws Exception {
+		RingNetwork ring = RingNetwork.builder().build();
+		List<FlowReservation> flows = ring.createFlows();
+		for (FlowReservation reservation : flows)
+			assertTrue(ring.proxy.register(reservation.getPath(), reservation.getRequest()));
+
+		Path journalFile = Files.createTempFile("dnm", ".journal");
+		try {
+			// The group is never completed: each deregistration must force its record to disk after the timeout.
+			try (DNMJournal journal = new DNMJournal(ring.controller, ring.network, journalFile, 1000, 1)) {
+				ring.proxy.setJournal(journal);
+				long size = Files.size(journalFile);
+				for (int i = 0; i < 3; i++) {
+					ring.proxy.deregister(flows.get(i).getPath(), flows.get(i).getRequest());
+					assertTrue(Files.size(journalFile) > size);
+					size = Files.size(journalFile);
+				}
+				ring.proxy.setJournal(null);
+			}
+		}
+		finally {
+			Files.delete(journalFile);
+		}
+	}
+
+	private ArrivalCurve getArrivalCurve(RingNetwork ring, Edge queueEdge) {
+		ResourceUtilization resourceUtilization = new ResourceUtilizationMapper(ring.controller).get(queueEdge.getEntity());
+		if (resourceUtilization instanceof TokenBucketUtilization)
+			return ((TokenBucketUtilization) resourceUtilization).getTokenBucket();
+		return ((PerInEdgeTokenBucketUtilization) resourceUtilization).getAggregateArrivalCurve();
+	}
+}
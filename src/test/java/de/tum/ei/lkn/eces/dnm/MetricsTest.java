@@ -0,0 +1,98 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.metrics.DNMMetrics;
+import de.tum.ei.lkn.eces.dnm.metrics.RejectReason;
+import de.tum.ei.lkn.eces.dnm.proxies.AdmissionCache;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void registrationsAndAccessChecksAreCounted() {
+		RingNetwork ring = RingNetwork.builder().build();
+		Path path = ring.route(0, 2, 1000000, 1000, 1).getPath();
+		Edge firstEdge = path.getPath()[0];
+		Request request = ring.createFlow(path, 0.4 * RingNetwork.LINK_RATE, 1000, 1).getRequest();
+		DNMMetrics metrics = new DNMMetrics();
+		ring.proxy.setMetrics(metrics);
+		ring.dnmSystem.setMetrics(metrics);
+
+		// Two such flows fit, not three.
+		for (int i = 0; i < 2; i++) {
+			assertTrue(hasAccess(ring, firstEdge, request));
+			ring.proxy.register(path, request);
+		}
+		assertFalse(hasAccess(ring, firstEdge, request));
+
+		assertEquals(2, metrics.getRegistrations());
+		assertEquals(2, metrics.getAcceptedAccessChecks());
+		assertEquals(1, metrics.getRejectedAccessChecks());
+		assertEquals(1, metrics.getRejections(RejectReason.DELAY_BOUND) + metrics.getRejections(RejectReason.BACKLOG_BOUND));
+		assertEquals(3, metrics.getAccessCheckLatencies(ACModel.TBM).getCount());
+		assertEquals(0, metrics.getAccessCheckLatencies(ACModel.MHM).getCount());
+		assertEquals(3, metrics.toJSONObject().getLong("Accepted Access Checks") + metrics.toJSONObject().getLong("Rejected Access Checks"));
+		// The registrations changed the service curves of the lower priority queues of the path.
+		assertTrue(metrics.getCascadeDepths().getCount() > 0);
+
+		ring.proxy.deregister(path, request);
+		assertEquals(1, metrics.getDeregistrations());
+
+		// Nothing is collected anymore once disabled.
+		ring.proxy.setMetrics(null);
+		assertTrue(hasAccess(ring, firstEdge, request));
+		assertEquals(2, metrics.getAcceptedAccessChecks());
+		assertEquals(3, metrics.getAccessCheckLatencies(ACModel.TBM).getCount());
+	}
+
+	@Test
+	public void rejectReasonsAddUpToRejections() {
+		RingNetwork ring = RingNetwork.builder().build();
+		Path path = ring.route(0, 2, 1000000, 1000, 1).getPath();
+		Edge firstEdge = path.getPath()[0];
+		DNMMetrics metrics = new DNMMetrics();
+		ring.proxy.setMetrics(metrics);
+		ring.proxy.setAdmissionCache(new AdmissionCache(ring.controller));
+
+		// The rejections of a batch are not counted as access checks.
+		assertEquals(1, ring.proxy.registerAll(Collections.singletonList(ring.createFlow(path, 0.6 * RingNetwork.LINK_RATE, 1000, 1))).size());
+		assertEquals(0, ring.proxy.registerAll(Collections.singletonList(ring.createFlow(path, 0.6 * RingNetwork.LINK_RATE, 1000, 1))).size());
+		assertEquals(0, metrics.getRejectedAccessChecks());
+
+		// The first rejection is computed, the second one comes from the cache.
+		Request request = ring.createFlow(path, 0.6 * RingNetwork.LINK_RATE, 1000, 1).getRequest();
+		assertFalse(hasAccess(ring, firstEdge, request));
+		assertFalse(hasAccess(ring, firstEdge, request));
+		assertEquals(2, metrics.getRejectedAccessChecks());
+		assertEquals(1, metrics.getRejections(RejectReason.DELAY_BOUND) + metrics.getRejections(RejectReason.BACKLOG_BOUND));
+		assertEquals(1, metrics.getRejections(RejectReason.CACHED));
+
+		long rejections = 0;
+		for (RejectReason rejectReason : RejectReason.values())
+			rejections += metrics.getRejections(rejectReason);
+		assertEquals(metrics.getRejectedAccessChecks(), rejections);
+	}
+
+	private boolean hasAccess(RingNetwork ring, Edge edge, Request request) {
+		return ring.proxy.hasAccess(null, edge, new double[]{0.0}, request, true);
+	}
+}
@@ -0,0 +1,80 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.proxies.FlowReservation;
+import de.tum.ei.lkn.eces.dnm.proxies.PathEvaluation;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
+import de.uni_kl.cs.discodnc.numbers.Num;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PathEvaluationTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void candidatePathsAreEvaluatedInParallel() {
+		RingNetwork ring = RingNetwork.builder().inputLinkShaping(true).build();
+		List<Path> candidates = new LinkedList<>();
+		for (FlowReservation reservation : ring.createFlows()) {
+			assertTrue(ring.proxy.register(reservation.getPath(), reservation.getRequest()));
+			candidates.add(reservation.getPath());
+		}
+		Request request = ring.createFlow(candidates.get(0), 1000000, 1000, 0.1).getRequest();
+		NCRequestData ncRequestData = new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(1000000, 1000), Num.getFactory().create(0.1));
+		List<Double> rates = new LinkedList<>();
+		for (Edge queueEdge : ring.getQueueEdges())
+			rates.add(ring.getServiceCurve(queueEdge).getUltAffineRate().doubleValue());
+
+		List<PathEvaluation> evaluations = ring.proxy.evaluatePaths(candidates, request, ncRequestData);
+		ForkJoinPool sequentialPool = new ForkJoinPool(1);
+		ring.proxy.setEvaluationPool(sequentialPool);
+		List<PathEvaluation> sequentialEvaluations = ring.proxy.evaluatePaths(candidates, request, ncRequestData);
+		sequentialPool.shutdown();
+
+		assertEquals(candidates.size(), evaluations.size());
+		assertEquals(sequentialEvaluations.size(), evaluations.size());
+		for (int i = 0; i < evaluations.size(); i++) {
+			assertEquals(sequentialEvaluations.get(i).getCost(), evaluations.get(i).getCost(), 1e-9);
+			assertEquals(sequentialEvaluations.get(i).getDelay(), evaluations.get(i).getDelay(), 1e-9);
+			assertTrue(evaluations.get(i).getDelay() <= ncRequestData.getDeadline().doubleValue());
+			if (i > 0)
+				assertTrue(evaluations.get(i - 1).getCost() <= evaluations.get(i).getCost());
+		}
+
+		// Nothing was registered.
+		int i = 0;
+		for (Edge queueEdge : ring.getQueueEdges())
+			assertEquals(rates.get(i++), ring.getServiceCurve(queueEdge).getUltAffineRate().doubleValue(), 0);
+	}
+
+	@Test
+	public void infeasibleCandidatesAreDropped() {
+		RingNetwork ring = RingNetwork.builder().build();
+		List<Path> candidates = new LinkedList<>();
+		candidates.add(ring.route(0, 2, 1000000, 1000, 1).getPath());
+		candidates.add(ring.route(1, 2, 1000000, 1000, 1).getPath());
+		Request request = ring.createFlow(candidates.get(0), 1000000, 1000, 1).getRequest();
+
+		// Nothing fits a zero deadline or more than the link rate.
+		assertTrue(ring.proxy.evaluatePaths(candidates, request, new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(1000000, 1000), Num.getFactory().create(0.0))).isEmpty());
+		assertTrue(ring.proxy.evaluatePaths(candidates, request, new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(1.1 * RingNetwork.LINK_RATE, 1000), Num.getFactory().create(1.0))).isEmpty());
+		assertEquals(2, ring.proxy.evaluatePaths(candidates, request, new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(1000000, 1000), Num.getFactory().create(1.0))).size());
+	}
+}
@@ -0,0 +1,108 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.dnm.inputmodels.PerInEdgeTokenBucketUtilization;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.uni_kl.cs.discodnc.curves.ArrivalCurve;
+import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
+import de.uni_kl.cs.discodnc.curves.ServiceCurve;
+import de.uni_kl.cs.discodnc.nc.bounds.Bound;
+import de.uni_kl.cs.discodnc.numbers.Num;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PerInEdgeTokenBucketUtilizationTest {
+	private static final double MAXIMUM_PACKET_SIZE = 1530;
+
+	private Random random;
+	private Edge[] inputEdges;
+	private Edge localEdge;
+	private Map<Edge, Double> linkRates;
+
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+		random = new Random(1);
+
+		// Five links entering a node and the link leaving it.
+		Controller controller = new Controller();
+		NetworkingSystem networkingSystem = new NetworkingSystem(controller, new GraphSystem(controller));
+		Network network = networkingSystem.createNetwork();
+		NetworkNode node = networkingSystem.createNode(network);
+		linkRates = new HashMap<>();
+		inputEdges = new Edge[5];
+		for (int i = 0; i < inputEdges.length; i++) {
+			inputEdges[i] = networkingSystem.createLinkWithPriorityScheduling(networkingSystem.createNode(network), node, 1000000.0 * (i + 1), 0.0, new double[]{60000.0}).getLinkEdge();
+			linkRates.put(inputEdges[i], 1000000.0 * (i + 1));
+		}
+		localEdge = networkingSystem.createLinkWithPriorityScheduling(node, networkingSystem.createNode(network), 10000000.0, 0.0, new double[]{60000.0}).getLinkEdge();
+		linkRates.put(localEdge, 10000000.0);
+	}
+
+	private PerInEdgeTokenBucketUtilization createUtilization(long seed) {
+		PerInEdgeTokenBucketUtilization utilization = new PerInEdgeTokenBucketUtilization(localEdge, edge -> linkRates.get(edge), MAXIMUM_PACKET_SIZE);
+		Random flows = new Random(seed);
+		for (int i = 0; i < 20; i++)
+			utilization.addFlow(randomEdge(flows), Num.getFactory().create(flows.nextDouble() * 1000000), Num.getFactory().create(flows.nextDouble() * 5000));
+		return utilization;
+	}
+
+	private Edge randomEdge(Random random) {
+		int index = random.nextInt(inputEdges.length + 1);
+		return index == inputEdges.length ? localEdge : inputEdges[index];
+	}
+
+	private static void assertClose(double expected, double actual) {
+		if (Double.isInfinite(expected))
+			assertEquals(expected, actual, 0);
+		else
+			assertEquals(expected, actual, 1e-9 * Math.max(1, Math.abs(expected)));
+	}
+
+	@Test
+	public void directBoundsMatchDiscoDNC() {
+		for (int run = 0; run < TestUtils.NUMBER_OF_POINTS_TEST; run++) {
+			PerInEdgeTokenBucketUtilization utilization = createUtilization(run);
+			Edge edge = randomEdge(random);
+			double rate = random.nextDouble() * 2000000;
+			double burst = random.nextDouble() * 10000;
+			double R = 1000000 + random.nextDouble() * 20000000;
+			double T = random.nextDouble() * 0.001;
+
+			ArrivalCurve arrivalCurve = utilization.getAggregateArrivalCurve(edge, Num.getFactory().create(rate), Num.getFactory().create(burst));
+			ServiceCurve serviceCurve = CurvePwAffine.getFactory().createRateLatency(R, T);
+			assertClose(Bound.delayFIFO(arrivalCurve, serviceCurve).doubleValue(), utilization.getDelayBound(edge, rate, burst, R, T));
+			assertClose(Bound.backlog(arrivalCurve, serviceCurve).doubleValue(), utilization.getBacklogBound(edge, rate, burst, R, T));
+		}
+	}
+
+	@Test
+	public void shapingFollowsTheLinkRates() {
+		PerInEdgeTokenBucketUtilization utilization = createUtilization(42);
+		linkRates.put(inputEdges[0], 500000.0);
+		linkRates.put(inputEdges[3], 8000000.0);
+		utilization.refreshShaping(inputEdges[0]);
+		utilization.refreshShaping(inputEdges[3]);
+
+		// Same flows, created with the new rates.
+		PerInEdgeTokenBucketUtilization expected = createUtilization(42);
+		ServiceCurve serviceCurve = CurvePwAffine.getFactory().createRateLatency(20000000, 0.0001);
+		assertClose(Bound.delayFIFO(expected.getAggregateArrivalCurve(), serviceCurve).doubleValue(), Bound.delayFIFO(utilization.getAggregateArrivalCurve(), serviceCurve).doubleValue());
+		assertClose(Bound.backlog(expected.getAggregateArrivalCurve(), serviceCurve).doubleValue(), Bound.backlog(utilization.getAggregateArrivalCurve(), serviceCurve).doubleValue());
+	}
+}
@@ -17,7 +17,9 @@ import de.tum.ei.lkn.eces.routing.algorithms.sp.unicast.dijkstra.DijkstraAlgorit
 import de.tum.ei.lkn.eces.routing.mappers.PathMapper;
 import de.tum.ei.lkn.eces.routing.mappers.RequestMapper;
 import de.tum.ei.lkn.eces.routing.mappers.SelectedRoutingAlgorithmMapper;
+import de.tum.ei.lkn.eces.routing.requests.Request;
 import de.tum.ei.lkn.eces.routing.requests.UnicastRequest;
+import de.tum.ei.lkn.eces.routing.responses.Path;
 import de.tum.ei.lkn.eces.topologies.NetworkTopology;
 import de.tum.ei.lkn.eces.topologies.networktopologies.GridRandom;
 import de.uni_kl.cs.discodnc.curves.ArrivalCurve;
@@ -30,7 +32,12 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.security.SecureRandom;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static junit.framework.TestCase.*;
 
@@ -124,4 +131,127 @@ public class QJumpTest {
             }
         }
     }
+
+    @Test
+    public void concurrentRegistrationsDoNotOverAdmit() throws Exception {
+        new DNMSystem(controller);
+        new RoutingSystem(controller);
+        RoutingAlgorithm dijkstra = new DijkstraAlgorithm(controller);
+        QJumpProxy routingProxy = new QJumpProxy(controller);
+        dijkstra.setProxy(routingProxy);
+
+        QJumpConfig modelConfig = new QJumpConfig(5, 4e-6, 900, 1e9);
+        Network myNetwork = networkingSystem.createNetwork();
+        qjumpConfigMapper.attachComponent(myNetwork.getQueueGraph(), modelConfig);
+        NetworkTopology networkTopology = new GridRandom(networkingSystem, myNetwork, 4, 4, 1e9, 0, new double[]{30000000});
+
+        // Routing flows one by one, releasing their slot directly.
+        List<Path> paths = new LinkedList<>();
+        List<Request> requests = new LinkedList<>();
+        for(int i = 0; i < 50; i++) {
+            Entity entity = controller.createEntity();
+            try (MapperSpace mapperSpace = controller.startMapperSpace()) {
+                requestMapper.attachComponent(entity, TestUtils.getRandomUnicastRequest(networkTopology.getNodesAllowedToSend(), networkTopology.getNodesAllowedToReceive()));
+                ncRequestDataMapper.attachComponent(entity, new NCRequestData(
+                        CurvePwAffine.getFactory().createTokenBucket(modelConfig.getMaximumRate() / 2, modelConfig.getMaximumPacketSize() / 2),
+                        Num.getFactory().create(modelConfig.getGuaranteedDelay() * 2)));
+                selectedRoutingAlgorithmMapper.attachComponent(entity, new SelectedRoutingAlgorithm(dijkstra));
+            }
+
+            assertTrue(pathMapper.isIn(entity));
+            paths.add(pathMapper.get(entity));
+            requests.add(requestMapper.get(entity));
+            assertTrue(routingProxy.deregister(pathMapper.get(entity), requestMapper.get(entity)));
+        }
+
+        // Registering all of them concurrently: exactly 5 are admitted.
+        QJumpProxy proxy = new QJumpProxy(controller);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new LinkedList<>();
+        for(int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            Request request = requests.get(i);
+            results.add(executor.submit(() -> proxy.register(path, request)));
+        }
+        int admitted = 0;
+        for(Future<Boolean> result : results)
+            if(result.get())
+                admitted++;
+        executor.shutdown();
+        assertEquals(modelConfig.getMaxNumberOfHosts(), admitted);
+        assertEquals(modelConfig.getMaxNumberOfHosts(), proxy.getNumberOfFlows());
+
+        // Deregistering releases the slots, a flow that was not admitted releases nothing.
+        for(int i = 0; i < paths.size(); i++)
+            proxy.deregister(paths.get(i), requests.get(i));
+        assertEquals(0, proxy.getNumberOfFlows());
+    }
+
+    @Test
+    public void flowsAreMappedToTheHighestFittingLevel() {
+        new DNMSystem(controller);
+        new RoutingSystem(controller);
+        RoutingAlgorithm dijkstra = new DijkstraAlgorithm(controller);
+        QJumpProxy proxy = new QJumpProxy(controller);
+        dijkstra.setProxy(proxy);
+
+        QJumpConfig modelConfig = new QJumpConfig(1, 4e-6, 900, 1e9, new double[]{1, 2, 4});
+        assertEquals(modelConfig.getMaximumRate(), modelConfig.getMaximumRate(0), 1e-9);
+        assertEquals(modelConfig.getGuaranteedDelay(), modelConfig.getGuaranteedDelay(0), 1e-15);
+        // The higher priority levels interfere with the other ones.
+        for(int level = 1; level < modelConfig.getNumberOfLevels(); level++)
+            assertTrue(modelConfig.getGuaranteedDelay(level) > 2 * 900 * modelConfig.getThroughputFactor(level) / 1e9 + 4e-6);
+        // Without processing time, the first two levels can use the whole link rate: no guarantee at the third one.
+        assertTrue(Double.isInfinite(new QJumpConfig(5, 0, 1400, 1e8, new double[]{1, 2, 4}).getGuaranteedDelay(2)));
+        Network myNetwork = networkingSystem.createNetwork();
+        qjumpConfigMapper.attachComponent(myNetwork.getQueueGraph(), modelConfig);
+        NetworkTopology networkTopology = new GridRandom(networkingSystem, myNetwork, 3, 3, 1e9, 0, new double[]{30000000});
+
+        double lowRate = modelConfig.getMaximumRate(0) / 2;
+        double highRate = (modelConfig.getMaximumRate(0) + modelConfig.getMaximumRate(1)) / 2;
+        double looseDeadline = modelConfig.getGuaranteedDelay(2) * 2;
+
+        // Highest level first, the lower levels are kept for the flows needing them.
+        Entity first = routeFlow(dijkstra, networkTopology, lowRate, looseDeadline);
+        assertTrue(pathMapper.isIn(first));
+        assertEquals(2, proxy.getLevel(requestMapper.get(first)));
+
+        Entity second = routeFlow(dijkstra, networkTopology, lowRate, looseDeadline);
+        assertTrue(pathMapper.isIn(second));
+        assertEquals(1, proxy.getLevel(requestMapper.get(second)));
+
+        Entity third = routeFlow(dijkstra, networkTopology, lowRate, looseDeadline);
+        assertTrue(pathMapper.isIn(third));
+        assertEquals(0, proxy.getLevel(requestMapper.get(third)));
+
+        // All levels full.
+        assertFalse(pathMapper.isIn(routeFlow(dijkstra, networkTopology, lowRate, looseDeadline)));
+        assertEquals(3, proxy.getNumberOfFlows());
+
+        // Too fast for the base level and deadline only met by level 1, which is full.
+        proxy.deregister(pathMapper.get(first), requestMapper.get(first));
+        assertFalse(pathMapper.isIn(routeFlow(dijkstra, networkTopology, highRate, modelConfig.getGuaranteedDelay(1))));
+        Entity fourth = routeFlow(dijkstra, networkTopology, highRate, looseDeadline);
+        assertTrue(pathMapper.isIn(fourth));
+        assertEquals(2, proxy.getLevel(requestMapper.get(fourth)));
+
+        // Deadline only met by the base level, which has a free slot again.
+        proxy.deregister(pathMapper.get(third), requestMapper.get(third));
+        Entity fifth = routeFlow(dijkstra, networkTopology, lowRate, modelConfig.getGuaranteedDelay());
+        assertTrue(pathMapper.isIn(fifth));
+        assertEquals(0, proxy.getLevel(requestMapper.get(fifth)));
+        assertEquals(1, proxy.getNumberOfFlows(0));
+    }
+
+    private Entity routeFlow(RoutingAlgorithm algorithm, NetworkTopology networkTopology, double rate, double deadline) {
+        Entity entity = controller.createEntity();
+        try (MapperSpace mapperSpace = controller.startMapperSpace()) {
+            requestMapper.attachComponent(entity, TestUtils.getRandomUnicastRequest(networkTopology.getNodesAllowedToSend(), networkTopology.getNodesAllowedToReceive()));
+            ncRequestDataMapper.attachComponent(entity, new NCRequestData(
+                    CurvePwAffine.getFactory().createTokenBucket(rate, 100),
+                    Num.getFactory().create(deadline)));
+            selectedRoutingAlgorithmMapper.attachComponent(entity, new SelectedRoutingAlgorithm(algorithm));
+        }
+        return entity;
+    }
 }
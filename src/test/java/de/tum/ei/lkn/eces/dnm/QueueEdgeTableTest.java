@@ -0,0 +1,63 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.queuemodels.QueueEdgeTable;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.network.Delay;
+import de.tum.ei.lkn.eces.network.Link;
+import de.tum.ei.lkn.eces.network.mappers.DelayMapper;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class QueueEdgeTableTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void routingValuesAreTheDelays() {
+		RingNetwork ring = RingNetwork.builder().burstIncrease(BurstIncreaseModel.REAL).inputLinkShaping(true).build();
+		QueueEdgeTable queueEdgeTable = new DetServConfigMapper(ring.controller).get(ring.network.getQueueGraph().getEntity()).getQueueEdgeTable();
+		DelayMapper delayMapper = new DelayMapper(ring.controller);
+		for (Link link : ring.links) {
+			double linkDelay = delayMapper.get(link.getLinkEdge().getEntity()).getDelay();
+			for (Edge queueEdge : link.getQueueEdges()) {
+				double queueDelay = delayMapper.get(queueEdge.getEntity()).getDelay();
+				assertSame(link.getLinkEdge(), queueEdgeTable.get(queueEdge).getPhysicalEdge());
+				assertEquals(queueDelay + linkDelay, ring.proxy.getConstraintsValues(null, queueEdge, null, null, true)[0], 0);
+				assertEquals(queueDelay, ring.proxy.getNewParameters(Collections.singletonList(queueEdge), queueEdge, new double[]{0.0}, null, true)[0], 0);
+			}
+		}
+	}
+
+	@Test
+	public void updatedDelaysAreUsed() {
+		RingNetwork ring = RingNetwork.builder().build();
+		DelayMapper delayMapper = new DelayMapper(ring.controller);
+		Link link = ring.links.get(0);
+		Edge queueEdge = link.getQueueEdges()[1];
+
+		Delay queueDelay = delayMapper.get(queueEdge.getEntity());
+		delayMapper.updateComponent(queueDelay, () -> queueDelay.setDelay(0.002));
+		Delay linkDelay = delayMapper.get(link.getLinkEdge().getEntity());
+		delayMapper.updateComponent(linkDelay, () -> linkDelay.setDelay(0.0005));
+
+		assertEquals(0.0025, ring.proxy.getConstraintsValues(null, queueEdge, null, null, true)[0], 1e-15);
+		assertEquals(0.002, ring.proxy.getNewParameters(Collections.singletonList(queueEdge), queueEdge, new double[]{0.0}, null, true)[0], 1e-15);
+		// Other queues of the link: only the link delay changed.
+		Edge otherQueueEdge = link.getQueueEdges()[0];
+		assertEquals(delayMapper.get(otherQueueEdge.getEntity()).getDelay() + 0.0005, ring.proxy.getConstraintsValues(null, otherQueueEdge, null, null, true)[0], 1e-15);
+	}
+}
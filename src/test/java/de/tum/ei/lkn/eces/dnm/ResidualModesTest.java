@@ -165,4 +165,21 @@ public class ResidualModesTest {
         residualCurve = ResidualMode.REAL_CURVE.getResidualServiceCurve(serviceCurve, arrivalCurve);
         assertEquals(CurvePwAffine.getFactory().createRateLatency(0, 0), residualCurve);
     }
+
+    @Test
+    public void closedFormSameAsRealCurve() {
+        // For a token bucket and a rate-latency curve, the closed-form results must be the ones of the general computation
+        for(int i = 0; i < TestUtils.NUMBER_OF_POINTS_TEST; i++) {
+            ArrivalCurve arrivalCurve = CurvePwAffine.getFactory().createTokenBucket(TestUtils.randomRate(), TestUtils.randomBurst());
+            serviceCurve = CurvePwAffine.getFactory().createRateLatency(TestUtils.randomRate(), TestUtils.randomDelay());
+
+            ServiceCurve realCurve = ResidualMode.REAL_CURVE.getResidualServiceCurve(serviceCurve, arrivalCurve);
+            for(ResidualMode residualMode : new ResidualMode[]{ResidualMode.LEAST_LATENCY, ResidualMode.HIGHEST_SLOPE}) {
+                ServiceCurve residualCurve = residualMode.getResidualServiceCurve(serviceCurve, arrivalCurve);
+                assertTrue(residualCurve.isRateLatency());
+                assertEquals(realCurve.getUltAffineRate().doubleValue(), residualCurve.getUltAffineRate().doubleValue(), 1e-6);
+                assertEquals(realCurve.getLatency().doubleValue(), residualCurve.getLatency().doubleValue(), 1e-9);
+            }
+        }
+    }
 }
@@ -0,0 +1,225 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Entity;
+import de.tum.ei.lkn.eces.core.MapperSpace;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.Constant;
+import de.tum.ei.lkn.eces.dnm.inputmodels.TokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.MHMQueueModelMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.NCRequestDataMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.ResourceUtilizationMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.MHM.MHMDemandWeightedAllocation;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.TBM.TBMDelayRatiosAllocation;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.TBM.TBMWorkloadOptimizedAllocation;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.WorkloadFlow;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Link;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.network.mappers.DelayMapper;
+import de.tum.ei.lkn.eces.routing.RoutingSystem;
+import de.tum.ei.lkn.eces.routing.SelectedRoutingAlgorithm;
+import de.tum.ei.lkn.eces.routing.algorithms.csp.unicast.cbf.CBFAlgorithm;
+import de.tum.ei.lkn.eces.routing.mappers.PathMapper;
+import de.tum.ei.lkn.eces.routing.mappers.RequestMapper;
+import de.tum.ei.lkn.eces.routing.mappers.SelectedRoutingAlgorithmMapper;
+import de.tum.ei.lkn.eces.routing.requests.UnicastRequest;
+import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
+import de.uni_kl.cs.discodnc.numbers.Num;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceAllocationTest {
+	private static final double LINK_RATE = 128000000.0;
+
+	// Single MHM link built by buildMHMLink.
+	private DNMSystem mhmDnmSystem;
+	private Network mhmNetwork;
+	private Edge[] queueEdges;
+	private MHMQueueModelMapper mhmQueueModelMapper;
+	private DelayMapper delayMapper;
+	private ResourceUtilizationMapper utilizationMapper;
+
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void workloadOptimizedAllocationFitsTheWorkload() {
+		// Deadlines too tight for the first queue of TBMDelayRatiosAllocation (0.2ms).
+		assertEquals(0, routeTightWorkload(false));
+		assertEquals(20, routeTightWorkload(true));
+	}
+
+	@Test
+	public void workloadFlowsUseTheLinksOfTheirShortestPaths() {
+		Controller lineController = new Controller();
+		NetworkingSystem networkingSystem = new NetworkingSystem(lineController, new GraphSystem(lineController));
+		Network lineNetwork = networkingSystem.createNetwork();
+		NetworkNode[] nodes = new NetworkNode[3];
+		for (int i = 0; i < nodes.length; i++)
+			nodes[i] = networkingSystem.createNode(lineNetwork);
+		Link[] forwardLinks = new Link[nodes.length - 1];
+		Link[] backwardLinks = new Link[nodes.length - 1];
+		for (int i = 0; i < nodes.length - 1; i++) {
+			forwardLinks[i] = networkingSystem.createLinkWithPriorityScheduling(nodes[i], nodes[i + 1], 128000000.0, 0.0, new double[]{60000.0});
+			backwardLinks[i] = networkingSystem.createLinkWithPriorityScheduling(nodes[i + 1], nodes[i], 128000000.0, 0.0, new double[]{60000.0});
+		}
+
+		WorkloadFlow flow = new WorkloadFlow(nodes[0], nodes[2], new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(100000, 1000), Num.getFactory().create(0.001)));
+		assertEquals(2, flow.getHopCount());
+		for (int i = 0; i < nodes.length - 1; i++) {
+			assertTrue(flow.usesLink(forwardLinks[i].getLinkEdge()));
+			assertFalse(flow.usesLink(backwardLinks[i].getLinkEdge()));
+		}
+
+		// Shortcut: the cached distances are recomputed.
+		Link shortcut = networkingSystem.createLinkWithPriorityScheduling(nodes[0], nodes[2], 128000000.0, 0.0, new double[]{60000.0});
+		assertEquals(1, flow.getHopCount());
+		assertTrue(flow.usesLink(shortcut.getLinkEdge()));
+		assertFalse(flow.usesLink(forwardLinks[0].getLinkEdge()));
+	}
+
+	/**
+	 * Builds a ring and routes flows with a per-hop deadline of 0.15ms.
+	 * @param optimized whether to use TBMWorkloadOptimizedAllocation (with the routed flows as workload) or
+	 *                  TBMDelayRatiosAllocation.
+	 * @return the number of admitted flows.
+	 */
+	private int routeTightWorkload(boolean optimized) {
+		Controller ringController = new Controller();
+		GraphSystem graphSystem = new GraphSystem(ringController);
+		NetworkingSystem networkingSystem = new NetworkingSystem(ringController, graphSystem);
+		new RoutingSystem(ringController);
+		DNMSystem ringDnmSystem = new DNMSystem(ringController);
+		CBFAlgorithm cbf = new CBFAlgorithm(ringController);
+		cbf.setProxy(new DetServProxy(ringController));
+		Network ringNetwork = networkingSystem.createNetwork();
+
+		NetworkNode[] nodes = new NetworkNode[4];
+		for (int i = 0; i < nodes.length; i++)
+			nodes[i] = networkingSystem.createNode(ringNetwork);
+		List<WorkloadFlow> workload = new LinkedList<>();
+		for (int i = 0; i < 20; i++) {
+			int source = i % nodes.length;
+			int hops = 1 + (i / nodes.length) % 2;
+			workload.add(new WorkloadFlow(nodes[source], nodes[(source + hops) % nodes.length], new NCRequestData(
+					CurvePwAffine.getFactory().createTokenBucket(100000, 1000),
+					Num.getFactory().create(0.00015 * hops))));
+		}
+
+		DetServConfig modelingConfig = new DetServConfig(
+				ACModel.TBM,
+				ResidualMode.LEAST_LATENCY,
+				BurstIncreaseModel.NO,
+				false,
+				new Constant(),
+				(cont, sched) -> optimized ? new TBMWorkloadOptimizedAllocation(cont, workload) : new TBMDelayRatiosAllocation(cont));
+		new DetServConfigMapper(ringController).attachComponent(ringNetwork.getQueueGraph(), modelingConfig);
+		modelingConfig.initCostModel(ringController);
+
+		try (BulkBuild bulkBuild = ringDnmSystem.startBulkBuild()) {
+			for (int i = 0; i < nodes.length; i++) {
+				networkingSystem.createLinkWithPriorityScheduling(nodes[i], nodes[(i + 1) % nodes.length], 128000000.0, 0.0, new double[]{60000.0, 60000.0, 60000.0});
+				networkingSystem.createLinkWithPriorityScheduling(nodes[(i + 1) % nodes.length], nodes[i], 128000000.0, 0.0, new double[]{60000.0, 60000.0, 60000.0});
+			}
+		}
+
+		PathMapper ringPathMapper = new PathMapper(ringController);
+		int admittedFlows = 0;
+		for (WorkloadFlow flow : workload) {
+			Entity entity = ringController.createEntity();
+			try (MapperSpace mapperSpace = ringController.startMapperSpace()) {
+				new RequestMapper(ringController).attachComponent(entity, new UnicastRequest(flow.getSource().getQueueNode(), flow.getDestination().getQueueNode()));
+				new NCRequestDataMapper(ringController).attachComponent(entity, flow.getNcRequestData());
+				new SelectedRoutingAlgorithmMapper(ringController).attachComponent(entity, new SelectedRoutingAlgorithm(cbf));
+			}
+			if (ringPathMapper.isIn(entity))
+				admittedFlows++;
+		}
+		return admittedFlows;
+	}
+
+	@Test
+	public void reallocationFollowsTheObservedDemand() {
+		buildMHMLink(BurstIncreaseModel.NO);
+
+		// No demand yet: equal ratios.
+		assertEquals(LINK_RATE / 3, mhmQueueModelMapper.get(queueEdges[0].getEntity()).getMaximumTokenBucket().getUltAffineRate().doubleValue(), 1e-3);
+
+		// Demand at the first queue only: it gets most of the link and a lower delay.
+		addUtilization(queueEdges[0], 1000000, 1000);
+		double delay = delayMapper.get(queueEdges[0].getEntity()).getDelay();
+		assertEquals(1, mhmDnmSystem.reallocateResources(mhmNetwork));
+		assertEquals(LINK_RATE * 0.9, mhmQueueModelMapper.get(queueEdges[0].getEntity()).getMaximumTokenBucket().getUltAffineRate().doubleValue(), 1e-3);
+		assertTrue(delayMapper.get(queueEdges[0].getEntity()).getDelay() < delay);
+
+		// Demand shifting to the second queue would increase the delay of the flows of the first queue: refused.
+		addUtilization(queueEdges[1], LINK_RATE * 0.04, 1000);
+		delay = delayMapper.get(queueEdges[0].getEntity()).getDelay();
+		assertEquals(0, mhmDnmSystem.reallocateResources(mhmNetwork));
+		assertEquals(LINK_RATE * 0.9, mhmQueueModelMapper.get(queueEdges[0].getEntity()).getMaximumTokenBucket().getUltAffineRate().doubleValue(), 1e-3);
+		assertEquals(delay, delayMapper.get(queueEdges[0].getEntity()).getDelay(), 0);
+	}
+
+	@Test
+	public void reallocationKeepsTheDelaysOfUsedQueuesWithRealBurstIncrease() {
+		buildMHMLink(BurstIncreaseModel.REAL);
+
+		// Demand at the first queue only: new resources, but the delay of the (used) first queue is kept.
+		addUtilization(queueEdges[0], 1000000, 1000);
+		double usedDelay = delayMapper.get(queueEdges[0].getEntity()).getDelay();
+		double unusedDelay = delayMapper.get(queueEdges[1].getEntity()).getDelay();
+		assertEquals(1, mhmDnmSystem.reallocateResources(mhmNetwork));
+		assertEquals(LINK_RATE * 0.9, mhmQueueModelMapper.get(queueEdges[0].getEntity()).getMaximumTokenBucket().getUltAffineRate().doubleValue(), 1e-3);
+		assertEquals(usedDelay, delayMapper.get(queueEdges[0].getEntity()).getDelay(), 0);
+		assertTrue(delayMapper.get(queueEdges[1].getEntity()).getDelay() != unusedDelay);
+	}
+
+	/**
+	 * Builds a single link with three queues, MHM and MHMDemandWeightedAllocation.
+	 * @param burstIncrease burst increase model.
+	 */
+	private void buildMHMLink(BurstIncreaseModel burstIncrease) {
+		Controller mhmController = new Controller();
+		NetworkingSystem networkingSystem = new NetworkingSystem(mhmController, new GraphSystem(mhmController));
+		mhmDnmSystem = new DNMSystem(mhmController);
+		mhmNetwork = networkingSystem.createNetwork();
+		new DetServConfigMapper(mhmController).attachComponent(mhmNetwork.getQueueGraph(), new DetServConfig(
+				ACModel.MHM,
+				ResidualMode.LEAST_LATENCY,
+				burstIncrease,
+				false,
+				new Constant(),
+				(cont, sched) -> new MHMDemandWeightedAllocation(cont)));
+		queueEdges = networkingSystem.createLinkWithPriorityScheduling(networkingSystem.createNode(mhmNetwork), networkingSystem.createNode(mhmNetwork), LINK_RATE, 0.0, new double[]{60000.0, 60000.0, 60000.0}).getQueueEdges();
+		mhmQueueModelMapper = new MHMQueueModelMapper(mhmController);
+		delayMapper = new DelayMapper(mhmController);
+		utilizationMapper = new ResourceUtilizationMapper(mhmController);
+	}
+
+	private void addUtilization(Edge queueEdge, double rate, double burst) {
+		TokenBucketUtilization utilization = (TokenBucketUtilization) utilizationMapper.get(queueEdge.getEntity());
+		utilizationMapper.updateComponent(utilization, () -> utilization.addFlow(Num.getFactory().create(rate), Num.getFactory().create(burst)));
+	}
+}
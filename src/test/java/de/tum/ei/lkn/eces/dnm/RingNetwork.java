@@ -0,0 +1,221 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Entity;
+import de.tum.ei.lkn.eces.core.MapperSpace;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.AccessControlEngine;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.config.UtilizationBackend;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.Constant;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.NCRequestDataMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.QueueModelMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
+import de.tum.ei.lkn.eces.dnm.proxies.FlowReservation;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.TBM.TBMDelayRatiosAllocation;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.graph.Node;
+import de.tum.ei.lkn.eces.network.Link;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.routing.RoutingSystem;
+import de.tum.ei.lkn.eces.routing.SelectedRoutingAlgorithm;
+import de.tum.ei.lkn.eces.routing.algorithms.csp.unicast.cbf.CBFAlgorithm;
+import de.tum.ei.lkn.eces.routing.mappers.PathMapper;
+import de.tum.ei.lkn.eces.routing.mappers.RequestMapper;
+import de.tum.ei.lkn.eces.routing.mappers.SelectedRoutingAlgorithmMapper;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.requests.UnicastRequest;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
+import de.uni_kl.cs.discodnc.curves.ServiceCurve;
+import de.uni_kl.cs.discodnc.numbers.Num;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Ring of four nodes with links of rate 128000000 and three queues in both directions (TBM with
+ * TBMDelayRatiosAllocation), flows being routed by CBF through a DetServProxy. Created with RingNetwork.builder().
+ *
+ * @author Amaury Van Bemten
+ */
+class RingNetwork {
+	static final double LINK_RATE = 128000000.0;
+
+	final Controller controller;
+	final DNMSystem dnmSystem;
+	final DetServProxy proxy;
+	final Network network;
+	final NetworkNode[] nodes;
+	// For each node i, the link to node i + 1 and then the link back.
+	final List<Link> links;
+
+	private final CBFAlgorithm cbf;
+	private final RequestMapper requestMapper;
+	private final NCRequestDataMapper ncRequestDataMapper;
+	private final PathMapper pathMapper;
+	private final SelectedRoutingAlgorithmMapper selectedRoutingAlgorithmMapper;
+	private final QueueModelMapper queueModelMapper;
+
+	private RingNetwork(Builder builder) {
+		controller = new Controller();
+		GraphSystem graphSystem = new GraphSystem(controller);
+		NetworkingSystem networkingSystem = new NetworkingSystem(controller, graphSystem);
+		new RoutingSystem(controller);
+		dnmSystem = new DNMSystem(controller);
+		proxy = new DetServProxy(controller);
+		cbf = new CBFAlgorithm(controller);
+		cbf.setProxy(proxy);
+		requestMapper = new RequestMapper(controller);
+		ncRequestDataMapper = new NCRequestDataMapper(controller);
+		pathMapper = new PathMapper(controller);
+		selectedRoutingAlgorithmMapper = new SelectedRoutingAlgorithmMapper(controller);
+		queueModelMapper = new QueueModelMapper(controller);
+
+		DetServConfig modelingConfig = new DetServConfig(
+				ACModel.TBM,
+				builder.residualMode,
+				builder.burstIncrease,
+				builder.inputLinkShaping,
+				new Constant(),
+				(cont, sched) -> new TBMDelayRatiosAllocation(cont),
+				1530,
+				0.000001,
+				builder.accessControlEngine,
+				builder.utilizationBackend);
+		network = networkingSystem.createNetwork();
+		new DetServConfigMapper(controller).attachComponent(network.getQueueGraph(), modelingConfig);
+		modelingConfig.initCostModel(controller);
+
+		nodes = new NetworkNode[4];
+		for (int i = 0; i < nodes.length; i++)
+			nodes[i] = networkingSystem.createNode(network);
+		links = new LinkedList<>();
+		for (int i = 0; i < nodes.length; i++) {
+			links.add(networkingSystem.createLinkWithPriorityScheduling(nodes[i], nodes[(i + 1) % nodes.length], LINK_RATE, 0.0, new double[]{60000.0, 60000.0, 60000.0}));
+			links.add(networkingSystem.createLinkWithPriorityScheduling(nodes[(i + 1) % nodes.length], nodes[i], LINK_RATE, 0.0, new double[]{60000.0, 60000.0, 60000.0}));
+		}
+	}
+
+	static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Routes a flow between two nodes of the ring. If it is accepted, the flow is registered.
+	 * @return the reservation of the flow, null if it was rejected.
+	 */
+	FlowReservation route(int source, int destination, double rate, double burst, double deadline) {
+		Entity entity = createRequest(nodes[source].getQueueNode(), nodes[destination].getQueueNode(), rate, burst, deadline, true);
+		if (!pathMapper.isIn(entity))
+			return null;
+		return new FlowReservation(requestMapper.get(entity), ncRequestDataMapper.get(entity), pathMapper.get(entity));
+	}
+
+	/**
+	 * Creates a flow on a given path, without routing nor registering it.
+	 * @return the reservation of the flow, to be registered.
+	 */
+	FlowReservation createFlow(Path path, double rate, double burst, double deadline) {
+		Edge[] edges = path.getPath();
+		Entity entity = createRequest(edges[0].getSource(), edges[edges.length - 1].getDestination(), rate, burst, deadline, false);
+		return new FlowReservation(requestMapper.get(entity), ncRequestDataMapper.get(entity), path);
+	}
+
+	/**
+	 * Creates the request of a flow crossing a single edge, without routing nor registering it.
+	 * @return the request, to be checked at this edge.
+	 */
+	Request createRequest(Edge edge, double rate, double burst, double deadline) {
+		return requestMapper.get(createRequest(edge.getSource(), edge.getDestination(), rate, burst, deadline, false));
+	}
+
+	/**
+	 * Routes a small flow from each node to the two next ones and creates three flows on each of these paths.
+	 * @return the created flows (not registered), the same ones for rings built with the same options.
+	 */
+	List<FlowReservation> createFlows() {
+		List<FlowReservation> flows = new LinkedList<>();
+		for (int source = 0; source < nodes.length; source++) {
+			for (int hops = 1; hops <= 2; hops++) {
+				Path path = route(source, (source + hops) % nodes.length, 100000, 100, 1).getPath();
+				for (int i = 1; i <= 3; i++)
+					flows.add(createFlow(path, 1000000 * i, 1000 * i, 1));
+			}
+		}
+		return flows;
+	}
+
+	private Entity createRequest(Node source, Node destination, double rate, double burst, double deadline, boolean routed) {
+		Entity entity = controller.createEntity();
+		try (MapperSpace mapperSpace = controller.startMapperSpace()) {
+			requestMapper.attachComponent(entity, new UnicastRequest(source, destination));
+			ncRequestDataMapper.attachComponent(entity, new NCRequestData(
+					CurvePwAffine.getFactory().createTokenBucket(rate, burst),
+					Num.getFactory().create(deadline)));
+			if (routed)
+				selectedRoutingAlgorithmMapper.attachComponent(entity, new SelectedRoutingAlgorithm(cbf));
+		}
+		return entity;
+	}
+
+	/**
+	 * @return the queue edges of all the links, in the order of the links.
+	 */
+	List<Edge> getQueueEdges() {
+		List<Edge> queueEdges = new LinkedList<>();
+		for (Link link : links)
+			for (Edge queueEdge : link.getQueueEdges())
+				queueEdges.add(queueEdge);
+		return queueEdges;
+	}
+
+	ServiceCurve getServiceCurve(Edge queueEdge) {
+		return queueModelMapper.get(queueEdge.getEntity()).getServiceCurve();
+	}
+
+	static class Builder {
+		private AccessControlEngine accessControlEngine = AccessControlEngine.DISCO_DNC;
+		private ResidualMode residualMode = ResidualMode.LEAST_LATENCY;
+		private BurstIncreaseModel burstIncrease = BurstIncreaseModel.NO;
+		private boolean inputLinkShaping = false;
+		private UtilizationBackend utilizationBackend = UtilizationBackend.HEAP;
+
+		private Builder() {
+		}
+
+		Builder accessControlEngine(AccessControlEngine accessControlEngine) {
+			this.accessControlEngine = accessControlEngine;
+			return this;
+		}
+
+		Builder residualMode(ResidualMode residualMode) {
+			this.residualMode = residualMode;
+			return this;
+		}
+
+		Builder burstIncrease(BurstIncreaseModel burstIncrease) {
+			this.burstIncrease = burstIncrease;
+			return this;
+		}
+
+		Builder inputLinkShaping(boolean inputLinkShaping) {
+			this.inputLinkShaping = inputLinkShaping;
+			return this;
+		}
+
+		Builder utilizationBackend(UtilizationBackend utilizationBackend) {
+			this.utilizationBackend = utilizationBackend;
+			return this;
+		}
+
+		RingNetwork build() {
+			return new RingNetwork(this);
+		}
+	}
+}
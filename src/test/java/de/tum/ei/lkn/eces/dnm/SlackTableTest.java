@@ -0,0 +1,145 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.config.AccessControlEngine;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.FlowReservation;
+import de.tum.ei.lkn.eces.dnm.queuemodels.SlackTable;
+import de.tum.ei.lkn.eces.dnm.snapshot.DNMSnapshot;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SlackTableTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void slackFollowsTheRegistrations() {
+		RingNetwork ring = RingNetwork.builder().accessControlEngine(AccessControlEngine.SLACK).build();
+		FlowReservation reservation = ring.route(0, 1, 1000000, 1000, 1);
+		Edge queueEdge = reservation.getPath().getPath()[0];
+		SlackTable.Slack slack = getSlackTable(ring).get(queueEdge);
+		assertNotNull(slack);
+
+		ring.proxy.deregister(reservation.getPath(), reservation.getRequest());
+		SlackTable.Slack emptySlack = getSlackTable(ring).get(queueEdge);
+		assertTrue(emptySlack.getMaxRate() > slack.getMaxRate());
+		assertTrue(emptySlack.getMaxBurst() > slack.getMaxBurst());
+
+		ring.proxy.register(reservation.getPath(), reservation.getRequest());
+		assertEquals(slack.getMaxRate(), getSlackTable(ring).get(queueEdge).getMaxRate(), 1e-6);
+		assertEquals(slack.getMaxBurst(), getSlackTable(ring).get(queueEdge).getMaxBurst(), 1e-6);
+	}
+
+	@Test
+	public void slackDecisionsAreTheClosedFormOnes() {
+		RingNetwork slackRing = RingNetwork.builder().accessControlEngine(AccessControlEngine.SLACK).build();
+		RingNetwork closedFormRing = RingNetwork.builder().accessControlEngine(AccessControlEngine.CLOSED_FORM).build();
+		List<FlowReservation> slackFlows = routeFlows(slackRing);
+		List<FlowReservation> closedFormFlows = routeFlows(closedFormRing);
+
+		for (int f = 0; f < slackFlows.size(); f++) {
+			SlackTable.Slack slack = getSlackTable(slackRing).get(slackFlows.get(f).getPath().getPath()[0]);
+			double maxRate = slack.getMaxRate();
+			double maxBurst = slack.getMaxBurst();
+
+			// Below the line joining the intercepts: accepted by the slack.
+			assertEquals(SlackTable.Decision.ACCEPT, slack.decide(0.5 * maxRate, 0.4 * maxBurst));
+			assertTrue(hasAccess(slackRing, slackFlows.get(f), 0.5 * maxRate, 0.4 * maxBurst));
+			assertTrue(hasAccess(closedFormRing, closedFormFlows.get(f), 0.5 * maxRate, 0.4 * maxBurst));
+
+			// Beyond an intercept: rejected by the slack.
+			assertEquals(SlackTable.Decision.REJECT, slack.decide(1.01 * maxRate, 1));
+			assertFalse(hasAccess(slackRing, slackFlows.get(f), 1.01 * maxRate, 1));
+			assertFalse(hasAccess(closedFormRing, closedFormFlows.get(f), 1.01 * maxRate, 1));
+			assertEquals(SlackTable.Decision.REJECT, slack.decide(1, 1.01 * maxBurst));
+			assertFalse(hasAccess(slackRing, slackFlows.get(f), 1, 1.01 * maxBurst));
+			assertFalse(hasAccess(closedFormRing, closedFormFlows.get(f), 1, 1.01 * maxBurst));
+
+			// In between: decided by the closed-form engine.
+			assertEquals(SlackTable.Decision.UNDECIDED, slack.decide(0.9 * maxRate, 0.9 * maxBurst));
+			assertEquals(hasAccess(closedFormRing, closedFormFlows.get(f), 0.9 * maxRate, 0.9 * maxBurst), hasAccess(slackRing, slackFlows.get(f), 0.9 * maxRate, 0.9 * maxBurst));
+		}
+	}
+
+	@Test
+	public void slackTableIsRestored() throws Exception {
+		RingNetwork ring = RingNetwork.builder().accessControlEngine(AccessControlEngine.SLACK).build();
+		List<FlowReservation> flows = routeFlows(ring);
+		Path file = Files.createTempFile("dnm", ".snapshot");
+		try {
+			new DNMSnapshot(ring.controller).write(ring.network, flows, file);
+
+			// Same topology, without any flow: the slack of the restored queues must give the closed-form decisions.
+			List<Boolean> expectedDecisions = null;
+			for (AccessControlEngine accessControlEngine : new AccessControlEngine[]{AccessControlEngine.CLOSED_FORM, AccessControlEngine.SLACK}) {
+				RingNetwork restoredRing = RingNetwork.builder().accessControlEngine(accessControlEngine).build();
+				new DNMSnapshot(restoredRing.controller).restore(restoredRing.network, file);
+				List<Boolean> decisions = getDecisions(restoredRing);
+				if (expectedDecisions == null)
+					expectedDecisions = decisions;
+				else
+					assertEquals(expectedDecisions, decisions);
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Routes a flow from each node to the next one and to the one after.
+	 * @return the routed flows (all accepted).
+	 */
+	private List<FlowReservation> routeFlows(RingNetwork ring) {
+		List<FlowReservation> flows = new LinkedList<>();
+		for (int source = 0; source < ring.nodes.length; source++)
+			for (int hops = 1; hops <= 2; hops++)
+				flows.add(ring.route(source, (source + hops) % ring.nodes.length, 1000000 * (source + hops), 1000 * (source + hops), 1));
+		return flows;
+	}
+
+	/**
+	 * @return the access decisions of the proxy for flows of increasing sizes at every queue.
+	 */
+	private List<Boolean> getDecisions(RingNetwork ring) {
+		List<Boolean> decisions = new LinkedList<>();
+		for (Edge queueEdge : ring.getQueueEdges()) {
+			for (int i = 1; i <= 10; i++) {
+				Request request = ring.createRequest(queueEdge, 0.1 * i * RingNetwork.LINK_RATE, 2000 * i, 1);
+				decisions.add(ring.proxy.hasAccess(null, queueEdge, new double[]{0.0}, request, true));
+			}
+		}
+		return decisions;
+	}
+
+	/**
+	 * @return whether a flow of this token bucket is accepted at the first queue of the path of a flow.
+	 */
+	private boolean hasAccess(RingNetwork ring, FlowReservation flow, double rate, double burst) {
+		Edge queueEdge = flow.getPath().getPath()[0];
+		return ring.proxy.hasAccess(null, queueEdge, new double[]{0.0}, ring.createRequest(queueEdge, rate, burst, 1), true);
+	}
+
+	private SlackTable getSlackTable(RingNetwork ring) {
+		return new DetServConfigMapper(ring.controller).get(ring.network.getQueueGraph().getEntity()).getSlackTable();
+	}
+}
@@ -0,0 +1,121 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.inputmodels.PerInEdgeTokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.ResourceUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.TokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.mappers.ResourceUtilizationMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.AdmissionCache;
+import de.tum.ei.lkn.eces.dnm.proxies.FlowReservation;
+import de.tum.ei.lkn.eces.dnm.snapshot.DNMSnapshot;
+import de.tum.ei.lkn.eces.dnm.snapshot.SnapshotFlow;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.network.mappers.DelayMapper;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.uni_kl.cs.discodnc.curves.ArrivalCurve;
+import de.uni_kl.cs.discodnc.curves.ServiceCurve;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void queuesAndFlowsAreRestored() throws Exception {
+		// With REAL_CURVE and ILS, the service curves of the lower priority queues are not rate-latency curves and are
+		// recomputed.
+		for (ResidualMode residualMode : new ResidualMode[]{ResidualMode.LEAST_LATENCY, ResidualMode.REAL_CURVE}) {
+			for (boolean inputLinkShaping : new boolean[]{false, true}) {
+				RingNetwork ring = RingNetwork.builder().residualMode(residualMode).burstIncrease(BurstIncreaseModel.REAL).inputLinkShaping(inputLinkShaping).build();
+				List<FlowReservation> flows = ring.createFlows();
+				for (FlowReservation reservation : flows)
+					assertTrue(ring.proxy.register(reservation.getPath(), reservation.getRequest()));
+
+				Path file = Files.createTempFile("dnm", ".snapshot");
+				try {
+					new DNMSnapshot(ring.controller).write(ring.network, flows, file);
+
+					// Same topology, without any flow.
+					RingNetwork restoredRing = RingNetwork.builder().residualMode(residualMode).burstIncrease(BurstIncreaseModel.REAL).inputLinkShaping(inputLinkShaping).build();
+					List<SnapshotFlow> restoredFlows = new DNMSnapshot(restoredRing.controller).restore(restoredRing.network, file);
+
+					assertEquals(flows.size(), restoredFlows.size());
+					for (int i = 0; i < flows.size(); i++) {
+						assertEquals(flows.get(i).getPath().getPath().length, restoredFlows.get(i).getPath().length);
+						assertEquals(flows.get(i).getNcRequestData().getTb().getUltAffineRate().doubleValue(), restoredFlows.get(i).getNcRequestData().getTb().getUltAffineRate().doubleValue(), 0);
+					}
+
+					DelayMapper delayMapper = new DelayMapper(ring.controller);
+					DelayMapper restoredDelayMapper = new DelayMapper(restoredRing.controller);
+					List<Edge> queueEdges = ring.getQueueEdges();
+					List<Edge> restoredQueueEdges = restoredRing.getQueueEdges();
+					for (int i = 0; i < queueEdges.size(); i++) {
+						ServiceCurve serviceCurve = ring.getServiceCurve(queueEdges.get(i));
+						ServiceCurve restoredServiceCurve = restoredRing.getServiceCurve(restoredQueueEdges.get(i));
+						assertEquals(serviceCurve.getUltAffineRate().doubleValue(), restoredServiceCurve.getUltAffineRate().doubleValue(), 1e-3);
+						assertEquals(serviceCurve.getLatency().doubleValue(), restoredServiceCurve.getLatency().doubleValue(), 1e-9);
+						assertEquals(delayMapper.get(queueEdges.get(i).getEntity()).getDelay(), restoredDelayMapper.get(restoredQueueEdges.get(i).getEntity()).getDelay(), 1e-9);
+
+						ArrivalCurve arrivalCurve = getArrivalCurve(ring, queueEdges.get(i));
+						ArrivalCurve restoredArrivalCurve = getArrivalCurve(restoredRing, restoredQueueEdges.get(i));
+						assertEquals(arrivalCurve.getUltAffineRate().doubleValue(), restoredArrivalCurve.getUltAffineRate().doubleValue(), 1e-3);
+						assertEquals(arrivalCurve.getBurst().doubleValue(), restoredArrivalCurve.getBurst().doubleValue(), 1e-6);
+					}
+				}
+				finally {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void cachedDecisionsAreDroppedOnRestore() throws Exception {
+		RingNetwork ring = RingNetwork.builder().build();
+		FlowReservation reservation = ring.createFlow(ring.route(0, 2, 1000000, 1000, 1).getPath(), 0.6 * RingNetwork.LINK_RATE, 1000, 1);
+		assertTrue(ring.proxy.register(reservation.getPath(), reservation.getRequest()));
+
+		Path file = Files.createTempFile("dnm", ".snapshot");
+		try {
+			new DNMSnapshot(ring.controller).write(ring.network, Collections.singletonList(reservation), file);
+
+			// The decision cached in the ring without the flow must not be served once the flow is restored.
+			RingNetwork restoredRing = RingNetwork.builder().build();
+			restoredRing.proxy.setAdmissionCache(new AdmissionCache(restoredRing.controller));
+			FlowReservation restoredReservation = restoredRing.createFlow(restoredRing.route(0, 2, 1000000, 1000, 1).getPath(), 0.6 * RingNetwork.LINK_RATE, 1000, 1);
+			Edge firstEdge = restoredReservation.getPath().getPath()[0];
+			Request request = restoredReservation.getRequest();
+			assertTrue(restoredRing.proxy.hasAccess(null, firstEdge, new double[]{0.0}, request, true));
+
+			new DNMSnapshot(restoredRing.controller).restore(restoredRing.network, file);
+			assertFalse(restoredRing.proxy.hasAccess(null, firstEdge, new double[]{0.0}, request, true));
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	private ArrivalCurve getArrivalCurve(RingNetwork ring, Edge queueEdge) {
+		ResourceUtilization resourceUtilization = new ResourceUtilizationMapper(ring.controller).get(queueEdge.getEntity());
+		if (resourceUtilization instanceof TokenBucketUtilization)
+			return ((TokenBucketUtilization) resourceUtilization).getTokenBucket();
+		return ((PerInEdgeTokenBucketUtilization) resourceUtilization).getAggregateArrivalCurve();
+	}
+}
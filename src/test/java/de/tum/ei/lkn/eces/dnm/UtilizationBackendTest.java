@@ -0,0 +1,103 @@
+package de.tum.ei.lkn.eces.dnm;
+
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.UtilizationBackend;
+import de.tum.ei.lkn.eces.dnm.inputmodels.PerInEdgeTokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.TokenBucketUtilization;
+import de.tum.ei.lkn.eces.dnm.inputmodels.UtilizationStore;
+import de.tum.ei.lkn.eces.dnm.proxies.FlowReservation;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.uni_kl.cs.discodnc.curves.ServiceCurve;
+import de.uni_kl.cs.discodnc.numbers.Num;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UtilizationBackendTest {
+	@Before
+	public void setup() {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+		Logger.getLogger("de.tum.ei.lkn.eces.core").setLevel(Level.OFF);
+	}
+
+	@Test
+	public void backendsLeadToTheServiceCurvesOfTheHeap() {
+		for (UtilizationBackend utilizationBackend : new UtilizationBackend[]{UtilizationBackend.COLUMNAR, UtilizationBackend.OFF_HEAP}) {
+			for (boolean inputLinkShaping : new boolean[]{false, true}) {
+				RingNetwork heapRing = RingNetwork.builder().burstIncrease(BurstIncreaseModel.REAL).inputLinkShaping(inputLinkShaping).build();
+				for (FlowReservation reservation : heapRing.createFlows())
+					assertTrue(heapRing.proxy.register(reservation.getPath(), reservation.getRequest()));
+
+				RingNetwork ring = RingNetwork.builder().burstIncrease(BurstIncreaseModel.REAL).inputLinkShaping(inputLinkShaping).utilizationBackend(utilizationBackend).build();
+				for (FlowReservation reservation : ring.createFlows())
+					assertTrue(ring.proxy.register(reservation.getPath(), reservation.getRequest()));
+
+				List<Edge> heapQueueEdges = heapRing.getQueueEdges();
+				List<Edge> queueEdges = ring.getQueueEdges();
+				for (int i = 0; i < queueEdges.size(); i++) {
+					ServiceCurve expected = heapRing.getServiceCurve(heapQueueEdges.get(i));
+					ServiceCurve serviceCurve = ring.getServiceCurve(queueEdges.get(i));
+					assertEquals(expected.getUltAffineRate().doubleValue(), serviceCurve.getUltAffineRate().doubleValue(), 1e-3);
+					assertEquals(expected.getLatency().doubleValue(), serviceCurve.getLatency().doubleValue(), 1e-9);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void storedTokenBucketsAreTheNumOnes() {
+		UtilizationStore store = new UtilizationStore(true);
+		TokenBucketUtilization heapUtilization = new TokenBucketUtilization();
+		TokenBucketUtilization storeUtilization = new TokenBucketUtilization(store);
+		for (int i = 0; i < TestUtils.NUMBER_OF_POINTS_TEST; i++) {
+			Num rate = Num.getFactory().create(TestUtils.randomRate());
+			Num burst = Num.getFactory().create(TestUtils.randomBurst());
+			heapUtilization.addFlow(rate, burst);
+			storeUtilization.addFlow(rate, burst);
+			if (i % 3 == 0) {
+				heapUtilization.removeFlow(rate, burst);
+				storeUtilization.removeFlow(rate, burst);
+			}
+			assertEquals(heapUtilization.getRate().doubleValue(), storeUtilization.getRateValue(), 1e-3);
+			assertEquals(heapUtilization.getBurst().doubleValue(), storeUtilization.getBurstValue(), 1e-6);
+		}
+	}
+
+	@Test
+	public void slotsAreRecycled() {
+		RingNetwork ring = RingNetwork.builder().build();
+		UtilizationStore store = new UtilizationStore(false);
+		Edge localEdge = ring.links.get(0).getLinkEdge();
+		Edge inputEdge = ring.links.get(1).getLinkEdge();
+
+		// Utilizations created and released over and over only use the slots of the ones alive at the same time.
+		for (int i = 0; i < 100; i++) {
+			TokenBucketUtilization utilization = new TokenBucketUtilization(store);
+			utilization.addFlow(Num.getFactory().create(1000), Num.getFactory().create(100));
+			PerInEdgeTokenBucketUtilization perInEdgeUtilization = new PerInEdgeTokenBucketUtilization(localEdge, edge -> RingNetwork.LINK_RATE, 1530, store);
+			perInEdgeUtilization.addFlow(localEdge, Num.getFactory().create(1000), Num.getFactory().create(100));
+			perInEdgeUtilization.addFlow(inputEdge, Num.getFactory().create(1000), Num.getFactory().create(100));
+			assertEquals(3, store.getAllocatedSlots());
+
+			// A recycled slot starts empty.
+			assertEquals(1000, utilization.getRateValue(), 0);
+			assertEquals(100, perInEdgeUtilization.getBurstValue(inputEdge), 0);
+
+			perInEdgeUtilization.deleteEdge(inputEdge);
+			assertEquals(2, store.getAllocatedSlots());
+			assertEquals(0, perInEdgeUtilization.getRateValue(inputEdge), 0);
+			utilization.release();
+			perInEdgeUtilization.release();
+			assertEquals(0, store.getAllocatedSlots());
+			assertTrue(perInEdgeUtilization.getInputEdges().isEmpty());
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package de.tum.ei.lkn.eces.dnm.benchmarks;
+
+import de.tum.ei.lkn.eces.core.Entity;
+import de.tum.ei.lkn.eces.dnm.ResidualMode;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access check of a flow on the second hop of its path (DetServProxy.hasAccess), with other flows already using
+ * the queues.
+ *
+ * @author Amaury Van Bemten
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdmissionBenchmark {
+	@Param({"TBM", "MHM"})
+	public ACModel acModel;
+
+	@Param({"false", "true"})
+	public boolean inputLinkShaping;
+
+	@Param({"NO", "WORST_CASE_BURST", "WORST_CASE_BURST_REAL_RESERVATION", "REAL"})
+	public BurstIncreaseModel burstIncrease;
+
+	@Param({"50"})
+	public int backgroundFlows;
+
+	private DetServProxy proxy;
+	private List<Edge> previousEdges;
+	private Edge edge;
+	private double[] parameters;
+	private Request request;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkNetwork network = new BenchmarkNetwork(acModel, ResidualMode.LEAST_LATENCY, burstIncrease, inputLinkShaping, 3);
+		proxy = network.proxy;
+
+		for (int i = 0; i < backgroundFlows; i++)
+			network.route(i % 2, 2, 10000.0, 100.0, 0.1);
+
+		// The probe flow is routed and then removed so that it does not use resources.
+		Entity probe = network.route(0, 2, 10000.0, 100.0, 0.1);
+		Path path = network.getPath(probe);
+		request = network.getRequest(probe);
+		proxy.deregister(path, request);
+
+		previousEdges = Collections.singletonList(path.getPath()[0]);
+		edge = path.getPath()[1];
+		parameters = proxy.getNewParameters(previousEdges, edge, new double[]{0.0}, request, true);
+	}
+
+	@Benchmark
+	public boolean hasAccess() {
+		return proxy.hasAccess(previousEdges, edge, parameters, request, true);
+	}
+}
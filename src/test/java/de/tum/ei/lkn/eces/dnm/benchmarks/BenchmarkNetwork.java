@@ -0,0 +1,140 @@
+package de.tum.ei.lkn.eces.dnm.benchmarks;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Entity;
+import de.tum.ei.lkn.eces.core.MapperSpace;
+import de.tum.ei.lkn.eces.dnm.DNMSystem;
+import de.tum.ei.lkn.eces.dnm.NCRequestData;
+import de.tum.ei.lkn.eces.dnm.ResidualMode;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.Constant;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.mappers.NCRequestDataMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.MHM.MHMRateRatiosAllocation;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.TBM.TBMDelayRatiosAllocation;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Link;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.routing.RoutingSystem;
+import de.tum.ei.lkn.eces.routing.SelectedRoutingAlgorithm;
+import de.tum.ei.lkn.eces.routing.algorithms.csp.unicast.cbf.CBFAlgorithm;
+import de.tum.ei.lkn.eces.routing.mappers.PathMapper;
+import de.tum.ei.lkn.eces.routing.mappers.RequestMapper;
+import de.tum.ei.lkn.eces.routing.mappers.SelectedRoutingAlgorithmMapper;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.requests.UnicastRequest;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
+import de.uni_kl.cs.discodnc.numbers.Num;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Network (a line by default, links in both directions, see BenchmarkTopology) with the DNM systems, used by the
+ * benchmarks.
+ *
+ * @author Amaury Van Bemten
+ */
+class BenchmarkNetwork {
+	static final double LINK_RATE = 128000000.0;
+	static final double[] QUEUE_SIZES = new double[]{60000.0, 60000.0, 60000.0};
+
+	final Controller controller;
+	final NetworkingSystem networkingSystem;
+	final Network network;
+	final DetServProxy proxy;
+	// Endpoints of the topology.
+	final NetworkNode[] nodes;
+
+	private final CBFAlgorithm cbf;
+	private final RequestMapper requestMapper;
+	private final NCRequestDataMapper ncRequestDataMapper;
+	private final PathMapper pathMapper;
+	private final SelectedRoutingAlgorithmMapper selectedRoutingAlgorithmMapper;
+
+	BenchmarkNetwork(ACModel acModel, ResidualMode residualMode, BurstIncreaseModel burstIncrease, boolean inputLinkShaping, int numberOfNodes) {
+		this(acModel, residualMode, burstIncrease, inputLinkShaping, BenchmarkTopology.LINE, numberOfNodes, 1);
+	}
+
+	BenchmarkNetwork(ACModel acModel, ResidualMode residualMode, BurstIncreaseModel burstIncrease, boolean inputLinkShaping, BenchmarkTopology topology, int size, long seed) {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.OFF);
+
+		controller = new Controller();
+		GraphSystem graphSystem = new GraphSystem(controller);
+		networkingSystem = new NetworkingSystem(controller, graphSystem);
+		new RoutingSystem(controller);
+		new DNMSystem(controller);
+		proxy = new DetServProxy(controller);
+		cbf = new CBFAlgorithm(controller);
+		cbf.setProxy(proxy);
+		requestMapper = new RequestMapper(controller);
+		ncRequestDataMapper = new NCRequestDataMapper(controller);
+		pathMapper = new PathMapper(controller);
+		selectedRoutingAlgorithmMapper = new SelectedRoutingAlgorithmMapper(controller);
+
+		DetServConfig modelingConfig = new DetServConfig(
+				acModel,
+				residualMode,
+				burstIncrease,
+				inputLinkShaping,
+				new Constant(),
+				(cont, sched) -> {
+					if (acModel == ACModel.TBM)
+						return new TBMDelayRatiosAllocation(cont);
+					else
+						return new MHMRateRatiosAllocation(cont);
+				});
+		network = networkingSystem.createNetwork();
+		new DetServConfigMapper(controller).attachComponent(network.getQueueGraph(), modelingConfig);
+		modelingConfig.initCostModel(controller);
+
+		nodes = topology.build(this, size, seed);
+	}
+
+	/**
+	 * Creates a link (and hence triggers the resource allocation for its scheduler).
+	 */
+	Link createLink(NetworkNode source, NetworkNode destination) {
+		return networkingSystem.createLinkWithPriorityScheduling(source, destination, LINK_RATE, 0.0, QUEUE_SIZES);
+	}
+
+	/**
+	 * Routes a flow between two endpoints.
+	 * @return the Entity of the flow (with a Path if it was accepted).
+	 */
+	Entity route(int source, int destination, double rate, double burst, double deadline) {
+		Entity entity = controller.createEntity();
+		try (MapperSpace mapperSpace = controller.startMapperSpace()) {
+			requestMapper.attachComponent(entity, new UnicastRequest(nodes[source].getQueueNode(), nodes[destination].getQueueNode()));
+			ncRequestDataMapper.attachComponent(entity, new NCRequestData(
+					CurvePwAffine.getFactory().createTokenBucket(rate, burst),
+					Num.getFactory().create(deadline)));
+			selectedRoutingAlgorithmMapper.attachComponent(entity, new SelectedRoutingAlgorithm(cbf));
+		}
+		return entity;
+	}
+
+	/**
+	 * @return whether the flow was accepted.
+	 */
+	boolean isAccepted(Entity entity) {
+		return pathMapper.isIn(entity);
+	}
+
+	Path getPath(Entity entity) {
+		if (!pathMapper.isIn(entity))
+			throw new IllegalStateException("Benchmark flow could not be routed");
+		return pathMapper.get(entity);
+	}
+
+	Request getRequest(Entity entity) {
+		return requestMapper.get(entity);
+	}
+}
@@ -0,0 +1,135 @@
+package de.tum.ei.lkn.eces.dnm.benchmarks;
+
+import de.tum.ei.lkn.eces.network.NetworkNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Topologies of the benchmark networks. All the links are created in both directions with the rate and queue sizes of
+ * BenchmarkNetwork.
+ *
+ * @author Amaury Van Bemten
+ */
+enum BenchmarkTopology {
+	/**
+	 * Line of size nodes, all of them being endpoints.
+	 */
+	LINE {
+		@Override
+		NetworkNode[] build(BenchmarkNetwork network, int size, long seed) {
+			NetworkNode[] nodes = createNodes(network, size);
+			for (int i = 0; i < size - 1; i++)
+				connect(network, nodes[i], nodes[i + 1]);
+			return nodes;
+		}
+	},
+	/**
+	 * Ring of size nodes, all of them being endpoints.
+	 */
+	RING {
+		@Override
+		NetworkNode[] build(BenchmarkNetwork network, int size, long seed) {
+			NetworkNode[] nodes = createNodes(network, size);
+			for (int i = 0; i < size; i++)
+				connect(network, nodes[i], nodes[(i + 1) % size]);
+			return nodes;
+		}
+	},
+	/**
+	 * k-ary fat-tree with k = size (even): k pods of k/2 edge and k/2 aggregation switches, (k/2)^2 core switches and
+	 * k/2 endpoints per edge switch.
+	 */
+	FAT_TREE {
+		@Override
+		NetworkNode[] build(BenchmarkNetwork network, int size, long seed) {
+			if (size < 2 || size % 2 != 0)
+				throw new IllegalArgumentException("The arity of a fat-tree must be even");
+
+			int half = size / 2;
+			NetworkNode[] core = createNodes(network, half * half);
+			NetworkNode[] endpoints = new NetworkNode[size * half * half];
+			for (int pod = 0; pod < size; pod++) {
+				NetworkNode[] aggregation = createNodes(network, half);
+				NetworkNode[] edge = createNodes(network, half);
+				for (int i = 0; i < half; i++) {
+					for (int j = 0; j < half; j++) {
+						connect(network, edge[i], aggregation[j]);
+						connect(network, aggregation[i], core[i * half + j]);
+					}
+					for (int j = 0; j < half; j++) {
+						endpoints[(pod * half + i) * half + j] = network.networkingSystem.createNode(network.network);
+						connect(network, endpoints[(pod * half + i) * half + j], edge[i]);
+					}
+				}
+			}
+			return endpoints;
+		}
+	},
+	/**
+	 * Random connected grid of size x size nodes, all of them being endpoints. The links of the grid are drawn in a
+	 * random order: a link is kept if it connects two parts of the grid that are not connected yet (hence a random
+	 * spanning tree) and with probability 1/2 otherwise. The same seed always gives the same grid.
+	 */
+	RANDOM {
+		@Override
+		NetworkNode[] build(BenchmarkNetwork network, int size, long seed) {
+			Random random = new Random(seed);
+			NetworkNode[] nodes = createNodes(network, size * size);
+			List<int[]> gridLinks = new ArrayList<>();
+			for (int i = 0; i < size; i++) {
+				for (int j = 0; j < size; j++) {
+					if (j + 1 < size)
+						gridLinks.add(new int[]{i * size + j, i * size + j + 1});
+					if (i + 1 < size)
+						gridLinks.add(new int[]{i * size + j, (i + 1) * size + j});
+				}
+			}
+			Collections.shuffle(gridLinks, random);
+
+			// Union-find of the parts of the grid connected so far.
+			int[] parent = new int[size * size];
+			for (int i = 0; i < parent.length; i++)
+				parent[i] = i;
+			for (int[] gridLink : gridLinks) {
+				int first = find(parent, gridLink[0]);
+				int second = find(parent, gridLink[1]);
+				if (first != second)
+					parent[first] = second;
+				else if (!random.nextBoolean())
+					continue;
+				connect(network, nodes[gridLink[0]], nodes[gridLink[1]]);
+			}
+			return nodes;
+		}
+	};
+
+	/**
+	 * Builds the topology in the network of a BenchmarkNetwork.
+	 * @param network the benchmark network.
+	 * @param size size of the topology (see each topology).
+	 * @param seed seed of the random topologies.
+	 * @return The endpoints of the topology, i.e., the nodes between which flows are routed.
+	 */
+	abstract NetworkNode[] build(BenchmarkNetwork network, int size, long seed);
+
+	private static NetworkNode[] createNodes(BenchmarkNetwork network, int number) {
+		NetworkNode[] nodes = new NetworkNode[number];
+		for (int i = 0; i < number; i++)
+			nodes[i] = network.networkingSystem.createNode(network.network);
+		return nodes;
+	}
+
+	private static void connect(BenchmarkNetwork network, NetworkNode first, NetworkNode second) {
+		network.createLink(first, second);
+		network.createLink(second, first);
+	}
+
+	private static int find(int[] parent, int node) {
+		while (parent[node] != node)
+			node = parent[node] = parent[parent[node]];
+		return node;
+	}
+}
@@ -0,0 +1,145 @@
+package de.tum.ei.lkn.eces.dnm.benchmarks;
+
+import de.tum.ei.lkn.eces.core.Entity;
+import de.tum.ei.lkn.eces.dnm.ResidualMode;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replays a reproducible churn of flows (see ChurnWorkload) through the DNMSystem, the DetServProxy and CBF on a
+ * benchmark topology, for every combination of access control model, residual mode, burst increase model and input
+ * link shaping. For each combination, it reports the admission throughput, the percentiles of the decision latency
+ * (routing, access control and registration of an arriving flow), the acceptance ratio and heap/GC statistics.
+ *
+ * Unlike the JMH benchmarks, the state of the network evolves during a run: each run replays the whole churn once, on
+ * a new network. The first combination is replayed once before the measurements to warm the JVM up.
+ *
+ * Usage: ChurnBenchmark [topology (LINE, RING, FAT_TREE, RANDOM)] [size] [number of arrivals] [seed], e.g., with
+ * mvn -P churn-benchmark test.
+ *
+ * @author Amaury Van Bemten
+ */
+public class ChurnBenchmark {
+	// Churn: 100 arrivals per second staying 10s on average (1000 flows at the same time on average).
+	private static final double ARRIVAL_RATE = 100;
+	private static final double MEAN_HOLDING_TIME = 10;
+	private static final double MAXIMUM_RATE = 1000000;
+	private static final double MAXIMUM_BURST = 5000;
+	private static final double MINIMUM_DEADLINE = 0.001;
+	private static final double MAXIMUM_DEADLINE = 0.05;
+
+	public static void main(String[] args) {
+		BenchmarkTopology topology = args.length > 0 ? BenchmarkTopology.valueOf(args[0]) : BenchmarkTopology.FAT_TREE;
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int numberOfArrivals = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+		System.out.println(String.format("Churn on %s of size %d: %d arrivals, seed %d", topology, size, numberOfArrivals, seed));
+		run(ACModel.TBM, ResidualMode.LEAST_LATENCY, BurstIncreaseModel.NO, false, topology, size, numberOfArrivals, seed);
+
+		System.out.println("acModel,residualMode,burstIncrease,inputLinkShaping,events/s,decisions/s,p50(us),p99(us),p999(us),acceptanceRatio,peakHeap(MB),gcCount,gcTime(ms)");
+		for (ACModel acModel : ACModel.values())
+			for (ResidualMode residualMode : ResidualMode.values())
+				for (BurstIncreaseModel burstIncrease : BurstIncreaseModel.values())
+					for (boolean inputLinkShaping : new boolean[]{false, true})
+						System.out.println(run(acModel, residualMode, burstIncrease, inputLinkShaping, topology, size, numberOfArrivals, seed));
+	}
+
+	/**
+	 * Replays the churn on a new network.
+	 * @return The measurements as a CSV line.
+	 */
+	private static String run(ACModel acModel, ResidualMode residualMode, BurstIncreaseModel burstIncrease, boolean inputLinkShaping, BenchmarkTopology topology, int size, int numberOfArrivals, long seed) {
+		BenchmarkNetwork network = new BenchmarkNetwork(acModel, residualMode, burstIncrease, inputLinkShaping, topology, size, seed);
+		ChurnWorkload workload = new ChurnWorkload(seed, network.nodes.length, numberOfArrivals, ARRIVAL_RATE, MEAN_HOLDING_TIME, MAXIMUM_RATE, MAXIMUM_BURST, MINIMUM_DEADLINE, MAXIMUM_DEADLINE);
+
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+		long gcCount = getGCCount();
+		long gcTime = getGCTime();
+
+		Map<Integer, Entity> acceptedFlows = new HashMap<>();
+		long[] decisionLatencies = new long[workload.getNumberOfArrivals()];
+		int decisions = 0;
+		int accepted = 0;
+		long start = System.nanoTime();
+		for (ChurnWorkload.Event event : workload.getEvents()) {
+			if (event.arrival) {
+				long decisionStart = System.nanoTime();
+				Entity flow = network.route(event.source, event.destination, event.rate, event.burst, event.deadline);
+				decisionLatencies[decisions++] = System.nanoTime() - decisionStart;
+				if (network.isAccepted(flow)) {
+					acceptedFlows.put(event.flow, flow);
+					accepted++;
+				}
+			}
+			else {
+				Entity flow = acceptedFlows.remove(event.flow);
+				if (flow != null)
+					network.proxy.deregister(network.getPath(flow), network.getRequest(flow));
+			}
+		}
+		long duration = System.nanoTime() - start;
+
+		long peakHeap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				peakHeap += pool.getPeakUsage().getUsed();
+
+		long totalDecisionTime = 0;
+		for (long decisionLatency : decisionLatencies)
+			totalDecisionTime += decisionLatency;
+		Arrays.sort(decisionLatencies);
+
+		return String.format("%s,%s,%s,%b,%.1f,%.1f,%.1f,%.1f,%.1f,%.4f,%.1f,%d,%d",
+				acModel,
+				residualMode,
+				burstIncrease,
+				inputLinkShaping,
+				workload.getEvents().size() / (duration / 1e9),
+				decisions / (totalDecisionTime / 1e9),
+				percentile(decisionLatencies, 0.5) / 1e3,
+				percentile(decisionLatencies, 0.99) / 1e3,
+				percentile(decisionLatencies, 0.999) / 1e3,
+				(double) accepted / decisions,
+				peakHeap / (1024.0 * 1024.0),
+				getGCCount() - gcCount,
+				getGCTime() - gcTime);
+	}
+
+	/**
+	 * @param sortedValues sorted values.
+	 * @param quantile quantile in ]0, 1].
+	 * @return The nearest-rank percentile.
+	 */
+	private static long percentile(long[] sortedValues, double quantile) {
+		if (sortedValues.length == 0)
+			return 0;
+		int rank = (int) Math.ceil(quantile * sortedValues.length);
+		return sortedValues[Math.max(0, rank - 1)];
+	}
+
+	private static long getGCCount() {
+		long result = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+			result += Math.max(0, collector.getCollectionCount());
+		return result;
+	}
+
+	private static long getGCTime() {
+		long result = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+			result += Math.max(0, collector.getCollectionTime());
+		return result;
+	}
+}
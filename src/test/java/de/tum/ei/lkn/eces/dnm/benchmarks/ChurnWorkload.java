@@ -0,0 +1,111 @@
+package de.tum.ei.lkn.eces.dnm.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Reproducible churn of flows between the endpoints of a topology: flows arrive as a Poisson process and stay for an
+ * exponentially distributed holding time. The same seed always gives the same sequence of arrivals and departures.
+ *
+ * The token bucket and deadline of each flow are drawn uniformly in the given ranges.
+ *
+ * @author Amaury Van Bemten
+ */
+class ChurnWorkload {
+	private final List<Event> events;
+	private final int numberOfArrivals;
+
+	/**
+	 * @param seed seed of the random generator.
+	 * @param numberOfEndpoints number of endpoints between which flows are drawn (at least 2).
+	 * @param numberOfArrivals number of flows.
+	 * @param arrivalRate mean number of arrivals per second.
+	 * @param meanHoldingTime mean time a flow stays (s).
+	 * @param maximumRate maximum rate of a flow (the rate is drawn in ]0, maximumRate]).
+	 * @param maximumBurst maximum burst of a flow (the burst is drawn in [0, maximumBurst]).
+	 * @param minimumDeadline minimum deadline of a flow (s).
+	 * @param maximumDeadline maximum deadline of a flow (s).
+	 */
+	ChurnWorkload(long seed, int numberOfEndpoints, int numberOfArrivals, double arrivalRate, double meanHoldingTime, double maximumRate, double maximumBurst, double minimumDeadline, double maximumDeadline) {
+		if (numberOfEndpoints < 2)
+			throw new IllegalArgumentException("A churn needs at least two endpoints");
+
+		Random random = new Random(seed);
+		PriorityQueue<Event> departures = new PriorityQueue<>();
+		List<Event> result = new ArrayList<>(2 * numberOfArrivals);
+		double time = 0;
+		for (int flow = 0; flow < numberOfArrivals; flow++) {
+			time += exponential(random, 1 / arrivalRate);
+
+			// Departures happening before this arrival.
+			while (!departures.isEmpty() && departures.peek().time <= time)
+				result.add(departures.poll());
+
+			int source = random.nextInt(numberOfEndpoints);
+			int destination = random.nextInt(numberOfEndpoints - 1);
+			if (destination >= source)
+				destination++;
+			double rate = maximumRate * (1 - random.nextDouble());
+			double burst = maximumBurst * random.nextDouble();
+			double deadline = minimumDeadline + (maximumDeadline - minimumDeadline) * random.nextDouble();
+
+			result.add(new Event(time, true, flow, source, destination, rate, burst, deadline));
+			departures.add(new Event(time + exponential(random, meanHoldingTime), false, flow, source, destination, rate, burst, deadline));
+		}
+
+		while (!departures.isEmpty())
+			result.add(departures.poll());
+
+		this.events = Collections.unmodifiableList(result);
+		this.numberOfArrivals = numberOfArrivals;
+	}
+
+	private static double exponential(Random random, double mean) {
+		return -mean * Math.log(1 - random.nextDouble());
+	}
+
+	/**
+	 * @return The arrivals and departures, in time order.
+	 */
+	List<Event> getEvents() {
+		return events;
+	}
+
+	int getNumberOfArrivals() {
+		return numberOfArrivals;
+	}
+
+	/**
+	 * Arrival or departure of a flow.
+	 */
+	static class Event implements Comparable<Event> {
+		final double time;
+		final boolean arrival;
+		final int flow;
+		final int source;
+		final int destination;
+		final double rate;
+		final double burst;
+		final double deadline;
+
+		private Event(double time, boolean arrival, int flow, int source, int destination, double rate, double burst, double deadline) {
+			this.time = time;
+			this.arrival = arrival;
+			this.flow = flow;
+			this.source = source;
+			this.destination = destination;
+			this.rate = rate;
+			this.burst = burst;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public int compareTo(Event other) {
+			int result = Double.compare(time, other.time);
+			return result != 0 ? result : Integer.compare(flow, other.flow);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package de.tum.ei.lkn.eces.dnm.benchmarks;
+
+import de.tum.ei.lkn.eces.core.Entity;
+import de.tum.ei.lkn.eces.dnm.ResidualMode;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registration and deregistration of a flow on a path (DetServProxy.register/deregister), including the service curve
+ * updates done by the DNMSystem listeners.
+ *
+ * @author Amaury Van Bemten
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistrationBenchmark {
+	@Param({"TBM", "MHM"})
+	public ACModel acModel;
+
+	@Param({"false", "true"})
+	public boolean inputLinkShaping;
+
+	@Param({"2", "5", "10", "20"})
+	public int pathLength;
+
+	private DetServProxy proxy;
+	private Path path;
+	private Request request;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkNetwork network = new BenchmarkNetwork(acModel, ResidualMode.LEAST_LATENCY, BurstIncreaseModel.REAL, inputLinkShaping, pathLength + 1);
+		proxy = network.proxy;
+
+		Entity flow = network.route(0, pathLength, 10000.0, 100.0, 1.0);
+		path = network.getPath(flow);
+		request = network.getRequest(flow);
+		if (path.getPath().length != pathLength)
+			throw new IllegalStateException("Unexpected path length: " + path.getPath().length);
+	}
+
+	@Benchmark
+	public boolean registerDeregister() {
+		// Registering a second copy of the flow and removing it, so that the state does not drift.
+		return proxy.register(path, request) & proxy.deregister(path, request);
+	}
+}
@@ -0,0 +1,60 @@
+package de.tum.ei.lkn.eces.dnm.benchmarks;
+
+import de.tum.ei.lkn.eces.dnm.ResidualMode;
+import de.uni_kl.cs.discodnc.curves.ArrivalCurve;
+import de.uni_kl.cs.discodnc.curves.CurvePwAffine;
+import de.uni_kl.cs.discodnc.curves.ServiceCurve;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computation of the service curves of a chain of priority queues (ResidualMode.getResidualServiceCurve), with token
+ * bucket (no ILS) or shaped (ILS) arrival curves.
+ *
+ * @author Amaury Van Bemten
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResidualCurveBenchmark {
+	@Param({"LEAST_LATENCY", "HIGHEST_SLOPE", "REAL_CURVE"})
+	public ResidualMode residualMode;
+
+	@Param({"1", "2", "4", "8"})
+	public int numberOfQueues;
+
+	@Param({"false", "true"})
+	public boolean shapedArrivals;
+
+	private ServiceCurve linkServiceCurve;
+	private ArrivalCurve[] arrivalCurves;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		double maximumPacketSize = 1530;
+		linkServiceCurve = CurvePwAffine.getFactory().createRateLatency(BenchmarkNetwork.LINK_RATE, 2 * maximumPacketSize / BenchmarkNetwork.LINK_RATE);
+
+		arrivalCurves = new ArrivalCurve[numberOfQueues];
+		for (int i = 0; i < numberOfQueues; i++) {
+			ArrivalCurve tokenBucket = CurvePwAffine.getFactory().createTokenBucket(BenchmarkNetwork.LINK_RATE / (4 * numberOfQueues), 20000);
+			if (shapedArrivals)
+				arrivalCurves[i] = CurvePwAffine.add(
+						CurvePwAffine.min(tokenBucket, CurvePwAffine.getFactory().createTokenBucket(BenchmarkNetwork.LINK_RATE, maximumPacketSize)),
+						CurvePwAffine.min(tokenBucket, CurvePwAffine.getFactory().createTokenBucket(BenchmarkNetwork.LINK_RATE / 2, maximumPacketSize)));
+			else
+				arrivalCurves[i] = tokenBucket;
+		}
+	}
+
+	@Benchmark
+	public ServiceCurve residualChain() {
+		ServiceCurve serviceCurve = linkServiceCurve;
+		for (ArrivalCurve arrivalCurve : arrivalCurves)
+			serviceCurve = residualMode.getResidualServiceCurve(serviceCurve, arrivalCurve);
+		return serviceCurve;
+	}
+}
@@ -0,0 +1,43 @@
+package de.tum.ei.lkn.eces.dnm.benchmarks;
+
+import de.tum.ei.lkn.eces.dnm.ResidualMode;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.network.Link;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of a link, which triggers the resource allocation of its scheduler (DNMSystem.allocateResources).
+ *
+ * The network is rebuilt before each invocation (not measured), so that every measured link is created in the same
+ * network instead of the network growing with the number of invocations.
+ *
+ * @author Amaury Van Bemten
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceAllocationBenchmark {
+	@Param({"TBM", "MHM"})
+	public ACModel acModel;
+
+	@Param({"false", "true"})
+	public boolean inputLinkShaping;
+
+	private BenchmarkNetwork network;
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		network = new BenchmarkNetwork(acModel, ResidualMode.LEAST_LATENCY, BurstIncreaseModel.NO, inputLinkShaping, 2);
+	}
+
+	@Benchmark
+	public Link createLink() {
+		return network.createLink(network.nodes[0], network.nodes[1]);
+	}
+}